@@ -0,0 +1,127 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.benchmark;
+
+import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import com.whizzosoftware.hobson.zwave.state.RunningState;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the inbound report processing path: the running state's dispatch of a node update, a device's
+ * processUpdate() and each device type's onUpdate().
+ *
+ * Every invocation alternates the node between two states so that each report produces variable updates rather than
+ * being suppressed as unchanged.
+ *
+ * @author Dan Noguerol
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InboundReportBenchmark {
+    @Param({"10", "100", "231"})
+    public int deviceCount;
+
+    private SyntheticNetwork network;
+    private RunningState state;
+    private final List<VariableUpdate> updates = new ArrayList<>();
+    private int[] rootIndexes;
+    private int[][] typeIndexes;
+    private int[] typeCursors;
+    private int[] variants;
+    private int cursor;
+    private int rootCursor;
+
+    @Setup
+    public void setUp() {
+        network = new SyntheticNetwork(deviceCount);
+        state = new RunningState(network.getPlugin().getNetwork(0));
+
+        // multi-channel endpoint devices aren't reachable via a root node update so they're excluded from dispatch
+        List<Integer> roots = new ArrayList<>();
+        for (int i=0; i < network.size(); i++) {
+            if (network.getType(i) != SyntheticNetwork.MULTI_CHANNEL) {
+                roots.add(i);
+            }
+        }
+        rootIndexes = new int[roots.size()];
+        for (int i=0; i < rootIndexes.length; i++) {
+            rootIndexes[i] = roots.get(i);
+        }
+
+        typeIndexes = new int[SyntheticNetwork.TYPE_COUNT][];
+        for (int t=0; t < SyntheticNetwork.TYPE_COUNT; t++) {
+            typeIndexes[t] = network.getIndexes(t);
+        }
+        typeCursors = new int[SyntheticNetwork.TYPE_COUNT];
+        variants = new int[network.size()];
+    }
+
+    @Benchmark
+    public void runningStateNodeUpdated() {
+        int ix = rootIndexes[rootCursor];
+        rootCursor = (rootCursor + 1) % rootIndexes.length;
+        state.onZWaveNodeUpdated(network.getPlugin().getNetwork(0), network.getNode(ix, nextVariant(ix)));
+    }
+
+    @Benchmark
+    public void processUpdate(Blackhole bh) {
+        int ix = cursor;
+        cursor = (cursor + 1) % network.size();
+        updates.clear();
+        network.getDevice(ix).processUpdate(network.getNode(ix, nextVariant(ix)), updates);
+        bh.consume(updates.size());
+    }
+
+    @Benchmark
+    public void switchOnUpdate(Blackhole bh) {
+        onUpdate(SyntheticNetwork.SWITCH, bh);
+    }
+
+    @Benchmark
+    public void dimmerOnUpdate(Blackhole bh) {
+        onUpdate(SyntheticNetwork.DIMMER, bh);
+    }
+
+    @Benchmark
+    public void meteredSwitchOnUpdate(Blackhole bh) {
+        onUpdate(SyntheticNetwork.METERED_SWITCH, bh);
+    }
+
+    @Benchmark
+    public void multiChannelOnUpdate(Blackhole bh) {
+        onUpdate(SyntheticNetwork.MULTI_CHANNEL, bh);
+    }
+
+    private void onUpdate(int type, Blackhole bh) {
+        int[] indexes = typeIndexes[type];
+        if (indexes.length > 0) {
+            int ix = indexes[typeCursors[type]];
+            typeCursors[type] = (typeCursors[type] + 1) % indexes.length;
+            updates.clear();
+            network.getDevice(ix).onUpdate(network.getNode(ix, nextVariant(ix)), updates);
+            bh.consume(updates.size());
+        }
+    }
+
+    private int nextVariant(int ix) {
+        int v = variants[ix];
+        variants[ix] = v ^ 1;
+        return v;
+    }
+}
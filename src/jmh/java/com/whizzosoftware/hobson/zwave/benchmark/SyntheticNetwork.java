@@ -0,0 +1,237 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.benchmark;
+
+import com.whizzosoftware.hobson.api.device.MockDeviceManager;
+import com.whizzosoftware.hobson.api.variable.MockVariableManager;
+import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.hobson.zwave.device.DimmerDevice;
+import com.whizzosoftware.hobson.zwave.device.HobsonZWaveDevice;
+import com.whizzosoftware.hobson.zwave.device.MeterSwitchDevice;
+import com.whizzosoftware.hobson.zwave.device.SwitchDevice;
+import com.whizzosoftware.hobson.zwave.device.ZWaveDeviceFactory;
+import com.whizzosoftware.wzwave.commandclass.BinarySwitchCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MeterCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MultilevelSwitchCommandClass;
+import com.whizzosoftware.wzwave.node.NodeInfo;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.generic.BinarySwitch;
+import com.whizzosoftware.wzwave.node.generic.MultilevelSwitch;
+
+import java.util.List;
+
+/**
+ * A synthetic Z-Wave network of started Hobson devices, each with two pre-built node states (e.g. on and off) so
+ * that alternating between them always produces a variable change.
+ *
+ * Devices are assigned round-robin to four types: binary switches, dimmers, metered switches and multi-channel
+ * endpoint switches (endpoint 1 of a node whose endpoints are discovered via its multi-channel command class). Node
+ * state is populated by feeding report frames to the node's command classes, the same way the controller does.
+ *
+ * @author Dan Noguerol
+ */
+public class SyntheticNetwork {
+    public static final int SWITCH = 0;
+    public static final int DIMMER = 1;
+    public static final int METERED_SWITCH = 2;
+    public static final int MULTI_CHANNEL = 3;
+    public static final int TYPE_COUNT = 4;
+    public static final int MAX_DEVICE_COUNT = 231; // node IDs 2-232 since node 1 is the controller
+
+    private static final byte BASIC_ROUTING_SLAVE = 0x04;
+    private static final byte REPORT = 0x03;
+    private static final byte METER_REPORT = 0x02;
+    private static final byte MULTI_CHANNEL_END_POINT_REPORT = 0x08;
+    private static final byte MULTI_CHANNEL_CAPABILITY_REPORT = 0x0A;
+    private static final byte ENDPOINT_NUMBER = 1;
+
+    private final BenchmarkPlugin plugin;
+    private final HobsonZWaveDevice[] devices;
+    private final ZWaveEndpoint[][] nodes;
+    private final MultiInstanceCommandClass[] miccs;
+    private final int[] types;
+
+    public SyntheticNetwork(int deviceCount) {
+        if (deviceCount < 1 || deviceCount > MAX_DEVICE_COUNT) {
+            throw new IllegalArgumentException("Device count must be between 1 and " + MAX_DEVICE_COUNT + ": " + deviceCount);
+        }
+
+        plugin = new BenchmarkPlugin();
+        plugin.setDeviceManager(new MockDeviceManager());
+        plugin.setVariableManager(new MockVariableManager());
+
+        devices = new HobsonZWaveDevice[deviceCount];
+        nodes = new ZWaveEndpoint[deviceCount][2];
+        miccs = new MultiInstanceCommandClass[deviceCount];
+        types = new int[deviceCount];
+
+        for (int i=0; i < deviceCount; i++) {
+            byte nodeId = (byte)(i + 2); // node 1 is the controller
+            int type = i % TYPE_COUNT;
+            types[i] = type;
+
+            for (int v=0; v < 2; v++) {
+                if (type == MULTI_CHANNEL) {
+                    MultiInstanceCommandClass micc = createMultiChannelNode(nodeId, v == 0);
+                    nodes[i][v] = micc.getEndpoint(ENDPOINT_NUMBER);
+                    if (v == 0) {
+                        miccs[i] = micc;
+                    }
+                } else {
+                    nodes[i][v] = createNode(nodeId, type, v == 0);
+                }
+            }
+
+            if (type == MULTI_CHANNEL) {
+                devices[i] = plugin.publish(createFactory(type), nodes[i][0], ENDPOINT_NUMBER, miccs[i]);
+            } else {
+                devices[i] = plugin.publish(createFactory(type), nodes[i][0], null, null);
+            }
+        }
+    }
+
+    public BenchmarkPlugin getPlugin() {
+        return plugin;
+    }
+
+    public int size() {
+        return devices.length;
+    }
+
+    public int getType(int ix) {
+        return types[ix];
+    }
+
+    public HobsonZWaveDevice getDevice(int ix) {
+        return devices[ix];
+    }
+
+    public ZWaveEndpoint getNode(int ix, int variant) {
+        return nodes[ix][variant];
+    }
+
+    /**
+     * Returns the indexes of all devices of a given type.
+     *
+     * @param type the device type
+     *
+     * @return an array of device indexes
+     */
+    public int[] getIndexes(int type) {
+        int count = 0;
+        for (int t : types) {
+            if (t == type) {
+                count++;
+            }
+        }
+        int[] results = new int[count];
+        int j = 0;
+        for (int i=0; i < types.length; i++) {
+            if (types[i] == type) {
+                results[j++] = i;
+            }
+        }
+        return results;
+    }
+
+    private ZWaveEndpoint createNode(byte nodeId, int type, boolean on) {
+        switch (type) {
+            case DIMMER: {
+                ZWaveEndpoint node = new MultilevelSwitch(new NodeInfo(nodeId, BASIC_ROUTING_SLAVE, MultilevelSwitch.ID, (byte)0x01, new byte[] {MultilevelSwitchCommandClass.ID}), true, null);
+                report(node, MultilevelSwitchCommandClass.ID, REPORT, on ? (byte)0x63 : (byte)0x00);
+                return node;
+            }
+            case METERED_SWITCH: {
+                ZWaveEndpoint node = new BinarySwitch(new NodeInfo(nodeId, BASIC_ROUTING_SLAVE, BinarySwitch.ID, (byte)0x01, new byte[] {BinarySwitchCommandClass.ID, MeterCommandClass.ID}), true, null);
+                report(node, BinarySwitchCommandClass.ID, REPORT, on ? (byte)0xFF : (byte)0x00);
+                // electric meter, precision 1, scale W, 2 byte value
+                report(node, MeterCommandClass.ID, METER_REPORT, (byte)0x01, (byte)0x32, (byte)0x00, on ? (byte)0x64 : (byte)0x00);
+                return node;
+            }
+            default: {
+                ZWaveEndpoint node = new BinarySwitch(new NodeInfo(nodeId, BASIC_ROUTING_SLAVE, BinarySwitch.ID, (byte)0x01, new byte[] {BinarySwitchCommandClass.ID}), true, null);
+                report(node, BinarySwitchCommandClass.ID, REPORT, on ? (byte)0xFF : (byte)0x00);
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Creates a binary switch node with a single binary switch endpoint and returns its multi-channel command class.
+     */
+    private MultiInstanceCommandClass createMultiChannelNode(byte nodeId, boolean on) {
+        ZWaveEndpoint node = new BinarySwitch(new NodeInfo(nodeId, BASIC_ROUTING_SLAVE, BinarySwitch.ID, (byte)0x01, new byte[] {BinarySwitchCommandClass.ID, MultiInstanceCommandClass.ID}), true, null);
+        report(node, MultiInstanceCommandClass.ID, MULTI_CHANNEL_END_POINT_REPORT, (byte)0x00, (byte)0x01);
+        report(node, MultiInstanceCommandClass.ID, MULTI_CHANNEL_CAPABILITY_REPORT, ENDPOINT_NUMBER, BinarySwitch.ID, (byte)0x01, BinarySwitchCommandClass.ID);
+        MultiInstanceCommandClass micc = (MultiInstanceCommandClass)node.getCommandClass(MultiInstanceCommandClass.ID);
+        report(micc.getEndpoint(ENDPOINT_NUMBER), BinarySwitchCommandClass.ID, REPORT, on ? (byte)0xFF : (byte)0x00);
+        return micc;
+    }
+
+    private void report(ZWaveEndpoint node, byte... ccb) {
+        node.getCommandClass(ccb[0]).onApplicationCommand(ccb, 0);
+    }
+
+    private ZWaveDeviceFactory createFactory(int type) {
+        if (type == DIMMER) {
+            return new ZWaveDeviceFactory() {
+                @Override
+                public HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+                    return new DimmerDevice(plugin, id, endpoint, null, endpointNumber, micc);
+                }
+            };
+        } else if (type == METERED_SWITCH) {
+            return new ZWaveDeviceFactory() {
+                @Override
+                public HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+                    return new MeterSwitchDevice(plugin, id, endpoint, null, endpointNumber, micc);
+                }
+            };
+        } else {
+            return new ZWaveDeviceFactory() {
+                @Override
+                public HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+                    return new SwitchDevice(plugin, id, endpoint, null, endpointNumber, micc);
+                }
+            };
+        }
+    }
+
+    /**
+     * A plugin that publishes devices without a running Hobson hub and counts variable update notifications rather
+     * than delivering them.
+     */
+    static public class BenchmarkPlugin extends ZWavePlugin {
+        private long notificationCount;
+
+        public BenchmarkPlugin() {
+            super("benchmark");
+        }
+
+        public HobsonZWaveDevice publish(ZWaveDeviceFactory factory, ZWaveEndpoint node, Byte endpointNumber, MultiInstanceCommandClass micc) {
+            HobsonZWaveDevice device = getNetwork(0).publishZWaveDevice(factory, node, endpointNumber, micc);
+            if (!device.isStarted()) {
+                device.onStartup(null);
+            }
+            return device;
+        }
+
+        public long getNotificationCount() {
+            return notificationCount;
+        }
+
+        @Override
+        public void fireVariableUpdateNotifications(List<VariableUpdate> updates) {
+            notificationCount += updates.size();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.zwave.device.HobsonZWaveDevice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collapses rapid-fire commands to a device (e.g. from a UI slider being dragged or a fade rule) so that only the
+ * newest one is transmitted.
+ *
+ * Each device has a last-writer-wins command slot. A command to an idle device is sent immediately and opens a
+ * window of a minimum spacing. Commands that arrive during the window replace each other in the slot and only the
+ * newest is sent when the window closes, which opens a new window. Once a window closes with nothing pending, the
+ * device gets a single trailing verification of the last command sent rather than one per command.
+ *
+ * @author Dan Noguerol
+ */
+public class CommandCoalescer {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final long DEFAULT_MIN_SPACING = 250;
+
+    private final ZWaveContext context;
+    private final ConfirmationTracker confirmationTracker;
+    private final ScheduledExecutorService executor;
+    private final Map<HobsonZWaveDevice,Slot> slots = new HashMap<>();
+    private long minSpacing;
+    private long sentCount;
+    private long collapsedCount;
+
+    /**
+     * Constructor.
+     *
+     * @param context the context used to send command frames
+     * @param confirmationTracker the tracker used to verify commands
+     * @param executor the executor used to schedule the end of each window
+     * @param minSpacing the minimum time between commands sent to a device (in milliseconds)
+     */
+    public CommandCoalescer(ZWaveContext context, ConfirmationTracker confirmationTracker, ScheduledExecutorService executor, long minSpacing) {
+        this.context = context;
+        this.confirmationTracker = confirmationTracker;
+        this.executor = executor;
+        this.minSpacing = minSpacing;
+    }
+
+    synchronized public void setMinSpacing(long minSpacing) {
+        this.minSpacing = minSpacing;
+    }
+
+    /**
+     * Submits a command. This can be called from any thread.
+     *
+     * @param command the command
+     */
+    synchronized public void submit(ZWaveCommand command) {
+        HobsonZWaveDevice device = command.getDevice();
+        Slot slot = slots.get(device);
+        if (slot == null) {
+            slot = new Slot(device);
+            transmit(slot, command);
+            if (minSpacing > 0 && (slot.windowFuture = scheduleWindowEnd(slot)) != null) {
+                slots.put(device, slot);
+            } else {
+                verify(slot);
+            }
+        } else {
+            if (slot.pending != null) {
+                collapsedCount++;
+                logger.trace("Collapsing command {} into {}", slot.pending, command);
+            }
+            slot.pending = command;
+        }
+    }
+
+    /**
+     * Discards any command waiting to be sent to a device because a newer command has been sent to it directly.
+     *
+     * @param device the device
+     */
+    synchronized public void supersede(HobsonZWaveDevice device) {
+        if (slots.isEmpty()) {
+            return;
+        }
+        Slot slot = slots.get(device);
+        if (slot != null) {
+            if (slot.pending != null) {
+                slot.pending = null;
+                collapsedCount++;
+            }
+            // the direct command carries its own verification
+            slot.unverified = null;
+        }
+    }
+
+    /**
+     * Discards all pending commands.
+     */
+    synchronized public void clear() {
+        for (Slot slot : slots.values()) {
+            if (slot.windowFuture != null) {
+                slot.windowFuture.cancel(false);
+            }
+        }
+        slots.clear();
+    }
+
+    synchronized public int getPendingCount() {
+        int count = 0;
+        for (Slot slot : slots.values()) {
+            if (slot.pending != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of commands that were transmitted.
+     *
+     * @return a long
+     */
+    synchronized public long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * Returns the number of commands that were replaced by a newer command before they could be transmitted.
+     *
+     * @return a long
+     */
+    synchronized public long getCollapsedCount() {
+        return collapsedCount;
+    }
+
+    @Override
+    synchronized public String toString() {
+        return "sent=" + sentCount + ", collapsed=" + collapsedCount + ", active=" + slots.size();
+    }
+
+    synchronized protected void onWindowEnd(Slot slot) {
+        // make sure the slot hasn't been discarded
+        if (slots.get(slot.device) != slot) {
+            return;
+        }
+        slot.windowFuture = null;
+        if (slot.pending != null) {
+            ZWaveCommand command = slot.pending;
+            slot.pending = null;
+            transmit(slot, command);
+            if ((slot.windowFuture = scheduleWindowEnd(slot)) != null) {
+                return;
+            }
+        }
+        slots.remove(slot.device);
+        verify(slot);
+    }
+
+    private void transmit(Slot slot, ZWaveCommand command) {
+        // an expectation replaces any earlier one for the device so a node that reports its state can be given one
+        // now and only the last will ever need a GET; a node known not to report would get an immediate GET for
+        // every command so its verification waits until the device goes quiet
+        if (confirmationTracker.isSilent(command.getDevice().getNodeId())) {
+            slot.unverified = command;
+        } else {
+            slot.unverified = null;
+            // the expectation must exist before the frame is queued since it's armed when the frame is released
+            confirmationTracker.expect(command, null);
+        }
+
+        context.sendDataFrame(command.getSetFrame(), TransmitPriority.INTERACTIVE);
+        sentCount++;
+    }
+
+    private void verify(Slot slot) {
+        if (slot.unverified != null) {
+            ZWaveCommand command = slot.unverified;
+            confirmationTracker.expect(command.getDevice(), command.getVariableName(), command.getExpectedValue(), command.getGetFrame());
+            slot.unverified = null;
+        }
+    }
+
+    private ScheduledFuture<?> scheduleWindowEnd(final Slot slot) {
+        try {
+            return executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    onWindowEnd(slot);
+                }
+            }, minSpacing, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ree) {
+            return null;
+        }
+    }
+
+    static protected class Slot {
+        final HobsonZWaveDevice device;
+        ZWaveCommand pending;
+        ZWaveCommand unverified;
+        ScheduledFuture<?> windowFuture;
+
+        Slot(HobsonZWaveDevice device) {
+            this.device = device;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending outcome of a command sent to a device.
+ *
+ * The future completes when the device reports the value the command should have produced (either on its own or in
+ * response to a confirmation GET), when a newer command to the same device supersedes it, or when no matching report
+ * arrives in time. The result includes the time from the command's release to the Z-Wave controller to its completion
+ * so callers can pipeline commands and react to their completion rather than polling variables.
+ *
+ * Listeners are called on the thread that completes the future (usually while internal locks are held) so they
+ * should return quickly and hand off any real work.
+ *
+ * @author Dan Noguerol
+ */
+public class CommandFuture implements Future<CommandFuture.Result> {
+    private long sentTime;
+    private Result result;
+    private boolean cancelled;
+    private List<Listener> listeners;
+
+    /**
+     * Returns the time the command was released to the Z-Wave controller. This can be well after the command was
+     * submitted if it had to wait in the transmit queue or for a sleeping node to wake up.
+     *
+     * @return the time in milliseconds (or 0 if the command hasn't been sent yet)
+     */
+    synchronized public long getSentTime() {
+        return sentTime;
+    }
+
+    /**
+     * Records that the command was released to the Z-Wave controller.
+     *
+     * @param now the current time
+     */
+    synchronized void onSent(long now) {
+        if (sentTime == 0) {
+            sentTime = now;
+        }
+    }
+
+    /**
+     * Adds a listener that is called when the future completes. If it has already completed, the listener is called
+     * immediately. Listeners aren't called if the future is cancelled.
+     *
+     * @param listener the listener
+     */
+    public void addListener(Listener listener) {
+        Result r;
+        synchronized (this) {
+            if (!isDone()) {
+                if (listeners == null) {
+                    listeners = new ArrayList<>(1);
+                }
+                listeners.add(listener);
+                return;
+            }
+            r = result;
+        }
+        if (r != null) {
+            listener.onCommandComplete(this, r);
+        }
+    }
+
+    /**
+     * Completes the future.
+     *
+     * @param status the command's outcome
+     * @param now the current time
+     *
+     * @return true if this call completed the future (false if it had already completed or been cancelled)
+     */
+    boolean complete(Status status, long now) {
+        Result r;
+        List<Listener> l;
+        synchronized (this) {
+            if (isDone()) {
+                return false;
+            }
+            r = new Result(status, sentTime != 0 ? Math.max(now - sentTime, 0) : 0);
+            result = r;
+            l = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        if (l != null) {
+            for (Listener listener : l) {
+                listener.onCommandComplete(this, r);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cancels the future. This only stops the caller from waiting; a command that has already been sent can't be
+     * recalled.
+     *
+     * @param mayInterruptIfRunning ignored
+     *
+     * @return true if the future was cancelled
+     */
+    @Override
+    synchronized public boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone()) {
+            return false;
+        }
+        cancelled = true;
+        listeners = null;
+        notifyAll();
+        return true;
+    }
+
+    @Override
+    synchronized public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    synchronized public boolean isDone() {
+        return result != null || cancelled;
+    }
+
+    @Override
+    synchronized public Result get() throws InterruptedException {
+        while (!isDone()) {
+            wait();
+        }
+        return getResult();
+    }
+
+    @Override
+    synchronized public Result get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isDone()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    private Result getResult() {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        return result;
+    }
+
+    @Override
+    synchronized public String toString() {
+        return cancelled ? "cancelled" : (result != null ? result.toString() : "pending");
+    }
+
+    /**
+     * The possible outcomes of a command.
+     */
+    public enum Status {
+        /**
+         * The device reported the expected value on its own.
+         */
+        REPORTED,
+        /**
+         * The device reported the expected value in response to a confirmation GET.
+         */
+        VERIFIED,
+        /**
+         * The device didn't report the expected value in time.
+         */
+        TIMED_OUT,
+        /**
+         * A newer command was sent to the device before this one completed.
+         */
+        SUPERSEDED,
+        /**
+         * The command couldn't be sent or tracked (e.g. unknown device, unsupported variable or network shutdown).
+         */
+        FAILED
+    }
+
+    /**
+     * The outcome of a command.
+     */
+    static public class Result {
+        private final Status status;
+        private final long roundTripTime;
+
+        Result(Status status, long roundTripTime) {
+            this.status = status;
+            this.roundTripTime = roundTripTime;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Indicates whether the device is known to have reached the state the command requested.
+         *
+         * @return a boolean
+         */
+        public boolean isSuccess() {
+            return status == Status.REPORTED || status == Status.VERIFIED;
+        }
+
+        /**
+         * Returns the time between the command's release to the Z-Wave controller and its completion.
+         *
+         * @return the time in milliseconds (0 if the command was never sent)
+         */
+        public long getRoundTripTime() {
+            return roundTripTime;
+        }
+
+        @Override
+        public String toString() {
+            return status + " (" + roundTripTime + "ms)";
+        }
+    }
+
+    /**
+     * Interface for callers that want to be notified when a command completes.
+     */
+    public interface Listener {
+        /**
+         * Called when a command completes.
+         *
+         * @param future the future that completed
+         * @param result the command's result
+         */
+        void onCommandComplete(CommandFuture future, Result result);
+    }
+}
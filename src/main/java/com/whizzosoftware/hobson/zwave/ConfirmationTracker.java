@@ -0,0 +1,509 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.zwave.device.HobsonZWaveDevice;
+import com.whizzosoftware.wzwave.frame.DataFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies the result of commands sent to devices without always paying for a confirmation GET.
+ *
+ * Before a SET is sent, an expectation is recorded for the variable value the device should report. The expectation
+ * is armed when the SET is actually released to the controller (see onFrameSent()) so that reports which arrive
+ * while the SET is still queued (e.g. a stale value re-asserted by an unrelated report) aren't mistaken for its
+ * confirmation. If a matching report arrives within the timeout, no GET is needed. Otherwise the GET is sent when the
+ * timeout expires. The tracker learns which nodes don't send unsolicited reports and sends the GET for those
+ * immediately, except for an occasional probe command that waits for a report so a node that starts reporting is
+ * learned again.
+ *
+ * An expectation can also complete a CommandFuture. Those expectations stay registered after their GET is sent so
+ * the future can be completed by the response (or time out if there isn't one).
+ *
+ * @author Dan Noguerol
+ */
+public class ConfirmationTracker {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final byte NODE_REPORTS = 1;
+    private static final byte NODE_SILENT = 2;
+    private static final int SILENT_TIMEOUT_THRESHOLD = 2;
+    private static final long MIN_VERIFICATION_TIMEOUT = 1000;
+    private static final int SILENT_PROBE_INTERVAL = 16;
+
+    private final ZWaveContext context;
+    private final ScheduledExecutorService executor;
+    private final Map<HobsonZWaveDevice,Expectation> expectations = new HashMap<>();
+    private final Map<DataFrame,Expectation> queued = new IdentityHashMap<>(); // keyed by the SET frame
+    private final byte[] nodeBehavior = new byte[256]; // 0 until a node's behavior is learned
+    private final byte[] nodeTimeouts = new byte[256];
+    private final byte[] nodeProbes = new byte[256];
+    private ZWaveMetrics metrics;
+    private long timeout;
+    private long savedCount;
+    private long timeoutCount;
+    private long immediateCount;
+
+    /**
+     * Constructor.
+     *
+     * @param context the context used to send confirmation frames
+     * @param executor the executor used to schedule timeouts
+     * @param timeout the time to wait for a report before sending a confirmation GET (in milliseconds)
+     */
+    public ConfirmationTracker(ZWaveContext context, ScheduledExecutorService executor, long timeout) {
+        this.context = context;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    synchronized public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sets the metrics used to record command-to-report latency.
+     *
+     * @param metrics the metrics (or null)
+     */
+    synchronized public void setMetrics(ZWaveMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records that a command was sent to a device and that it's expected to report a specific variable value. The
+     * expectation is armed immediately since the command has already been released.
+     *
+     * @param device the device the command was sent to
+     * @param varName the variable that should be reported
+     * @param expectedValue the value that should be reported
+     * @param getFrame the frame used to request the variable value if no report is received
+     */
+    synchronized public void expect(HobsonZWaveDevice device, String varName, Object expectedValue, DataFrame getFrame) {
+        expect(device, varName, expectedValue, getFrame, null);
+    }
+
+    /**
+     * Records that a command was sent to a device and that it's expected to report a specific variable value. The
+     * expectation is armed immediately since the command has already been released.
+     *
+     * @param device the device the command was sent to
+     * @param varName the variable that should be reported
+     * @param expectedValue the value that should be reported
+     * @param getFrame the frame used to request the variable value if no report is received
+     * @param future the future to complete with the command's outcome (or null)
+     */
+    synchronized public void expect(HobsonZWaveDevice device, String varName, Object expectedValue, DataFrame getFrame, CommandFuture future) {
+        arm(register(device, varName, expectedValue, null, getFrame, future), System.currentTimeMillis());
+    }
+
+    /**
+     * Records that a command is about to be sent to a device. This must be called before the command's SET frame is
+     * queued for transmission; the expectation is armed when the frame is released (see onFrameSent()).
+     *
+     * @param command the command
+     * @param future the future to complete with the command's outcome (or null)
+     */
+    synchronized public void expect(ZWaveCommand command, CommandFuture future) {
+        Expectation e = register(command.getDevice(), command.getVariableName(), command.getExpectedValue(), command.getSetFrame(), command.getGetFrame(), future);
+        if (e.setFrame != null) {
+            queued.put(e.setFrame, e);
+        } else {
+            arm(e, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Records expectations for a batch of commands that are about to be sent together. This must be called before
+     * the commands' SET frames are queued for transmission. The batch shares a single timeout that starts once all
+     * of its frames have been released so that any confirmation GETs that are needed are sent in one verification
+     * pass. If a device appears more than once, its last command supersedes the earlier ones.
+     *
+     * @param commands the commands
+     */
+    synchronized public void expectAll(List<ZWaveCommand> commands) {
+        // the counts must be set before registering since a duplicate device supersedes (and uncounts) a member
+        Batch b = new Batch(commands.size());
+        b.live = b.unsent = commands.size();
+        for (ZWaveCommand c : commands) {
+            Expectation e = register(c.getDevice(), c.getVariableName(), c.getExpectedValue(), c.getSetFrame(), c.getGetFrame(), null);
+            e.batch = b;
+            b.members.add(e);
+            if (e.setFrame != null) {
+                queued.put(e.setFrame, e);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (int i=0; i < b.members.size(); i++) {
+            Expectation e = b.members.get(i);
+            if (e.setFrame == null && expectations.get(e.device) == e) {
+                arm(e, now);
+            }
+        }
+    }
+
+    /**
+     * Called when a frame has been released to the Z-Wave controller. If it's the SET frame of a pending command,
+     * the command's expectation is armed.
+     *
+     * @param frame the frame
+     * @param now the current time
+     */
+    synchronized public void onFrameSent(DataFrame frame, long now) {
+        if (!queued.isEmpty()) {
+            Expectation e = queued.remove(frame);
+            if (e != null) {
+                arm(e, now);
+            }
+        }
+    }
+
+    /**
+     * Called when a frame is discarded without being released to the Z-Wave controller (e.g. a frame held for a
+     * sleeping node was pushed out by newer ones). If it's the SET frame of a pending command, the command fails.
+     *
+     * @param frame the frame
+     */
+    synchronized public void onFrameDropped(DataFrame frame) {
+        if (!queued.isEmpty()) {
+            Expectation e = queued.remove(frame);
+            if (e != null && expectations.get(e.device) == e) {
+                expectations.remove(e.device);
+                cancelTimeout(e);
+                e.complete(CommandFuture.Status.FAILED);
+            }
+        }
+    }
+
+    /**
+     * Called when a device reports a variable value.
+     *
+     * @param device the device
+     * @param varName the variable name
+     * @param value the reported value
+     */
+    synchronized public void onVariableUpdate(HobsonZWaveDevice device, String varName, Object value) {
+        if (expectations.isEmpty()) {
+            return;
+        }
+        Expectation e = expectations.get(device);
+        if (e != null && e.sent && e.varName.equals(varName) && e.matches(value)) {
+            expectations.remove(device);
+            cancelTimeout(e);
+            if (e.verifying) {
+                // this is (most likely) the response to the confirmation GET so it says nothing about the node
+                e.complete(CommandFuture.Status.VERIFIED);
+                return;
+            }
+            int nodeIx = device.getNodeId() & 0xFF;
+            nodeBehavior[nodeIx] = NODE_REPORTS;
+            nodeTimeouts[nodeIx] = 0;
+            savedCount++;
+            if (metrics != null) {
+                metrics.onCommandLatency(device.getNodeId(), System.currentTimeMillis() - e.sentTime);
+            }
+            e.complete(CommandFuture.Status.REPORTED);
+        }
+    }
+
+    /**
+     * Discards all pending expectations.
+     */
+    synchronized public void clear() {
+        for (Expectation e : expectations.values()) {
+            if (e.timeoutFuture != null) {
+                e.timeoutFuture.cancel(false);
+            }
+            e.complete(CommandFuture.Status.FAILED);
+        }
+        expectations.clear();
+        queued.clear();
+    }
+
+    synchronized public int getPendingCount() {
+        return expectations.size();
+    }
+
+    /**
+     * Indicates whether a node has been learned not to send unsolicited reports (i.e. it usually gets its
+     * confirmation GET immediately).
+     *
+     * @param nodeId the node ID
+     *
+     * @return a boolean
+     */
+    synchronized public boolean isSilent(byte nodeId) {
+        return nodeBehavior[nodeId & 0xFF] == NODE_SILENT || timeout <= 0;
+    }
+
+    /**
+     * Returns the number of confirmation round trips saved because the device reported on its own.
+     *
+     * @return a long
+     */
+    synchronized public long getSavedCount() {
+        return savedCount;
+    }
+
+    /**
+     * Returns the number of confirmation requests sent because no report arrived before the timeout.
+     *
+     * @return a long
+     */
+    synchronized public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * Returns the number of confirmation requests sent immediately because the node is known not to report.
+     *
+     * @return a long
+     */
+    synchronized public long getImmediateCount() {
+        return immediateCount;
+    }
+
+    @Override
+    synchronized public String toString() {
+        return "saved=" + savedCount + ", timeouts=" + timeoutCount + ", immediate=" + immediateCount + ", pending=" + expectations.size();
+    }
+
+    private Expectation register(HobsonZWaveDevice device, String varName, Object expectedValue, DataFrame setFrame, DataFrame getFrame, CommandFuture future) {
+        Expectation old = expectations.remove(device);
+        if (old != null) {
+            cancelTimeout(old);
+            if (!old.sent && old.setFrame != null) {
+                queued.remove(old.setFrame);
+            }
+            old.complete(CommandFuture.Status.SUPERSEDED);
+        }
+        Expectation e = new Expectation(device, varName, expectedValue, setFrame, getFrame, future);
+        expectations.put(device, e);
+        return e;
+    }
+
+    /**
+     * Arms an expectation once its command has been released. A node known not to report gets its GET immediately
+     * (and the expectation is only kept if a future needs the response) unless the command is used as a probe.
+     *
+     * @param e the expectation
+     * @param now the current time
+     */
+    private void arm(Expectation e, long now) {
+        e.sent = true;
+        e.sentTime = now;
+        if (e.future != null) {
+            e.future.onSent(now);
+        }
+        if (e.batch != null) {
+            e.batch.unsent--;
+        }
+
+        int nodeIx = e.device.getNodeId() & 0xFF;
+        if (timeout <= 0 || (nodeBehavior[nodeIx] == NODE_SILENT && !isProbe(nodeIx))) {
+            immediateCount++;
+            context.sendDataFrame(e.getFrame, TransmitPriority.CONFIRMATION);
+            if (e.future == null) {
+                expectations.remove(e.device);
+                cancelTimeout(e);
+                return;
+            }
+            // keep waiting for the GET response so the future can be completed
+            e.verifying = true;
+            e.timeoutFuture = scheduleTimeout(Collections.singletonList(e), getVerificationTimeout());
+        } else if (e.batch != null) {
+            scheduleBatchTimeout(e.batch);
+        } else {
+            e.timeoutFuture = scheduleTimeout(Collections.singletonList(e), timeout);
+        }
+    }
+
+    /**
+     * Schedules a batch's shared timeout once all of its frames have been released. The timeout future is stored on
+     * each member so it can be cancelled along with the member.
+     *
+     * @param b the batch
+     */
+    private void scheduleBatchTimeout(Batch b) {
+        if (b.unsent == 0 && b.live > 0 && b.timeoutFuture == null) {
+            b.timeoutFuture = scheduleTimeout(b.members, timeout);
+            for (int i=0; i < b.members.size(); i++) {
+                Expectation e = b.members.get(i);
+                if (e.batch == b) {
+                    e.timeoutFuture = b.timeoutFuture;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancels the timeout of an expectation that is being removed. A batch's shared timeout is only cancelled once
+     * none of its members are left.
+     *
+     * @param e the expectation
+     */
+    private void cancelTimeout(Expectation e) {
+        Batch b = e.batch;
+        if (b != null) {
+            e.batch = null;
+            if (!e.sent) {
+                b.unsent--;
+            }
+            if (--b.live == 0) {
+                if (b.timeoutFuture != null) {
+                    b.timeoutFuture.cancel(false);
+                }
+            } else {
+                scheduleBatchTimeout(b);
+            }
+        } else if (e.timeoutFuture != null) {
+            e.timeoutFuture.cancel(false);
+        }
+    }
+
+    /**
+     * Indicates whether a command to a silent node should wait for a report anyway. A matching report marks the node
+     * as reporting again; otherwise the probe just costs one timeout.
+     *
+     * @param nodeIx the node index
+     *
+     * @return a boolean
+     */
+    private boolean isProbe(int nodeIx) {
+        if (++nodeProbes[nodeIx] >= SILENT_PROBE_INTERVAL) {
+            nodeProbes[nodeIx] = 0;
+            return true;
+        }
+        return false;
+    }
+
+    private long getVerificationTimeout() {
+        return Math.max(timeout, MIN_VERIFICATION_TIMEOUT);
+    }
+
+    private ScheduledFuture<?> scheduleTimeout(final List<Expectation> batch, long delay) {
+        try {
+            return executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    onTimeout(batch);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ree) {
+            for (Expectation e : batch) {
+                if (expectations.get(e.device) != e) {
+                    continue;
+                }
+                expectations.remove(e.device);
+                if (!e.verifying) {
+                    context.sendDataFrame(e.getFrame, TransmitPriority.CONFIRMATION);
+                }
+                e.complete(CommandFuture.Status.FAILED);
+            }
+            return null;
+        }
+    }
+
+    synchronized protected void onTimeout(List<Expectation> batch) {
+        for (Expectation e : batch) {
+            // make sure the expectation is still the current one for the device
+            if (expectations.get(e.device) == e) {
+                if (e.verifying) {
+                    expectations.remove(e.device);
+                    e.complete(CommandFuture.Status.TIMED_OUT);
+                    continue;
+                }
+
+                timeoutCount++;
+
+                int nodeIx = e.device.getNodeId() & 0xFF;
+                if (nodeTimeouts[nodeIx] < Byte.MAX_VALUE) {
+                    nodeTimeouts[nodeIx]++;
+                }
+                if (nodeTimeouts[nodeIx] >= SILENT_TIMEOUT_THRESHOLD && nodeBehavior[nodeIx] != NODE_SILENT) {
+                    logger.debug("Node {} does not appear to send unsolicited reports", nodeIx);
+                    nodeBehavior[nodeIx] = NODE_SILENT;
+                }
+
+                context.sendDataFrame(e.getFrame, TransmitPriority.CONFIRMATION);
+
+                if (e.future != null) {
+                    e.verifying = true;
+                    e.timeoutFuture = scheduleTimeout(Collections.singletonList(e), getVerificationTimeout());
+                } else {
+                    expectations.remove(e.device);
+                }
+            }
+        }
+    }
+
+    static protected class Batch {
+        final List<Expectation> members;
+        int unsent;
+        int live;
+        ScheduledFuture<?> timeoutFuture;
+
+        Batch(int size) {
+            members = new ArrayList<>(size);
+        }
+    }
+
+    static protected class Expectation {
+        final HobsonZWaveDevice device;
+        final String varName;
+        final Object expectedValue;
+        final DataFrame setFrame;
+        final DataFrame getFrame;
+        final CommandFuture future;
+        long sentTime;
+        ScheduledFuture<?> timeoutFuture;
+        Batch batch;
+        boolean sent;
+        boolean verifying;
+
+        Expectation(HobsonZWaveDevice device, String varName, Object expectedValue, DataFrame setFrame, DataFrame getFrame, CommandFuture future) {
+            this.device = device;
+            this.varName = varName;
+            this.expectedValue = expectedValue;
+            this.setFrame = setFrame;
+            this.getFrame = getFrame;
+            this.future = future;
+        }
+
+        void complete(CommandFuture.Status status) {
+            if (future != null) {
+                future.complete(status, System.currentTimeMillis());
+            }
+        }
+
+        boolean matches(Object value) {
+            if (expectedValue == null || value == null) {
+                return expectedValue == value;
+            } else if (expectedValue instanceof Number && value instanceof Number) {
+                return ((Number)expectedValue).longValue() == ((Number)value).longValue();
+            } else {
+                return expectedValue.equals(value);
+            }
+        }
+    }
+}
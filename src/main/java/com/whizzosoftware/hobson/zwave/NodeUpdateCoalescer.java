@@ -0,0 +1,172 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.ZWaveMultiChannelEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands Z-Wave node events from the controller's I/O thread to the plugin event loop without locking, coalescing
+ * node updates along the way.
+ *
+ * Updates are keyed by node ID and endpoint number with latest-wins semantics: while an update for a node/endpoint
+ * is pending, further updates for it simply replace the pending one. At most one drain task is queued on the
+ * executor at any time so event loop growth is bounded by the number of nodes rather than the report rate.
+ *
+ * Node additions are never coalesced. They are delivered in arrival order by the same drain task, ahead of any
+ * pending updates, so a node's device always exists by the time its updates are processed. Additions that arrive
+ * together (e.g. during network discovery) are delivered in batches so they can be published together.
+ *
+ * @author Dan Noguerol
+ */
+public class NodeUpdateCoalescer {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    static private final int MAX_ADD_BATCH_SIZE = 64;
+
+    private final Executor executor;
+    private final Listener listener;
+    private final ConcurrentHashMap<Integer,ZWaveEndpoint> pending = new ConcurrentHashMap<>();
+    private final Queue<Integer> order = new ConcurrentLinkedQueue<>();
+    private final Queue<ZWaveEndpoint> added = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public NodeUpdateCoalescer(Executor executor, Listener listener) {
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    /**
+     * Called when a node is added. This can be called from any thread.
+     *
+     * @param node the node that was added
+     */
+    public void onNodeAdded(ZWaveEndpoint node) {
+        added.add(node);
+        scheduleDrain();
+    }
+
+    /**
+     * Called when a node update is received. This can be called from any thread.
+     *
+     * @param endpoint the endpoint that was updated
+     */
+    public void onNodeUpdated(ZWaveEndpoint endpoint) {
+        Integer key = createKey(endpoint);
+        if (pending.put(key, endpoint) == null) {
+            order.add(key);
+            scheduleDrain();
+        } else {
+            coalescedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of node/endpoints with an update waiting to be processed.
+     *
+     * @return an int
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of updates that were absorbed by an already pending update.
+     *
+     * @return a long
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    protected void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            executor.execute(drainTask);
+        }
+    }
+
+    protected void drain() {
+        drainScheduled.set(false);
+
+        ZWaveEndpoint node;
+        List<ZWaveEndpoint> batch = null;
+        while ((node = added.poll()) != null) {
+            if (batch == null) {
+                batch = new ArrayList<>();
+            }
+            batch.add(node);
+            if (batch.size() == MAX_ADD_BATCH_SIZE || added.isEmpty()) {
+                try {
+                    listener.onNodesAdded(batch);
+                } catch (Exception e) {
+                    logger.error("Error processing addition of " + batch.size() + " node(s)", e);
+                }
+                batch = null;
+            }
+        }
+
+        Integer key;
+        while ((key = order.poll()) != null) {
+            ZWaveEndpoint endpoint = pending.remove(key);
+            if (endpoint != null) {
+                try {
+                    listener.onCoalescedNodeUpdate(endpoint);
+                } catch (Exception e) {
+                    logger.error("Error processing update for " + endpoint, e);
+                }
+            }
+        }
+    }
+
+    static protected Integer createKey(ZWaveEndpoint endpoint) {
+        int key = (endpoint.getNodeId() & 0xFF) << 8;
+        if (endpoint instanceof ZWaveMultiChannelEndpoint) {
+            key |= ((ZWaveMultiChannelEndpoint)endpoint).getNumber() & 0xFF;
+        }
+        return key;
+    }
+
+    /**
+     * Interface for the recipient of node events.
+     */
+    public interface Listener {
+        /**
+         * Called from the executor when one or more nodes have been added.
+         *
+         * @param nodes the nodes that were added (in the order they were added)
+         */
+        void onNodesAdded(List<ZWaveEndpoint> nodes);
+
+        /**
+         * Called from the executor with the latest update for a node/endpoint.
+         *
+         * @param endpoint the endpoint that was updated
+         */
+        void onCoalescedNodeUpdate(ZWaveEndpoint endpoint);
+    }
+}
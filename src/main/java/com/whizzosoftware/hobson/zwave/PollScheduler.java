@@ -0,0 +1,163 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.zwave.device.HobsonZWaveDevice;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Schedules the periodic polling of Z-Wave devices.
+ *
+ * Rather than polling every device at the same instant, each device is given a phase offset so that polls are spread
+ * evenly across its poll interval. The number of polls sent per second is also capped so that a large number of
+ * pollable devices can't flood the network.
+ *
+ * This class is not thread-safe and should only be accessed from the thread of the Z-Wave network that owns it.
+ *
+ * @author Dan Noguerol
+ */
+public class PollScheduler {
+    private static final double GOLDEN_RATIO_FRACTION = 0.6180339887498949;
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private final Map<HobsonZWaveDevice,Entry> entries = new HashMap<>();
+    private long defaultInterval;
+    private double maxPollsPerSecond;
+    private double tokens;
+    private long lastTokenTime = -1;
+    private long addCount;
+
+    /**
+     * Constructor.
+     *
+     * @param defaultInterval the default poll interval in milliseconds
+     * @param maxPollsPerSecond the maximum number of polls per second
+     */
+    public PollScheduler(long defaultInterval, double maxPollsPerSecond) {
+        setDefaultInterval(defaultInterval);
+        setMaxPollsPerSecond(maxPollsPerSecond);
+    }
+
+    public long getDefaultInterval() {
+        return defaultInterval;
+    }
+
+    public void setDefaultInterval(long defaultInterval) {
+        this.defaultInterval = defaultInterval;
+    }
+
+    public double getMaxPollsPerSecond() {
+        return maxPollsPerSecond;
+    }
+
+    public void setMaxPollsPerSecond(double maxPollsPerSecond) {
+        this.maxPollsPerSecond = Math.max(maxPollsPerSecond, 0.01);
+    }
+
+    /**
+     * Adds a device to the schedule. Devices that don't declare a poll interval are ignored.
+     *
+     * @param device the device
+     * @param now the current time
+     *
+     * @return whether the device was scheduled
+     */
+    public boolean add(HobsonZWaveDevice device, long now) {
+        long interval = device.getPollInterval(defaultInterval);
+        if (interval > 0 && !entries.containsKey(device)) {
+            // use a low-discrepancy sequence so that phases are evenly spread regardless of how many devices there are
+            double phase = (addCount++ * GOLDEN_RATIO_FRACTION) % 1.0;
+            Entry e = new Entry(device, now + (long)(phase * interval));
+            entries.put(device, e);
+            queue.add(e);
+            return true;
+        }
+        return false;
+    }
+
+    public void remove(HobsonZWaveDevice device) {
+        Entry e = entries.remove(device);
+        if (e != null) {
+            e.cancelled = true;
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        queue.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Polls any devices that are due, subject to the poll rate limit. Devices that are due but exceed the limit
+     * remain at the head of the schedule and are polled on a subsequent call.
+     *
+     * @param ctx the context used to send poll frames
+     * @param now the current time
+     *
+     * @return the number of devices polled
+     */
+    public int poll(ZWaveContext ctx, long now) {
+        // replenish the token bucket (allowing at most one second of burst)
+        double maxTokens = Math.max(maxPollsPerSecond, 1.0);
+        if (lastTokenTime >= 0) {
+            tokens = Math.min(maxTokens, tokens + (now - lastTokenTime) * maxPollsPerSecond / 1000.0);
+        } else {
+            tokens = maxTokens;
+        }
+        lastTokenTime = now;
+
+        int count = 0;
+        Entry e;
+        while ((e = queue.peek()) != null && (e.cancelled || (e.nextPoll <= now && tokens >= 1.0))) {
+            queue.poll();
+            if (!e.cancelled) {
+                e.device.onRefresh(ctx);
+                tokens -= 1.0;
+                count++;
+
+                long interval = e.device.getPollInterval(defaultInterval);
+                if (interval > 0) {
+                    e.nextPoll += interval;
+                    // don't try to catch up on missed polls
+                    if (e.nextPoll <= now) {
+                        e.nextPoll = now + interval;
+                    }
+                    queue.add(e);
+                } else {
+                    entries.remove(e.device);
+                }
+            }
+        }
+        return count;
+    }
+
+    static private class Entry implements Comparable<Entry> {
+        final HobsonZWaveDevice device;
+        long nextPoll;
+        boolean cancelled;
+
+        Entry(HobsonZWaveDevice device, long nextPoll) {
+            this.device = device;
+            this.nextPoll = nextPoll;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return (nextPoll < o.nextPoll) ? -1 : ((nextPoll == o.nextPoll) ? 0 : 1);
+        }
+    }
+}
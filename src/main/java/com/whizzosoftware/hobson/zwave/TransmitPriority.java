@@ -0,0 +1,30 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave;
+
+/**
+ * The priority lanes used when transmitting Z-Wave frames. Lanes are listed in order of precedence.
+ *
+ * @author Dan Noguerol
+ */
+public enum TransmitPriority {
+    /**
+     * Commands resulting from a user or rule action (e.g. turning a light on).
+     */
+    INTERACTIVE,
+    /**
+     * Requests that confirm the result of an interactive command.
+     */
+    CONFIRMATION,
+    /**
+     * Background polling.
+     */
+    POLL
+}
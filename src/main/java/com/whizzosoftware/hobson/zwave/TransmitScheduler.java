@@ -0,0 +1,452 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.wzwave.frame.DataFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A prioritized transmit queue that sits in front of the Z-Wave controller.
+ *
+ * Frames are released to the controller at a limited rate so that its own (FIFO) queue stays short. Any frames
+ * beyond that rate wait here in per-priority lanes, which allows interactive commands to pre-empt confirmation
+ * requests and background polls that were queued before them.
+ *
+ * The queue is bounded so that it can't grow without limit while transmission is paused (e.g. while the controller
+ * is disconnected). When it's full, the oldest frame of the lowest priority is discarded to make room. Interactive
+ * frames that have waited longer than a maximum age are also discarded rather than sent, since a command that's
+ * acted on long after it was issued is more surprising than one that fails. The sender is told about every
+ * discarded frame.
+ *
+ * @author Dan Noguerol
+ */
+public class TransmitScheduler {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final double DEFAULT_BURST = 2.0;
+    private static final int DEFAULT_MAX_QUEUE_DEPTH = 500;
+    private static final long DEFAULT_MAX_INTERACTIVE_AGE = 30000;
+
+    private final Sender sender;
+    private final ScheduledExecutorService executor;
+    private final ArrayDeque<PendingFrame>[] lanes;
+    private final LaneStatistics[] stats;
+    private final List<DataFrame> releasing = new ArrayList<>();
+    private final List<DataFrame> expired = new ArrayList<>();
+    private final Runnable pumpTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (TransmitScheduler.this) {
+                pumpScheduled = false;
+            }
+            pump();
+        }
+    };
+    private double maxFramesPerSecond;
+    private int maxQueueDepth = DEFAULT_MAX_QUEUE_DEPTH;
+    private long maxInteractiveAgeNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_INTERACTIVE_AGE);
+    private int depth;
+    private double tokens = DEFAULT_BURST;
+    private long lastRefill = System.nanoTime();
+    private boolean pumpScheduled;
+    private boolean pumping;
+    private boolean paused;
+
+    @SuppressWarnings("unchecked")
+    public TransmitScheduler(Sender sender, ScheduledExecutorService executor, double maxFramesPerSecond) {
+        this.sender = sender;
+        this.executor = executor;
+        this.lanes = new ArrayDeque[TransmitPriority.values().length];
+        this.stats = new LaneStatistics[lanes.length];
+        for (int i=0; i < lanes.length; i++) {
+            lanes[i] = new ArrayDeque<>();
+            stats[i] = new LaneStatistics();
+        }
+        setMaxFramesPerSecond(maxFramesPerSecond);
+    }
+
+    synchronized public void setMaxFramesPerSecond(double maxFramesPerSecond) {
+        this.maxFramesPerSecond = Math.max(maxFramesPerSecond, 0.1);
+    }
+
+    /**
+     * Sets the maximum number of frames that can wait in the queue.
+     *
+     * @param maxQueueDepth the number of frames
+     */
+    synchronized public void setMaxQueueDepth(int maxQueueDepth) {
+        this.maxQueueDepth = Math.max(maxQueueDepth, 1);
+    }
+
+    /**
+     * Sets the maximum time an interactive frame can wait in the queue before it's discarded.
+     *
+     * @param millis the maximum age in milliseconds
+     */
+    synchronized public void setMaxInteractiveAge(long millis) {
+        this.maxInteractiveAgeNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Queues a frame for transmission. The frame is sent immediately if the transmit rate allows and no higher
+     * priority frames are waiting.
+     *
+     * @param frame the frame to send
+     * @param priority the frame's priority
+     */
+    public void send(DataFrame frame, TransmitPriority priority) {
+        DataFrame dropped;
+        synchronized (this) {
+            dropped = enqueue(frame, priority, System.nanoTime());
+        }
+        if (dropped != null) {
+            notifyDropped(dropped);
+        }
+        pump();
+    }
+
+    /**
+     * Queues a group of frames for transmission. The frames are queued atomically so they are sent back-to-back in
+     * their lane without other frames of the same priority interleaved.
+     *
+     * @param frames the frames to send
+     * @param priority the frames' priority
+     */
+    public void sendAll(List<DataFrame> frames, TransmitPriority priority) {
+        List<DataFrame> dropped = null;
+        synchronized (this) {
+            long now = System.nanoTime();
+            for (DataFrame frame : frames) {
+                DataFrame d = enqueue(frame, priority, now);
+                if (d != null) {
+                    if (dropped == null) {
+                        dropped = new ArrayList<>();
+                    }
+                    dropped.add(d);
+                }
+            }
+        }
+        if (dropped != null) {
+            for (DataFrame d : dropped) {
+                notifyDropped(d);
+            }
+        }
+        pump();
+    }
+
+    /**
+     * Pauses or resumes transmission. Frames sent while paused are held until transmission is resumed.
+     *
+     * @param paused whether to pause
+     */
+    public void setPaused(boolean paused) {
+        synchronized (this) {
+            this.paused = paused;
+        }
+        if (!paused) {
+            pump();
+        }
+    }
+
+    synchronized public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Discards all queued frames.
+     */
+    synchronized public void clear() {
+        for (ArrayDeque<PendingFrame> lane : lanes) {
+            lane.clear();
+        }
+        depth = 0;
+    }
+
+    synchronized public int getQueueDepth(TransmitPriority priority) {
+        return lanes[priority.ordinal()].size();
+    }
+
+    synchronized public int getQueueDepth() {
+        return depth;
+    }
+
+    synchronized public long getEnqueuedCount(TransmitPriority priority) {
+        return stats[priority.ordinal()].enqueued;
+    }
+
+    synchronized public long getSentCount(TransmitPriority priority) {
+        return stats[priority.ordinal()].sent;
+    }
+
+    /**
+     * Returns the number of frames of a given priority that were discarded because the queue was full or because
+     * they were too old to send.
+     *
+     * @param priority the priority
+     *
+     * @return a long
+     */
+    synchronized public long getDroppedCount(TransmitPriority priority) {
+        return stats[priority.ordinal()].dropped;
+    }
+
+    /**
+     * Returns the average time frames of a given priority waited in the queue before being sent.
+     *
+     * @param priority the priority
+     *
+     * @return the average wait time in milliseconds
+     */
+    synchronized public double getAverageWaitTime(TransmitPriority priority) {
+        LaneStatistics s = stats[priority.ordinal()];
+        return s.sent > 0 ? (s.totalWaitNanos / (double)s.sent) / 1000000.0 : 0;
+    }
+
+    /**
+     * Returns the longest time a frame of a given priority waited in the queue before being sent.
+     *
+     * @param priority the priority
+     *
+     * @return the maximum wait time in milliseconds
+     */
+    synchronized public double getMaxWaitTime(TransmitPriority priority) {
+        return stats[priority.ordinal()].maxWaitNanos / 1000000.0;
+    }
+
+    @Override
+    synchronized public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (TransmitPriority p : TransmitPriority.values()) {
+            LaneStatistics s = stats[p.ordinal()];
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(p).append(": depth=").append(lanes[p.ordinal()].size())
+                .append(", sent=").append(s.sent)
+                .append(", dropped=").append(s.dropped)
+                .append(String.format(", avgWait=%.1fms, maxWait=%.1fms", getAverageWaitTime(p), getMaxWaitTime(p)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sends as many queued frames as the transmit rate allows (highest priority first) and schedules another pump
+     * if frames remain. Frames are taken from the queue while holding the object's monitor but are handed to the
+     * sender after releasing it, so a slow controller doesn't block callers queueing frames. Only one thread sends at
+     * a time so frames reach the controller in the order they were released; a pump requested while another thread
+     * is sending is picked up by that thread.
+     */
+    protected void pump() {
+        synchronized (this) {
+            if (pumping) {
+                return;
+            }
+            pumping = true;
+        }
+
+        boolean done = false;
+        try {
+            while (true) {
+                synchronized (this) {
+                    expire(expired);
+                    release(releasing);
+                    if (releasing.isEmpty() && expired.isEmpty()) {
+                        pumping = false;
+                        done = true;
+                        return;
+                    }
+                }
+                for (int i=0; i < expired.size(); i++) {
+                    notifyDropped(expired.get(i));
+                }
+                expired.clear();
+                for (int i=0; i < releasing.size(); i++) {
+                    try {
+                        sender.send(releasing.get(i));
+                    } catch (Exception e) {
+                        logger.error("Error sending frame", e);
+                    }
+                }
+                releasing.clear();
+            }
+        } finally {
+            // this is only reached with done unset if the sender threw an Error
+            if (!done) {
+                releasing.clear();
+                expired.clear();
+                synchronized (this) {
+                    pumping = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes as many frames from the queue as the transmit rate allows and schedules another pump if frames remain.
+     * This must be called while holding the object's monitor.
+     *
+     * @param frames the list to add the released frames to
+     */
+    protected void release(List<DataFrame> frames) {
+        if (paused) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        tokens = Math.min(DEFAULT_BURST, tokens + (now - lastRefill) * maxFramesPerSecond / 1000000000.0);
+        lastRefill = now;
+
+        while (tokens >= 1.0) {
+            int ix = nextLane();
+            if (ix < 0) {
+                return;
+            }
+            PendingFrame pf = lanes[ix].poll();
+            depth--;
+            tokens -= 1.0;
+            stats[ix].onSent(now - pf.queuedTime);
+            frames.add(pf.frame);
+        }
+
+        if (nextLane() >= 0 && !pumpScheduled) {
+            long delay = (long)Math.ceil((1.0 - tokens) * 1000000000.0 / maxFramesPerSecond);
+            try {
+                executor.schedule(pumpTask, delay, TimeUnit.NANOSECONDS);
+                pumpScheduled = true;
+            } catch (RejectedExecutionException e) {
+                logger.debug("Unable to schedule transmit; executor has been shut down");
+            }
+        }
+    }
+
+    /**
+     * Removes any interactive frames that have waited longer than the maximum age. This is a no-op while paused so
+     * that frames are only discarded once the controller could have sent them. This must be called while holding
+     * the object's monitor.
+     *
+     * @param frames the list to add the expired frames to
+     */
+    protected void expire(List<DataFrame> frames) {
+        if (paused) {
+            return;
+        }
+        ArrayDeque<PendingFrame> lane = lanes[TransmitPriority.INTERACTIVE.ordinal()];
+        long now = System.nanoTime();
+        PendingFrame pf;
+        while ((pf = lane.peek()) != null && now - pf.queuedTime > maxInteractiveAgeNanos) {
+            lane.poll();
+            depth--;
+            stats[TransmitPriority.INTERACTIVE.ordinal()].dropped++;
+            frames.add(pf.frame);
+        }
+        if (!frames.isEmpty()) {
+            logger.warn("Discarded {} interactive frame(s) that waited too long to be sent", frames.size());
+        }
+    }
+
+    /**
+     * Adds a frame to its lane, discarding the oldest frame of the lowest priority if the queue is full. This must
+     * be called while holding the object's monitor.
+     *
+     * @param frame the frame
+     * @param priority the frame's priority
+     * @param now the current time (in nanoseconds)
+     *
+     * @return the frame that was discarded (or null if none was)
+     */
+    private DataFrame enqueue(DataFrame frame, TransmitPriority priority, long now) {
+        DataFrame dropped = null;
+        if (depth >= maxQueueDepth) {
+            int ix = lanes.length - 1;
+            while (ix > priority.ordinal() && lanes[ix].isEmpty()) {
+                ix--;
+            }
+            if (ix == priority.ordinal() && lanes[ix].isEmpty()) {
+                // only higher priority frames are waiting so the new frame is the one discarded
+                stats[ix].dropped++;
+                logger.warn("Transmit queue is full; discarding {} frame", priority);
+                return frame;
+            }
+            dropped = lanes[ix].poll().frame;
+            depth--;
+            stats[ix].dropped++;
+            logger.warn("Transmit queue is full; discarding oldest {} frame", TransmitPriority.values()[ix]);
+        }
+        lanes[priority.ordinal()].add(new PendingFrame(frame, now));
+        depth++;
+        stats[priority.ordinal()].enqueued++;
+        return dropped;
+    }
+
+    private void notifyDropped(DataFrame frame) {
+        try {
+            sender.onDropped(frame);
+        } catch (Exception e) {
+            logger.error("Error handling dropped frame", e);
+        }
+    }
+
+    private int nextLane() {
+        for (int i=0; i < lanes.length; i++) {
+            if (!lanes[i].isEmpty()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Interface for the destination of frames released by the scheduler.
+     */
+    public interface Sender {
+        void send(DataFrame frame);
+
+        /**
+         * Called (without holding the scheduler's monitor) when a queued frame is discarded rather than sent.
+         *
+         * @param frame the frame
+         */
+        void onDropped(DataFrame frame);
+    }
+
+    static private class PendingFrame {
+        final DataFrame frame;
+        final long queuedTime;
+
+        PendingFrame(DataFrame frame, long queuedTime) {
+            this.frame = frame;
+            this.queuedTime = queuedTime;
+        }
+    }
+
+    static private class LaneStatistics {
+        long enqueued;
+        long sent;
+        long dropped;
+        long totalWaitNanos;
+        long maxWaitNanos;
+
+        void onSent(long waitNanos) {
+            sent++;
+            totalWaitNanos += waitNanos;
+            if (waitNanos > maxWaitNanos) {
+                maxWaitNanos = waitNanos;
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.zwave.util.FrameUtil;
+import com.whizzosoftware.wzwave.frame.DataFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds frames for battery-powered nodes that spend most of their time asleep.
+ *
+ * A sleeping node can't receive frames so sending one just ties up the controller with retries until it times out.
+ * Instead, frames for sleeping nodes are queued per node and released in a single burst the next time the node is
+ * heard from, followed by a "no more information" command so the node can go back to sleep immediately. The node's
+ * battery level is also requested during a wake-up if it hasn't been read for a while, rather than being polled.
+ *
+ * @author Dan Noguerol
+ */
+public class WakeUpQueue {
+    private static final Logger logger = LoggerFactory.getLogger(WakeUpQueue.class);
+
+    public static final long DEFAULT_BATTERY_READ_INTERVAL = 6 * 60 * 60 * 1000;
+    public static final int MAX_QUEUED_FRAMES = 32;
+
+    static final byte WAKE_UP_COMMAND_CLASS = (byte)0x84;
+    static final byte WAKE_UP_NO_MORE_INFORMATION = 0x08;
+    static final byte BATTERY_COMMAND_CLASS = (byte)0x80;
+    static final byte BATTERY_GET = 0x02;
+
+    private final SleepingNode[] nodes = new SleepingNode[256];
+    private final Listener listener;
+    private long batteryReadInterval = DEFAULT_BATTERY_READ_INTERVAL;
+    private long heldCount;
+    private long droppedCount;
+    private long wakeUpCount;
+
+    public WakeUpQueue() {
+        this(null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param listener the listener to notify when held frames are discarded (or null)
+     */
+    public WakeUpQueue(Listener listener) {
+        this.listener = listener;
+    }
+
+    synchronized public void setBatteryReadInterval(long batteryReadInterval) {
+        this.batteryReadInterval = batteryReadInterval;
+    }
+
+    /**
+     * Registers a node as battery-powered. Frames for the node are held from now on.
+     *
+     * @param nodeId the node ID
+     */
+    synchronized public void register(byte nodeId) {
+        if (nodes[nodeId & 0xFF] == null) {
+            nodes[nodeId & 0xFF] = new SleepingNode();
+        }
+    }
+
+    /**
+     * Unregisters a node (e.g. because it has been excluded). Any frames held for it are discarded.
+     *
+     * @param nodeId the node ID
+     */
+    public void unregister(byte nodeId) {
+        SleepingNode n;
+        synchronized (this) {
+            n = nodes[nodeId & 0xFF];
+            nodes[nodeId & 0xFF] = null;
+        }
+        if (n != null && listener != null) {
+            for (DataFrame frame : n.frames) {
+                listener.onFrameDropped(frame);
+            }
+        }
+    }
+
+    synchronized public boolean isRegistered(byte nodeId) {
+        return nodes[nodeId & 0xFF] != null;
+    }
+
+    /**
+     * Holds a frame if it's addressed to a sleeping node.
+     *
+     * @param frame the frame
+     *
+     * @return true if the frame was held (i.e. it must not be sent now)
+     */
+    public boolean hold(DataFrame frame) {
+        DataFrame dropped = null;
+        synchronized (this) {
+            Byte nodeId = FrameUtil.getNodeId(frame);
+            SleepingNode n = (nodeId != null) ? nodes[nodeId & 0xFF] : null;
+            if (n == null) {
+                return false;
+            }
+            if (n.frames.size() >= MAX_QUEUED_FRAMES) {
+                dropped = n.frames.poll();
+                droppedCount++;
+                logger.warn("Too many frames queued for sleeping node {}; dropping the oldest", nodeId);
+            }
+            n.frames.add(frame);
+            heldCount++;
+            logger.debug("Holding frame for sleeping node {} until it wakes up: {}", nodeId, frame);
+        }
+        // the listener is called without holding the monitor since it may call back into the network
+        if (dropped != null && listener != null) {
+            listener.onFrameDropped(dropped);
+        }
+        return true;
+    }
+
+    /**
+     * Called when a node has been heard from. If the node is battery-powered, this returns the frames that should be
+     * sent to it while it's awake.
+     *
+     * @param nodeId the node ID
+     * @param now the current time
+     *
+     * @return the frames to send (or null if there's nothing to send)
+     */
+    synchronized public List<DataFrame> onWakeUp(byte nodeId, long now) {
+        SleepingNode n = nodes[nodeId & 0xFF];
+        if (n == null) {
+            return null;
+        }
+
+        boolean readBattery = (now - n.lastBatteryRead >= batteryReadInterval);
+        if (n.frames.isEmpty() && !readBattery) {
+            return null;
+        }
+
+        List<DataFrame> results = new ArrayList<>(n.frames.size() + 2);
+        results.addAll(n.frames);
+        n.frames.clear();
+        if (readBattery) {
+            results.add(FrameUtil.createSendData("Battery Get", nodeId, BATTERY_COMMAND_CLASS, BATTERY_GET));
+            n.lastBatteryRead = now;
+        }
+        results.add(FrameUtil.createSendData("Wake Up No More Information", nodeId, WAKE_UP_COMMAND_CLASS, WAKE_UP_NO_MORE_INFORMATION));
+        wakeUpCount++;
+
+        logger.debug("Node {} is awake; sending {} frame(s)", nodeId, results.size());
+        return results;
+    }
+
+    synchronized public int getQueueDepth(byte nodeId) {
+        SleepingNode n = nodes[nodeId & 0xFF];
+        return n != null ? n.frames.size() : 0;
+    }
+
+    synchronized public void clear() {
+        for (SleepingNode n : nodes) {
+            if (n != null) {
+                n.frames.clear();
+            }
+        }
+    }
+
+    @Override
+    synchronized public String toString() {
+        return "held=" + heldCount + ", dropped=" + droppedCount + ", wakeUps=" + wakeUpCount;
+    }
+
+    /**
+     * Interface for callers that need to know when a held frame is discarded rather than sent.
+     */
+    public interface Listener {
+        void onFrameDropped(DataFrame frame);
+    }
+
+    static private class SleepingNode {
+        final ArrayDeque<DataFrame> frames = new ArrayDeque<>();
+        long lastBatteryRead = Long.MIN_VALUE / 2;
+    }
+}
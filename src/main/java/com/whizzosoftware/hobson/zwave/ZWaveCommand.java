@@ -0,0 +1,70 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.zwave.device.HobsonZWaveDevice;
+import com.whizzosoftware.wzwave.frame.DataFrame;
+
+/**
+ * A command that changes a device variable along with the information needed to verify its result.
+ *
+ * Commands are immutable. Devices build a new command (with new frames) for each request.
+ *
+ * @author Dan Noguerol
+ */
+public class ZWaveCommand {
+    private final HobsonZWaveDevice device;
+    private final DataFrame setFrame;
+    private final DataFrame getFrame;
+    private final String varName;
+    private final Object expectedValue;
+
+    /**
+     * Constructor.
+     *
+     * @param device the target device
+     * @param setFrame the command frame
+     * @param getFrame the frame used to request the device's state
+     * @param varName the name of the variable the command affects
+     * @param expectedValue the value the variable should have once the command is complete
+     */
+    public ZWaveCommand(HobsonZWaveDevice device, DataFrame setFrame, DataFrame getFrame, String varName, Object expectedValue) {
+        this.device = device;
+        this.setFrame = setFrame;
+        this.getFrame = getFrame;
+        this.varName = varName;
+        this.expectedValue = expectedValue;
+    }
+
+    public HobsonZWaveDevice getDevice() {
+        return device;
+    }
+
+    public DataFrame getSetFrame() {
+        return setFrame;
+    }
+
+    public DataFrame getGetFrame() {
+        return getFrame;
+    }
+
+    public String getVariableName() {
+        return varName;
+    }
+
+    public Object getExpectedValue() {
+        return expectedValue;
+    }
+
+    @Override
+    public String toString() {
+        return device.getContext() + ": " + varName + "=" + expectedValue;
+    }
+}
@@ -11,11 +11,70 @@ package com.whizzosoftware.hobson.zwave;
 
 import com.whizzosoftware.wzwave.frame.DataFrame;
 
+import java.util.List;
+
 /**
  * An interface that callback functions can use to send Z-Wave frames.
  *
  * @author Dan Noguerol
  */
 public interface ZWaveContext {
+    /**
+     * Sends a frame with interactive priority.
+     *
+     * @param frame the frame to send
+     */
     void sendDataFrame(DataFrame frame);
+
+    /**
+     * Sends a frame with a specific priority.
+     *
+     * @param frame the frame to send
+     * @param priority the priority
+     */
+    void sendDataFrame(DataFrame frame, TransmitPriority priority);
+
+    /**
+     * Sends a command to a device and verifies that the device reached the expected state. The verification
+     * GET is only sent if the device doesn't report the expected value on its own within a timeout.
+     *
+     * @param command the command to send
+     */
+    void sendCommand(ZWaveCommand command);
+
+    /**
+     * Sends a command that may be superseded by a newer command to the same device before it's transmitted (e.g. a
+     * dimmer level from a slider that's being dragged). Only the newest command is sent once a minimum spacing has
+     * elapsed and the device gets a single trailing verification.
+     *
+     * @param command the command to send
+     */
+    void sendCoalescedCommand(ZWaveCommand command);
+
+    /**
+     * Sends a command to a device and returns a future that completes when the device reports the expected value
+     * (on its own or in response to a verification GET), when a newer command supersedes it or when it times out.
+     *
+     * @param command the command to send
+     *
+     * @return a CommandFuture instance
+     */
+    CommandFuture sendCommandAsync(ZWaveCommand command);
+
+    /**
+     * Sends a group of commands back-to-back followed by a single verification pass. A device that appears more than
+     * once in the group only gets its last command.
+     *
+     * @param commands the commands to send
+     */
+    void sendCommands(List<ZWaveCommand> commands);
+
+    /**
+     * Runs a task on the thread that owns the network's state. This must be called from the plugin event loop.
+     *
+     * @param task the task
+     *
+     * @return false if the task was rejected because the network has been stopped
+     */
+    boolean runOnNetwork(Runnable task);
 }
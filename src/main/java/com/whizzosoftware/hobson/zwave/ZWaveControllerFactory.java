@@ -0,0 +1,52 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.zwave.sim.SimulatedZWaveController;
+import com.whizzosoftware.hobson.zwave.sim.SimulationConfig;
+import com.whizzosoftware.wzwave.controller.ZWaveController;
+import com.whizzosoftware.wzwave.controller.netty.NettyZWaveController;
+
+/**
+ * Creates the ZWaveController used to communicate with a Z-Wave network.
+ *
+ * @author Dan Noguerol
+ */
+public interface ZWaveControllerFactory {
+    /**
+     * A prefix for the serial port that selects a simulated network instead of a real controller
+     * (e.g. "sim:switches=100,dimmers=50").
+     */
+    String SIMULATOR_PREFIX = "sim:";
+
+    /**
+     * The default factory. This creates a serial controller unless the serial port starts with SIMULATOR_PREFIX,
+     * in which case the remainder is parsed as a SimulationConfig.
+     */
+    ZWaveControllerFactory DEFAULT = new ZWaveControllerFactory() {
+        @Override
+        public ZWaveController create(String serialPort) {
+            if (serialPort.startsWith(SIMULATOR_PREFIX)) {
+                return new SimulatedZWaveController(SimulationConfig.parse(serialPort.substring(SIMULATOR_PREFIX.length())));
+            } else {
+                return new NettyZWaveController(serialPort);
+            }
+        }
+    };
+
+    /**
+     * Creates a new controller. The controller should not be started.
+     *
+     * @param serialPort the configured serial port
+     *
+     * @return a ZWaveController instance
+     */
+    ZWaveController create(String serialPort);
+}
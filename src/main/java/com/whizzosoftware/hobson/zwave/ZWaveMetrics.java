@@ -0,0 +1,299 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Performance metrics for the Z-Wave plugin: outbound frame rate, inbound report rate (overall and per node), event
+ * loop processing time, variable notification rate and command-to-report latency.
+ *
+ * All recording methods are thread-safe, lock-free and allocation-free. When metrics are disabled they return after
+ * a single volatile read.
+ *
+ * @author Dan Noguerol
+ */
+public class ZWaveMetrics {
+    public static final String VAR_FRAME_RATE = "zwaveFramesPerSecond";
+    public static final String VAR_REPORT_RATE = "zwaveReportsPerSecond";
+    public static final String VAR_NOTIFICATION_RATE = "zwaveVariableUpdatesPerSecond";
+    public static final String VAR_EVENT_LOOP_BACKLOG = "zwaveEventLoopBacklog";
+    public static final String VAR_TRANSMIT_QUEUE_DEPTH = "zwaveTransmitQueueDepth";
+    public static final String VAR_COMMAND_LATENCY_P50 = "zwaveCommandLatencyP50";
+    public static final String VAR_COMMAND_LATENCY_P99 = "zwaveCommandLatencyP99";
+    public static final String VAR_COMMANDS_COLLAPSED = "zwaveCommandsCollapsed";
+    public static final String[] VARIABLES = {
+        VAR_FRAME_RATE, VAR_REPORT_RATE, VAR_NOTIFICATION_RATE, VAR_EVENT_LOOP_BACKLOG, VAR_TRANSMIT_QUEUE_DEPTH,
+        VAR_COMMAND_LATENCY_P50, VAR_COMMAND_LATENCY_P99, VAR_COMMANDS_COLLAPSED
+    };
+
+    private volatile boolean enabled;
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong reportsReceived = new AtomicLong();
+    private final AtomicLong variableUpdates = new AtomicLong();
+    private final AtomicLongArray nodeReports = new AtomicLongArray(256);
+    private final AtomicLongArray nodeLatencySum = new AtomicLongArray(256);
+    private final AtomicLongArray nodeLatencyCount = new AtomicLongArray(256);
+    // the histograms for the current sample period; sample() swaps them with the spares
+    private volatile LatencyHistogram commandLatency = new LatencyHistogram();
+    private volatile LatencyHistogram updateProcessingTime = new LatencyHistogram();
+
+    // the counter values at the time of the last sample and the spare histograms (only accessed from sample())
+    private LatencyHistogram spareCommandLatency = new LatencyHistogram();
+    private LatencyHistogram spareUpdateProcessingTime = new LatencyHistogram();
+    private long lastSampleTime = -1;
+    private long lastFramesSent;
+    private long lastReportsReceived;
+    private long lastVariableUpdates;
+    private final long[] lastNodeReports = new long[256];
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Called when a frame is released to the Z-Wave controller.
+     */
+    public void onFrameSent() {
+        if (enabled) {
+            framesSent.incrementAndGet();
+        }
+    }
+
+    /**
+     * Called when a report (node update) is received from the Z-Wave controller.
+     *
+     * @param nodeId the ID of the node that sent the report
+     */
+    public void onReportReceived(byte nodeId) {
+        if (enabled) {
+            reportsReceived.incrementAndGet();
+            nodeReports.incrementAndGet(nodeId & 0xFF);
+        }
+    }
+
+    /**
+     * Called when the event loop has finished processing a node update.
+     *
+     * @param nanos the processing time in nanoseconds
+     */
+    public void onUpdateProcessed(long nanos) {
+        if (enabled) {
+            updateProcessingTime.record(nanos / 1000);
+        }
+    }
+
+    /**
+     * Called when variable update notifications are fired.
+     *
+     * @param count the number of variable updates
+     */
+    public void onVariableUpdatesFired(int count) {
+        if (enabled) {
+            variableUpdates.addAndGet(count);
+        }
+    }
+
+    /**
+     * Called when a device reports the value set by a command.
+     *
+     * @param nodeId the node ID
+     * @param millis the time between sending the command and receiving the report
+     */
+    public void onCommandLatency(byte nodeId, long millis) {
+        if (enabled) {
+            commandLatency.record(millis);
+            nodeLatencySum.addAndGet(nodeId & 0xFF, millis);
+            nodeLatencyCount.incrementAndGet(nodeId & 0xFF);
+        }
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    public long getReportsReceived() {
+        return reportsReceived.get();
+    }
+
+    public long getReportsReceived(byte nodeId) {
+        return nodeReports.get(nodeId & 0xFF);
+    }
+
+    public long getVariableUpdates() {
+        return variableUpdates.get();
+    }
+
+    /**
+     * Returns the command-to-report latency histogram (in milliseconds) for the current sample period.
+     *
+     * @return a LatencyHistogram instance
+     */
+    public LatencyHistogram getCommandLatency() {
+        return commandLatency;
+    }
+
+    /**
+     * Returns the node update processing time histogram (in microseconds) for the current sample period.
+     *
+     * @return a LatencyHistogram instance
+     */
+    public LatencyHistogram getUpdateProcessingTime() {
+        return updateProcessingTime;
+    }
+
+    /**
+     * Returns the average command-to-report latency for a node.
+     *
+     * @param nodeId the node ID
+     *
+     * @return the average latency in milliseconds (or 0 if no latencies have been recorded)
+     */
+    public double getAverageCommandLatency(byte nodeId) {
+        long c = nodeLatencyCount.get(nodeId & 0xFF);
+        return c > 0 ? nodeLatencySum.get(nodeId & 0xFF) / (double)c : 0;
+    }
+
+    /**
+     * Computes rates and latency percentiles for the period since the previous sample. The latency histograms are
+     * swapped with a pair of spares so each sample only reflects its own period. This should only be called from a
+     * single thread.
+     *
+     * @param now the current time
+     *
+     * @return a Sample instance
+     */
+    public Sample sample(long now) {
+        long frames = framesSent.get();
+        long reports = reportsReceived.get();
+        long updates = variableUpdates.get();
+
+        // find the node that sent the most reports during the period
+        int busiestNode = -1;
+        long busiestCount = 0;
+        for (int i=0; i < lastNodeReports.length; i++) {
+            long c = nodeReports.get(i);
+            long delta = c - lastNodeReports[i];
+            lastNodeReports[i] = c;
+            if (delta > busiestCount) {
+                busiestCount = delta;
+                busiestNode = i;
+            }
+        }
+
+        LatencyHistogram latency = commandLatency;
+        commandLatency = spareCommandLatency;
+        spareCommandLatency = latency;
+        LatencyHistogram processing = updateProcessingTime;
+        updateProcessingTime = spareUpdateProcessingTime;
+        spareUpdateProcessingTime = processing;
+
+        double seconds = (lastSampleTime >= 0 && now > lastSampleTime) ? (now - lastSampleTime) / 1000.0 : 0;
+        Sample s = new Sample(
+            rate(frames - lastFramesSent, seconds),
+            rate(reports - lastReportsReceived, seconds),
+            rate(updates - lastVariableUpdates, seconds),
+            latency.getPercentile(50),
+            latency.getPercentile(99),
+            processing.getPercentile(99),
+            busiestNode,
+            rate(busiestCount, seconds)
+        );
+
+        latency.reset();
+        processing.reset();
+
+        lastSampleTime = now;
+        lastFramesSent = frames;
+        lastReportsReceived = reports;
+        lastVariableUpdates = updates;
+
+        return s;
+    }
+
+    static private double rate(long delta, double seconds) {
+        return seconds > 0 ? delta / seconds : 0;
+    }
+
+    /**
+     * The metric rates for a sample period.
+     */
+    static public class Sample {
+        private final double frameRate;
+        private final double reportRate;
+        private final double variableUpdateRate;
+        private final long commandLatencyP50;
+        private final long commandLatencyP99;
+        private final long updateProcessingTimeP99;
+        private final int busiestNode;
+        private final double busiestNodeReportRate;
+
+        Sample(double frameRate, double reportRate, double variableUpdateRate, long commandLatencyP50, long commandLatencyP99, long updateProcessingTimeP99, int busiestNode, double busiestNodeReportRate) {
+            this.frameRate = frameRate;
+            this.reportRate = reportRate;
+            this.variableUpdateRate = variableUpdateRate;
+            this.commandLatencyP50 = commandLatencyP50;
+            this.commandLatencyP99 = commandLatencyP99;
+            this.updateProcessingTimeP99 = updateProcessingTimeP99;
+            this.busiestNode = busiestNode;
+            this.busiestNodeReportRate = busiestNodeReportRate;
+        }
+
+        public double getFrameRate() {
+            return frameRate;
+        }
+
+        public double getReportRate() {
+            return reportRate;
+        }
+
+        public double getVariableUpdateRate() {
+            return variableUpdateRate;
+        }
+
+        public long getCommandLatencyP50() {
+            return commandLatencyP50;
+        }
+
+        public long getCommandLatencyP99() {
+            return commandLatencyP99;
+        }
+
+        public long getUpdateProcessingTimeP99() {
+            return updateProcessingTimeP99;
+        }
+
+        /**
+         * Returns the node that sent the most reports during the sample period.
+         *
+         * @return the node ID (or -1 if no reports were received)
+         */
+        public int getBusiestNode() {
+            return busiestNode;
+        }
+
+        public double getBusiestNodeReportRate() {
+            return busiestNodeReportRate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "tx=%.1f/s, reports=%.1f/s, varUpdates=%.1f/s, cmdLatency p50=%dms p99=%dms, updateTime p99=%dus, busiestNode=%d (%.1f/s)",
+                frameRate, reportRate, variableUpdateRate, commandLatencyP50, commandLatencyP99, updateProcessingTimeP99, busiestNode, busiestNodeReportRate
+            );
+        }
+    }
+}
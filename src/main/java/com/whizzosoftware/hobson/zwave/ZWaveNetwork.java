@@ -0,0 +1,1166 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.api.plugin.PluginStatus;
+import com.whizzosoftware.hobson.api.property.PropertyContainer;
+import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import com.whizzosoftware.hobson.zwave.cache.CachedNode;
+import com.whizzosoftware.hobson.zwave.cache.CachedZWaveEndpoint;
+import com.whizzosoftware.hobson.zwave.cache.NodeCache;
+import com.whizzosoftware.hobson.zwave.cache.ValueSnapshot;
+import com.whizzosoftware.hobson.zwave.device.*;
+import com.whizzosoftware.hobson.zwave.state.InitializingState;
+import com.whizzosoftware.hobson.zwave.state.OutageStatistics;
+import com.whizzosoftware.hobson.zwave.state.State;
+import com.whizzosoftware.hobson.zwave.state.StateContext;
+import com.whizzosoftware.hobson.zwave.trace.TraceRecorder;
+import com.whizzosoftware.hobson.zwave.trace.TraceWriter;
+import com.whizzosoftware.hobson.zwave.util.ConfigUtil;
+import com.whizzosoftware.hobson.zwave.util.DeviceUtil;
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.controller.ZWaveController;
+import com.whizzosoftware.wzwave.controller.ZWaveControllerListener;
+import com.whizzosoftware.wzwave.frame.DataFrame;
+import com.whizzosoftware.wzwave.node.NodeInfo;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.ZWaveMultiChannelEndpoint;
+import com.whizzosoftware.wzwave.node.ZWaveNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single Z-Wave network (i.e. one controller and the nodes it manages).
+ *
+ * Each network has its own state machine, transmit queue, node cache and device table. When the plugin manages more
+ * than one network, each network processes its events on its own thread so that a busy or disconnected network
+ * doesn't hold up the others; a lone network simply uses the plugin event loop.
+ *
+ * @author Dan Noguerol
+ */
+public class ZWaveNetwork implements StateContext, ZWaveControllerListener, ZWaveContext {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final long DEFAULT_POLL_INTERVAL = 15;
+    private static final double DEFAULT_POLL_MAX_RATE = 2;
+    private static final double DEFAULT_TX_MAX_RATE = 10;
+    private static final long DEFAULT_CONFIRMATION_TIMEOUT = 2000;
+    private static final long NODE_CACHE_SAVE_DELAY = 5000;
+    private static final long DISCOVERY_SETTLE_TIME = 60000;
+    private static final long STOP_TIMEOUT = 5000;
+
+    private final ZWavePlugin plugin;
+    private final int index;
+    private final ScheduledExecutorService scheduler;
+    private volatile ExecutorService executor;
+    private volatile ZWaveController zwaveController;
+    private volatile TraceRecorder traceRecorder;
+    private volatile String serialPort;
+    private volatile Integer homeId;
+    private volatile boolean namespaced;
+    private List<ZWaveEndpoint> discoveryBatch;
+    private List<ZWaveEndpoint> heldNodes;
+    private final OutageStatistics outageStatistics = new OutageStatistics(System.currentTimeMillis());
+    private final AtomicReference<State> state = new AtomicReference<>();
+    private NodeCache nodeCache;
+    private final AtomicBoolean nodeCacheSaveScheduled = new AtomicBoolean(false);
+    private ScheduledFuture<?> reconcileFuture;
+    private long snapshotVersion = -1;
+    private int snapshotDeviceCount = -1;
+    private final DeviceTable deviceTable = new DeviceTable();
+    private final UpdateListPool updateListPool = new UpdateListPool();
+    private final TransmitScheduler transmitScheduler;
+    private final ConfirmationTracker confirmationTracker;
+    private final CommandCoalescer commandCoalescer;
+    private final PollScheduler pollScheduler = new PollScheduler(DEFAULT_POLL_INTERVAL * 1000, DEFAULT_POLL_MAX_RATE);
+    private final WakeUpQueue wakeUpQueue;
+    private final NodeUpdateCoalescer updateCoalescer;
+
+    public ZWaveNetwork(ZWavePlugin plugin, int index, ScheduledExecutorService scheduler) {
+        this.plugin = plugin;
+        this.index = index;
+        this.scheduler = scheduler;
+        this.transmitScheduler = new TransmitScheduler(
+            new TransmitScheduler.Sender() {
+                @Override
+                public void send(DataFrame frame) {
+                    ZWaveController c = zwaveController;
+                    if (c != null) {
+                        c.sendDataFrame(frame);
+                        confirmationTracker.onFrameSent(frame, System.currentTimeMillis());
+                        ZWaveNetwork.this.plugin.getMetrics().onFrameSent();
+                        TraceRecorder r = traceRecorder;
+                        if (r != null) {
+                            r.onFrameSent(frame);
+                        }
+                    } else {
+                        logger.warn("Dropping frame; no Z-Wave controller is available: {}", frame);
+                        confirmationTracker.onFrameDropped(frame);
+                    }
+                }
+
+                @Override
+                public void onDropped(DataFrame frame) {
+                    confirmationTracker.onFrameDropped(frame);
+                }
+            },
+            scheduler,
+            DEFAULT_TX_MAX_RATE
+        );
+        this.confirmationTracker = new ConfirmationTracker(this, scheduler, DEFAULT_CONFIRMATION_TIMEOUT);
+        this.confirmationTracker.setMetrics(plugin.getMetrics());
+        this.commandCoalescer = new CommandCoalescer(this, confirmationTracker, scheduler, CommandCoalescer.DEFAULT_MIN_SPACING);
+        // a command whose frame is held for a sleeping node is only armed once the node wakes up and the frame is
+        // released, so the tracker just needs to know about held frames that are never sent
+        this.wakeUpQueue = new WakeUpQueue(new WakeUpQueue.Listener() {
+            @Override
+            public void onFrameDropped(DataFrame frame) {
+                confirmationTracker.onFrameDropped(frame);
+            }
+        });
+        this.updateCoalescer = new NodeUpdateCoalescer(
+            new Executor() {
+                @Override
+                public void execute(Runnable r) {
+                    ZWaveNetwork.this.execute(r);
+                }
+            },
+            new NodeUpdateCoalescer.Listener() {
+                @Override
+                public void onNodesAdded(List<ZWaveEndpoint> nodes) {
+                    addZWaveNodes(nodes);
+                }
+
+                @Override
+                public void onCoalescedNodeUpdate(ZWaveEndpoint node) {
+                    processNodeUpdate(node);
+                }
+            }
+        );
+    }
+
+    /**
+     * Starts the network. This must be called from the plugin event loop.
+     *
+     * @param config the plugin configuration
+     * @param serialPort the serial port of the network's controller
+     * @param nodeCacheFile the file used to cache the network's nodes
+     * @param traceFile the file to record the network's traffic to (or null)
+     * @param multiple whether the plugin manages more than one network (in which case the network gets its own thread
+     *                 and the device IDs of all but the first network are namespaced by home ID)
+     */
+    public void start(PropertyContainer config, String serialPort, File nodeCacheFile, File traceFile, boolean multiple) {
+        this.serialPort = serialPort;
+        this.namespaced = multiple && index > 0;
+        this.nodeCache = new NodeCache(nodeCacheFile);
+        configure(config);
+
+        if (multiple) {
+            final String name = "Z-Wave Network " + index;
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, name);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        final ZWaveControllerListener listener = createControllerListener(traceFile);
+        runOnNetwork(new Runnable() {
+            @Override
+            public void run() {
+                publishCachedDevices();
+                setState(new InitializingState(listener));
+                scheduleNodeCacheReconciliation();
+            }
+        });
+    }
+
+    /**
+     * Applies an updated plugin configuration. This must be called from the plugin event loop.
+     *
+     * @param config the new configuration
+     * @param serialPort the (possibly changed) serial port of the network's controller
+     */
+    public void applyConfiguration(PropertyContainer config, String serialPort) {
+        configure(config);
+        if (serialPort != null ? !serialPort.equals(this.serialPort) : this.serialPort != null) {
+            this.serialPort = serialPort;
+            runOnNetwork(new Runnable() {
+                @Override
+                public void run() {
+                    State s = state.get();
+                    if (s != null) {
+                        s.onSerialPortUpdate(ZWaveNetwork.this);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops the network and waits for any work already queued for it to finish. This must be called from the plugin
+     * event loop.
+     */
+    public void stop() {
+        runOnNetwork(new Runnable() {
+            @Override
+            public void run() {
+                State s = state.get();
+                if (s != null) {
+                    s.stop(ZWaveNetwork.this);
+                }
+            }
+        });
+
+        ExecutorService e = executor;
+        if (e != null) {
+            e.shutdown();
+            try {
+                if (!e.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Timed out waiting for Z-Wave network {} to stop", index);
+                    e.shutdownNow();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        closeTraceRecorder();
+        pollScheduler.clear();
+        transmitScheduler.clear();
+        commandCoalescer.clear();
+        confirmationTracker.clear();
+        wakeUpQueue.clear();
+        saveNodeCache();
+        logger.debug("Network {} transmit statistics: {}", index, transmitScheduler);
+        logger.debug("Network {} wake-up statistics: {}", index, wakeUpQueue);
+        logger.debug("Network {} confirmation statistics: {}", index, confirmationTracker);
+        logger.debug("Network {} command coalescing statistics: {}", index, commandCoalescer);
+        logger.debug("Network {} connection statistics: {}", index, outageStatistics);
+    }
+
+    /**
+     * Polls any of the network's devices that are due. Nothing is polled while the controller is disconnected;
+     * devices that are due will be polled on reconnect.
+     *
+     * @param now the current time
+     */
+    public void onRefresh(final long now) {
+        if (!transmitScheduler.isPaused()) {
+            runOnNetwork(new Runnable() {
+                @Override
+                public void run() {
+                    pollScheduler.poll(ZWaveNetwork.this, now);
+                }
+            });
+        }
+    }
+
+    protected void configure(PropertyContainer config) {
+        long interval = ConfigUtil.getLong(config, "poll.interval", DEFAULT_POLL_INTERVAL);
+        final double rate = ConfigUtil.getDouble(config, "poll.max.rate", DEFAULT_POLL_MAX_RATE);
+        final long defaultInterval = (interval > 0 ? interval : DEFAULT_POLL_INTERVAL) * 1000;
+        runOnNetwork(new Runnable() {
+            @Override
+            public void run() {
+                pollScheduler.setDefaultInterval(defaultInterval);
+                pollScheduler.setMaxPollsPerSecond(rate > 0 ? rate : DEFAULT_POLL_MAX_RATE);
+            }
+        });
+        double txRate = ConfigUtil.getDouble(config, "tx.max.rate", DEFAULT_TX_MAX_RATE);
+        transmitScheduler.setMaxFramesPerSecond(txRate > 0 ? txRate : DEFAULT_TX_MAX_RATE);
+        confirmationTracker.setTimeout(ConfigUtil.getLong(config, "confirmation.timeout", DEFAULT_CONFIRMATION_TIMEOUT));
+        commandCoalescer.setMinSpacing(ConfigUtil.getLong(config, "command.min.spacing", CommandCoalescer.DEFAULT_MIN_SPACING));
+    }
+
+    /**
+     * Returns the listener that the Z-Wave controller should call. This is the network itself unless a trace file has
+     * been configured, in which case the network is wrapped with a TraceRecorder.
+     *
+     * @param traceFile the trace file (or null)
+     *
+     * @return a ZWaveControllerListener instance
+     */
+    protected ZWaveControllerListener createControllerListener(File traceFile) {
+        if (traceFile != null) {
+            try {
+                traceRecorder = new TraceRecorder(new TraceWriter(traceFile), this);
+                logger.info("Recording Z-Wave traffic to {}", traceFile);
+                return traceRecorder;
+            } catch (IOException e) {
+                logger.error("Unable to open Z-Wave trace file " + traceFile + "; traffic will not be recorded", e);
+            }
+        }
+        return this;
+    }
+
+    protected void closeTraceRecorder() {
+        TraceRecorder r = traceRecorder;
+        if (r != null) {
+            traceRecorder = null;
+            try {
+                r.close();
+            } catch (IOException e) {
+                logger.error("Error closing Z-Wave trace file", e);
+            }
+        }
+    }
+
+    /**
+     * Runs a task on the network's thread.
+     *
+     * @param task the task
+     *
+     * @return false if the task was rejected because the network (or plugin) has been stopped
+     */
+    public boolean execute(Runnable task) {
+        ExecutorService e = executor;
+        try {
+            if (e != null) {
+                e.execute(task);
+            } else {
+                plugin.runInEventLoop(task);
+            }
+            return true;
+        } catch (RejectedExecutionException ree) {
+            logger.debug("Unable to run task; Z-Wave network {} has been stopped", index);
+            return false;
+        }
+    }
+
+    /**
+     * Runs a task on the network's thread. A network without its own thread uses the plugin event loop, which is
+     * where this is called from, so the task is run immediately.
+     *
+     * @param task the task
+     *
+     * @return false if the task was rejected because the network has been stopped
+     */
+    @Override
+    public boolean runOnNetwork(Runnable task) {
+        if (executor != null) {
+            return execute(task);
+        } else {
+            task.run();
+            return true;
+        }
+    }
+
+    /**
+     * Publishes devices for all nodes in the node cache. These devices are bound to their live nodes as the nodes are
+     * discovered (see createZWaveDevice()).
+     */
+    protected void publishCachedDevices() {
+        try {
+            nodeCache.load();
+        } catch (IOException e) {
+            logger.warn("Unable to load Z-Wave node cache; devices will be published as they are discovered", e);
+            return;
+        }
+
+        if (homeId == null) {
+            homeId = nodeCache.getHomeId();
+        }
+        if (!canPublish()) {
+            logger.info("Z-Wave node cache for {} has no home ID; devices will be published as they are discovered", serialPort);
+            return;
+        }
+
+        DeviceFactoryRegistry nodeFactoryRegistry = plugin.getDeviceFactoryRegistry();
+        DeviceFactoryRegistry endpointFactoryRegistry = plugin.getEndpointFactoryRegistry();
+        int count = 0;
+        for (CachedNode n : nodeCache.getNodes()) {
+            CachedZWaveEndpoint node = new CachedZWaveEndpoint(n);
+            ZWaveDeviceFactory factory = nodeFactoryRegistry.getFactory(node);
+            if (factory != null && factory != ZWaveDeviceFactory.IGNORE && publishZWaveDevice(factory, node, null, null) != null) {
+                count++;
+                for (CachedNode epn : n.getEndpoints()) {
+                    CachedZWaveEndpoint ep = new CachedZWaveEndpoint(epn);
+                    ZWaveDeviceFactory epFactory = endpointFactoryRegistry.getFactory(ep);
+                    if (epFactory != null && publishZWaveDevice(epFactory, ep, epn.getEndpointNumber(), null) != null) {
+                        count++;
+                    }
+                }
+            }
+        }
+
+        if (count > 0) {
+            logger.info("Published {} device(s) from Z-Wave node cache", count);
+        }
+    }
+
+    /**
+     * Records a live node in the node cache. The cache is written shortly afterwards so that a burst of discoveries
+     * only results in a single write.
+     *
+     * @param node the node
+     */
+    protected void updateNodeCache(ZWaveEndpoint node) {
+        if (nodeCache != null && nodeCache.update(CachedNode.create(node))) {
+            scheduleNodeCacheSave();
+        }
+    }
+
+    /**
+     * Schedules a reconciliation of the node cache against the controller's node list once discovery has settled.
+     * Each batch of discovered nodes pushes the reconciliation back. This must be called from the network's thread.
+     */
+    protected void scheduleNodeCacheReconciliation() {
+        if (nodeCache == null || nodeCache.getNodes().isEmpty()) {
+            return;
+        }
+        if (reconcileFuture != null) {
+            reconcileFuture.cancel(false);
+        }
+        reconcileFuture = scheduleInEventLoop(new Runnable() {
+            @Override
+            public void run() {
+                reconcileFuture = null;
+                reconcileNodeCache();
+            }
+        }, DISCOVERY_SETTLE_TIME);
+    }
+
+    /**
+     * Removes and unpublishes any cached nodes that the controller no longer reports (e.g. nodes that were excluded
+     * while the plugin wasn't running). Nothing is removed if the controller hasn't reported its nodes yet. This must
+     * be called from the network's thread.
+     */
+    protected void reconcileNodeCache() {
+        ZWaveController c = zwaveController;
+        Collection<ZWaveEndpoint> nodes = (c != null) ? c.getNodes() : null;
+        if (nodes == null || nodes.isEmpty() || nodeCache == null) {
+            logger.debug("Network {} has no node list yet; skipping node cache reconciliation", index);
+            return;
+        }
+
+        boolean[] present = new boolean[256];
+        for (ZWaveEndpoint node : nodes) {
+            present[node.getNodeId() & 0xFF] = true;
+        }
+
+        for (CachedNode n : nodeCache.getNodes()) {
+            if (!present[n.getNodeId() & 0xFF]) {
+                logger.info("Cached Z-Wave node {} is no longer part of network {}; removing it", n.getNodeId(), index);
+                removeNode(n.getNodeId());
+            }
+        }
+    }
+
+    /**
+     * Removes all devices for a node from the network, unpublishes them and drops the node from the node cache. This
+     * must be called from the network's thread.
+     *
+     * @param nodeId the node ID
+     */
+    protected void removeNode(byte nodeId) {
+        List<HobsonZWaveDevice> devices = deviceTable.removeNode(nodeId);
+        for (HobsonZWaveDevice d : devices) {
+            pollScheduler.remove(d);
+            plugin.unpublishNetworkDevice(d);
+        }
+        wakeUpQueue.unregister(nodeId);
+        logger.debug("Removed and unpublished {} device(s) for node {}", devices.size(), nodeId);
+        if (nodeCache != null && nodeCache.remove(nodeId)) {
+            scheduleNodeCacheSave();
+        }
+    }
+
+    protected void scheduleNodeCacheSave() {
+        if (nodeCacheSaveScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        nodeCacheSaveScheduled.set(false);
+                        saveNodeCache();
+                    }
+                }, NODE_CACHE_SAVE_DELAY, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                nodeCacheSaveScheduled.set(false);
+            }
+        }
+    }
+
+    protected void saveNodeCache() {
+        if (nodeCache != null) {
+            try {
+                if (nodeCache.save()) {
+                    logger.debug("Saved {} node(s) to Z-Wave node cache", nodeCache.size());
+                }
+            } catch (IOException e) {
+                logger.error("Error saving Z-Wave node cache", e);
+            }
+        }
+    }
+
+    /**
+     * Captures the last published value of every device variable on the network. This must be called from the
+     * network's thread (or after the network has been stopped).
+     *
+     * @return a Map of device ID to variable values (or null if nothing has changed since the last capture)
+     */
+    public Map<String,Map<String,ValueSnapshot.Value>> captureValueSnapshot() {
+        List<HobsonZWaveDevice> devices = deviceTable.getDevices();
+
+        long version = 0;
+        for (HobsonZWaveDevice d : devices) {
+            version += d.getLastValues().getVersion();
+        }
+        if (version == snapshotVersion && devices.size() == snapshotDeviceCount) {
+            return null;
+        }
+        snapshotVersion = version;
+        snapshotDeviceCount = devices.size();
+
+        Map<String,Map<String,ValueSnapshot.Value>> results = new HashMap<>();
+        for (HobsonZWaveDevice d : devices) {
+            LastValueCache lvc = d.getLastValues();
+            Map<String,ValueSnapshot.Value> values = new HashMap<>();
+            for (String name : lvc.getNames()) {
+                Object value = lvc.getValue(name);
+                if (ValueSnapshot.isSupportedValue(value)) {
+                    values.put(name, new ValueSnapshot.Value(value, lvc.getTime(name)));
+                }
+            }
+            if (values.size() > 0) {
+                results.put(d.getContext().getDeviceId(), values);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Removes all devices from the network's device table. This must be called after the network has been stopped.
+     */
+    public void clearDevices() {
+        deviceTable.clear();
+    }
+
+    // ***
+    // ZWaveControllerListener methods
+    // ***
+
+    /**
+     * Called when a device is added to the Z-Wave network. This is called from the controller's I/O thread so the
+     * node is handed off to the network's thread without blocking.
+     *
+     * @param node the node that was added
+     */
+    @Override
+    public void onZWaveNodeAdded(ZWaveEndpoint node) {
+        updateCoalescer.onNodeAdded(node);
+    }
+
+    /**
+     * Called when a device is updated via the Z-Wave network. Updates are coalesced per node/endpoint so that a burst
+     * of reports from a single node only results in one re-evaluation of its state. Like onZWaveNodeAdded(), this
+     * never blocks the controller's I/O thread.
+     *
+     * @param node the node that was updated
+     */
+    @Override
+    public void onZWaveNodeUpdated(ZWaveEndpoint node) {
+        plugin.getMetrics().onReportReceived(node.getNodeId());
+        updateCoalescer.onNodeUpdated(node);
+    }
+
+    /**
+     * Processes a batch of newly added nodes. This is called from the network's thread.
+     *
+     * The devices for all the nodes are created first and their initial state is then applied in one pass, so the
+     * whole batch results in a single variable update notification rather than one (plus an extra event loop round
+     * trip) per device.
+     *
+     * @param nodes the nodes that were added
+     */
+    protected void addZWaveNodes(List<ZWaveEndpoint> nodes) {
+        // a namespaced network can't create device IDs until the controller has reported its home ID
+        if (!canPublish()) {
+            logger.debug("Holding {} node(s) until the home ID of {} is known", nodes.size(), serialPort);
+            if (heldNodes == null) {
+                heldNodes = new ArrayList<>();
+            }
+            heldNodes.addAll(nodes);
+            return;
+        }
+
+        discoveryBatch = new ArrayList<>();
+        try {
+            for (ZWaveEndpoint node : nodes) {
+                try {
+                    state.get().onZWaveNodeAdded(this, node);
+                } catch (Exception e) {
+                    logger.error("Error processing addition of " + node, e);
+                }
+            }
+        } finally {
+            List<ZWaveEndpoint> endpoints = discoveryBatch;
+            discoveryBatch = null;
+            applyInitialState(endpoints);
+            scheduleNodeCacheReconciliation();
+        }
+    }
+
+    /**
+     * Applies the initial state of a batch of new devices and fires a single notification for the resulting
+     * variable updates.
+     *
+     * @param endpoints the nodes and endpoints of the new devices
+     */
+    protected void applyInitialState(List<ZWaveEndpoint> endpoints) {
+        List<VariableUpdate> updates = updateListPool.acquire();
+        long now = System.currentTimeMillis();
+        for (ZWaveEndpoint endpoint : endpoints) {
+            byte endpointNumber = (endpoint instanceof ZWaveMultiChannelEndpoint) ? ((ZWaveMultiChannelEndpoint)endpoint).getNumber() : DeviceTable.ROOT_ENDPOINT;
+            HobsonZWaveDevice device = deviceTable.get(endpoint.getNodeId(), endpointNumber);
+            if (device != null) {
+                try {
+                    device.processUpdate(endpoint, updates);
+                    if (endpoint instanceof ZWaveNode) {
+                        Boolean a = ((ZWaveNode)endpoint).isAvailable();
+                        if (a != null) {
+                            device.updateAvailability(a, now);
+                        }
+                    }
+                } catch (Exception e) {
+                    logger.error("Error applying initial state for " + device.getContext(), e);
+                }
+            }
+        }
+        logger.debug("Applied initial state of {} device(s) with {} variable update(s)", endpoints.size(), updates.size());
+        try {
+            if (updates.size() > 0) {
+                // the notification consumer may retain the list so it gets its own copy
+                fireVariableUpdateNotifications(new ArrayList<>(updates));
+            }
+        } finally {
+            updateListPool.release(updates);
+        }
+    }
+
+    /**
+     * Processes the latest update for a node. This is called from the network's thread.
+     *
+     * @param node the node that was updated
+     */
+    protected void processNodeUpdate(ZWaveEndpoint node) {
+        ZWaveMetrics metrics = plugin.getMetrics();
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        state.get().onZWaveNodeUpdated(this, node);
+
+        // a battery-powered node is only listening briefly after it's been heard from
+        List<DataFrame> frames = wakeUpQueue.onWakeUp(node.getNodeId(), System.currentTimeMillis());
+        if (frames != null) {
+            transmitScheduler.sendAll(frames, TransmitPriority.INTERACTIVE);
+        }
+
+        if (node instanceof ZWaveNode) {
+            Boolean a = ((ZWaveNode)node).isAvailable();
+            if (a != null) {
+                HobsonZWaveDevice device = deviceTable.get(node.getNodeId(), DeviceTable.ROOT_ENDPOINT);
+                if (device != null) {
+                    device.updateAvailability(a, System.currentTimeMillis());
+                }
+            }
+        }
+        if (timed) {
+            metrics.onUpdateProcessed(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void fireVariableUpdateNotifications(List<VariableUpdate> updates) {
+        plugin.fireVariableUpdateNotifications(updates);
+    }
+
+    @Override
+    public UpdateListPool getUpdateListPool() {
+        return updateListPool;
+    }
+
+    @Override
+    public void onZWaveConnectionFailure(final Throwable t) {
+        logger.error("Error connecting to Z-Wave controller on " + serialPort, t);
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                State s = state.get();
+                if (s != null) {
+                    s.onConnectionFailure(ZWaveNetwork.this, t);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onZWaveControllerInfo(String libraryVersion, final Integer homeId, Byte nodeId) {
+        logger.info("Z-Wave controller info: library version: {}, home ID: {}, node ID: {}", libraryVersion, homeId, nodeId);
+        if (homeId != null) {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    setHomeId(homeId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Records the home ID reported by the controller and adds any nodes that were held until it was known. This must
+     * be called from the network's thread.
+     *
+     * @param homeId the home ID
+     */
+    protected void setHomeId(Integer homeId) {
+        Integer previous = this.homeId;
+        if (namespaced && previous != null && !previous.equals(homeId)) {
+            logger.warn("Z-Wave controller on {} belongs to a different network than its cached nodes; device IDs will change on next restart", serialPort);
+        }
+        this.homeId = homeId;
+        if (nodeCache != null && nodeCache.setHomeId(homeId)) {
+            scheduleNodeCacheSave();
+        }
+
+        List<ZWaveEndpoint> nodes = heldNodes;
+        if (nodes != null) {
+            heldNodes = null;
+            addZWaveNodes(nodes);
+        }
+    }
+
+    @Override
+    public void onZWaveInclusionStarted() {
+
+    }
+
+    @Override
+    public void onZWaveInclusion(NodeInfo nodeInfo, boolean success) {
+
+    }
+
+    @Override
+    public void onZWaveInclusionStopped() {
+
+    }
+
+    @Override
+    public void onZWaveExclusionStarted() {
+
+    }
+
+    @Override
+    public void onZWaveExclusion(final NodeInfo nodeInfo, boolean success) {
+        if (success) {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    removeNode(nodeInfo.getNodeId());
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onZWaveExclusionStopped() {
+
+    }
+
+    // ***
+    // StateContext methods
+    // ***
+
+    @Override
+    public String getSerialPort() {
+        return serialPort;
+    }
+
+    @Override
+    public ZWaveControllerFactory getControllerFactory() {
+        return plugin.getControllerFactory();
+    }
+
+    @Override
+    public ZWaveController getZWaveController() {
+        return zwaveController;
+    }
+
+    @Override
+    public void setZWaveController(ZWaveController zwaveController) {
+        this.zwaveController = zwaveController;
+    }
+
+    @Override
+    public void setPluginStatus(PluginStatus status) {
+        plugin.setNetworkStatus(this, status);
+    }
+
+    @Override
+    public void setTransmitPaused(boolean paused) {
+        transmitScheduler.setPaused(paused);
+    }
+
+    @Override
+    public OutageStatistics getOutageStatistics() {
+        return outageStatistics;
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleInEventLoop(final Runnable task, long delay) {
+        try {
+            return scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    execute(task);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Unable to schedule task; scheduler has been shut down");
+            return null;
+        }
+    }
+
+    /**
+     * Changes the network state. This must be called from the network's thread.
+     *
+     * @param state the new state
+     */
+    @Override
+    public void setState(State state) {
+        if (this.state.getAndSet(state) != state) {
+            logger.debug("Changing network {} to state: {}", index, state);
+            state.onRun(this);
+        }
+    }
+
+    @Override
+    public HobsonZWaveDevice getZWaveDevice(byte nodeId, byte endpointNumber) {
+        return deviceTable.get(nodeId, endpointNumber);
+    }
+
+    @Override
+    public DeviceFactoryRegistry getDeviceFactoryRegistry() {
+        return plugin.getDeviceFactoryRegistry();
+    }
+
+    @Override
+    public void createZWaveDevice(ZWaveDeviceFactory factory, ZWaveEndpoint node) {
+        createZWaveDevice(factory, node, null, null);
+    }
+
+    @Override
+    public void createZWaveDevice(ZWaveDeviceFactory factory, ZWaveEndpoint node, Byte endpointNumber, MultiInstanceCommandClass micc) {
+        try {
+            // if the device was already published from the node cache, bind it to the live node; otherwise publish it
+            HobsonZWaveDevice device = deviceTable.get(node.getNodeId(), endpointNumber != null ? endpointNumber : DeviceTable.ROOT_ENDPOINT);
+            if (device != null) {
+                logger.debug("Binding device {} to live node", device.getContext());
+                if (!device.isInterviewed() && getCachedFactory(device) != factory) {
+                    logger.warn("Device type of {} has changed since it was cached; it will be updated on next restart", device.getContext());
+                }
+                device.setEndpoint(node, micc);
+                pollScheduler.add(device, System.currentTimeMillis());
+            } else {
+                device = publishZWaveDevice(factory, node, endpointNumber, micc);
+                if (device == null) {
+                    return;
+                }
+            }
+
+            // record the live node so it can be published immediately on the next startup
+            if (endpointNumber == null) {
+                updateNodeCache(node);
+            }
+
+            // check to see if device has any endpoints -- add devices for any that are recognized
+            if (micc == null) {
+                micc = (MultiInstanceCommandClass)node.getCommandClass(MultiInstanceCommandClass.ID);
+                if (micc != null) {
+                    logger.debug("Found Z-Wave device with {} endpoints", micc.getEndpoints().size());
+                    for (ZWaveMultiChannelEndpoint ep : micc.getEndpoints()) {
+                        ZWaveDeviceFactory epFactory = plugin.getEndpointFactoryRegistry().getFactory(ep);
+                        if (epFactory != null) {
+                            createZWaveDevice(epFactory, ep, ep.getNumber(), micc);
+                        } else {
+                            logger.warn("Unsupported Z-Wave endpoint found: " + ep);
+                        }
+                    }
+                }
+            }
+
+            // allow device to update it's initial state
+            ZWaveEndpoint endpoint = null;
+            if (device.isEndpoint()) {
+                if (micc != null) {
+                    endpoint = micc.getEndpoint(device.getEndpointNumber());
+                }
+            } else {
+                endpoint = node;
+            }
+
+            if (endpoint != null) {
+                if (discoveryBatch != null) {
+                    discoveryBatch.add(endpoint);
+                } else {
+                    onZWaveNodeUpdated(endpoint);
+                }
+            } else {
+                logger.error("Unable to determine node aspect to update for {}", device.getContext());
+            }
+        } catch (Exception e) {
+            logger.error("Error starting device for " + node, e);
+        }
+    }
+
+    /**
+     * Instantiates and publishes a device. This must be called from the network's thread.
+     *
+     * @param factory the factory that creates the device
+     * @param node the node (or endpoint) the device represents
+     * @param endpointNumber the endpoint number (or null if the device represents the node itself)
+     * @param micc the multi-instance command class of the parent node (or null)
+     *
+     * @return the published device (or null if the factory didn't create one)
+     */
+    public HobsonZWaveDevice publishZWaveDevice(ZWaveDeviceFactory factory, ZWaveEndpoint node, Byte endpointNumber, MultiInstanceCommandClass micc) {
+        String namespace = getNamespace();
+        String deviceId;
+
+        if (endpointNumber != null) {
+            deviceId = DeviceUtil.getDeviceIdForNodeIdAndEndpoint(namespace, node.getNodeId(), endpointNumber);
+        } else {
+            deviceId = DeviceUtil.getDeviceIdForNodeId(namespace, node.getNodeId());
+        }
+
+        HobsonZWaveDevice device = factory.create(plugin, deviceId, node, endpointNumber, micc);
+        if (device == null) {
+            logger.debug("No device created for {}", node);
+            return null;
+        }
+        device.setNetwork(this);
+
+        // restore the device's last known values so they're published immediately
+        ValueSnapshot valueSnapshot = plugin.getValueSnapshot();
+        if (valueSnapshot != null) {
+            device.restoreValues(valueSnapshot.getValues(deviceId));
+        }
+
+        logger.debug("Adding device {}", device.getContext());
+        plugin.publishNetworkDevice(device);
+        deviceTable.put(device);
+        pollScheduler.add(device, System.currentTimeMillis());
+        if (device.isBatteryPowered()) {
+            wakeUpQueue.register(node.getNodeId());
+        }
+
+        return device;
+    }
+
+    private ZWaveDeviceFactory getCachedFactory(HobsonZWaveDevice device) {
+        ZWaveEndpoint ep = device.getEndpoint();
+        return device.isEndpoint() ? plugin.getEndpointFactoryRegistry().getFactory(ep) : plugin.getDeviceFactoryRegistry().getFactory(ep);
+    }
+
+    // ***
+    // ZWaveContext methods
+    // ***
+
+    @Override
+    public void sendDataFrame(DataFrame frame) {
+        sendDataFrame(frame, TransmitPriority.INTERACTIVE);
+    }
+
+    /**
+     * Sends a frame. Frames for sleeping nodes are held until the node wakes up.
+     *
+     * @param frame the frame to send
+     * @param priority the frame's priority
+     */
+    @Override
+    public void sendDataFrame(DataFrame frame, TransmitPriority priority) {
+        if (!wakeUpQueue.hold(frame)) {
+            transmitScheduler.send(frame, priority);
+        }
+    }
+
+    @Override
+    public void sendCommand(ZWaveCommand command) {
+        sendCommand(command, null);
+    }
+
+    @Override
+    public CommandFuture sendCommandAsync(ZWaveCommand command) {
+        CommandFuture future = new CommandFuture();
+        sendCommand(command, future);
+        return future;
+    }
+
+    /**
+     * Sends a command to a device and verifies that the device reached the expected state.
+     *
+     * @param command the command to send
+     * @param future the future to complete with the command's outcome (or null)
+     */
+    protected void sendCommand(ZWaveCommand command, CommandFuture future) {
+        commandCoalescer.supersede(command.getDevice());
+        // the expectation must exist before the frame is queued since it may be released immediately
+        confirmationTracker.expect(command, future);
+        sendDataFrame(command.getSetFrame(), TransmitPriority.INTERACTIVE);
+    }
+
+    @Override
+    public void sendCommands(List<ZWaveCommand> commands) {
+        // a device that appears more than once only gets its last command
+        Map<HobsonZWaveDevice,ZWaveCommand> latest = new LinkedHashMap<>();
+        for (ZWaveCommand c : commands) {
+            latest.put(c.getDevice(), c);
+        }
+        if (latest.size() < commands.size()) {
+            commands = new ArrayList<>(latest.values());
+        }
+
+        List<DataFrame> frames = new ArrayList<>(commands.size());
+        for (ZWaveCommand c : commands) {
+            commandCoalescer.supersede(c.getDevice());
+        }
+        confirmationTracker.expectAll(commands);
+        for (ZWaveCommand c : commands) {
+            if (!wakeUpQueue.hold(c.getSetFrame())) {
+                frames.add(c.getSetFrame());
+            }
+        }
+        transmitScheduler.sendAll(frames, TransmitPriority.INTERACTIVE);
+    }
+
+    @Override
+    public void sendCoalescedCommand(ZWaveCommand command) {
+        commandCoalescer.submit(command);
+    }
+
+    /**
+     * Returns the network's index in the plugin configuration (0 for the network on the "serial.port" property).
+     *
+     * @return an int
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the home ID of the network.
+     *
+     * @return the home ID (or null if it isn't known yet)
+     */
+    public Integer getHomeId() {
+        return homeId;
+    }
+
+    /**
+     * Returns the namespace used for the IDs of the network's devices. Only the additional networks of a plugin that
+     * manages more than one network are namespaced so that the first network keeps the IDs it always had.
+     *
+     * @return the namespace (or null if device IDs aren't namespaced)
+     *
+     * @throws IllegalStateException if the network is namespaced and its home ID isn't known yet
+     */
+    public String getNamespace() {
+        if (!namespaced) {
+            return null;
+        }
+        Integer id = homeId;
+        if (id == null) {
+            throw new IllegalStateException("Home ID of Z-Wave network " + index + " is not known yet");
+        }
+        return DeviceUtil.getNamespaceForHomeId(id);
+    }
+
+    /**
+     * Indicates whether device IDs can be created for the network's devices (i.e. the network isn't namespaced or its
+     * home ID is known).
+     *
+     * @return a boolean
+     */
+    public boolean canPublish() {
+        return !namespaced || homeId != null;
+    }
+
+    /**
+     * Returns the number of node updates waiting to be processed on the network's thread.
+     *
+     * @return an int
+     */
+    public int getPendingUpdateCount() {
+        return updateCoalescer.getPendingCount();
+    }
+
+    /**
+     * Returns the confirmation tracker (which provides statistics on saved confirmation round trips).
+     *
+     * @return a ConfirmationTracker instance
+     */
+    public ConfirmationTracker getConfirmationTracker() {
+        return confirmationTracker;
+    }
+
+    /**
+     * Returns the command coalescer (which provides statistics on collapsed commands).
+     *
+     * @return a CommandCoalescer instance
+     */
+    public CommandCoalescer getCommandCoalescer() {
+        return commandCoalescer;
+    }
+
+    /**
+     * Returns the queue of frames held for sleeping nodes.
+     *
+     * @return a WakeUpQueue instance
+     */
+    public WakeUpQueue getWakeUpQueue() {
+        return wakeUpQueue;
+    }
+
+    /**
+     * Returns the transmit scheduler (which provides queue depth and wait time statistics).
+     *
+     * @return a TransmitScheduler instance
+     */
+    public TransmitScheduler getTransmitScheduler() {
+        return transmitScheduler;
+    }
+
+    @Override
+    public String toString() {
+        return "Z-Wave network " + index + " (" + serialPort + ")";
+    }
+}
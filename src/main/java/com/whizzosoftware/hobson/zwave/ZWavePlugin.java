@@ -15,39 +15,68 @@ import com.whizzosoftware.hobson.api.plugin.AbstractHobsonPlugin;
 import com.whizzosoftware.hobson.api.plugin.PluginStatus;
 import com.whizzosoftware.hobson.api.property.PropertyContainer;
 import com.whizzosoftware.hobson.api.property.TypedProperty;
+import com.whizzosoftware.hobson.api.variable.HobsonVariable;
+import com.whizzosoftware.hobson.api.variable.VariableContext;
+import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import com.whizzosoftware.hobson.zwave.cache.ValueSnapshot;
 import com.whizzosoftware.hobson.zwave.device.*;
-import com.whizzosoftware.hobson.zwave.state.InitializingState;
-import com.whizzosoftware.hobson.zwave.state.State;
-import com.whizzosoftware.hobson.zwave.state.StateContext;
-import com.whizzosoftware.hobson.zwave.util.DeviceUtil;
-import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
-import com.whizzosoftware.wzwave.controller.ZWaveController;
-import com.whizzosoftware.wzwave.controller.ZWaveControllerListener;
-import com.whizzosoftware.wzwave.frame.DataFrame;
-import com.whizzosoftware.wzwave.node.NodeInfo;
-import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
-import com.whizzosoftware.wzwave.node.ZWaveMultiChannelEndpoint;
-import com.whizzosoftware.wzwave.node.ZWaveNode;
+import com.whizzosoftware.hobson.zwave.util.ConfigUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Constructor;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * The Z-Wave plugin. This uses a ZWaveController instance to discover Z-Wave devices and publish them as
- * Hobson devices.
+ * The Z-Wave plugin. This uses one or more Z-Wave networks (see ZWaveNetwork) to discover Z-Wave devices and publish
+ * them as Hobson devices.
  *
  * @author Dan Noguerol
  */
-public class ZWavePlugin extends AbstractHobsonPlugin implements StateContext, ZWaveControllerListener, ZWaveContext {
+public class ZWavePlugin extends AbstractHobsonPlugin {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private ZWaveController zwaveController;
-    private String serialPort;
-    private State state;
+    private static final String NODE_CACHE_FILE = "nodes.cache";
+    private static final long DEFAULT_SNAPSHOT_INTERVAL = 60;
+    private static final String VALUE_SNAPSHOT_FILE = "values.snapshot";
+    private static final long DEFAULT_METRICS_INTERVAL = 60;
+
+    private volatile ZWaveControllerFactory controllerFactory = ZWaveControllerFactory.DEFAULT;
+    private volatile List<ZWaveNetwork> networks;
+    private final Map<ZWaveNetwork,PluginStatus> networkStatuses = new HashMap<>();
+    private volatile long variableRepublishInterval;
+    private volatile ValueSnapshot valueSnapshot;
+    private final Map<ZWaveNetwork,Map<String,Map<String,ValueSnapshot.Value>>> networkValues = new HashMap<>();
+    private ScheduledFuture<?> snapshotFuture;
+    private long snapshotInterval;
+    private final ZWaveMetrics metrics = new ZWaveMetrics();
+    private ScheduledFuture<?> metricsFuture;
+    private long metricsInterval;
+    private boolean metricsVariablesPublished;
+    private final DeviceFactoryRegistry nodeFactoryRegistry = DeviceFactoryRegistry.createNodeRegistry();
+    private final DeviceFactoryRegistry endpointFactoryRegistry = DeviceFactoryRegistry.createEndpointRegistry();
+    private volatile ScheduledExecutorService scheduler;
 
     public ZWavePlugin(String pluginId) {
         super(pluginId);
+        // the primary network always exists so that devices can be created before the plugin starts; it has no
+        // scheduler and is replaced when the plugin starts
+        networks = Collections.singletonList(new ZWaveNetwork(this, 0, null));
     }
 
     // ***
@@ -56,40 +85,136 @@ public class ZWavePlugin extends AbstractHobsonPlugin implements StateContext, Z
 
     @Override
     public void onStartup(PropertyContainer config) {
-        serialPort = (String)config.getPropertyValue("serial.port");
-        setState(new InitializingState(this));
+        variableRepublishInterval = ConfigUtil.getLong(config, "variable.republish.interval", 0) * 1000;
+        File dataDir = getDataDirectory(config);
+        valueSnapshot = new ValueSnapshot(new File(dataDir, VALUE_SNAPSHOT_FILE));
+        loadValueSnapshot();
+
+        // the scheduler is created here rather than in the constructor since onShutdown() shuts it down and the
+        // plugin may be started again
+        scheduler = createScheduler();
+        synchronized (networkStatuses) {
+            networkStatuses.clear();
+        }
+        synchronized (networkValues) {
+            networkValues.clear();
+        }
+
+        List<String> ports = getSerialPorts(config);
+        List<ZWaveNetwork> nets = new ArrayList<>(ports.size());
+        for (int i=0; i < ports.size(); i++) {
+            nets.add(new ZWaveNetwork(this, i, scheduler));
+        }
+        networks = Collections.unmodifiableList(nets);
+        if (nets.size() > 1) {
+            logger.info("Managing {} Z-Wave networks", nets.size());
+        }
+
+        String tracePath = (config != null) ? (String)config.getPropertyValue("trace.file") : null;
+        for (ZWaveNetwork n : nets) {
+            int i = n.getIndex();
+            File cacheFile = new File(dataDir, i == 0 ? NODE_CACHE_FILE : "nodes-" + i + ".cache");
+            File traceFile = null;
+            if (tracePath != null && tracePath.trim().length() > 0) {
+                traceFile = new File(i == 0 ? tracePath.trim() : tracePath.trim() + "." + i);
+            }
+            n.start(config, ports.get(i), cacheFile, traceFile, nets.size() > 1);
+        }
+
+        scheduleValueSnapshots(ConfigUtil.getLong(config, "snapshot.interval", DEFAULT_SNAPSHOT_INTERVAL));
+        configureMetrics(config);
     }
 
     @Override
     public void onShutdown() {
-        state.stop(this);
+        for (ZWaveNetwork n : networks) {
+            n.stop();
+        }
+
+        // the networks have stopped so their devices can safely be read from here
+        boolean changed = false;
+        for (ZWaveNetwork n : networks) {
+            changed |= updateNetworkValues(n, n.captureValueSnapshot());
+        }
+        if (changed) {
+            saveValueSnapshot(mergeNetworkValues());
+        }
+
+        for (ZWaveNetwork n : networks) {
+            n.clearDevices();
+        }
+
+        // the scheduled tasks die with the scheduler so they must be rescheduled if the plugin starts again
+        snapshotFuture = null;
+        metricsFuture = null;
+        ScheduledExecutorService s = scheduler;
+        if (s != null) {
+            s.shutdownNow();
+        }
     }
 
     @Override
     public long getRefreshInterval() {
-        return 15;
+        // the poll scheduler decides which devices are actually due so this just needs to be its resolution
+        return 1;
     }
 
     @Override
     public void onRefresh() {
-        for (HobsonDevice device : getAllPluginDevices()) {
-            if (device instanceof HobsonZWaveDevice) {
-                ((HobsonZWaveDevice)device).onRefresh(this);
-            }
+        long now = System.currentTimeMillis();
+        for (ZWaveNetwork n : networks) {
+            n.onRefresh(now);
         }
     }
 
     @Override
     protected TypedProperty[] createSupportedProperties() {
         return new TypedProperty[] {
-            new TypedProperty.Builder("serial.port", "Serial Port", "The serial port containing the Z-Wave controller (e.g. /dev/tty.SLAB_USBtoUART)", TypedProperty.Type.SERIAL_PORT).build()
+            new TypedProperty.Builder("serial.port", "Serial Port", "The serial port containing the Z-Wave controller (e.g. /dev/tty.SLAB_USBtoUART)", TypedProperty.Type.SERIAL_PORT).build(),
+            new TypedProperty.Builder("serial.ports", "Additional Serial Ports", "A comma-separated list of serial ports containing controllers for additional Z-Wave networks (takes effect when the plugin restarts)", TypedProperty.Type.STRING).build(),
+            new TypedProperty.Builder("poll.interval", "Poll Interval", "The number of seconds between polls of devices that need to be polled (e.g. meters)", TypedProperty.Type.NUMBER).build(),
+            new TypedProperty.Builder("poll.max.rate", "Maximum Poll Rate", "The maximum number of device polls sent per second", TypedProperty.Type.NUMBER).build(),
+            new TypedProperty.Builder("tx.max.rate", "Maximum Transmit Rate", "The maximum number of frames per second released to the Z-Wave controller", TypedProperty.Type.NUMBER).build(),
+            new TypedProperty.Builder("command.min.spacing", "Minimum Command Spacing", "The minimum number of milliseconds between dimmer level commands sent to a device; only the newest of the commands received in the meantime is sent", TypedProperty.Type.NUMBER).build(),
+            new TypedProperty.Builder("confirmation.timeout", "Confirmation Timeout", "The number of milliseconds to wait for a device to report its new state after a command before explicitly requesting it", TypedProperty.Type.NUMBER).build(),
+            new TypedProperty.Builder("variable.republish.interval", "Republish Interval", "The number of seconds after which an unchanged variable value is published again (0 to only publish changes)", TypedProperty.Type.NUMBER).build(),
+            new TypedProperty.Builder("snapshot.interval", "Snapshot Interval", "The number of seconds between snapshots of device variable values (used to restore them after a restart)", TypedProperty.Type.NUMBER).build(),
+            new TypedProperty.Builder("metrics.enabled", "Enable Metrics", "Whether to collect performance metrics and publish them as plugin variables", TypedProperty.Type.BOOLEAN).build(),
+            new TypedProperty.Builder("metrics.interval", "Metrics Interval", "The number of seconds between metrics updates and summary log entries", TypedProperty.Type.NUMBER).build(),
+            new TypedProperty.Builder("data.dir", "Data Directory", "The directory used to store the Z-Wave node cache (defaults to ~/.hobson/zwave)", TypedProperty.Type.STRING).build(),
+            new TypedProperty.Builder("trace.file", "Trace File", "A file to record all Z-Wave traffic to for later replay (takes effect when the plugin restarts)", TypedProperty.Type.STRING).build()
         };
     }
 
+    /**
+     * Called when the plugin configuration changes. The update is applied on the plugin event loop since it may
+     * result in a state transition.
+     *
+     * @param config the new configuration
+     */
     @Override
-    synchronized public void onPluginConfigurationUpdate(PropertyContainer config) {
-        this.serialPort = (String)config.getPropertyValue("serial.port");
-        state.onSerialPortUpdate(this);
+    public void onPluginConfigurationUpdate(final PropertyContainer config) {
+        executeInEventLoop(new Runnable() {
+            @Override
+            public void run() {
+                applyConfigurationUpdate(config);
+            }
+        });
+    }
+
+    protected void applyConfigurationUpdate(PropertyContainer config) {
+        this.variableRepublishInterval = ConfigUtil.getLong(config, "variable.republish.interval", 0) * 1000;
+        scheduleValueSnapshots(ConfigUtil.getLong(config, "snapshot.interval", DEFAULT_SNAPSHOT_INTERVAL));
+        configureMetrics(config);
+
+        List<String> ports = getSerialPorts(config);
+        List<ZWaveNetwork> nets = networks;
+        if (ports.size() != nets.size()) {
+            logger.warn("The number of Z-Wave networks has changed; the plugin must be restarted for this to take effect");
+        }
+        for (ZWaveNetwork n : nets) {
+            n.applyConfiguration(config, n.getIndex() < ports.size() ? ports.get(n.getIndex()) : n.getSerialPort());
+        }
     }
 
     @Override
@@ -97,197 +222,497 @@ public class ZWavePlugin extends AbstractHobsonPlugin implements StateContext, Z
         return "Z-Wave";
     }
 
-    // ***
-    // ZWaveControllerListener methods
-    // ***
+    /**
+     * Returns the serial ports of all configured Z-Wave networks. The first is always the "serial.port" property
+     * (even if it isn't set) followed by any listed in the "serial.ports" property.
+     *
+     * @param config the plugin configuration
+     *
+     * @return a List of serial ports
+     */
+    protected List<String> getSerialPorts(PropertyContainer config) {
+        List<String> results = new ArrayList<>();
+        results.add(config != null ? (String)config.getPropertyValue("serial.port") : null);
+        String additional = (config != null) ? (String)config.getPropertyValue("serial.ports") : null;
+        if (additional != null) {
+            for (String s : additional.split(",")) {
+                String port = s.trim();
+                if (port.length() > 0 && !results.contains(port)) {
+                    results.add(port);
+                }
+            }
+        }
+        return results;
+    }
 
     /**
-     * Called when a device is added to the Z-Wave network
+     * Enables or disables metrics collection and schedules the periodic metrics report. This must be called from the
+     * plugin event loop.
      *
-     * @param node the node that was added
+     * @param config the plugin configuration
      */
-    @Override
-    synchronized public void onZWaveNodeAdded(final ZWaveEndpoint node) {
-        executeInEventLoop(new Runnable() {
-            @Override
-            public void run() {
-                state.onZWaveNodeAdded(ZWavePlugin.this, node);
+    protected void configureMetrics(PropertyContainer config) {
+        boolean enabled = ConfigUtil.getBoolean(config, "metrics.enabled", false);
+        long interval = ConfigUtil.getLong(config, "metrics.interval", DEFAULT_METRICS_INTERVAL);
+        if (interval <= 0) {
+            interval = DEFAULT_METRICS_INTERVAL;
+        }
+
+        metrics.setEnabled(enabled);
+
+        if (enabled && !metricsVariablesPublished) {
+            for (String name : ZWaveMetrics.VARIABLES) {
+                publishGlobalVariable(name, null, HobsonVariable.Mask.READ_ONLY);
             }
-        });
+            metricsVariablesPublished = true;
+        }
+
+        if (metricsFuture != null && (!enabled || interval != metricsInterval)) {
+            metricsFuture.cancel(false);
+            metricsFuture = null;
+        }
+        if (enabled && metricsFuture == null) {
+            metricsInterval = interval;
+            metrics.sample(System.currentTimeMillis());
+            try {
+                metricsFuture = scheduler.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        executeInEventLoop(new Runnable() {
+                            @Override
+                            public void run() {
+                                reportMetrics();
+                            }
+                        });
+                    }
+                }, interval, interval, TimeUnit.SECONDS);
+            } catch (RejectedExecutionException ignored) {}
+        }
     }
 
     /**
-     * Called when a device is updated via the Z-Wave network
+     * Logs a metrics summary and updates the metrics plugin variables. This must be called from the plugin event
+     * loop.
+     */
+    protected void reportMetrics() {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+
+        ZWaveMetrics.Sample sample = metrics.sample(System.currentTimeMillis());
+        int backlog = 0;
+        int txDepth = 0;
+        long collapsed = 0;
+        for (ZWaveNetwork n : networks) {
+            backlog += n.getPendingUpdateCount();
+            txDepth += n.getTransmitScheduler().getQueueDepth();
+            collapsed += n.getCommandCoalescer().getCollapsedCount();
+        }
+        logger.info("Z-Wave metrics: {}, eventLoopBacklog={}, txQueueDepth={}, commandsCollapsed={}", sample, backlog, txDepth, collapsed);
+
+        List<VariableUpdate> updates = new ArrayList<>();
+        updates.add(createGlobalUpdate(ZWaveMetrics.VAR_FRAME_RATE, sample.getFrameRate()));
+        updates.add(createGlobalUpdate(ZWaveMetrics.VAR_REPORT_RATE, sample.getReportRate()));
+        updates.add(createGlobalUpdate(ZWaveMetrics.VAR_NOTIFICATION_RATE, sample.getVariableUpdateRate()));
+        updates.add(createGlobalUpdate(ZWaveMetrics.VAR_EVENT_LOOP_BACKLOG, backlog));
+        updates.add(createGlobalUpdate(ZWaveMetrics.VAR_TRANSMIT_QUEUE_DEPTH, txDepth));
+        updates.add(createGlobalUpdate(ZWaveMetrics.VAR_COMMAND_LATENCY_P50, sample.getCommandLatencyP50()));
+        updates.add(createGlobalUpdate(ZWaveMetrics.VAR_COMMAND_LATENCY_P99, sample.getCommandLatencyP99()));
+        updates.add(createGlobalUpdate(ZWaveMetrics.VAR_COMMANDS_COLLAPSED, collapsed));
+
+        // bypass the metrics instrumentation so reporting metrics doesn't skew them
+        super.fireVariableUpdateNotifications(updates);
+    }
+
+    /**
+     * Creates the scheduler shared by the plugin and its networks for timed work (transmit pacing, confirmation
+     * timeouts, snapshots, etc.)
      *
-     * @param node the node that was updated
+     * @return a ScheduledExecutorService instance
      */
-    @Override
-    synchronized public void onZWaveNodeUpdated(final ZWaveEndpoint node) {
-        executeInEventLoop(new Runnable() {
+    protected ScheduledExecutorService createScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
             @Override
-            public void run() {
-                state.onZWaveNodeUpdated(ZWavePlugin.this, node);
-                if (node instanceof ZWaveNode) {
-                    Boolean a = ((ZWaveNode)node).isAvailable();
-                    if (a != null) {
-                        setDeviceAvailability(DeviceContext.create(getContext(), DeviceUtil.getDeviceIdForNodeId(node.getNodeId())), a, System.currentTimeMillis());
-                    }
-                }
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Z-Wave Scheduler");
+                t.setDaemon(true);
+                return t;
             }
         });
     }
 
-    @Override
-    public void onZWaveConnectionFailure(Throwable t) {
-        logger.error("Error connecting to Z-Wave controler", t);
+    private VariableUpdate createGlobalUpdate(String name, Object value) {
+        return new VariableUpdate(VariableContext.createGlobal(getContext(), name), value);
     }
 
-    @Override
-    public void onZWaveControllerInfo(String libraryVersion, Integer homeId, Byte nodeId) {
-        logger.info("Z-Wave controller info: library version: {}, home ID: {}, node ID: {}", libraryVersion, homeId, nodeId);
+    protected File getDataDirectory(PropertyContainer config) {
+        String dir = (config != null) ? (String)config.getPropertyValue("data.dir") : null;
+        if (dir != null && dir.trim().length() > 0) {
+            return new File(dir.trim());
+        } else {
+            return new File(System.getProperty("user.home"), ".hobson" + File.separator + "zwave");
+        }
     }
 
-    @Override
-    public void onZWaveInclusionStarted() {
-
+    protected void loadValueSnapshot() {
+        try {
+            valueSnapshot.load();
+        } catch (IOException e) {
+            logger.warn("Unable to load Z-Wave value snapshot; variables will be empty until devices report", e);
+        }
     }
 
-    @Override
-    public void onZWaveInclusion(NodeInfo nodeInfo, boolean success) {
-
+    /**
+     * Schedules periodic snapshots of device variable values. This must be called from the plugin event loop.
+     *
+     * @param interval the snapshot interval in seconds
+     */
+    protected void scheduleValueSnapshots(long interval) {
+        if (interval <= 0) {
+            interval = DEFAULT_SNAPSHOT_INTERVAL;
+        }
+        if (interval != snapshotInterval || snapshotFuture == null) {
+            if (snapshotFuture != null) {
+                snapshotFuture.cancel(false);
+            }
+            snapshotInterval = interval;
+            try {
+                snapshotFuture = scheduler.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        captureValueSnapshots();
+                    }
+                }, interval, interval, TimeUnit.SECONDS);
+            } catch (RejectedExecutionException e) {
+                snapshotFuture = null;
+            }
+        }
     }
 
-    @Override
-    public void onZWaveInclusionStopped() {
+    /**
+     * Captures the device values of every network and saves them once all networks have been captured. The device
+     * values must be captured on each network's thread but are written on the scheduler thread.
+     */
+    protected void captureValueSnapshots() {
+        List<ZWaveNetwork> nets = networks;
+        final AtomicInteger remaining = new AtomicInteger(nets.size());
+        final AtomicBoolean changed = new AtomicBoolean(false);
+        for (final ZWaveNetwork n : nets) {
+            n.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (updateNetworkValues(n, n.captureValueSnapshot())) {
+                        changed.set(true);
+                    }
+                    if (remaining.decrementAndGet() == 0 && changed.get()) {
+                        try {
+                            scheduler.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    saveValueSnapshot(mergeNetworkValues());
+                                }
+                            });
+                        } catch (RejectedExecutionException ignored) {}
+                    }
+                }
+            });
+        }
+    }
 
+    private boolean updateNetworkValues(ZWaveNetwork network, Map<String,Map<String,ValueSnapshot.Value>> values) {
+        if (values != null) {
+            synchronized (networkValues) {
+                networkValues.put(network, values);
+            }
+            return true;
+        }
+        return false;
     }
 
-    @Override
-    public void onZWaveExclusionStarted() {
+    private Map<String,Map<String,ValueSnapshot.Value>> mergeNetworkValues() {
+        Map<String,Map<String,ValueSnapshot.Value>> results = new HashMap<>();
+        synchronized (networkValues) {
+            for (Map<String,Map<String,ValueSnapshot.Value>> values : networkValues.values()) {
+                results.putAll(values);
+            }
+        }
+        return results;
+    }
 
+    protected void saveValueSnapshot(Map<String,Map<String,ValueSnapshot.Value>> values) {
+        try {
+            valueSnapshot.save(values);
+            logger.debug("Saved variable values for {} device(s) to Z-Wave value snapshot", values.size());
+        } catch (IOException e) {
+            logger.error("Error saving Z-Wave value snapshot", e);
+        }
     }
 
     @Override
-    public void onZWaveExclusion(NodeInfo nodeInfo, boolean success) {
+    public void fireVariableUpdateNotifications(List<VariableUpdate> updates) {
+        metrics.onVariableUpdatesFired(updates.size());
+        super.fireVariableUpdateNotifications(updates);
+    }
 
+    /**
+     * Runs a task on the plugin event loop on behalf of a network.
+     *
+     * @param task the task
+     */
+    void runInEventLoop(Runnable task) {
+        executeInEventLoop(task);
     }
 
-    @Override
-    public void onZWaveExclusionStopped() {
+    /**
+     * Publishes a device on behalf of a network.
+     *
+     * @param device the device
+     */
+    void publishNetworkDevice(HobsonZWaveDevice device) {
+        publishDevice(device);
+    }
 
+    /**
+     * Unpublishes a device on behalf of a network (e.g. after its node was excluded).
+     *
+     * @param device the device
+     */
+    void unpublishNetworkDevice(HobsonZWaveDevice device) {
+        unpublishDevice(device.getContext().getDeviceId());
     }
 
-    // ***
-    // StateContext methods
-    // ***
+    /**
+     * Updates the plugin status on behalf of a network. With more than one network, the plugin is only reported as
+     * running when all of them are; otherwise the status of the first network that isn't running is reported.
+     *
+     * @param network the network
+     * @param status the network's status
+     */
+    void setNetworkStatus(ZWaveNetwork network, PluginStatus status) {
+        List<ZWaveNetwork> nets = networks;
+        if (nets.size() == 1) {
+            setStatus(status);
+            return;
+        }
 
-    @Override
-    public String getSerialPort() {
-        return serialPort;
+        PluginStatus result = status;
+        synchronized (networkStatuses) {
+            networkStatuses.put(network, status);
+            for (ZWaveNetwork n : nets) {
+                PluginStatus s = networkStatuses.get(n);
+                if (s != null && s.getCode() != PluginStatus.Code.RUNNING) {
+                    result = s;
+                    break;
+                }
+            }
+        }
+        setStatus(result);
     }
 
-    @Override
-    public ZWaveController getZWaveController() {
-        return zwaveController;
+    /**
+     * Returns the interval after which an unchanged variable value is published again.
+     *
+     * @return the interval in milliseconds (0 if unchanged values are never republished)
+     */
+    public long getVariableRepublishInterval() {
+        return variableRepublishInterval;
     }
 
-    @Override
-    public void setZWaveController(ZWaveController zwaveController) {
-        this.zwaveController = zwaveController;
+    /**
+     * Returns the factory used to create Z-Wave controllers.
+     *
+     * @return a ZWaveControllerFactory instance
+     */
+    public ZWaveControllerFactory getControllerFactory() {
+        return controllerFactory;
     }
 
-    @Override
-    public void setPluginStatus(PluginStatus status) {
-        setStatus(status);
+    /**
+     * Sets the factory used to create Z-Wave controllers. This takes effect the next time a controller is created.
+     *
+     * @param controllerFactory the factory
+     */
+    public void setControllerFactory(ZWaveControllerFactory controllerFactory) {
+        this.controllerFactory = controllerFactory;
     }
 
-    @Override
-    synchronized public void setState(State state) {
-        if (this.state != state) {
-            logger.debug("Changing to state: " + state);
-            this.state = state;
-            this.state.onRun(this);
-        }
+    /**
+     * Returns the registry used to create devices for Z-Wave nodes.
+     *
+     * @return a DeviceFactoryRegistry instance
+     */
+    public DeviceFactoryRegistry getDeviceFactoryRegistry() {
+        return nodeFactoryRegistry;
     }
 
-    @Override
-    public HobsonDevice getZWaveDevice(String deviceId) {
-        DeviceContext dctx = DeviceContext.create(getContext(), deviceId);
-        if (hasDevice(dctx)) {
-            return getDevice(dctx);
-        } else {
-            return null;
-        }
+    /**
+     * Returns the registry used to create devices for multi-channel endpoints.
+     *
+     * @return a DeviceFactoryRegistry instance
+     */
+    public DeviceFactoryRegistry getEndpointFactoryRegistry() {
+        return endpointFactoryRegistry;
     }
 
-    @Override
-    public void createZWaveDevice(Class clazz, ZWaveEndpoint node, String name, String primaryVariable) {
-        createZWaveDevice(clazz, node, name, primaryVariable, null, null);
+    /**
+     * Returns the snapshot of device values from the previous run.
+     *
+     * @return a ValueSnapshot instance (or null if the plugin hasn't started)
+     */
+    public ValueSnapshot getValueSnapshot() {
+        return valueSnapshot;
     }
 
-    @Override
-    public void createZWaveDevice(Class clazz, ZWaveEndpoint node, String name, String primaryVariable, Byte endpointNumber, MultiInstanceCommandClass micc) {
-        String deviceId;
+    /**
+     * Returns all the Z-Wave networks the plugin manages.
+     *
+     * @return a List of ZWaveNetwork instances
+     */
+    public List<ZWaveNetwork> getNetworks() {
+        return networks;
+    }
 
-        if (endpointNumber != null) {
-            deviceId = DeviceUtil.getDeviceIdForNodeIdAndEndpoint(node.getNodeId(), endpointNumber);
-        } else {
-            deviceId = DeviceUtil.getDeviceIdForNodeId(node.getNodeId());
-        }
+    /**
+     * Returns one of the Z-Wave networks the plugin manages.
+     *
+     * @param index the network index (0 is the network on the "serial.port" property)
+     *
+     * @return a ZWaveNetwork instance
+     */
+    public ZWaveNetwork getNetwork(int index) {
+        return networks.get(index);
+    }
 
-        try {
-            // instantiate the device
-            Constructor c = clazz.getConstructor(ZWavePlugin.class, String.class, ZWaveEndpoint.class, String.class, Byte.class, MultiInstanceCommandClass.class);
-            HobsonZWaveDevice device = (HobsonZWaveDevice)c.newInstance(this, deviceId, node, name, endpointNumber, micc);
-            device.setPrimaryVariable(primaryVariable);
-
-            // publish the device
-            logger.debug("Adding device {}", device.getContext());
-            publishDevice(device);
-
-            // check to see if device has any endpoints -- add devices for any that are recognized
-            if (micc == null) {
-                micc = (MultiInstanceCommandClass)node.getCommandClass(MultiInstanceCommandClass.ID);
-                if (micc != null) {
-                    logger.debug("Found Z-Wave device with {} endpoints", micc.getEndpoints().size());
-                    for (ZWaveMultiChannelEndpoint ep : micc.getEndpoints()) {
-                        switch (ep.getGenericDeviceClass()) {
-                            case ZWaveMultiChannelEndpoint.BINARY_SWITCH:
-                                createZWaveDevice(SwitchDevice.class, ep, null, null, ep.getNumber(), micc);
-                                break;
-                            case ZWaveMultiChannelEndpoint.MULTI_LEVEL_SWITCH:
-                                createZWaveDevice(DimmerDevice.class, ep, null, null, ep.getNumber(), micc);
-                                break;
-                            default:
-                                logger.warn("Unsupported Z-Wave endpoint found: " + ep);
-                                break;
+    /**
+     * Sets a variable to the same value on a group of devices (e.g. turning off all the lights in a room). The
+     * commands are queued back-to-back with interactive priority (so they aren't interleaved with other commands and
+     * pre-empt queued confirmations and polls) and are verified with a single confirmation pass rather than a GET per
+     * device. Devices on different networks are sent as one group per network.
+     *
+     * @param devices the devices to set the variable on
+     * @param name the variable name
+     * @param value the variable value
+     */
+    public void setDeviceVariables(final Collection<DeviceContext> devices, final String name, final Object value) {
+        executeInEventLoop(new Runnable() {
+            @Override
+            public void run() {
+                Map<ZWaveNetwork,List<HobsonZWaveDevice>> groups = new LinkedHashMap<>();
+                for (DeviceContext ctx : devices) {
+                    HobsonDevice d = hasDevice(ctx) ? getDevice(ctx) : null;
+                    if (d instanceof HobsonZWaveDevice) {
+                        HobsonZWaveDevice zd = (HobsonZWaveDevice)d;
+                        List<HobsonZWaveDevice> group = groups.get(zd.getNetwork());
+                        if (group == null) {
+                            group = new ArrayList<>();
+                            groups.put(zd.getNetwork(), group);
                         }
+                        group.add(zd);
+                    } else {
+                        logger.warn("Ignoring unknown Z-Wave device: {}", ctx);
                     }
                 }
+                for (Map.Entry<ZWaveNetwork,List<HobsonZWaveDevice>> e : groups.entrySet()) {
+                    sendDeviceVariables(e.getKey(), e.getValue(), name, value);
+                }
             }
+        });
+    }
 
-            // allow device to update it's initial state
-            ZWaveEndpoint endpoint = null;
-            if (device.isEndpoint()) {
-                if (micc != null) {
-                    endpoint = micc.getEndpoint(device.getEndpointNumber());
+    private void sendDeviceVariables(final ZWaveNetwork network, final List<HobsonZWaveDevice> devices, final String name, final Object value) {
+        network.runOnNetwork(new Runnable() {
+            @Override
+            public void run() {
+                List<ZWaveCommand> commands = new ArrayList<>();
+                for (HobsonZWaveDevice d : devices) {
+                    ZWaveCommand c = d.createCommand(name, value);
+                    if (c != null) {
+                        commands.add(c);
+                    } else {
+                        logger.warn("Device {} does not support setting {}", d.getContext(), name);
+                    }
+                }
+                if (commands.size() > 0) {
+                    logger.debug("Sending {} commands as a group", commands.size());
+                    network.sendCommands(commands);
                 }
-            } else {
-                endpoint = node;
             }
+        });
+    }
 
-            if (endpoint != null) {
-                onZWaveNodeUpdated(endpoint);
-            } else {
-                logger.error("Unable to determine node aspect to update for {}", device.getContext());
-            }
-        } catch (Exception e) {
-            logger.error("Error starting device " + deviceId, e);
+    /**
+     * Sets a device variable and returns a future that completes once the device has reached (or failed to reach) the
+     * new value. This allows callers such as rules and scenes to pipeline commands and react to their completion
+     * instead of polling the variable.
+     *
+     * @param ctx the device context
+     * @param name the variable name
+     * @param value the variable value
+     *
+     * @return a CommandFuture instance
+     */
+    public CommandFuture setDeviceVariableAsync(final DeviceContext ctx, final String name, final Object value) {
+        final CommandFuture future = new CommandFuture();
+        try {
+            executeInEventLoop(new Runnable() {
+                @Override
+                public void run() {
+                    HobsonDevice d = hasDevice(ctx) ? getDevice(ctx) : null;
+                    if (d instanceof HobsonZWaveDevice) {
+                        final HobsonZWaveDevice zd = (HobsonZWaveDevice)d;
+                        final ZWaveNetwork network = zd.getNetwork();
+                        boolean accepted = network.runOnNetwork(new Runnable() {
+                            @Override
+                            public void run() {
+                                ZWaveCommand c = zd.createCommand(name, value);
+                                if (c != null) {
+                                    network.sendCommand(c, future);
+                                } else {
+                                    logger.warn("Device {} does not support setting {}", zd.getContext(), name);
+                                    future.complete(CommandFuture.Status.FAILED, System.currentTimeMillis());
+                                }
+                            }
+                        });
+                        if (!accepted) {
+                            future.complete(CommandFuture.Status.FAILED, System.currentTimeMillis());
+                        }
+                    } else {
+                        logger.warn("Ignoring unknown Z-Wave device: {}", ctx);
+                        future.complete(CommandFuture.Status.FAILED, System.currentTimeMillis());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Unable to set {} on {}; the plugin has been stopped", name, ctx);
+            future.complete(CommandFuture.Status.FAILED, System.currentTimeMillis());
         }
+        return future;
     }
 
-    @Override
-    public void sendDataFrame(DataFrame frame) {
-        zwaveController.sendDataFrame(frame);
+    /**
+     * Returns the confirmation tracker of the primary network.
+     *
+     * @return a ConfirmationTracker instance
+     */
+    public ConfirmationTracker getConfirmationTracker() {
+        return getNetwork(0).getConfirmationTracker();
+    }
+
+    /**
+     * Returns the transmit scheduler of the primary network.
+     *
+     * @return a TransmitScheduler instance
+     */
+    public TransmitScheduler getTransmitScheduler() {
+        return getNetwork(0).getTransmitScheduler();
+    }
+
+    /**
+     * Returns the plugin's performance metrics.
+     *
+     * @return a ZWaveMetrics instance
+     */
+    public ZWaveMetrics getMetrics() {
+        return metrics;
     }
 }
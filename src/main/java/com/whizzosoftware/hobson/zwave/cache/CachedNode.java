@@ -0,0 +1,147 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.cache;
+
+import com.whizzosoftware.wzwave.commandclass.ManufacturerSpecificCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.ZWaveMultiChannelEndpoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The cached description of a Z-Wave node (or one of its multi-channel endpoints) that was discovered by a
+ * previous interview.
+ *
+ * @author Dan Noguerol
+ */
+public class CachedNode {
+    private byte nodeId;
+    private Byte endpointNumber;
+    private Byte genericDeviceClass;
+    private Byte specificDeviceClass;
+    private byte[] commandClasses;
+    private String productName;
+    private List<CachedNode> endpoints;
+
+    public CachedNode(byte nodeId, Byte endpointNumber, Byte genericDeviceClass, Byte specificDeviceClass, byte[] commandClasses, String productName, List<CachedNode> endpoints) {
+        this.nodeId = nodeId;
+        this.endpointNumber = endpointNumber;
+        this.genericDeviceClass = genericDeviceClass;
+        this.specificDeviceClass = specificDeviceClass;
+        this.commandClasses = commandClasses;
+        this.productName = productName;
+        this.endpoints = (endpoints != null) ? endpoints : Collections.<CachedNode>emptyList();
+        Arrays.sort(this.commandClasses);
+    }
+
+    /**
+     * Creates a cached description of a live Z-Wave node including any multi-channel endpoints it has.
+     *
+     * @param node the node
+     *
+     * @return a CachedNode instance
+     */
+    static public CachedNode create(ZWaveEndpoint node) {
+        String productName = null;
+        ManufacturerSpecificCommandClass mscc = (ManufacturerSpecificCommandClass)node.getCommandClass(ManufacturerSpecificCommandClass.ID);
+        if (mscc != null && mscc.getProductInfo() != null) {
+            productName = mscc.getProductInfo().toString();
+        }
+
+        List<CachedNode> endpoints = null;
+        MultiInstanceCommandClass micc = (MultiInstanceCommandClass)node.getCommandClass(MultiInstanceCommandClass.ID);
+        if (micc != null) {
+            endpoints = new ArrayList<>();
+            for (ZWaveMultiChannelEndpoint ep : micc.getEndpoints()) {
+                endpoints.add(new CachedNode(node.getNodeId(), ep.getNumber(), ep.getGenericDeviceClass(), ep.getSpecificDeviceClass(), getCommandClassIds(ep), null, null));
+            }
+        }
+
+        return new CachedNode(node.getNodeId(), null, node.getGenericDeviceClass(), node.getSpecificDeviceClass(), getCommandClassIds(node), productName, endpoints);
+    }
+
+    static private byte[] getCommandClassIds(ZWaveEndpoint endpoint) {
+        byte[] ids = new byte[256];
+        int count = 0;
+        for (int i=0; i < 256; i++) {
+            if (endpoint.hasCommandClass((byte)i)) {
+                ids[count++] = (byte)i;
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    public byte getNodeId() {
+        return nodeId;
+    }
+
+    public Byte getEndpointNumber() {
+        return endpointNumber;
+    }
+
+    public Byte getGenericDeviceClass() {
+        return genericDeviceClass;
+    }
+
+    public Byte getSpecificDeviceClass() {
+        return specificDeviceClass;
+    }
+
+    public byte[] getCommandClasses() {
+        return commandClasses;
+    }
+
+    public boolean hasCommandClass(byte id) {
+        return Arrays.binarySearch(commandClasses, id) >= 0;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public List<CachedNode> getEndpoints() {
+        return endpoints;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        } else if (!(o instanceof CachedNode)) {
+            return false;
+        }
+        CachedNode n = (CachedNode)o;
+        return nodeId == n.nodeId &&
+            equals(endpointNumber, n.endpointNumber) &&
+            equals(genericDeviceClass, n.genericDeviceClass) &&
+            equals(specificDeviceClass, n.specificDeviceClass) &&
+            Arrays.equals(commandClasses, n.commandClasses) &&
+            equals(productName, n.productName) &&
+            endpoints.equals(n.endpoints);
+    }
+
+    @Override
+    public int hashCode() {
+        return ((nodeId & 0xFF) << 8) | (endpointNumber != null ? endpointNumber & 0xFF : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "CachedNode{nodeId=" + nodeId + ", endpoint=" + endpointNumber + ", generic=" + genericDeviceClass + ", specific=" + specificDeviceClass + "}";
+    }
+
+    static private boolean equals(Object o1, Object o2) {
+        return (o1 == null) ? (o2 == null) : o1.equals(o2);
+    }
+}
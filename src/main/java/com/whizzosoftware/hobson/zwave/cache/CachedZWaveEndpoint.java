@@ -0,0 +1,50 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.cache;
+
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+
+/**
+ * A placeholder endpoint created from the node cache. It allows a device to be published before the live node has
+ * been interviewed. It reports the cached command classes but has no command class state, so devices must not
+ * attempt to send commands through it.
+ *
+ * @author Dan Noguerol
+ */
+public class CachedZWaveEndpoint extends ZWaveEndpoint {
+    private final CachedNode cachedNode;
+
+    public CachedZWaveEndpoint(CachedNode cachedNode) {
+        super(cachedNode.getNodeId(), cachedNode.getGenericDeviceClass(), cachedNode.getSpecificDeviceClass());
+        this.cachedNode = cachedNode;
+    }
+
+    public CachedNode getCachedNode() {
+        return cachedNode;
+    }
+
+    public Byte getEndpointNumber() {
+        return cachedNode.getEndpointNumber();
+    }
+
+    public String getProductName() {
+        return cachedNode.getProductName();
+    }
+
+    @Override
+    public boolean hasCommandClass(byte commandClassId) {
+        return cachedNode.hasCommandClass(commandClassId);
+    }
+
+    @Override
+    public String toString() {
+        return "CachedZWaveEndpoint{" + cachedNode + "}";
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.cache;
+
+import com.whizzosoftware.hobson.zwave.util.FileUtil;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A persistent cache of the Z-Wave node inventory. This allows devices to be published at startup without waiting for
+ * every node to be re-discovered and re-interviewed.
+ *
+ * The cache is stored in a compact binary file that is written atomically so that a crash can't leave a partially
+ * written cache behind.
+ *
+ * @author Dan Noguerol
+ */
+public class NodeCache {
+    private static final int MAGIC = 0x5a574e43; // "ZWNC"
+    private static final byte VERSION = 2;
+    private static final byte FLAG_GENERIC = 0x01;
+    private static final byte FLAG_SPECIFIC = 0x02;
+
+    private final File file;
+    private final Map<Byte,CachedNode> nodes = new TreeMap<>();
+    private Integer homeId;
+    private boolean dirty;
+
+    public NodeCache(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Loads the cache from disk. A missing file results in an empty cache.
+     *
+     * @throws IOException on failure
+     */
+    synchronized public void load() throws IOException {
+        nodes.clear();
+        homeId = null;
+        dirty = false;
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Invalid node cache file: " + file);
+                }
+                byte version = in.readByte();
+                if (version < 1 || version > VERSION) {
+                    throw new IOException("Unsupported node cache version: " + file);
+                }
+                if (version > 1) {
+                    boolean hasHomeId = in.readBoolean();
+                    int id = in.readInt();
+                    homeId = hasHomeId ? id : null;
+                }
+                int count = in.readUnsignedShort();
+                for (int i=0; i < count; i++) {
+                    CachedNode n = readNode(in, false);
+                    nodes.put(n.getNodeId(), n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the cache to disk if it has changed since it was last loaded or saved.
+     *
+     * @return whether the cache was written
+     *
+     * @throws IOException on failure
+     */
+    synchronized public boolean save() throws IOException {
+        if (!dirty) {
+            return false;
+        }
+
+        FileUtil.writeAtomically(file, new FileUtil.StreamWriter() {
+            @Override
+            public void write(DataOutputStream out) throws IOException {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeBoolean(homeId != null);
+                out.writeInt(homeId != null ? homeId : 0);
+                out.writeShort(nodes.size());
+                for (CachedNode n : nodes.values()) {
+                    writeNode(out, n, false);
+                }
+            }
+        });
+        dirty = false;
+        return true;
+    }
+
+    /**
+     * Returns the home ID of the network the cached nodes belong to.
+     *
+     * @return the home ID (or null if it isn't known)
+     */
+    synchronized public Integer getHomeId() {
+        return homeId;
+    }
+
+    /**
+     * Sets the home ID of the network the cached nodes belong to.
+     *
+     * @param homeId the home ID
+     *
+     * @return whether the cache changed as a result
+     */
+    synchronized public boolean setHomeId(Integer homeId) {
+        if (homeId != null ? !homeId.equals(this.homeId) : this.homeId != null) {
+            this.homeId = homeId;
+            dirty = true;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized public Collection<CachedNode> getNodes() {
+        return new ArrayList<>(nodes.values());
+    }
+
+    synchronized public CachedNode getNode(byte nodeId) {
+        return nodes.get(nodeId);
+    }
+
+    /**
+     * Adds or replaces a node in the cache.
+     *
+     * @param node the node
+     *
+     * @return whether the cache changed as a result
+     */
+    synchronized public boolean update(CachedNode node) {
+        CachedNode old = nodes.put(node.getNodeId(), node);
+        if (!node.equals(old)) {
+            dirty = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes a node from the cache.
+     *
+     * @param nodeId the node ID
+     *
+     * @return whether the node was in the cache
+     */
+    synchronized public boolean remove(byte nodeId) {
+        if (nodes.remove(nodeId) != null) {
+            dirty = true;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized public boolean isDirty() {
+        return dirty;
+    }
+
+    synchronized public int size() {
+        return nodes.size();
+    }
+
+    private void writeNode(DataOutputStream out, CachedNode n, boolean isEndpoint) throws IOException {
+        out.writeByte(n.getNodeId());
+        if (isEndpoint) {
+            out.writeByte(n.getEndpointNumber());
+        }
+        byte flags = 0;
+        if (n.getGenericDeviceClass() != null) {
+            flags |= FLAG_GENERIC;
+        }
+        if (n.getSpecificDeviceClass() != null) {
+            flags |= FLAG_SPECIFIC;
+        }
+        out.writeByte(flags);
+        out.writeByte(n.getGenericDeviceClass() != null ? n.getGenericDeviceClass() : 0);
+        out.writeByte(n.getSpecificDeviceClass() != null ? n.getSpecificDeviceClass() : 0);
+        out.writeByte(n.getCommandClasses().length);
+        out.write(n.getCommandClasses());
+        if (!isEndpoint) {
+            out.writeUTF(n.getProductName() != null ? n.getProductName() : "");
+            out.writeByte(n.getEndpoints().size());
+            for (CachedNode ep : n.getEndpoints()) {
+                writeNode(out, ep, true);
+            }
+        }
+    }
+
+    private CachedNode readNode(DataInputStream in, boolean isEndpoint) throws IOException {
+        byte nodeId = in.readByte();
+        Byte endpointNumber = isEndpoint ? in.readByte() : null;
+        byte flags = in.readByte();
+        byte generic = in.readByte();
+        byte specific = in.readByte();
+        byte[] ccs = new byte[in.readUnsignedByte()];
+        in.readFully(ccs);
+
+        String productName = null;
+        List<CachedNode> endpoints = null;
+        if (!isEndpoint) {
+            productName = in.readUTF();
+            if (productName.length() == 0) {
+                productName = null;
+            }
+            int epCount = in.readUnsignedByte();
+            if (epCount > 0) {
+                endpoints = new ArrayList<>(epCount);
+                for (int i=0; i < epCount; i++) {
+                    endpoints.add(readNode(in, true));
+                }
+            }
+        }
+
+        return new CachedNode(
+            nodeId,
+            endpointNumber,
+            (flags & FLAG_GENERIC) != 0 ? generic : null,
+            (flags & FLAG_SPECIFIC) != 0 ? specific : null,
+            ccs,
+            productName,
+            endpoints
+        );
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.cache;
+
+import com.whizzosoftware.hobson.zwave.util.FileUtil;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A persistent snapshot of the last known variable values (and their update times) for each device. This allows
+ * devices to be published with meaningful values at startup rather than waiting for each device to report or be
+ * polled.
+ *
+ * The snapshot is written atomically so that a crash can't leave a partially written file behind.
+ *
+ * @author Dan Noguerol
+ */
+public class ValueSnapshot {
+    private static final int MAGIC = 0x5a575653; // "ZWVS"
+    private static final byte VERSION = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_BYTE = 2;
+    private static final byte TYPE_SHORT = 3;
+    private static final byte TYPE_INTEGER = 4;
+    private static final byte TYPE_LONG = 5;
+    private static final byte TYPE_FLOAT = 6;
+    private static final byte TYPE_DOUBLE = 7;
+    private static final byte TYPE_STRING = 8;
+
+    private final File file;
+    private Map<String,Map<String,Value>> devices = new HashMap<>();
+
+    public ValueSnapshot(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Loads the snapshot from disk. A missing file results in an empty snapshot.
+     *
+     * @throws IOException on failure
+     */
+    synchronized public void load() throws IOException {
+        Map<String,Map<String,Value>> map = new HashMap<>();
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Invalid value snapshot file: " + file);
+                }
+                if (in.readByte() != VERSION) {
+                    throw new IOException("Unsupported value snapshot version: " + file);
+                }
+                int deviceCount = in.readUnsignedShort();
+                for (int i=0; i < deviceCount; i++) {
+                    String deviceId = in.readUTF();
+                    int varCount = in.readUnsignedShort();
+                    Map<String,Value> values = new HashMap<>(varCount * 2);
+                    for (int j=0; j < varCount; j++) {
+                        String name = in.readUTF();
+                        long time = in.readLong();
+                        values.put(name, new Value(readValue(in), time));
+                    }
+                    map.put(deviceId, values);
+                }
+            }
+        }
+        devices = map;
+    }
+
+    /**
+     * Returns the snapshot values for a device.
+     *
+     * @param deviceId the device ID
+     *
+     * @return a Map of variable name to Value (never null)
+     */
+    synchronized public Map<String,Value> getValues(String deviceId) {
+        Map<String,Value> values = devices.get(deviceId);
+        return values != null ? values : Collections.<String,Value>emptyMap();
+    }
+
+    /**
+     * Replaces the snapshot contents and writes them to disk.
+     *
+     * @param devices a Map of device ID to the device's variable values
+     *
+     * @throws IOException on failure
+     */
+    synchronized public void save(final Map<String,Map<String,Value>> devices) throws IOException {
+        FileUtil.writeAtomically(file, new FileUtil.StreamWriter() {
+            @Override
+            public void write(DataOutputStream out) throws IOException {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeShort(devices.size());
+                for (Map.Entry<String,Map<String,Value>> de : devices.entrySet()) {
+                    out.writeUTF(de.getKey());
+                    out.writeShort(de.getValue().size());
+                    for (Map.Entry<String,Value> ve : de.getValue().entrySet()) {
+                        out.writeUTF(ve.getKey());
+                        out.writeLong(ve.getValue().getTime());
+                        writeValue(out, ve.getValue().getValue());
+                    }
+                }
+            }
+        });
+        this.devices = devices;
+    }
+
+    /**
+     * Indicates whether a value can be stored in a snapshot.
+     *
+     * @param value the value
+     *
+     * @return a boolean
+     */
+    static public boolean isSupportedValue(Object value) {
+        return (value == null || value instanceof Boolean || value instanceof Byte || value instanceof Short ||
+            value instanceof Integer || value instanceof Long || value instanceof Float || value instanceof Double ||
+            value instanceof String);
+    }
+
+    static private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean)value);
+        } else if (value instanceof Byte) {
+            out.writeByte(TYPE_BYTE);
+            out.writeByte((Byte)value);
+        } else if (value instanceof Short) {
+            out.writeByte(TYPE_SHORT);
+            out.writeShort((Short)value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer)value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long)value);
+        } else if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float)value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double)value);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF((String)value);
+        } else {
+            throw new IOException("Unsupported value type: " + value.getClass());
+        }
+    }
+
+    static private Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_BYTE:
+                return in.readByte();
+            case TYPE_SHORT:
+                return in.readShort();
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_STRING:
+                return in.readUTF();
+            default:
+                throw new IOException("Invalid value type in snapshot: " + type);
+        }
+    }
+
+    /**
+     * A variable value and the time it was last published.
+     */
+    static public class Value {
+        private final Object value;
+        private final long time;
+
+        public Value(Object value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public long getTime() {
+            return time;
+        }
+    }
+}
@@ -11,7 +11,6 @@ package com.whizzosoftware.hobson.zwave.device;
 
 import com.whizzosoftware.hobson.api.property.PropertyContainer;
 import com.whizzosoftware.hobson.api.variable.HobsonVariable;
-import com.whizzosoftware.hobson.api.variable.VariableContext;
 import com.whizzosoftware.hobson.api.variable.VariableUpdate;
 import com.whizzosoftware.hobson.zwave.ZWaveContext;
 import com.whizzosoftware.hobson.zwave.ZWavePlugin;
@@ -27,7 +26,7 @@ import java.util.List;
  * @author Dan Noguerol
  */
 public class BatterySensorDevice extends SensorDevice {
-    public BatterySensorDevice(ZWavePlugin driver, String id, ZWaveEndpoint node, Byte endpointNumber, String name, MultiInstanceCommandClass micc) {
+    public BatterySensorDevice(ZWavePlugin driver, String id, ZWaveEndpoint node, String name, Byte endpointNumber, MultiInstanceCommandClass micc) {
         super(driver, id, node, name, endpointNumber, micc);
         setDefaultName(createManufacturerDeviceName(node, name != null ? name : "Unknown Battery-powered Sensor"));
     }
@@ -41,12 +40,17 @@ public class BatterySensorDevice extends SensorDevice {
     @Override
     public void onShutdown() {}
 
+    @Override
+    public boolean isBatteryPowered() {
+        return true;
+    }
+
     @Override
     public void onUpdate(ZWaveEndpoint endpoint, List<VariableUpdate> updates) {
         super.onUpdate(endpoint, updates);
         if (endpoint instanceof RoutingBinarySensor) {
             RoutingBinarySensor sensor = (RoutingBinarySensor) endpoint;
-            updates.add(new VariableUpdate(VariableContext.create(getContext(), "batteryLevel"), sensor.getBatteryLevel()));
+            addVariableUpdate(updates, "batteryLevel", sensor.getBatteryLevel());
         }
     }
 }
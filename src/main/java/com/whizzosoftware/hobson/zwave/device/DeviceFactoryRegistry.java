@@ -0,0 +1,191 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.hobson.zwave.cache.CachedZWaveEndpoint;
+import com.whizzosoftware.wzwave.commandclass.MeterCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.ZWaveMultiChannelEndpoint;
+import com.whizzosoftware.wzwave.node.generic.*;
+import com.whizzosoftware.wzwave.node.specific.PCController;
+import com.whizzosoftware.wzwave.node.specific.RoutingBinarySensor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A registry that maps Z-Wave generic and specific device classes to the factories that create Hobson devices for
+ * them. Lookups are simple array indexing so they're constant time.
+ *
+ * New device types can be supported by registering additional factories.
+ *
+ * @author Dan Noguerol
+ */
+public class DeviceFactoryRegistry {
+    static private final Logger logger = LoggerFactory.getLogger(DeviceFactoryRegistry.class);
+
+    private final ZWaveDeviceFactory[] genericFactories = new ZWaveDeviceFactory[256];
+    private final ZWaveDeviceFactory[][] specificFactories = new ZWaveDeviceFactory[256][];
+
+    /**
+     * Registers a factory for all nodes of a generic device class.
+     *
+     * @param genericDeviceClass the generic device class
+     * @param factory the factory
+     */
+    public void register(byte genericDeviceClass, ZWaveDeviceFactory factory) {
+        genericFactories[genericDeviceClass & 0xFF] = factory;
+    }
+
+    /**
+     * Registers a factory for nodes of a specific device class. This takes precedence over any factory registered
+     * for the generic device class.
+     *
+     * @param genericDeviceClass the generic device class
+     * @param specificDeviceClass the specific device class
+     * @param factory the factory
+     */
+    public void register(byte genericDeviceClass, byte specificDeviceClass, ZWaveDeviceFactory factory) {
+        int g = genericDeviceClass & 0xFF;
+        if (specificFactories[g] == null) {
+            specificFactories[g] = new ZWaveDeviceFactory[256];
+        }
+        specificFactories[g][specificDeviceClass & 0xFF] = factory;
+    }
+
+    /**
+     * Returns the factory for a device class.
+     *
+     * @param genericDeviceClass the generic device class
+     * @param specificDeviceClass the specific device class (can be null)
+     *
+     * @return a ZWaveDeviceFactory (or null if the device class isn't supported)
+     */
+    public ZWaveDeviceFactory getFactory(Byte genericDeviceClass, Byte specificDeviceClass) {
+        if (genericDeviceClass != null) {
+            int g = genericDeviceClass & 0xFF;
+            if (specificDeviceClass != null && specificFactories[g] != null) {
+                ZWaveDeviceFactory f = specificFactories[g][specificDeviceClass & 0xFF];
+                if (f != null) {
+                    return f;
+                }
+            }
+            return genericFactories[g];
+        }
+        return null;
+    }
+
+    /**
+     * Returns the factory for a Z-Wave node or endpoint.
+     *
+     * @param endpoint the node or endpoint
+     *
+     * @return a ZWaveDeviceFactory (or null if the device class isn't supported)
+     */
+    public ZWaveDeviceFactory getFactory(ZWaveEndpoint endpoint) {
+        return getFactory(endpoint.getGenericDeviceClass(), endpoint.getSpecificDeviceClass());
+    }
+
+    /**
+     * Creates a registry containing factories for all supported Z-Wave nodes.
+     *
+     * @return a DeviceFactoryRegistry instance
+     */
+    static public DeviceFactoryRegistry createNodeRegistry() {
+        DeviceFactoryRegistry r = new DeviceFactoryRegistry();
+
+        r.register(AlarmSensor.ID, new ZWaveDeviceFactory() {
+            @Override
+            public HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+                return new SensorDevice(plugin, id, endpoint, "Alarm Sensor", endpointNumber, micc);
+            }
+        });
+        r.register(BinarySensor.ID, new ZWaveDeviceFactory() {
+            @Override
+            public HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+                return new SensorDevice(plugin, id, endpoint, null, endpointNumber, micc);
+            }
+        });
+        r.register(BinarySensor.ID, RoutingBinarySensor.ID, new ZWaveDeviceFactory() {
+            @Override
+            public HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+                return new BatterySensorDevice(plugin, id, endpoint, null, endpointNumber, micc);
+            }
+        });
+        r.register(BinarySwitch.ID, new ZWaveDeviceFactory() {
+            @Override
+            public HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+                return createSwitchDevice(plugin, id, endpoint, endpointNumber, micc);
+            }
+        });
+        r.register(Meter.ID, new ZWaveDeviceFactory() {
+            @Override
+            public HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+                if (endpoint instanceof CachedZWaveEndpoint) {
+                    // the meter type isn't known until the live node has been interviewed
+                    return null;
+                }
+                MeterCommandClass mcc = (MeterCommandClass)endpoint.getCommandClass(MeterCommandClass.ID);
+                if (mcc != null && mcc.getMeterType() == MeterCommandClass.MeterType.Electric) {
+                    return new MeterDevice(plugin, id, endpoint, null, endpointNumber, micc);
+                } else {
+                    logger.warn("Ignoring unsupported meter type: " + (mcc != null ? mcc.getMeterType() : null));
+                    return null;
+                }
+            }
+        });
+        r.register(MultilevelSwitch.ID, new ZWaveDeviceFactory() {
+            @Override
+            public HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+                return new DimmerDevice(plugin, id, endpoint, null, endpointNumber, micc);
+            }
+        });
+        r.register(StaticController.ID, PCController.ID, ZWaveDeviceFactory.IGNORE);
+
+        return r;
+    }
+
+    /**
+     * Creates a registry containing factories for all supported Z-Wave multi-channel endpoints.
+     *
+     * @return a DeviceFactoryRegistry instance
+     */
+    static public DeviceFactoryRegistry createEndpointRegistry() {
+        DeviceFactoryRegistry r = new DeviceFactoryRegistry();
+
+        r.register(ZWaveMultiChannelEndpoint.BINARY_SWITCH, new ZWaveDeviceFactory() {
+            @Override
+            public HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+                return createSwitchDevice(plugin, id, endpoint, endpointNumber, micc);
+            }
+        });
+        r.register(ZWaveMultiChannelEndpoint.MULTI_LEVEL_SWITCH, new ZWaveDeviceFactory() {
+            @Override
+            public HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+                return new DimmerDevice(plugin, id, endpoint, null, endpointNumber, micc);
+            }
+        });
+
+        return r;
+    }
+
+    /**
+     * Creates a switch device for an endpoint. Endpoints with a power meter get a device that supports the report
+     * filter properties.
+     */
+    static private SwitchDevice createSwitchDevice(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+        if (endpoint.hasCommandClass(MeterCommandClass.ID)) {
+            return new MeterSwitchDevice(plugin, id, endpoint, null, endpointNumber, micc);
+        } else {
+            return new SwitchDevice(plugin, id, endpoint, null, endpointNumber, micc);
+        }
+    }
+}
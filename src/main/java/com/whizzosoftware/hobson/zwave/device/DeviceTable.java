@@ -0,0 +1,121 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.device;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A table of Hobson Z-Wave devices indexed by node ID and endpoint number. Lookups use primitive keys so that
+ * resolving the device for an inbound Z-Wave report doesn't require any allocation.
+ *
+ * This class is not thread-safe and should only be accessed from the thread of the Z-Wave network that owns it.
+ *
+ * @author Dan Noguerol
+ */
+public class DeviceTable {
+    /**
+     * The endpoint number used to index the device representing a node itself (i.e. not a multi-channel endpoint).
+     */
+    public static final byte ROOT_ENDPOINT = 0;
+
+    private final HobsonZWaveDevice[][] nodes = new HobsonZWaveDevice[256][];
+    private int size;
+
+    public HobsonZWaveDevice get(byte nodeId, byte endpointNumber) {
+        HobsonZWaveDevice[] endpoints = nodes[nodeId & 0xFF];
+        int ix = endpointNumber & 0xFF;
+        return (endpoints != null && ix < endpoints.length) ? endpoints[ix] : null;
+    }
+
+    public void put(HobsonZWaveDevice device) {
+        int nodeIx = device.getNodeId() & 0xFF;
+        int ix = device.isEndpoint() ? device.getEndpointNumber() & 0xFF : ROOT_ENDPOINT;
+
+        HobsonZWaveDevice[] endpoints = nodes[nodeIx];
+        if (endpoints == null) {
+            endpoints = new HobsonZWaveDevice[ix + 1];
+            nodes[nodeIx] = endpoints;
+        } else if (ix >= endpoints.length) {
+            HobsonZWaveDevice[] a = new HobsonZWaveDevice[ix + 1];
+            System.arraycopy(endpoints, 0, a, 0, endpoints.length);
+            endpoints = a;
+            nodes[nodeIx] = endpoints;
+        }
+
+        if (endpoints[ix] == null) {
+            size++;
+        }
+        endpoints[ix] = device;
+    }
+
+    public boolean remove(HobsonZWaveDevice device) {
+        HobsonZWaveDevice[] endpoints = nodes[device.getNodeId() & 0xFF];
+        int ix = device.isEndpoint() ? device.getEndpointNumber() & 0xFF : ROOT_ENDPOINT;
+        if (endpoints != null && ix < endpoints.length && endpoints[ix] == device) {
+            endpoints[ix] = null;
+            size--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes a node's device and all of its endpoint devices.
+     *
+     * @param nodeId the node ID
+     *
+     * @return the devices that were removed
+     */
+    public List<HobsonZWaveDevice> removeNode(byte nodeId) {
+        List<HobsonZWaveDevice> results = new ArrayList<>();
+        HobsonZWaveDevice[] endpoints = nodes[nodeId & 0xFF];
+        if (endpoints != null) {
+            for (HobsonZWaveDevice d : endpoints) {
+                if (d != null) {
+                    results.add(d);
+                }
+            }
+            nodes[nodeId & 0xFF] = null;
+            size -= results.size();
+        }
+        return results;
+    }
+
+    /**
+     * Returns all devices in the table.
+     *
+     * @return a List of devices
+     */
+    public List<HobsonZWaveDevice> getDevices() {
+        List<HobsonZWaveDevice> results = new ArrayList<>(size);
+        for (HobsonZWaveDevice[] endpoints : nodes) {
+            if (endpoints != null) {
+                for (HobsonZWaveDevice d : endpoints) {
+                    if (d != null) {
+                        results.add(d);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    public void clear() {
+        for (int i=0; i < nodes.length; i++) {
+            nodes[i] = null;
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -14,10 +14,11 @@ import com.whizzosoftware.hobson.api.property.PropertyContainer;
 import com.whizzosoftware.hobson.api.property.TypedProperty;
 import com.whizzosoftware.hobson.api.variable.HobsonVariable;
 import com.whizzosoftware.hobson.api.variable.VariableConstants;
-import com.whizzosoftware.hobson.api.variable.VariableContext;
 import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import com.whizzosoftware.hobson.zwave.ZWaveCommand;
 import com.whizzosoftware.hobson.zwave.ZWaveContext;
 import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.hobson.zwave.util.FrameTemplate;
 import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
 import com.whizzosoftware.wzwave.commandclass.MultilevelSwitchCommandClass;
 import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
@@ -33,8 +34,14 @@ import java.util.List;
  * @author Dan Noguerol
  */
 public class DimmerDevice extends HobsonZWaveDevice {
+    private static final byte MULTILEVEL_SWITCH_SET = 0x01;
+    private static final byte MULTILEVEL_SWITCH_GET = 0x02;
+
     private Logger logger = LoggerFactory.getLogger(getClass());
 
+    private FrameTemplate setTemplate;
+    private FrameTemplate getTemplate;
+
     public DimmerDevice(ZWavePlugin zwavePlugin, String id, ZWaveEndpoint node, String name, Byte endpointNumber, MultiInstanceCommandClass micc) {
         super(zwavePlugin, id, node, endpointNumber, micc);
         setDefaultName(createManufacturerDeviceName(node, name != null ? name : "Unknown Dimmer"));
@@ -67,8 +74,8 @@ public class DimmerDevice extends HobsonZWaveDevice {
         logger.debug("Got Z-Wave device update for {}: {}", endpoint, updates);
         if (endpoint instanceof MultilevelSwitch) {
             MultilevelSwitch sw = (MultilevelSwitch) endpoint;
-            updates.add(new VariableUpdate(VariableContext.create(getContext(), VariableConstants.LEVEL), sw.getLevel()));
-            updates.add(new VariableUpdate(VariableContext.create(getContext(), VariableConstants.ON), (sw.getLevel() != null && sw.getLevel() > 0)));
+            addVariableUpdate(updates, VariableConstants.LEVEL, sw.getLevel());
+            addVariableUpdate(updates, VariableConstants.ON, (sw.getLevel() != null && sw.getLevel() > 0));
         }
     }
 
@@ -78,12 +85,66 @@ public class DimmerDevice extends HobsonZWaveDevice {
     }
 
     @Override
-    public void onSetVariable(String name, Object value) {
-        MultilevelSwitchCommandClass mscc = (MultilevelSwitchCommandClass)getEndpoint().getCommandClass(MultilevelSwitchCommandClass.ID);
+    public void onSetVariable(final String name, final Object value) {
+        // this is called from the plugin event loop so the command is built and sent on the network's thread
+        final ZWaveContext ctx = getZWaveContext();
+        ctx.runOnNetwork(new Runnable() {
+            @Override
+            public void run() {
+                ZWaveCommand cmd = createCommand(name, value);
+                if (cmd != null) {
+                    // level changes can arrive faster than the network can send them (e.g. from a slider) so only the
+                    // newest command is sent; on/off commands go through the same slot so they can't be overtaken by an
+                    // older level
+                    ctx.sendCoalescedCommand(cmd);
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onEndpointChanged() {
+        setTemplate = null;
+        getTemplate = null;
+    }
+
+    @Override
+    public ZWaveCommand createCommand(String name, Object value) {
+        if (!isInterviewed()) {
+            logger.warn("Unable to set {} on {}; the device has not been interviewed yet", name, getContext());
+            return null;
+        }
+        if (setTemplate == null) {
+            // built on first use (see SwitchDevice)
+            setTemplate = createFrameTemplate("Multilevel Switch Set", 2, MultilevelSwitchCommandClass.ID, MULTILEVEL_SWITCH_SET, (byte)0);
+            getTemplate = createFrameTemplate("Multilevel Switch Get", -1, MultilevelSwitchCommandClass.ID, MULTILEVEL_SWITCH_GET);
+        }
         if (VariableConstants.LEVEL.equals(name)) {
-            Byte level = Byte.parseByte(value.toString());
-            getZWaveDriver().getZWaveController().sendDataFrame(mscc.createSet(getNodeId(), level));
-            getZWaveDriver().getZWaveController().sendDataFrame(mscc.createGet(getNodeId()));
+            Byte level = null;
+            if (value instanceof Number) {
+                level = ((Number)value).byteValue();
+            } else if (value != null) {
+                try {
+                    level = Byte.parseByte(value.toString());
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring invalid level for {}: {}", getContext(), value);
+                }
+            }
+            if (level != null) {
+                return new ZWaveCommand(this, setTemplate.create(level), getTemplate.create(), VariableConstants.LEVEL, level);
+            }
+        } else if (VariableConstants.ON.equals(name)) {
+            Boolean on = null;
+            if ("true".equals(value) || Boolean.TRUE.equals(value)) {
+                on = true;
+            } else if ("false".equals(value) || Boolean.FALSE.equals(value)) {
+                on = false;
+            }
+            if (on != null) {
+                // a level of 0xFF tells the dimmer to return to its last non-zero level
+                return new ZWaveCommand(this, setTemplate.create(on ? (byte)0xFF : (byte)0), getTemplate.create(), VariableConstants.ON, on);
+            }
         }
+        return null;
     }
 }
@@ -11,9 +11,16 @@ package com.whizzosoftware.hobson.zwave.device;
 
 import com.whizzosoftware.hobson.api.device.AbstractHobsonDevice;
 import com.whizzosoftware.hobson.api.property.PropertyContainer;
+import com.whizzosoftware.hobson.api.variable.HobsonVariable;
+import com.whizzosoftware.hobson.api.variable.VariableContext;
 import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import com.whizzosoftware.hobson.zwave.ZWaveCommand;
 import com.whizzosoftware.hobson.zwave.ZWaveContext;
+import com.whizzosoftware.hobson.zwave.ZWaveNetwork;
 import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.hobson.zwave.cache.CachedZWaveEndpoint;
+import com.whizzosoftware.hobson.zwave.cache.ValueSnapshot;
+import com.whizzosoftware.hobson.zwave.util.FrameTemplate;
 import com.whizzosoftware.wzwave.commandclass.ManufacturerSpecificCommandClass;
 import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
 import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
@@ -28,11 +35,18 @@ import java.util.Map;
  * @author Dan Noguerol
  */
 abstract public class HobsonZWaveDevice extends AbstractHobsonDevice {
+
+    private volatile ZWaveNetwork network;
     private ZWaveEndpoint endpoint;
     private Byte endpointNumber;
     private String primaryVariable;
     private Map<String,Object> initialValues;
+    private Map<String,Long> initialTimes;
     private MultiInstanceCommandClass micc;
+    private MeterHistory meterHistory;
+    private volatile ReportFilter reportFilter;
+    private final LastValueCache lastValues = new LastValueCache();
+    private final Map<String,VariableContext> variableContexts = new HashMap<>();
 
     public HobsonZWaveDevice(ZWavePlugin driver, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
         super(driver, id);
@@ -44,14 +58,74 @@ abstract public class HobsonZWaveDevice extends AbstractHobsonDevice {
     @Override
     public void onStartup(PropertyContainer config) {
         super.onStartup(config);
+        setReportFilter(ReportFilter.create(config));
+
+        // the initial values have now been published so they become the baseline for change detection
+        if (initialValues != null) {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String,Object> e : initialValues.entrySet()) {
+                Long time = (initialTimes != null) ? initialTimes.get(e.getKey()) : null;
+                if (time != null) {
+                    lastValues.restore(e.getKey(), e.getValue(), time);
+                } else {
+                    lastValues.seed(e.getKey(), e.getValue(), now);
+                }
+            }
+        }
+
         clearInitialValues();
     }
 
+    @Override
+    public void onDeviceConfigurationUpdate(PropertyContainer config) {
+        super.onDeviceConfigurationUpdate(config);
+        setReportFilter(ReportFilter.create(config));
+    }
+
+    /**
+     * Sets the filter applied to the device's noisy numeric variables (see addVariableUpdate()).
+     *
+     * @param reportFilter the filter (or null to publish every change)
+     */
+    public void setReportFilter(ReportFilter reportFilter) {
+        this.reportFilter = reportFilter;
+    }
+
+    public ReportFilter getReportFilter() {
+        return reportFilter;
+    }
+
+    /**
+     * Returns how often this device should be polled. The default implementation doesn't poll.
+     *
+     * @param defaultInterval the plugin's configured default poll interval in milliseconds
+     *
+     * @return the poll interval in milliseconds (or 0 if the device shouldn't be polled)
+     */
+    public long getPollInterval(long defaultInterval) {
+        return 0;
+    }
+
+    /**
+     * Called when the device is due to be polled.
+     *
+     * @param ctx the context used to send frames
+     */
     public void onRefresh(ZWaveContext ctx) {
         // NO-OP
     }
 
-    protected ZWaveEndpoint getEndpoint() {
+    /**
+     * Indicates whether the device is a battery-powered node that is normally asleep. Frames for such devices are
+     * held until the node wakes up (see WakeUpQueue).
+     *
+     * @return a boolean
+     */
+    public boolean isBatteryPowered() {
+        return false;
+    }
+
+    public ZWaveEndpoint getEndpoint() {
         return endpoint;
     }
 
@@ -59,6 +133,51 @@ abstract public class HobsonZWaveDevice extends AbstractHobsonDevice {
         return micc;
     }
 
+    /**
+     * Binds the device to a new endpoint. This is used when a device published from the node cache is reconciled
+     * with its live Z-Wave node.
+     *
+     * @param endpoint the live node or endpoint
+     * @param micc the multi-instance command class of the parent node (or null if the device isn't an endpoint)
+     */
+    public void setEndpoint(ZWaveEndpoint endpoint, MultiInstanceCommandClass micc) {
+        this.endpoint = endpoint;
+        this.micc = micc;
+        onEndpointChanged();
+    }
+
+    /**
+     * Called when the device has been bound to a new endpoint. Subclasses should discard anything they built from
+     * the previous one (e.g. frame templates).
+     */
+    protected void onEndpointChanged() {
+    }
+
+    /**
+     * Creates a template for frames sent to the device. The frames are wrapped in a multi-channel encapsulation
+     * (using the parent node's multi-instance command class) if the device is a multi-channel endpoint, so the
+     * template can't be created until the live node has been interviewed.
+     *
+     * @param name a description of the frames (used for logging)
+     * @param valueIndex the index of the value byte within the command (or -1 if the command has no value)
+     * @param command the command class ID, command ID and any parameters
+     *
+     * @return a FrameTemplate instance
+     */
+    protected FrameTemplate createFrameTemplate(String name, int valueIndex, byte... command) {
+        return new FrameTemplate(name, getNodeId(), endpointNumber, micc, valueIndex, command);
+    }
+
+    /**
+     * Indicates whether the device is bound to a live Z-Wave node. Devices published from the node cache can't send
+     * commands until the live node has been interviewed.
+     *
+     * @return a boolean
+     */
+    public boolean isInterviewed() {
+        return !(endpoint instanceof CachedZWaveEndpoint);
+    }
+
     public boolean hasPrimaryVariable() {
         return (primaryVariable != null);
     }
@@ -87,7 +206,7 @@ abstract public class HobsonZWaveDevice extends AbstractHobsonDevice {
         // if the device is started, we process the update;
         if (isStarted()) {
             onUpdate(endpoint, updates);
-            setDeviceAvailability(true, System.currentTimeMillis());
+            updateAvailability(true, System.currentTimeMillis());
         // otherwise, squirrel away the values and use as initial values when the device is finally started
         } else {
             if (initialValues == null) {
@@ -95,29 +214,215 @@ abstract public class HobsonZWaveDevice extends AbstractHobsonDevice {
             }
             for (VariableUpdate vu : updates) {
                 initialValues.put(vu.getContext().getName(), vu.getValue());
+                if (initialTimes != null) {
+                    initialTimes.remove(vu.getContext().getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores variable values from a previous run so they can be published when the device starts. Any value
+     * reported by the device before it starts takes precedence.
+     *
+     * @param values a Map of variable name to snapshot value
+     */
+    public void restoreValues(Map<String,ValueSnapshot.Value> values) {
+        if (!isStarted() && values.size() > 0) {
+            if (initialValues == null) {
+                initialValues = new HashMap<>();
+            }
+            if (initialTimes == null) {
+                initialTimes = new HashMap<>();
+            }
+            for (Map.Entry<String,ValueSnapshot.Value> e : values.entrySet()) {
+                if (!initialValues.containsKey(e.getKey())) {
+                    initialValues.put(e.getKey(), e.getValue().getValue());
+                    initialTimes.put(e.getKey(), e.getValue().getTime());
+                }
             }
         }
     }
 
+    /**
+     * Updates the device's availability.
+     *
+     * @param available whether the device is available
+     * @param now the current time
+     */
+    public void updateAvailability(boolean available, long now) {
+        setDeviceAvailability(available, now);
+    }
+
+    /**
+     * Returns the last value published for each of the device's variables.
+     *
+     * @return a LastValueCache instance
+     */
+    public LastValueCache getLastValues() {
+        return lastValues;
+    }
+
     abstract public void onUpdate(ZWaveEndpoint endpoint, List<VariableUpdate> updates);
 
+    /**
+     * Creates the command needed to set a variable on this device. This allows commands for many devices to be
+     * sent together (e.g. for scenes).
+     *
+     * @param name the variable name
+     * @param value the new variable value
+     *
+     * @return a ZWaveCommand instance (or null if the variable can't be set)
+     */
+    public ZWaveCommand createCommand(String name, Object value) {
+        return null;
+    }
+
+    /**
+     * Adds a variable update to a list if its value differs from the last one published for the variable (or the
+     * plugin's republish interval has elapsed). Devices should use this from onUpdate() rather than adding to the
+     * list directly.
+     *
+     * @param updates the list of updates to add to
+     * @param name the variable name
+     * @param value the new variable value
+     */
+    protected void addVariableUpdate(List<VariableUpdate> updates, String name, Object value) {
+        addVariableUpdate(updates, name, value, null);
+    }
+
+    /**
+     * Adds a variable update to a list, suppressing changes that a filter considers insignificant. Devices should
+     * pass their report filter (see getReportFilter()) for noisy numeric variables such as meter readings.
+     *
+     * @param updates the list of updates to add to
+     * @param name the variable name
+     * @param value the new variable value
+     * @param filter the filter to apply to changed values (or null)
+     */
+    protected void addVariableUpdate(List<VariableUpdate> updates, String name, Object value, ReportFilter filter) {
+        getNetwork().getConfirmationTracker().onVariableUpdate(this, name, value);
+        if (lastValues.update(name, value, System.currentTimeMillis(), getZWaveDriver().getVariableRepublishInterval(), filter)) {
+            updates.add(new VariableUpdate(getVariableContext(name), value));
+        }
+    }
+
+    /**
+     * Creates the device's meter history and publishes its derived variables. Devices with a power meter should call
+     * this from onStartup() before calling the superclass implementation.
+     */
+    protected void publishMeterHistoryVariables() {
+        meterHistory = new MeterHistory();
+
+        // continue the energy total from the previous run
+        Object kwh = getInitialValue(MeterHistory.VAR_KWH);
+        if (kwh instanceof Number) {
+            meterHistory.setKilowattHours(((Number)kwh).doubleValue());
+        }
+
+        for (String name : MeterHistory.VARIABLES) {
+            publishVariable(name, getInitialValue(name), HobsonVariable.Mask.READ_ONLY, getInitialValueUpdateTime(name));
+        }
+    }
+
+    /**
+     * Records a power meter reading in the device's meter history. The derived variables are only updated when a
+     * minute of readings has been completed so that each reading doesn't result in an update.
+     *
+     * @param updates the list of updates to add to
+     * @param watts the meter reading (ignored if it isn't a Number)
+     */
+    protected void addMeterSample(List<VariableUpdate> updates, Object watts) {
+        if (meterHistory != null && watts instanceof Number) {
+            if (meterHistory.add(System.currentTimeMillis(), ((Number)watts).floatValue())) {
+                addDerivedMeterUpdate(updates, MeterHistory.VAR_MIN_WATTS, meterHistory.getMinimumWatts());
+                addDerivedMeterUpdate(updates, MeterHistory.VAR_MAX_WATTS, meterHistory.getMaximumWatts());
+                addDerivedMeterUpdate(updates, MeterHistory.VAR_AVG_WATTS, meterHistory.getAverageWatts());
+                addVariableUpdate(updates, MeterHistory.VAR_KWH, meterHistory.getKilowattHours());
+            }
+        }
+    }
+
+    private void addDerivedMeterUpdate(List<VariableUpdate> updates, String name, float value) {
+        if (!Float.isNaN(value)) {
+            addVariableUpdate(updates, name, value);
+        }
+    }
+
+    /**
+     * Returns the device's meter history.
+     *
+     * @return a MeterHistory instance (or null if the device doesn't have a power meter)
+     */
+    public MeterHistory getMeterHistory() {
+        return meterHistory;
+    }
+
+    /**
+     * Returns the context for one of the device's variables. Contexts are created once and reused so that processing
+     * a report doesn't allocate them.
+     *
+     * @param name the variable name
+     *
+     * @return a VariableContext instance
+     */
+    protected VariableContext getVariableContext(String name) {
+        VariableContext ctx = variableContexts.get(name);
+        if (ctx == null) {
+            ctx = VariableContext.create(getContext(), name);
+            variableContexts.put(name, ctx);
+        }
+        return ctx;
+    }
+
     protected Object getInitialValue(String varName) {
         return initialValues != null ? initialValues.get(varName) : null;
     }
 
     protected Long getInitialValueUpdateTime(String varName) {
+        if (initialTimes != null && initialTimes.containsKey(varName)) {
+            return initialTimes.get(varName);
+        }
         return initialValues != null && initialValues.containsKey(varName) ? System.currentTimeMillis() : null;
     }
 
     protected void clearInitialValues() {
         initialValues = null;
+        initialTimes = null;
     }
 
     protected ZWavePlugin getZWaveDriver() {
         return (ZWavePlugin)getPlugin();
     }
 
+    /**
+     * Returns the context used to send Z-Wave frames for this device.
+     *
+     * @return a ZWaveContext instance
+     */
+    protected ZWaveContext getZWaveContext() {
+        return getNetwork();
+    }
+
+    /**
+     * Returns the Z-Wave network the device belongs to.
+     *
+     * @return a ZWaveNetwork instance (the plugin's primary network if the device hasn't been assigned one)
+     */
+    public ZWaveNetwork getNetwork() {
+        ZWaveNetwork n = network;
+        return n != null ? n : getZWaveDriver().getNetwork(0);
+    }
+
+    public void setNetwork(ZWaveNetwork network) {
+        this.network = network;
+    }
+
     protected String createManufacturerDeviceName(ZWaveEndpoint node, String defaultName) {
+        if (node instanceof CachedZWaveEndpoint) {
+            String productName = ((CachedZWaveEndpoint)node).getProductName();
+            return productName != null ? productName : defaultName;
+        }
         ManufacturerSpecificCommandClass mscc = (ManufacturerSpecificCommandClass)node.getCommandClass(ManufacturerSpecificCommandClass.ID);
         if (mscc != null && mscc.getProductInfo() != null) {
             return mscc.getProductInfo().toString();
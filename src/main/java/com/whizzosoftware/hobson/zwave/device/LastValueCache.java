@@ -0,0 +1,154 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.device;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A cache of the last value published for each of a device's variables. It's used to suppress variable updates
+ * whose value hasn't changed since it was last published.
+ *
+ * This class is not thread-safe and should only be accessed from the thread of the Z-Wave network that owns it.
+ *
+ * @author Dan Noguerol
+ */
+public class LastValueCache {
+    private final Map<String,Entry> entries = new HashMap<>();
+    private long version;
+
+    /**
+     * Records a value that has been published outside of the normal update path (e.g. an initial value).
+     *
+     * @param name the variable name
+     * @param value the published value
+     * @param time the time the value was published
+     */
+    public void seed(String name, Object value, long time) {
+        Entry e = entries.get(name);
+        if (e == null) {
+            entries.put(name, new Entry(value, time));
+        } else {
+            e.value = value;
+            e.time = time;
+            e.confirmed = true;
+        }
+        version++;
+    }
+
+    /**
+     * Records a value restored from a previous run. Restored values are retained (so they survive subsequent
+     * snapshots) but never suppress the first update received from the device.
+     *
+     * @param name the variable name
+     * @param value the restored value
+     * @param time the time the value was originally published
+     */
+    public void restore(String name, Object value, long time) {
+        Entry e = new Entry(value, time);
+        e.confirmed = false;
+        entries.put(name, e);
+        version++;
+    }
+
+    /**
+     * Determines whether a new variable value should be published. If so, the value is recorded as the last published
+     * value.
+     *
+     * @param name the variable name
+     * @param value the new value
+     * @param now the current time
+     * @param republishInterval the interval (in ms) after which an unchanged value is republished (0 to disable)
+     *
+     * @return true if the value should be published
+     */
+    public boolean update(String name, Object value, long now, long republishInterval) {
+        return update(name, value, now, republishInterval, null);
+    }
+
+    /**
+     * Determines whether a new variable value should be published, suppressing changes that a filter considers
+     * insignificant. If the value should be published, it's recorded as the last published value.
+     *
+     * @param name the variable name
+     * @param value the new value
+     * @param now the current time
+     * @param republishInterval the interval (in ms) after which an unchanged value is republished (0 to disable)
+     * @param filter the filter to apply to changed values (or null)
+     *
+     * @return true if the value should be published
+     */
+    public boolean update(String name, Object value, long now, long republishInterval, ReportFilter filter) {
+        Entry e = entries.get(name);
+        if (e == null) {
+            entries.put(name, new Entry(value, now));
+            version++;
+            return true;
+        } else if (!e.confirmed || (republishInterval > 0 && now - e.time >= republishInterval) ||
+                (!equals(e.value, value) && (filter == null || !filter.isSuppressed(e.value, e.time, value, now)))) {
+            e.value = value;
+            e.time = now;
+            e.confirmed = true;
+            version++;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public boolean hasValue(String name) {
+        return entries.containsKey(name);
+    }
+
+    public Object getValue(String name) {
+        Entry e = entries.get(name);
+        return e != null ? e.value : null;
+    }
+
+    public Long getTime(String name) {
+        Entry e = entries.get(name);
+        return e != null ? e.time : null;
+    }
+
+    public Collection<String> getNames() {
+        return entries.keySet();
+    }
+
+    /**
+     * Returns a counter that changes whenever a value is recorded. This allows callers to cheaply determine whether
+     * anything has changed since they last looked.
+     *
+     * @return a long
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void clear() {
+        entries.clear();
+        version++;
+    }
+
+    static private boolean equals(Object o1, Object o2) {
+        return (o1 == null) ? (o2 == null) : o1.equals(o2);
+    }
+
+    static private class Entry {
+        Object value;
+        long time;
+        boolean confirmed = true;
+
+        Entry(Object value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.hobson.api.property.TypedProperty;
+import com.whizzosoftware.hobson.api.variable.VariableConstants;
+import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+
+/**
+ * An electric meter. Its readings can be filtered with the report filter properties.
+ *
+ * @author Dan Noguerol
+ */
+public class MeterDevice extends SensorDevice {
+    public MeterDevice(ZWavePlugin plugin, String id, ZWaveEndpoint node, String name, Byte endpointNumber, MultiInstanceCommandClass micc) {
+        super(plugin, id, node, name, endpointNumber, micc);
+        setPrimaryVariable(VariableConstants.ENERGY_CONSUMPTION_WATTS);
+    }
+
+    @Override
+    protected TypedProperty[] createSupportedProperties() {
+        // this is called from the superclass constructor so the answer has to come from the class rather than a field
+        return ReportFilter.createProperties();
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.device;
+
+/**
+ * A fixed-size history of power meter readings.
+ *
+ * Readings are downsampled as they arrive into rings of minute and hour buckets (minimum, maximum and energy used).
+ * Energy is integrated assuming the power stays at each reading until the next one (meters often only report when
+ * the power changes), so the average power of a bucket is weighted by time rather than by the number of readings.
+ * Adding a reading never allocates.
+ *
+ * This class is not thread-safe and should only be accessed from the device's network thread.
+ *
+ * @author Dan Noguerol
+ */
+public class MeterHistory {
+    public static final String VAR_MIN_WATTS = "energyConsumptionWattsMin";
+    public static final String VAR_MAX_WATTS = "energyConsumptionWattsMax";
+    public static final String VAR_AVG_WATTS = "energyConsumptionWattsAvg";
+    public static final String VAR_KWH = "energyConsumptionKwh";
+    public static final String[] VARIABLES = {VAR_MIN_WATTS, VAR_MAX_WATTS, VAR_AVG_WATTS, VAR_KWH};
+
+    public static final long MINUTE = 60000;
+    public static final long HOUR = 60 * MINUTE;
+    private static final double MS_PER_HOUR = 3600000.0;
+
+    private final Buckets minutes = new Buckets(60, MINUTE);
+    private final Buckets hours = new Buckets(24, HOUR);
+    private long lastTime = -1;
+    private float lastValue;
+    private double totalWattHours;
+
+    /**
+     * Adds a reading.
+     *
+     * @param time the time of the reading
+     * @param watts the power in watts
+     *
+     * @return true if the reading started a new minute (i.e. the derived values now include a completed minute)
+     */
+    public boolean add(long time, float watts) {
+        if (lastTime >= 0 && time < lastTime) {
+            // ignore readings that go back in time (e.g. after a clock change) so the buckets stay ordered
+            return false;
+        }
+
+        boolean completed = false;
+
+        // integrate the previous reading up to this one
+        if (lastTime >= 0) {
+            completed = minutes.integrate(lastTime, time, lastValue);
+            hours.integrate(lastTime, time, lastValue);
+            totalWattHours += (double)lastValue * (time - lastTime) / MS_PER_HOUR;
+        }
+
+        completed |= minutes.accumulate(time, watts, 0, 0);
+        hours.accumulate(time, watts, 0, 0);
+
+        lastTime = time;
+        lastValue = watts;
+
+        return completed;
+    }
+
+    /**
+     * Returns the total energy used since the history was created (or since the total was last set).
+     *
+     * @return the energy in kilowatt hours
+     */
+    public double getKilowattHours() {
+        return totalWattHours / 1000.0;
+    }
+
+    /**
+     * Sets the total energy used (e.g. to continue a total from a previous run).
+     *
+     * @param kwh the energy in kilowatt hours
+     */
+    public void setKilowattHours(double kwh) {
+        this.totalWattHours = kwh * 1000.0;
+    }
+
+    /**
+     * Returns the lowest power over the last hour.
+     *
+     * @return the power in watts (or NaN if there are no readings)
+     */
+    public float getMinimumWatts() {
+        return minutes.getMinimum(HOUR);
+    }
+
+    /**
+     * Returns the highest power over the last hour.
+     *
+     * @return the power in watts (or NaN if there are no readings)
+     */
+    public float getMaximumWatts() {
+        return minutes.getMaximum(HOUR);
+    }
+
+    /**
+     * Returns the time-weighted average power over the last hour.
+     *
+     * @return the power in watts (or NaN if less than two readings have been integrated)
+     */
+    public float getAverageWatts() {
+        return minutes.getAverage(HOUR);
+    }
+
+    public Buckets getMinutes() {
+        return minutes;
+    }
+
+    public Buckets getHours() {
+        return hours;
+    }
+
+    /**
+     * A ring of fixed-width time buckets.
+     */
+    static public class Buckets {
+        private final long width;
+        private final long[] starts;
+        private final float[] mins;
+        private final float[] maxes;
+        private final double[] wattHours;
+        private final long[] durations;
+        private int head = -1;
+        private int count;
+
+        Buckets(int size, long width) {
+            this.width = width;
+            this.starts = new long[size];
+            this.mins = new float[size];
+            this.maxes = new float[size];
+            this.wattHours = new double[size];
+            this.durations = new long[size];
+        }
+
+        /**
+         * Integrates a constant power over a period, splitting it at bucket boundaries. Buckets that would be
+         * overwritten before the end of the period are skipped so a long period costs no more than the ring's size.
+         *
+         * @return true if a new bucket was started after an existing one
+         */
+        boolean integrate(long from, long to, float watts) {
+            boolean completed = false;
+            long t = Math.max(from, to - (to % width) - (starts.length - 1) * width);
+            while (t < to) {
+                long end = Math.min(to, t - (t % width) + width);
+                completed |= accumulate(t, watts, (double)watts * (end - t) / MS_PER_HOUR, end - t);
+                t = end;
+            }
+            return completed;
+        }
+
+        /**
+         * Adds a value and an amount of energy to the bucket containing a time.
+         *
+         * @return true if a new bucket was started after an existing one
+         */
+        boolean accumulate(long time, float watts, double wh, long duration) {
+            long start = time - (time % width);
+            boolean started = false;
+            if (head < 0 || starts[head] != start) {
+                started = (head >= 0);
+                head = (head + 1) % starts.length;
+                starts[head] = start;
+                mins[head] = watts;
+                maxes[head] = watts;
+                wattHours[head] = 0;
+                durations[head] = 0;
+                if (count < starts.length) {
+                    count++;
+                }
+            } else {
+                if (watts < mins[head]) {
+                    mins[head] = watts;
+                }
+                if (watts > maxes[head]) {
+                    maxes[head] = watts;
+                }
+            }
+            wattHours[head] += wh;
+            durations[head] += duration;
+            return started;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public long getStart(int ix) {
+            return starts[index(ix)];
+        }
+
+        public float getMinimum(int ix) {
+            return mins[index(ix)];
+        }
+
+        public float getMaximum(int ix) {
+            return maxes[index(ix)];
+        }
+
+        public double getKilowattHours(int ix) {
+            return wattHours[index(ix)] / 1000.0;
+        }
+
+        /**
+         * Returns the time-weighted average power of a bucket.
+         *
+         * @param ix the bucket index (0 is the most recent)
+         *
+         * @return the power in watts (or NaN if no energy has been integrated for the bucket)
+         */
+        public float getAverage(int ix) {
+            int i = index(ix);
+            return durations[i] > 0 ? (float)(wattHours[i] * MS_PER_HOUR / durations[i]) : Float.NaN;
+        }
+
+        float getMinimum(long period) {
+            float result = Float.NaN;
+            for (int ix=0; ix < count; ix++) {
+                int i = index(ix);
+                if (starts[head] - starts[i] >= period) {
+                    break;
+                }
+                if (Float.isNaN(result) || mins[i] < result) {
+                    result = mins[i];
+                }
+            }
+            return result;
+        }
+
+        float getMaximum(long period) {
+            float result = Float.NaN;
+            for (int ix=0; ix < count; ix++) {
+                int i = index(ix);
+                if (starts[head] - starts[i] >= period) {
+                    break;
+                }
+                if (Float.isNaN(result) || maxes[i] > result) {
+                    result = maxes[i];
+                }
+            }
+            return result;
+        }
+
+        float getAverage(long period) {
+            double wh = 0;
+            long duration = 0;
+            for (int ix=0; ix < count; ix++) {
+                int i = index(ix);
+                if (starts[head] - starts[i] >= period) {
+                    break;
+                }
+                wh += wattHours[i];
+                duration += durations[i];
+            }
+            return duration > 0 ? (float)(wh * MS_PER_HOUR / duration) : Float.NaN;
+        }
+
+        private int index(int ix) {
+            if (ix < 0 || ix >= count) {
+                throw new IndexOutOfBoundsException("Invalid bucket index: " + ix);
+            }
+            return (head - ix + starts.length) % starts.length;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.hobson.api.property.TypedProperty;
+import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+
+/**
+ * A switchable device with a power meter. Its meter readings can be filtered with the report filter properties.
+ *
+ * @author Dan Noguerol
+ */
+public class MeterSwitchDevice extends SwitchDevice {
+    public MeterSwitchDevice(ZWavePlugin zwavePlugin, String id, ZWaveEndpoint node, String name, Byte endpointNumber, MultiInstanceCommandClass micc) {
+        super(zwavePlugin, id, node, name, endpointNumber, micc);
+    }
+
+    @Override
+    protected TypedProperty[] createSupportedProperties() {
+        // see MeterDevice.createSupportedProperties()
+        return ReportFilter.createProperties();
+    }
+}
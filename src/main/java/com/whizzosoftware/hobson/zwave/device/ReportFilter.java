@@ -0,0 +1,113 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.hobson.api.property.PropertyContainer;
+import com.whizzosoftware.hobson.api.property.TypedProperty;
+import com.whizzosoftware.hobson.zwave.util.ConfigUtil;
+
+/**
+ * Decides whether a new numeric variable value differs enough from the last published one to be worth publishing.
+ *
+ * A value is suppressed if it's within an absolute or percentage deadband of the last published value, or if it
+ * arrives sooner than a minimum interval after it. Values are always compared with the last <i>published</i> value
+ * so that slow drift still gets published once it exceeds the deadband.
+ *
+ * Instances are immutable.
+ *
+ * @author Dan Noguerol
+ */
+public class ReportFilter {
+    public static final String PROP_DEADBAND_ABSOLUTE = "deadband.absolute";
+    public static final String PROP_DEADBAND_PERCENT = "deadband.percent";
+    public static final String PROP_MIN_REPORT_INTERVAL = "report.min.interval";
+
+    private final double absoluteDeadband;
+    private final double percentDeadband;
+    private final long minInterval;
+
+    public ReportFilter(double absoluteDeadband, double percentDeadband, long minInterval) {
+        this.absoluteDeadband = Math.max(absoluteDeadband, 0);
+        this.percentDeadband = Math.max(percentDeadband, 0);
+        this.minInterval = Math.max(minInterval, 0);
+    }
+
+    /**
+     * Creates a filter from a device configuration.
+     *
+     * @param config the device configuration (can be null)
+     *
+     * @return a ReportFilter instance (or null if the configuration doesn't filter anything)
+     */
+    static public ReportFilter create(PropertyContainer config) {
+        ReportFilter f = new ReportFilter(
+            ConfigUtil.getDouble(config, PROP_DEADBAND_ABSOLUTE, 0),
+            ConfigUtil.getDouble(config, PROP_DEADBAND_PERCENT, 0),
+            ConfigUtil.getLong(config, PROP_MIN_REPORT_INTERVAL, 0) * 1000
+        );
+        return f.isEnabled() ? f : null;
+    }
+
+    /**
+     * Returns the device configuration properties used to create a filter.
+     *
+     * @return an array of TypedProperty instances
+     */
+    static public TypedProperty[] createProperties() {
+        return new TypedProperty[] {
+            new TypedProperty.Builder(PROP_DEADBAND_ABSOLUTE, "Absolute Deadband", "A reading that differs from the last published value by this amount or less is not published (e.g. 0.5 watts)", TypedProperty.Type.NUMBER).build(),
+            new TypedProperty.Builder(PROP_DEADBAND_PERCENT, "Percentage Deadband", "A reading that differs from the last published value by this percentage or less is not published", TypedProperty.Type.NUMBER).build(),
+            new TypedProperty.Builder(PROP_MIN_REPORT_INTERVAL, "Minimum Report Interval", "The minimum number of seconds between published readings", TypedProperty.Type.NUMBER).build()
+        };
+    }
+
+    public boolean isEnabled() {
+        return absoluteDeadband > 0 || percentDeadband > 0 || minInterval > 0;
+    }
+
+    public double getAbsoluteDeadband() {
+        return absoluteDeadband;
+    }
+
+    public double getPercentDeadband() {
+        return percentDeadband;
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    /**
+     * Determines whether a value should be suppressed. Only numeric values are ever suppressed.
+     *
+     * @param lastValue the last published value
+     * @param lastTime the time the last value was published
+     * @param value the new value
+     * @param now the current time
+     *
+     * @return true if the value should not be published
+     */
+    public boolean isSuppressed(Object lastValue, long lastTime, Object value, long now) {
+        if (!(lastValue instanceof Number) || !(value instanceof Number)) {
+            return false;
+        }
+        if (now - lastTime < minInterval) {
+            return true;
+        }
+        double last = ((Number)lastValue).doubleValue();
+        double delta = Math.abs(((Number)value).doubleValue() - last);
+        return (absoluteDeadband > 0 && delta <= absoluteDeadband) || (percentDeadband > 0 && delta <= Math.abs(last) * percentDeadband / 100.0);
+    }
+
+    @Override
+    public String toString() {
+        return "deadband=" + absoluteDeadband + ", deadbandPercent=" + percentDeadband + ", minInterval=" + minInterval + "ms";
+    }
+}
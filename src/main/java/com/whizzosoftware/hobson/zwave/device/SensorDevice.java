@@ -14,9 +14,9 @@ import com.whizzosoftware.hobson.api.property.PropertyContainer;
 import com.whizzosoftware.hobson.api.property.TypedProperty;
 import com.whizzosoftware.hobson.api.variable.HobsonVariable;
 import com.whizzosoftware.hobson.api.variable.VariableConstants;
-import com.whizzosoftware.hobson.api.variable.VariableContext;
 import com.whizzosoftware.hobson.api.variable.VariableUpdate;
 import com.whizzosoftware.hobson.zwave.ZWaveContext;
+import com.whizzosoftware.hobson.zwave.TransmitPriority;
 import com.whizzosoftware.hobson.zwave.ZWavePlugin;
 import com.whizzosoftware.wzwave.commandclass.MeterCommandClass;
 import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
@@ -44,15 +44,29 @@ public class SensorDevice extends HobsonZWaveDevice {
     @Override
     public void onStartup(PropertyContainer config) {
         publishVariable(getPrimaryVariable(), getInitialValue(getPrimaryVariable()), HobsonVariable.Mask.READ_ONLY, getInitialValueUpdateTime(getPrimaryVariable()));
+        if (VariableConstants.ENERGY_CONSUMPTION_WATTS.equals(getPrimaryVariable())) {
+            publishMeterHistoryVariables();
+        }
         super.onStartup(config);
     }
 
+    @Override
+    public long getPollInterval(long defaultInterval) {
+        if (getEndpoint() instanceof Meter) {
+            MeterCommandClass mcc = (MeterCommandClass)getEndpoint().getCommandClass(MeterCommandClass.ID);
+            if (mcc != null && mcc.getMeterType() == MeterCommandClass.MeterType.Electric) {
+                return defaultInterval;
+            }
+        }
+        return 0;
+    }
+
     @Override
     public void onRefresh(ZWaveContext ctx) {
         if (getEndpoint() instanceof Meter) {
             MeterCommandClass mcc = (MeterCommandClass)getEndpoint().getCommandClass(MeterCommandClass.ID);
             if (mcc.getMeterType() == MeterCommandClass.MeterType.Electric) {
-                ctx.sendDataFrame(mcc.createGet(getNodeId(), MeterCommandClass.SCALE_ELECTRIC_W));
+                ctx.sendDataFrame(mcc.createGet(getNodeId(), MeterCommandClass.SCALE_ELECTRIC_W), TransmitPriority.POLL);
             }
         }
     }
@@ -65,12 +79,14 @@ public class SensorDevice extends HobsonZWaveDevice {
         logger.debug("Got Z-Wave device update for {}: {}", endpoint, updates);
         if (endpoint instanceof BinarySensor) {
             BinarySensor sensor = (BinarySensor)endpoint;
-            updates.add(new VariableUpdate(VariableContext.create(getContext(), VariableConstants.ON), !sensor.isSensorIdle()));
+            addVariableUpdate(updates, VariableConstants.ON, !sensor.isSensorIdle());
         } else if (endpoint instanceof Meter && hasPrimaryVariable()) {
             Meter meter = (Meter)endpoint;
             if (meter.hasCommandClass(MeterCommandClass.ID)) {
                 MeterCommandClass mcc = (MeterCommandClass)meter.getCommandClass(MeterCommandClass.ID);
-                updates.add(new VariableUpdate(VariableContext.create(getContext(), getPrimaryVariable()), mcc.getCurrentValue()));
+                Object value = mcc.getCurrentValue();
+                addVariableUpdate(updates, getPrimaryVariable(), value, getReportFilter());
+                addMeterSample(updates, value);
             }
         } else {
             logger.debug("Ignoring update for endpoint: {}", endpoint);
@@ -14,9 +14,11 @@ import com.whizzosoftware.hobson.api.property.PropertyContainer;
 import com.whizzosoftware.hobson.api.property.TypedProperty;
 import com.whizzosoftware.hobson.api.variable.HobsonVariable;
 import com.whizzosoftware.hobson.api.variable.VariableConstants;
-import com.whizzosoftware.hobson.api.variable.VariableContext;
 import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import com.whizzosoftware.hobson.zwave.ZWaveCommand;
+import com.whizzosoftware.hobson.zwave.ZWaveContext;
 import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.hobson.zwave.util.FrameTemplate;
 import com.whizzosoftware.wzwave.commandclass.BinarySwitchCommandClass;
 import com.whizzosoftware.wzwave.commandclass.MeterCommandClass;
 import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
@@ -33,9 +35,14 @@ import java.util.List;
  * @author Dan Noguerol
  */
 public class SwitchDevice extends HobsonZWaveDevice {
+    private static final byte BINARY_SWITCH_SET = 0x01;
+    private static final byte BINARY_SWITCH_GET = 0x02;
+
     private Logger logger = LoggerFactory.getLogger(getClass());
 
-    private boolean hasMeter = false;
+    private final boolean hasMeter;
+    private FrameTemplate setTemplate;
+    private FrameTemplate getTemplate;
 
     public SwitchDevice(ZWavePlugin zwavePlugin, String id, ZWaveEndpoint node, String name, Byte endpointNumber, MultiInstanceCommandClass micc) {
         super(zwavePlugin, id, node, endpointNumber, micc);
@@ -48,6 +55,7 @@ public class SwitchDevice extends HobsonZWaveDevice {
         publishVariable(VariableConstants.ON, getInitialValue(VariableConstants.ON), HobsonVariable.Mask.READ_WRITE, getInitialValueUpdateTime(VariableConstants.ON));
         if (hasMeter) {
             publishVariable(VariableConstants.ENERGY_CONSUMPTION_WATTS, getInitialValue(VariableConstants.ENERGY_CONSUMPTION_WATTS), HobsonVariable.Mask.READ_ONLY, getInitialValueUpdateTime(VariableConstants.ENERGY_CONSUMPTION_WATTS));
+            publishMeterHistoryVariables();
         }
         super.onStartup(config);
     }
@@ -63,14 +71,16 @@ public class SwitchDevice extends HobsonZWaveDevice {
         if (endpoint.getGenericDeviceClass() == BinarySwitch.ID) {
             Boolean isOn = BinarySwitch.isOn(endpoint);
             if (isOn != null) {
-                updates.add(new VariableUpdate(VariableContext.create(getContext(), VariableConstants.ON), isOn));
+                addVariableUpdate(updates, VariableConstants.ON, isOn);
             }
         }
 
         // if the device supports a meter, update it's energy consumption in watts
         if (hasMeter) {
             MeterCommandClass mcc = (MeterCommandClass)endpoint.getCommandClass(MeterCommandClass.ID);
-            updates.add(new VariableUpdate(VariableContext.create(getContext(), VariableConstants.ENERGY_CONSUMPTION_WATTS), mcc.getCurrentValue()));
+            Object watts = mcc.getCurrentValue();
+            addVariableUpdate(updates, VariableConstants.ENERGY_CONSUMPTION_WATTS, watts, getReportFilter());
+            addMeterSample(updates, watts);
         }
     }
 
@@ -90,54 +100,49 @@ public class SwitchDevice extends HobsonZWaveDevice {
     }
 
     @Override
-    public void onSetVariable(String name, Object value) {
-        BinarySwitchCommandClass bscc = (BinarySwitchCommandClass)getEndpoint().getCommandClass(BinarySwitchCommandClass.ID);
-        if (VariableConstants.ON.equals(name) && ("true".equals(value) || value.equals(true))) {
-            logger.debug("Sending switch on to " + getContext());
-            if (isEndpoint()) {
-                getZWaveDriver().getZWaveController().sendDataFrame(
-                        getMultiInstanceCommandClass().createMultiChannelCommandEncapsulation(
-                        (byte)0,
-                        getEndpointNumber(),
-                            bscc.createSet(getNodeId(), true),
-                        false
-                    )
-                );
-                getZWaveDriver().getZWaveController().sendDataFrame(
-                    getMultiInstanceCommandClass().createMultiChannelCommandEncapsulation(
-                        (byte)0,
-                        getEndpointNumber(),
-                            bscc.createGet(getNodeId()),
-                        false
-                    )
-                );
-            } else {
-                getZWaveDriver().getZWaveController().sendDataFrame(bscc.createSet(getNodeId(), true));
-                getZWaveDriver().getZWaveController().sendDataFrame(bscc.createGet(getNodeId()));
+    public void onSetVariable(final String name, final Object value) {
+        // this is called from the plugin event loop so the command is built and sent on the network's thread
+        final ZWaveContext ctx = getZWaveContext();
+        ctx.runOnNetwork(new Runnable() {
+            @Override
+            public void run() {
+                ZWaveCommand cmd = createCommand(name, value);
+                if (cmd != null) {
+                    logger.debug("Sending switch " + (Boolean.TRUE.equals(cmd.getExpectedValue()) ? "on" : "off") + " to " + getContext());
+                    ctx.sendCommand(cmd);
+                }
             }
-        } else if (VariableConstants.ON.equals(name) && ("false".equals(value) || value.equals(false))) {
-            logger.debug("Sending switch off to " + getContext());
-            if (isEndpoint()) {
-                getZWaveDriver().getZWaveController().sendDataFrame(
-                    getMultiInstanceCommandClass().createMultiChannelCommandEncapsulation(
-                        (byte)0,
-                        getEndpointNumber(),
-                        bscc.createSet(getNodeId(), false),
-                        false
-                    )
-                );
-                getZWaveDriver().getZWaveController().sendDataFrame(
-                    getMultiInstanceCommandClass().createMultiChannelCommandEncapsulation(
-                        (byte)0,
-                        getEndpointNumber(),
-                        bscc.createGet(getNodeId()),
-                        false
-                    )
-                );
-            } else {
-                getZWaveDriver().getZWaveController().sendDataFrame(bscc.createSet(getNodeId(), false));
-                getZWaveDriver().getZWaveController().sendDataFrame(bscc.createGet(getNodeId()));
+        });
+    }
+
+    @Override
+    protected void onEndpointChanged() {
+        setTemplate = null;
+        getTemplate = null;
+    }
+
+    @Override
+    public ZWaveCommand createCommand(String name, Object value) {
+        if (!isInterviewed()) {
+            logger.warn("Unable to set {} on {}; the device has not been interviewed yet", name, getContext());
+            return null;
+        }
+        if (setTemplate == null) {
+            // templates are built on first use since an endpoint needs its live parent node to encapsulate them
+            setTemplate = createFrameTemplate("Switch Set", 2, BinarySwitchCommandClass.ID, BINARY_SWITCH_SET, (byte)0);
+            getTemplate = createFrameTemplate("Switch Get", -1, BinarySwitchCommandClass.ID, BINARY_SWITCH_GET);
+        }
+        if (VariableConstants.ON.equals(name)) {
+            Boolean on = null;
+            if ("true".equals(value) || Boolean.TRUE.equals(value)) {
+                on = true;
+            } else if ("false".equals(value) || Boolean.FALSE.equals(value)) {
+                on = false;
+            }
+            if (on != null) {
+                return new ZWaveCommand(this, setTemplate.create(on ? (byte)0xFF : (byte)0), getTemplate.create(), VariableConstants.ON, on);
             }
         }
+        return null;
     }
 }
@@ -0,0 +1,81 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small pool of scratch variable update lists used on the report path so that processing a report whose values
+ * haven't changed doesn't allocate a new list. A pooled list must never be passed to a variable update notification
+ * since the notification consumer may retain it; notifications get a copy of the list's updates instead.
+ *
+ * This class is not thread-safe and should only be accessed from the network's thread.
+ *
+ * @author Dan Noguerol
+ */
+public class UpdateListPool {
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private final List<List<VariableUpdate>> lists;
+    private final int capacity;
+    private long created;
+
+    public UpdateListPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public UpdateListPool(int capacity) {
+        this.capacity = capacity;
+        this.lists = new ArrayList<>(capacity);
+    }
+
+    /**
+     * Returns an empty list, creating a new one only if the pool is empty (e.g. when a notification causes another
+     * report to be processed before the first list has been released).
+     *
+     * @return an empty list
+     */
+    public List<VariableUpdate> acquire() {
+        int size = lists.size();
+        if (size > 0) {
+            return lists.remove(size - 1);
+        }
+        created++;
+        return new ArrayList<>();
+    }
+
+    /**
+     * Returns a list to the pool. Lists beyond the pool's capacity are discarded.
+     *
+     * @param list the list
+     */
+    public void release(List<VariableUpdate> list) {
+        list.clear();
+        if (lists.size() < capacity) {
+            lists.add(list);
+        }
+    }
+
+    /**
+     * Returns the number of lists the pool has had to create.
+     *
+     * @return a count
+     */
+    public long getCreatedCount() {
+        return created;
+    }
+
+    public int getAvailableCount() {
+        return lists.size();
+    }
+}
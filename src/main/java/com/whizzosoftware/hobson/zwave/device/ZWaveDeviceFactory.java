@@ -0,0 +1,44 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+
+/**
+ * An interface for classes that create Hobson devices for Z-Wave nodes and endpoints.
+ *
+ * @author Dan Noguerol
+ */
+public interface ZWaveDeviceFactory {
+    /**
+     * A factory for nodes that are recognized but intentionally not published as devices.
+     */
+    ZWaveDeviceFactory IGNORE = new ZWaveDeviceFactory() {
+        @Override
+        public HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+            return null;
+        }
+    };
+
+    /**
+     * Creates a new device.
+     *
+     * @param plugin the plugin that will own the device
+     * @param id the device ID
+     * @param endpoint the Z-Wave node or endpoint the device represents
+     * @param endpointNumber the endpoint number (or null if the device represents a node)
+     * @param micc the node's multi-instance command class (or null if the device represents a node)
+     *
+     * @return a new device (or null if the endpoint isn't supported)
+     */
+    HobsonZWaveDevice create(ZWavePlugin plugin, String id, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc);
+}
@@ -0,0 +1,232 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.sim;
+
+import com.whizzosoftware.wzwave.commandclass.*;
+import com.whizzosoftware.wzwave.node.NodeInfo;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.generic.BinarySensor;
+import com.whizzosoftware.wzwave.node.generic.BinarySwitch;
+import com.whizzosoftware.wzwave.node.generic.Meter;
+import com.whizzosoftware.wzwave.node.generic.MultilevelSwitch;
+import com.whizzosoftware.wzwave.node.specific.RoutingBinarySensor;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A simulated Z-Wave node. It holds the node's state, applies SET/GET commands addressed to it and produces the
+ * resulting reports by feeding report frames to the node's command classes (exactly as the controller does for a
+ * real node).
+ *
+ * This class is not thread-safe and should only be accessed from the simulator thread.
+ *
+ * @author Dan Noguerol
+ */
+class SimulatedNode {
+    static final int SWITCH = 0;
+    static final int DIMMER = 1;
+    static final int METER = 2;
+    static final int MULTI_CHANNEL = 3;
+    static final int BATTERY = 4;
+
+    private static final byte BASIC_ROUTING_SLAVE = 0x04;
+    private static final byte SPECIFIC_NOT_USED = 0x01;
+    private static final byte CMD_SET = 0x01;
+    private static final byte CMD_GET = 0x02;
+    private static final byte CMD_REPORT = 0x03;
+    private static final byte CMD_METER_GET = 0x01;
+    private static final byte CMD_METER_REPORT = 0x02;
+    private static final byte CMD_MULTI_CHANNEL_END_POINT_REPORT = 0x08;
+    private static final byte CMD_MULTI_CHANNEL_CAPABILITY_REPORT = 0x0A;
+    private static final byte CMD_MULTI_CHANNEL_ENCAP = 0x0D;
+    private static final int ENDPOINT_COUNT = 2;
+
+    private final int type;
+    private final ZWaveEndpoint node;
+    private boolean on;
+    private byte level;
+    private byte lastLevel = 0x63;
+    private int watts; // in tenths of a watt
+    private byte battery = 100;
+    private final boolean[] endpointOn = new boolean[ENDPOINT_COUNT];
+
+    SimulatedNode(byte nodeId, int type) {
+        this.type = type;
+        switch (type) {
+            case DIMMER:
+                node = new MultilevelSwitch(new NodeInfo(nodeId, BASIC_ROUTING_SLAVE, MultilevelSwitch.ID, SPECIFIC_NOT_USED, new byte[] {MultilevelSwitchCommandClass.ID}), true, null);
+                break;
+            case METER:
+                node = new Meter(new NodeInfo(nodeId, BASIC_ROUTING_SLAVE, Meter.ID, SPECIFIC_NOT_USED, new byte[] {MeterCommandClass.ID}), true, null);
+                break;
+            case MULTI_CHANNEL:
+                node = new BinarySwitch(new NodeInfo(nodeId, BASIC_ROUTING_SLAVE, BinarySwitch.ID, SPECIFIC_NOT_USED, new byte[] {BinarySwitchCommandClass.ID, MultiInstanceCommandClass.ID}), true, null);
+                report(node, MultiInstanceCommandClass.ID, CMD_MULTI_CHANNEL_END_POINT_REPORT, (byte)0x00, (byte)ENDPOINT_COUNT);
+                for (int i=1; i <= ENDPOINT_COUNT; i++) {
+                    report(node, MultiInstanceCommandClass.ID, CMD_MULTI_CHANNEL_CAPABILITY_REPORT, (byte)i, BinarySwitch.ID, SPECIFIC_NOT_USED, BinarySwitchCommandClass.ID);
+                }
+                break;
+            case BATTERY:
+                node = new RoutingBinarySensor(new NodeInfo(nodeId, BASIC_ROUTING_SLAVE, BinarySensor.ID, RoutingBinarySensor.ID, new byte[] {BinarySensorCommandClass.ID, BatteryCommandClass.ID}), false, null);
+                break;
+            default:
+                node = new BinarySwitch(new NodeInfo(nodeId, BASIC_ROUTING_SLAVE, BinarySwitch.ID, SPECIFIC_NOT_USED, new byte[] {BinarySwitchCommandClass.ID}), true, null);
+                break;
+        }
+        reportState();
+    }
+
+    int getType() {
+        return type;
+    }
+
+    ZWaveEndpoint getNode() {
+        return node;
+    }
+
+    /**
+     * Applies a command sent to the node.
+     *
+     * @param data the command class data (command class ID, command and parameters)
+     *
+     * @return the node or endpoint that reported as a result (or null if the command produces no report)
+     */
+    ZWaveEndpoint onCommand(byte[] data) {
+        if (data == null || data.length < 2) {
+            return null;
+        }
+        byte cc = data[0];
+        byte cmd = data[1];
+
+        if (cc == MultiInstanceCommandClass.ID && cmd == CMD_MULTI_CHANNEL_ENCAP && data.length >= 6) {
+            return onEndpointCommand(data[3], Arrays.copyOfRange(data, 4, data.length));
+        } else if (cc == BinarySwitchCommandClass.ID && (type == SWITCH || type == MULTI_CHANNEL)) {
+            if (cmd == CMD_SET && data.length > 2) {
+                on = (data[2] != 0);
+            } else if (cmd != CMD_GET) {
+                return null;
+            }
+            report(node, BinarySwitchCommandClass.ID, CMD_REPORT, on ? (byte)0xFF : (byte)0x00);
+            return node;
+        } else if (cc == MultilevelSwitchCommandClass.ID && type == DIMMER) {
+            if (cmd == CMD_SET && data.length > 2) {
+                setLevel(data[2] == (byte)0xFF ? lastLevel : data[2]);
+            } else if (cmd != CMD_GET) {
+                return null;
+            }
+            report(node, MultilevelSwitchCommandClass.ID, CMD_REPORT, level);
+            return node;
+        } else if (cc == MeterCommandClass.ID && cmd == CMD_METER_GET && type == METER) {
+            reportMeter();
+            return node;
+        } else if (cc == BatteryCommandClass.ID && cmd == CMD_GET && type == BATTERY) {
+            report(node, BatteryCommandClass.ID, CMD_REPORT, battery);
+            return node;
+        } else if (cc == BinarySensorCommandClass.ID && cmd == CMD_GET && type == BATTERY) {
+            report(node, BinarySensorCommandClass.ID, CMD_REPORT, on ? (byte)0xFF : (byte)0x00);
+            return node;
+        }
+        return null;
+    }
+
+    /**
+     * Changes the node's state at random as though something happened locally (e.g. a switch was pressed or the
+     * power draw changed).
+     *
+     * @param random the random number generator to use
+     *
+     * @return the node or endpoint that reported the change
+     */
+    ZWaveEndpoint onUnsolicitedReport(Random random) {
+        switch (type) {
+            case DIMMER:
+                setLevel((byte)random.nextInt(100));
+                report(node, MultilevelSwitchCommandClass.ID, CMD_REPORT, level);
+                return node;
+            case METER:
+                watts = Math.max(0, watts + random.nextInt(201) - 100);
+                reportMeter();
+                return node;
+            case MULTI_CHANNEL: {
+                int ix = random.nextInt(ENDPOINT_COUNT);
+                endpointOn[ix] = !endpointOn[ix];
+                return onEndpointCommand((byte)(ix + 1), new byte[] {BinarySwitchCommandClass.ID, CMD_GET});
+            }
+            case BATTERY:
+                on = !on;
+                if (random.nextInt(20) == 0 && battery > 0) {
+                    battery--;
+                    report(node, BatteryCommandClass.ID, CMD_REPORT, battery);
+                }
+                report(node, BinarySensorCommandClass.ID, CMD_REPORT, on ? (byte)0xFF : (byte)0x00);
+                return node;
+            default:
+                on = !on;
+                report(node, BinarySwitchCommandClass.ID, CMD_REPORT, on ? (byte)0xFF : (byte)0x00);
+                return node;
+        }
+    }
+
+    private ZWaveEndpoint onEndpointCommand(byte endpointNumber, byte[] data) {
+        MultiInstanceCommandClass micc = (MultiInstanceCommandClass)node.getCommandClass(MultiInstanceCommandClass.ID);
+        int ix = endpointNumber - 1;
+        if (micc == null || ix < 0 || ix >= ENDPOINT_COUNT || data.length < 2 || data[0] != BinarySwitchCommandClass.ID) {
+            return null;
+        }
+        if (data[1] == CMD_SET && data.length > 2) {
+            endpointOn[ix] = (data[2] != 0);
+        } else if (data[1] != CMD_GET) {
+            return null;
+        }
+        ZWaveEndpoint ep = micc.getEndpoint(endpointNumber);
+        if (ep != null) {
+            report(ep, BinarySwitchCommandClass.ID, CMD_REPORT, endpointOn[ix] ? (byte)0xFF : (byte)0x00);
+        }
+        return ep;
+    }
+
+    private void setLevel(byte level) {
+        this.level = level;
+        if (level > 0) {
+            lastLevel = level;
+        }
+    }
+
+    private void reportState() {
+        switch (type) {
+            case DIMMER:
+                report(node, MultilevelSwitchCommandClass.ID, CMD_REPORT, level);
+                break;
+            case METER:
+                reportMeter();
+                break;
+            case BATTERY:
+                report(node, BinarySensorCommandClass.ID, CMD_REPORT, (byte)0x00);
+                report(node, BatteryCommandClass.ID, CMD_REPORT, battery);
+                break;
+            default:
+                report(node, BinarySwitchCommandClass.ID, CMD_REPORT, (byte)0x00);
+                break;
+        }
+    }
+
+    private void reportMeter() {
+        // electric meter, precision 1, scale W, 2 byte value
+        report(node, MeterCommandClass.ID, CMD_METER_REPORT, (byte)0x01, (byte)0x32, (byte)(watts >> 8), (byte)watts);
+    }
+
+    private void report(ZWaveEndpoint ep, byte... ccb) {
+        CommandClass cc = ep.getCommandClass(ccb[0]);
+        if (cc != null) {
+            cc.onApplicationCommand(ccb, 0);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.sim;
+
+import com.whizzosoftware.wzwave.controller.ZWaveController;
+import com.whizzosoftware.wzwave.controller.ZWaveControllerListener;
+import com.whizzosoftware.wzwave.frame.DataFrame;
+import com.whizzosoftware.wzwave.frame.SendData;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process ZWaveController that simulates a network of switches, dimmers, meters, multi-channel and
+ * battery-powered nodes. It's used to exercise the plugin (e.g. for load testing) without Z-Wave hardware.
+ *
+ * Nodes send unsolicited reports at the configured rate and respond to SET/GET frames after the configured latency.
+ * All listener callbacks are made from a single simulator thread, just as a real controller makes them from its
+ * I/O thread.
+ *
+ * @author Dan Noguerol
+ */
+public class SimulatedZWaveController implements ZWaveController {
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedZWaveController.class);
+
+    private static final String LIBRARY_VERSION = "Z-Wave Simulator";
+    private static final int HOME_ID = 0x5A570001;
+    private static final byte CONTROLLER_NODE_ID = 1;
+
+    private final SimulationConfig config;
+    private final Random random;
+    private final SimulatedNode[] nodes = new SimulatedNode[256];
+    private final List<ZWaveEndpoint> nodeList = new ArrayList<>();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong reportsSent = new AtomicLong();
+    private volatile ZWaveControllerListener listener;
+    private ScheduledExecutorService executor;
+
+    public SimulatedZWaveController(SimulationConfig config) {
+        this.config = config;
+        this.random = new Random(config.getSeed());
+    }
+
+    @Override
+    public void setListener(ZWaveControllerListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    synchronized public void start() {
+        if (executor != null) {
+            return;
+        }
+
+        logger.info("Starting simulated Z-Wave network: " + config);
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Z-Wave Simulator");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                createNodes();
+            }
+        });
+
+        if (config.getReportRate() > 0 && config.getNodeCount() > 0) {
+            long period = Math.max(1, (long)(1000000000.0 / (config.getReportRate() * config.getNodeCount())));
+            executor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    sendUnsolicitedReport();
+                }
+            }, period, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    synchronized public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            logger.info("Stopped simulated Z-Wave network; received " + framesReceived.get() + " frames and sent " + reportsSent.get() + " reports");
+        }
+    }
+
+    @Override
+    public void sendDataFrame(DataFrame frame) {
+        framesReceived.incrementAndGet();
+
+        if (frame instanceof SendData) {
+            final byte nodeId = ((SendData)frame).getNodeId();
+            final byte[] data = ((SendData)frame).getSendData();
+            long delay = config.getLatency() + (long)(random.nextDouble() * config.getJitter());
+            schedule(new Runnable() {
+                @Override
+                public void run() {
+                    SimulatedNode n = nodes[nodeId & 0xFF];
+                    if (n != null) {
+                        ZWaveEndpoint ep = n.onCommand(data);
+                        if (ep != null) {
+                            notifyUpdated(ep);
+                        }
+                    } else {
+                        logger.debug("Ignoring frame for unknown node " + nodeId);
+                    }
+                }
+            }, delay);
+        } else {
+            logger.debug("Ignoring unsupported frame: " + frame);
+        }
+    }
+
+    public String getLibraryVersion() {
+        return LIBRARY_VERSION;
+    }
+
+    public Integer getHomeId() {
+        return HOME_ID;
+    }
+
+    public Byte getNodeId() {
+        return CONTROLLER_NODE_ID;
+    }
+
+    public Collection<ZWaveEndpoint> getNodes() {
+        synchronized (nodeList) {
+            return Collections.unmodifiableList(new ArrayList<>(nodeList));
+        }
+    }
+
+    public ZWaveEndpoint getNode(byte nodeId) {
+        SimulatedNode n = nodes[nodeId & 0xFF];
+        return n != null ? n.getNode() : null;
+    }
+
+    /**
+     * Returns the number of frames sent to the simulated controller.
+     *
+     * @return a long
+     */
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    /**
+     * Returns the number of node reports delivered to the listener.
+     *
+     * @return a long
+     */
+    public long getReportsSent() {
+        return reportsSent.get();
+    }
+
+    protected void createNodes() {
+        ZWaveControllerListener l = listener;
+        if (l != null) {
+            l.onZWaveControllerInfo(LIBRARY_VERSION, HOME_ID, CONTROLLER_NODE_ID);
+        }
+
+        int nodeId = CONTROLLER_NODE_ID + 1;
+        nodeId = createNodes(nodeId, config.getSwitches(), SimulatedNode.SWITCH);
+        nodeId = createNodes(nodeId, config.getDimmers(), SimulatedNode.DIMMER);
+        nodeId = createNodes(nodeId, config.getMeters(), SimulatedNode.METER);
+        nodeId = createNodes(nodeId, config.getMultiChannel(), SimulatedNode.MULTI_CHANNEL);
+        createNodes(nodeId, config.getBattery(), SimulatedNode.BATTERY);
+    }
+
+    private int createNodes(int nodeId, int count, int type) {
+        for (int i=0; i < count; i++, nodeId++) {
+            SimulatedNode n = new SimulatedNode((byte)nodeId, type);
+            nodes[nodeId] = n;
+            synchronized (nodeList) {
+                nodeList.add(n.getNode());
+            }
+            ZWaveControllerListener l = listener;
+            if (l != null) {
+                l.onZWaveNodeAdded(n.getNode());
+            }
+        }
+        return nodeId;
+    }
+
+    protected void sendUnsolicitedReport() {
+        int count = config.getNodeCount();
+        if (count > 0) {
+            SimulatedNode n = nodes[CONTROLLER_NODE_ID + 1 + random.nextInt(count)];
+            if (n != null) {
+                notifyUpdated(n.onUnsolicitedReport(random));
+            }
+        }
+    }
+
+    private void notifyUpdated(ZWaveEndpoint ep) {
+        ZWaveControllerListener l = listener;
+        if (l != null && ep != null) {
+            reportsSent.incrementAndGet();
+            l.onZWaveNodeUpdated(ep);
+        }
+    }
+
+    synchronized private void schedule(Runnable r, long delay) {
+        if (executor != null) {
+            try {
+                executor.schedule(r, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Unable to schedule simulated response; simulator has been stopped");
+            }
+        }
+    }
+}
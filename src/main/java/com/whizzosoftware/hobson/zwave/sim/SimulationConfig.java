@@ -0,0 +1,160 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.sim;
+
+/**
+ * The configuration of a simulated Z-Wave network. It's parsed from a comma-separated list of key=value pairs, e.g.
+ * "switches=100,dimmers=50,meters=20,multichannel=10,battery=20,reportRate=0.1,latency=40,jitter=20".
+ *
+ * @author Dan Noguerol
+ */
+public class SimulationConfig {
+    public static final int MAX_NODES = 231; // node IDs 2-232 (node 1 is the controller)
+
+    private int switches = 10;
+    private int dimmers = 5;
+    private int meters = 2;
+    private int multiChannel = 1;
+    private int battery = 2;
+    private double reportRate = 0.05;
+    private long latency = 40;
+    private long jitter = 20;
+    private long seed = 1;
+
+    /**
+     * Parses a configuration string. Missing keys use their default values.
+     *
+     * @param spec the configuration string
+     *
+     * @return a SimulationConfig instance
+     *
+     * @throws IllegalArgumentException if the string is invalid or describes too many nodes
+     */
+    static public SimulationConfig parse(String spec) {
+        SimulationConfig c = new SimulationConfig();
+        if (spec != null) {
+            for (String pair : spec.split(",")) {
+                pair = pair.trim();
+                if (pair.length() == 0) {
+                    continue;
+                }
+                int ix = pair.indexOf('=');
+                if (ix < 1) {
+                    throw new IllegalArgumentException("Invalid simulation parameter: " + pair);
+                }
+                String key = pair.substring(0, ix).trim();
+                String value = pair.substring(ix + 1).trim();
+                try {
+                    switch (key) {
+                        case "switches":
+                            c.switches = Integer.parseInt(value);
+                            break;
+                        case "dimmers":
+                            c.dimmers = Integer.parseInt(value);
+                            break;
+                        case "meters":
+                            c.meters = Integer.parseInt(value);
+                            break;
+                        case "multichannel":
+                            c.multiChannel = Integer.parseInt(value);
+                            break;
+                        case "battery":
+                            c.battery = Integer.parseInt(value);
+                            break;
+                        case "reportRate":
+                            c.reportRate = Double.parseDouble(value);
+                            break;
+                        case "latency":
+                            c.latency = Long.parseLong(value);
+                            break;
+                        case "jitter":
+                            c.jitter = Long.parseLong(value);
+                            break;
+                        case "seed":
+                            c.seed = Long.parseLong(value);
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown simulation parameter: " + key);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value for simulation parameter " + key + ": " + value);
+                }
+            }
+        }
+        if (c.switches < 0 || c.dimmers < 0 || c.meters < 0 || c.multiChannel < 0 || c.battery < 0 || c.reportRate < 0 || c.latency < 0 || c.jitter < 0) {
+            throw new IllegalArgumentException("Simulation parameters can't be negative");
+        }
+        if (c.getNodeCount() > MAX_NODES) {
+            throw new IllegalArgumentException("A Z-Wave network can't contain more than " + MAX_NODES + " nodes");
+        }
+        return c;
+    }
+
+    public int getSwitches() {
+        return switches;
+    }
+
+    public int getDimmers() {
+        return dimmers;
+    }
+
+    public int getMeters() {
+        return meters;
+    }
+
+    public int getMultiChannel() {
+        return multiChannel;
+    }
+
+    public int getBattery() {
+        return battery;
+    }
+
+    public int getNodeCount() {
+        return switches + dimmers + meters + multiChannel + battery;
+    }
+
+    /**
+     * Returns the rate at which each node sends unsolicited reports.
+     *
+     * @return the number of reports per node per second
+     */
+    public double getReportRate() {
+        return reportRate;
+    }
+
+    /**
+     * Returns the base time between a frame being sent to a node and its response.
+     *
+     * @return the latency in milliseconds
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns the maximum random time added to the latency.
+     *
+     * @return the jitter in milliseconds
+     */
+    public long getJitter() {
+        return jitter;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String toString() {
+        return "switches=" + switches + ", dimmers=" + dimmers + ", meters=" + meters + ", multichannel=" + multiChannel +
+            ", battery=" + battery + ", reportRate=" + reportRate + ", latency=" + latency + ", jitter=" + jitter;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.state;
+
+import java.util.Random;
+
+/**
+ * Calculates delays between retries using exponential backoff with jitter. Each delay is chosen at random from the
+ * upper half of the current backoff window so that many retrying hubs (or a flapping device) don't fall into step.
+ *
+ * @author Dan Noguerol
+ */
+public class Backoff {
+    private final long initialDelay;
+    private final long maxDelay;
+    private final Random random;
+    private int attempts;
+
+    public Backoff(long initialDelay, long maxDelay) {
+        this(initialDelay, maxDelay, new Random());
+    }
+
+    public Backoff(long initialDelay, long maxDelay, Random random) {
+        this.initialDelay = Math.max(1, initialDelay);
+        this.maxDelay = Math.max(this.initialDelay, maxDelay);
+        this.random = random;
+    }
+
+    /**
+     * Returns the delay before the next retry.
+     *
+     * @return the delay in milliseconds
+     */
+    public long nextDelay() {
+        long window = initialDelay;
+        for (int i=0; i < attempts && window < maxDelay; i++) {
+            window *= 2;
+        }
+        window = Math.min(window, maxDelay);
+        attempts++;
+        long half = window / 2;
+        return half + (long)(random.nextDouble() * (window - half + 1));
+    }
+
+    /**
+     * Returns the number of delays handed out since the last reset.
+     *
+     * @return an int
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void reset() {
+        attempts = 0;
+    }
+}
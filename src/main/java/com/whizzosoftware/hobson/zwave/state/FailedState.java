@@ -47,6 +47,11 @@ public class FailedState implements State {
         logger.warn("Ignoring ZWave node update");
     }
 
+    @Override
+    public void onConnectionFailure(StateContext context, Throwable t) {
+        logger.warn("Ignoring Z-Wave connection failure");
+    }
+
     @Override
     public void stop(StateContext context) {
     }
@@ -12,7 +12,6 @@ package com.whizzosoftware.hobson.zwave.state;
 import com.whizzosoftware.hobson.api.plugin.PluginStatus;
 import com.whizzosoftware.wzwave.controller.ZWaveController;
 import com.whizzosoftware.wzwave.controller.ZWaveControllerListener;
-import com.whizzosoftware.wzwave.controller.netty.NettyZWaveController;
 import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,8 +35,16 @@ public class InitializingState implements State {
                 context.getZWaveController().stop();
             }
 
-            // attempt to start a new controller
-            ZWaveController controller = new NettyZWaveController(context.getSerialPort());
+            // attempt to start a new controller (an invalid simulator spec is a configuration error)
+            ZWaveController controller;
+            try {
+                controller = context.getControllerFactory().create(context.getSerialPort());
+            } catch (IllegalArgumentException e) {
+                logger.error("Invalid Z-Wave serial port: " + context.getSerialPort(), e);
+                context.setZWaveController(null);
+                context.setState(new FailedState(listener, PluginStatus.failed("Invalid serial port: " + e.getMessage())));
+                return;
+            }
             controller.setListener(listener);
             controller.start();
             context.setZWaveController(controller);
@@ -64,6 +71,11 @@ public class InitializingState implements State {
         logger.warn("Ignoring ZWave node update");
     }
 
+    @Override
+    public void onConnectionFailure(StateContext context, Throwable t) {
+        logger.warn("Ignoring Z-Wave connection failure");
+    }
+
     @Override
     public void stop(StateContext context) {
     }
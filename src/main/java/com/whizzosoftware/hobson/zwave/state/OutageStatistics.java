@@ -0,0 +1,107 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.state;
+
+/**
+ * Keeps track of how often and for how long the connection to the Z-Wave controller has been lost.
+ *
+ * @author Dan Noguerol
+ */
+public class OutageStatistics {
+    private final long createdTime;
+    private long outageStart;
+    private long outageCount;
+    private long totalOutageTime;
+    private long longestOutage;
+    private long lastOutage;
+
+    public OutageStatistics(long now) {
+        this.createdTime = now;
+    }
+
+    /**
+     * Called when the connection is lost. This does nothing if an outage is already in progress.
+     *
+     * @param now the current time
+     */
+    synchronized public void onOutageStarted(long now) {
+        if (outageStart == 0) {
+            outageStart = now;
+            outageCount++;
+        }
+    }
+
+    /**
+     * Called when the connection has been re-established. This does nothing if no outage is in progress.
+     *
+     * @param now the current time
+     *
+     * @return the duration of the outage in milliseconds (or 0 if no outage was in progress)
+     */
+    synchronized public long onOutageEnded(long now) {
+        if (outageStart != 0) {
+            lastOutage = Math.max(0, now - outageStart);
+            totalOutageTime += lastOutage;
+            longestOutage = Math.max(longestOutage, lastOutage);
+            outageStart = 0;
+            return lastOutage;
+        }
+        return 0;
+    }
+
+    synchronized public boolean isInOutage() {
+        return (outageStart != 0);
+    }
+
+    synchronized public long getOutageCount() {
+        return outageCount;
+    }
+
+    /**
+     * Returns the total time the connection has been lost, including any outage in progress.
+     *
+     * @param now the current time
+     *
+     * @return the time in milliseconds
+     */
+    synchronized public long getTotalOutageTime(long now) {
+        return totalOutageTime + (outageStart != 0 ? now - outageStart : 0);
+    }
+
+    synchronized public long getLongestOutage() {
+        return longestOutage;
+    }
+
+    synchronized public long getLastOutage() {
+        return lastOutage;
+    }
+
+    /**
+     * Returns how often the connection has been lost.
+     *
+     * @param now the current time
+     *
+     * @return the number of outages per day
+     */
+    synchronized public double getOutagesPerDay(long now) {
+        long elapsed = now - createdTime;
+        return elapsed > 0 ? outageCount * 86400000.0 / elapsed : 0;
+    }
+
+    synchronized public String toString(long now) {
+        return String.format("%d outage(s) (%.2f/day), total %.1fs, longest %.1fs, last %.1fs",
+            outageCount, getOutagesPerDay(now), getTotalOutageTime(now) / 1000.0, longestOutage / 1000.0, lastOutage / 1000.0);
+    }
+
+    @Override
+    public String toString() {
+        return toString(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.state;
+
+import com.whizzosoftware.hobson.api.plugin.PluginStatus;
+import com.whizzosoftware.wzwave.controller.ZWaveController;
+import com.whizzosoftware.wzwave.controller.ZWaveControllerListener;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The state the plugin enters when the connection to the Z-Wave controller is lost.
+ *
+ * The controller is re-opened using jittered exponential backoff. Devices stay published and frames queued while the
+ * connection is down are held by the transmit scheduler until the plugin returns to the running state. A new
+ * controller is considered connected once it reports a node or has stayed up for a short settling period.
+ *
+ * @author Dan Noguerol
+ */
+public class ReconnectingState implements State {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    static private final long INITIAL_DELAY = 1000;
+    static private final long MAX_DELAY = 5 * 60 * 1000;
+    static private final long SETTLE_TIME = 10000;
+
+    private ZWaveControllerListener listener;
+    private final Backoff backoff;
+    private boolean stopped;
+    private boolean connecting;
+    private int generation;
+
+    public ReconnectingState(ZWaveControllerListener listener) {
+        this(listener, new Backoff(INITIAL_DELAY, MAX_DELAY));
+    }
+
+    public ReconnectingState(ZWaveControllerListener listener, Backoff backoff) {
+        this.listener = listener;
+        this.backoff = backoff;
+    }
+
+    @Override
+    public void onRun(StateContext context) {
+        context.getOutageStatistics().onOutageStarted(System.currentTimeMillis());
+        context.setTransmitPaused(true);
+        context.setPluginStatus(PluginStatus.failed("Lost connection to the Z-Wave controller; reconnecting"));
+        stopController(context);
+        scheduleAttempt(context);
+    }
+
+    @Override
+    public void onSerialPortUpdate(StateContext context) {
+        stopped = true;
+        context.setState(new InitializingState(listener));
+    }
+
+    @Override
+    public void onZWaveNodeAdded(StateContext context, ZWaveEndpoint node) {
+        if (connecting) {
+            onConnected(context).onZWaveNodeAdded(context, node);
+        } else {
+            logger.debug("Ignoring Z-Wave node add while disconnected");
+        }
+    }
+
+    @Override
+    public void onZWaveNodeUpdated(StateContext context, ZWaveEndpoint node) {
+        if (connecting) {
+            onConnected(context).onZWaveNodeUpdated(context, node);
+        } else {
+            logger.debug("Ignoring Z-Wave node update while disconnected");
+        }
+    }
+
+    @Override
+    public void onConnectionFailure(StateContext context, Throwable t) {
+        if (!stopped) {
+            logger.warn("Reconnection attempt {} failed: {}", backoff.getAttempts(), t != null ? t.getMessage() : null);
+            connecting = false;
+            stopController(context);
+            scheduleAttempt(context);
+        }
+    }
+
+    @Override
+    public void stop(StateContext context) {
+        stopped = true;
+        stopController(context);
+    }
+
+    /**
+     * Indicates whether a controller has been re-opened and is waiting to be confirmed as connected.
+     *
+     * @return a boolean
+     */
+    public boolean isConnecting() {
+        return connecting;
+    }
+
+    protected void attempt(final StateContext context) {
+        try {
+            ZWaveController controller = context.getControllerFactory().create(context.getSerialPort());
+            controller.setListener(listener);
+            controller.start();
+            context.setZWaveController(controller);
+            connecting = true;
+
+            final int gen = ++generation;
+            context.scheduleInEventLoop(new Runnable() {
+                @Override
+                public void run() {
+                    if (!stopped && gen == generation) {
+                        onConnected(context);
+                    }
+                }
+            }, SETTLE_TIME);
+        } catch (Exception e) {
+            logger.warn("Unable to re-open Z-Wave controller on " + context.getSerialPort(), e);
+            scheduleAttempt(context);
+        }
+    }
+
+    private RunningState onConnected(StateContext context) {
+        stopped = true;
+        RunningState s = new RunningState(listener);
+        context.setPluginStatus(PluginStatus.running());
+        context.setState(s);
+        return s;
+    }
+
+    private void scheduleAttempt(final StateContext context) {
+        long delay = backoff.nextDelay();
+        final int gen = ++generation;
+        logger.info("Re-opening Z-Wave controller in {}ms (attempt {})", delay, backoff.getAttempts());
+        context.scheduleInEventLoop(new Runnable() {
+            @Override
+            public void run() {
+                if (!stopped && gen == generation) {
+                    attempt(context);
+                }
+            }
+        }, delay);
+    }
+
+    private void stopController(StateContext context) {
+        ZWaveController c = context.getZWaveController();
+        if (c != null) {
+            try {
+                c.stop();
+            } catch (Exception e) {
+                logger.debug("Error stopping Z-Wave controller", e);
+            }
+            context.setZWaveController(null);
+        }
+    }
+}
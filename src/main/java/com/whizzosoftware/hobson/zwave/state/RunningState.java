@@ -9,19 +9,12 @@
 */
 package com.whizzosoftware.hobson.zwave.state;
 
-import com.whizzosoftware.hobson.api.device.HobsonDevice;
-import com.whizzosoftware.hobson.api.variable.VariableConstants;
 import com.whizzosoftware.hobson.api.variable.VariableUpdate;
 import com.whizzosoftware.hobson.zwave.device.*;
-import com.whizzosoftware.hobson.zwave.util.DeviceUtil;
-import com.whizzosoftware.wzwave.commandclass.MeterCommandClass;
 import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
 import com.whizzosoftware.wzwave.controller.ZWaveControllerListener;
 import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
 import com.whizzosoftware.wzwave.node.ZWaveMultiChannelEndpoint;
-import com.whizzosoftware.wzwave.node.generic.*;
-import com.whizzosoftware.wzwave.node.specific.PCController;
-import com.whizzosoftware.wzwave.node.specific.RoutingBinarySensor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +32,12 @@ public class RunningState implements State {
 
     @Override
     public void onRun(StateContext context) {
+        // release any frames that were queued while the controller was disconnected
+        context.setTransmitPaused(false);
+        long outage = context.getOutageStatistics().onOutageEnded(System.currentTimeMillis());
+        if (outage > 0) {
+            logger.info("Z-Wave controller reconnected after {}ms ({})", outage, context.getOutageStatistics());
+        }
     }
 
     @Override
@@ -48,34 +47,12 @@ public class RunningState implements State {
 
     @Override
     public void onZWaveNodeAdded(StateContext context, ZWaveEndpoint node) {
-        if (node instanceof AlarmSensor) {
-            logger.debug("Adding Alarm sensor");
-            context.createZWaveDevice(SensorDevice.class, node, "Alarm Sensor", null);
-        } else if (node instanceof RoutingBinarySensor) {
-            logger.debug("Adding Battery-powered Sensor device");
-            context.createZWaveDevice(BatterySensorDevice.class, node, null, null);
-        } else if (node instanceof BinarySensor) {
-            logger.debug("Adding Sensor device");
-            context.createZWaveDevice(SensorDevice.class, node, null, null);
-        } else if (node instanceof BinarySwitch) {
-            logger.debug("Adding Switch device");
-            context.createZWaveDevice(SwitchDevice.class, node, null, null);
-        } else if (node instanceof Meter) {
-            logger.debug("Adding Meter device");
-            MeterCommandClass mcc = (MeterCommandClass)node.getCommandClass(MeterCommandClass.ID);
-            switch (mcc.getMeterType()) {
-                case Electric:
-                    context.createZWaveDevice(SensorDevice.class, node, null, VariableConstants.ENERGY_CONSUMPTION_WATTS);
-                    break;
-                default:
-                    logger.warn("Ignoring unsupported meter type: " + mcc.getMeterType());
-                    break;
-            }
-        } else if (node instanceof MultilevelSwitch) {
-            logger.debug("Adding Dimmer device");
-            context.createZWaveDevice(DimmerDevice.class, node, null, null);
-        } else if (node instanceof PCController) {
-            logger.debug("Ignoring PC Controller");
+        ZWaveDeviceFactory factory = context.getDeviceFactoryRegistry().getFactory(node);
+        if (factory == ZWaveDeviceFactory.IGNORE) {
+            logger.debug("Ignoring Z-Wave node: {}", node);
+        } else if (factory != null) {
+            logger.debug("Adding device for Z-Wave node: {}", node);
+            context.createZWaveDevice(factory, node);
         } else {
             logger.warn("Unsupported Z-Wave device found: " + node);
         }
@@ -84,37 +61,40 @@ public class RunningState implements State {
     @Override
     public void onZWaveNodeUpdated(StateContext context, ZWaveEndpoint node) {
         boolean checkEndpoints = false;
-        String deviceId;
+        byte endpointNumber;
         if (node instanceof ZWaveMultiChannelEndpoint) {
-            deviceId = DeviceUtil.getDeviceIdForNodeIdAndEndpoint(node.getNodeId(), ((ZWaveMultiChannelEndpoint) node).getNumber());
+            endpointNumber = ((ZWaveMultiChannelEndpoint)node).getNumber();
         } else {
-            deviceId = DeviceUtil.getDeviceIdForNodeId(node.getNodeId());
+            endpointNumber = DeviceTable.ROOT_ENDPOINT;
             checkEndpoints = true;
         }
         try {
-            HobsonDevice d = context.getZWaveDevice(deviceId);
-            if (d != null && d instanceof HobsonZWaveDevice) {
-                List<VariableUpdate> updates = new ArrayList<>();
+            HobsonZWaveDevice d = context.getZWaveDevice(node.getNodeId(), endpointNumber);
+            if (d != null) {
+                UpdateListPool pool = context.getUpdateListPool();
+                List<VariableUpdate> updates = pool.acquire();
+                try {
+                    // update device
+                    d.processUpdate(node, updates);
 
-                // update device
-                ((HobsonZWaveDevice)d).processUpdate(node, updates);
-
-                if (checkEndpoints) {
-                    MultiInstanceCommandClass micc = (MultiInstanceCommandClass)node.getCommandClass(MultiInstanceCommandClass.ID);
-                    if (micc != null) {
-                        for (ZWaveMultiChannelEndpoint endpoint2 : micc.getEndpoints()) {
-                            String deviceId2 = DeviceUtil.getDeviceIdForNodeIdAndEndpoint(node.getNodeId(), endpoint2.getNumber());
-                            HobsonZWaveDevice d2 = (HobsonZWaveDevice)context.getZWaveDevice(deviceId2);
-                            if (d2 != null) {
-                                d2.processUpdate(endpoint2, updates);
+                    if (checkEndpoints) {
+                        MultiInstanceCommandClass micc = (MultiInstanceCommandClass)node.getCommandClass(MultiInstanceCommandClass.ID);
+                        if (micc != null) {
+                            for (ZWaveMultiChannelEndpoint endpoint2 : micc.getEndpoints()) {
+                                HobsonZWaveDevice d2 = context.getZWaveDevice(node.getNodeId(), endpoint2.getNumber());
+                                if (d2 != null) {
+                                    d2.processUpdate(endpoint2, updates);
+                                }
                             }
                         }
                     }
-                }
 
-                // notify of variable updates
-                if (updates.size() > 0) {
-                    context.fireVariableUpdateNotifications(updates);
+                    // notify of variable updates (with a copy since the notification consumer may retain the list)
+                    if (updates.size() > 0) {
+                        context.fireVariableUpdateNotifications(new ArrayList<>(updates));
+                    }
+                } finally {
+                    pool.release(updates);
                 }
             }
         } catch (Exception e) {
@@ -122,6 +102,11 @@ public class RunningState implements State {
         }
     }
 
+    @Override
+    public void onConnectionFailure(StateContext context, Throwable t) {
+        context.setState(new ReconnectingState(listener));
+    }
+
     @Override
     public void stop(StateContext context) {
         if (context.getZWaveController() != null) {
@@ -22,5 +22,6 @@ public interface State {
     void onSerialPortUpdate(StateContext context);
     void onZWaveNodeAdded(StateContext context, ZWaveEndpoint node);
     void onZWaveNodeUpdated(StateContext context, ZWaveEndpoint node);
+    void onConnectionFailure(StateContext context, Throwable t);
     void stop(StateContext context);
 }
@@ -9,15 +9,20 @@
 */
 package com.whizzosoftware.hobson.zwave.state;
 
-import com.whizzosoftware.hobson.api.device.HobsonDevice;
 import com.whizzosoftware.hobson.api.plugin.PluginStatus;
 import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import com.whizzosoftware.hobson.zwave.ZWaveControllerFactory;
+import com.whizzosoftware.hobson.zwave.device.DeviceFactoryRegistry;
+import com.whizzosoftware.hobson.zwave.device.HobsonZWaveDevice;
+import com.whizzosoftware.hobson.zwave.device.UpdateListPool;
+import com.whizzosoftware.hobson.zwave.device.ZWaveDeviceFactory;
 import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
 import com.whizzosoftware.wzwave.controller.ZWaveController;
 import com.whizzosoftware.wzwave.controller.ZWaveControllerListener;
 import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
 
 import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * Interface that represents all the actions that a state can perform.
@@ -26,12 +31,18 @@ import java.util.List;
  */
 public interface StateContext extends ZWaveControllerListener {
     String getSerialPort();
+    ZWaveControllerFactory getControllerFactory();
     ZWaveController getZWaveController();
     void setZWaveController(ZWaveController controller);
     void setPluginStatus(PluginStatus status);
+    void setTransmitPaused(boolean paused);
+    OutageStatistics getOutageStatistics();
+    ScheduledFuture<?> scheduleInEventLoop(Runnable task, long delay);
     void setState(State state);
-    HobsonDevice getZWaveDevice(String deviceId);
-    void createZWaveDevice(Class clazz, ZWaveEndpoint endpoint, String name, String primaryVariable);
-    void createZWaveDevice(Class clazz, ZWaveEndpoint endpoint, String name, String primaryVariable, Byte endpointNumber, MultiInstanceCommandClass micc);
+    HobsonZWaveDevice getZWaveDevice(byte nodeId, byte endpointNumber);
+    DeviceFactoryRegistry getDeviceFactoryRegistry();
+    void createZWaveDevice(ZWaveDeviceFactory factory, ZWaveEndpoint endpoint);
+    void createZWaveDevice(ZWaveDeviceFactory factory, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc);
     void fireVariableUpdateNotifications(List<VariableUpdate> updates);
+    UpdateListPool getUpdateListPool();
 }
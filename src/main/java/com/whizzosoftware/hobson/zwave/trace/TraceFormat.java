@@ -0,0 +1,248 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.trace;
+
+import com.whizzosoftware.hobson.zwave.cache.CachedNode;
+import com.whizzosoftware.wzwave.commandclass.*;
+import com.whizzosoftware.wzwave.node.NodeInfo;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.generic.BinarySensor;
+import com.whizzosoftware.wzwave.node.generic.BinarySwitch;
+import com.whizzosoftware.wzwave.node.generic.Meter;
+import com.whizzosoftware.wzwave.node.generic.MultilevelSwitch;
+import com.whizzosoftware.wzwave.node.specific.RoutingBinarySensor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Describes the layout of a trace file and encodes/decodes the records in it.
+ *
+ * A trace file starts with a header (magic number, version and the wall clock time the trace started) followed by
+ * records. Each record has a type, a timestamp (nanoseconds since the trace started), a payload length and the
+ * payload. A record type of zero marks the end of the trace.
+ *
+ * The controller listener doesn't expose the raw frames a node sent, so node state is captured as the equivalent
+ * report frames for the command classes the plugin uses. Replaying those reports through a node's command classes
+ * recreates the state the plugin saw.
+ *
+ * @author Dan Noguerol
+ */
+final public class TraceFormat {
+    static final int MAGIC = 0x5a575452; // "ZWTR"
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 4 + 1 + 8;
+    static final int RECORD_HEADER_SIZE = 1 + 8 + 4;
+
+    static public final byte END = 0;
+    static public final byte CONTROLLER_INFO = 1;
+    static public final byte NODE_ADDED = 2;
+    static public final byte NODE_UPDATED = 3;
+    static public final byte FRAME_SENT = 4;
+    static public final byte CONNECTION_FAILURE = 5;
+    static public final byte INCLUSION_STARTED = 6;
+    static public final byte INCLUSION = 7;
+    static public final byte INCLUSION_STOPPED = 8;
+    static public final byte EXCLUSION_STARTED = 9;
+    static public final byte EXCLUSION = 10;
+    static public final byte EXCLUSION_STOPPED = 11;
+
+    static private final Charset UTF8 = Charset.forName("UTF-8");
+    static private final byte BASIC_ROUTING_SLAVE = 0x04;
+    static private final byte CMD_REPORT = 0x03;
+    static private final byte CMD_METER_REPORT = 0x02;
+    static private final byte CMD_MULTI_CHANNEL_END_POINT_REPORT = 0x08;
+    static private final byte CMD_MULTI_CHANNEL_CAPABILITY_REPORT = 0x0A;
+    static private final byte METER_ELECTRIC = 0x01;
+    static private final byte METER_PRECISION_2_WATTS_4_BYTES = 0x54;
+
+    private TraceFormat() {}
+
+    /**
+     * Writes a description of a node (its device classes, command classes and multi-channel endpoints).
+     *
+     * @param node the node
+     * @param buf the buffer to write to
+     */
+    static public void writeNode(ZWaveEndpoint node, ByteBuffer buf) {
+        CachedNode n = CachedNode.create(node);
+        writeDeviceClasses(n, buf);
+        buf.put((byte)n.getEndpoints().size());
+        for (CachedNode ep : n.getEndpoints()) {
+            buf.put(ep.getEndpointNumber());
+            writeDeviceClasses(ep, buf);
+        }
+    }
+
+    /**
+     * Creates a node from a description written by writeNode(). Only the node types the plugin supports can be
+     * recreated.
+     *
+     * @param buf the buffer to read from
+     *
+     * @return a ZWaveEndpoint (or null if the node type isn't supported)
+     */
+    static public ZWaveEndpoint readNode(ByteBuffer buf) {
+        byte nodeId = buf.get();
+        byte generic = buf.get();
+        byte specific = buf.get();
+        byte[] ccs = readBytes(buf);
+
+        NodeInfo info = new NodeInfo(nodeId, BASIC_ROUTING_SLAVE, generic, specific, ccs);
+        boolean listening = !contains(ccs, BatteryCommandClass.ID);
+        ZWaveEndpoint node;
+        if (generic == BinarySwitch.ID) {
+            node = new BinarySwitch(info, listening, null);
+        } else if (generic == MultilevelSwitch.ID) {
+            node = new MultilevelSwitch(info, listening, null);
+        } else if (generic == Meter.ID) {
+            node = new Meter(info, listening, null);
+        } else if (generic == BinarySensor.ID) {
+            node = new RoutingBinarySensor(info, listening, null);
+        } else {
+            node = null;
+        }
+
+        int endpointCount = buf.get() & 0xFF;
+        if (endpointCount > 0 && node != null) {
+            applyReport(node, new byte[] {MultiInstanceCommandClass.ID, CMD_MULTI_CHANNEL_END_POINT_REPORT, 0x00, (byte)endpointCount});
+        }
+        for (int i=0; i < endpointCount; i++) {
+            byte number = buf.get();
+            buf.get(); // node ID
+            byte epGeneric = buf.get();
+            byte epSpecific = buf.get();
+            byte[] epCcs = readBytes(buf);
+            if (node != null) {
+                byte[] report = new byte[5 + epCcs.length];
+                report[0] = MultiInstanceCommandClass.ID;
+                report[1] = CMD_MULTI_CHANNEL_CAPABILITY_REPORT;
+                report[2] = number;
+                report[3] = epGeneric;
+                report[4] = epSpecific;
+                System.arraycopy(epCcs, 0, report, 5, epCcs.length);
+                applyReport(node, report);
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     * Writes the state of a node or endpoint as a list of report frames.
+     *
+     * @param ep the node or endpoint
+     * @param buf the buffer to write to
+     */
+    static public void writeState(ZWaveEndpoint ep, ByteBuffer buf) {
+        int countPos = buf.position();
+        buf.put((byte)0);
+        int count = 0;
+
+        if (ep.hasCommandClass(BinarySwitchCommandClass.ID)) {
+            Boolean on = BinarySwitch.isOn(ep);
+            if (on != null) {
+                writeReport(buf, BinarySwitchCommandClass.ID, CMD_REPORT, on ? (byte)0xFF : (byte)0x00);
+                count++;
+            }
+        }
+        if (ep instanceof MultilevelSwitch) {
+            Object level = ((MultilevelSwitch)ep).getLevel();
+            if (level instanceof Number) {
+                writeReport(buf, MultilevelSwitchCommandClass.ID, CMD_REPORT, ((Number)level).byteValue());
+                count++;
+            }
+        }
+        if (ep.hasCommandClass(MeterCommandClass.ID)) {
+            Object value = ((MeterCommandClass)ep.getCommandClass(MeterCommandClass.ID)).getCurrentValue();
+            if (value instanceof Number) {
+                int v = (int)Math.round(((Number)value).doubleValue() * 100);
+                writeReport(buf, MeterCommandClass.ID, CMD_METER_REPORT, METER_ELECTRIC, METER_PRECISION_2_WATTS_4_BYTES, (byte)(v >> 24), (byte)(v >> 16), (byte)(v >> 8), (byte)v);
+                count++;
+            }
+        }
+        if (ep instanceof BinarySensor) {
+            writeReport(buf, BinarySensorCommandClass.ID, CMD_REPORT, ((BinarySensor)ep).isSensorIdle() ? (byte)0x00 : (byte)0xFF);
+            count++;
+        }
+        if (ep instanceof RoutingBinarySensor) {
+            Object level = ((RoutingBinarySensor)ep).getBatteryLevel();
+            if (level instanceof Number) {
+                writeReport(buf, BatteryCommandClass.ID, CMD_REPORT, ((Number)level).byteValue());
+                count++;
+            }
+        }
+
+        buf.put(countPos, (byte)count);
+    }
+
+    /**
+     * Applies a list of report frames written by writeState() to a node or endpoint.
+     *
+     * @param ep the node or endpoint
+     * @param buf the buffer to read from
+     */
+    static public void readState(ZWaveEndpoint ep, ByteBuffer buf) {
+        int count = buf.get() & 0xFF;
+        for (int i=0; i < count; i++) {
+            byte[] report = readBytes(buf);
+            if (ep != null && report.length > 0) {
+                applyReport(ep, report);
+            }
+        }
+    }
+
+    static public void writeString(ByteBuffer buf, String s) {
+        byte[] b = (s != null) ? s.getBytes(UTF8) : new byte[0];
+        buf.putShort((short)b.length);
+        buf.put(b);
+    }
+
+    static public String readString(ByteBuffer buf) {
+        byte[] b = new byte[buf.getShort() & 0xFFFF];
+        buf.get(b);
+        return new String(b, UTF8);
+    }
+
+    static private void writeDeviceClasses(CachedNode n, ByteBuffer buf) {
+        buf.put(n.getNodeId());
+        buf.put(n.getGenericDeviceClass() != null ? n.getGenericDeviceClass() : (byte)0);
+        buf.put(n.getSpecificDeviceClass() != null ? n.getSpecificDeviceClass() : (byte)0);
+        buf.put((byte)n.getCommandClasses().length);
+        buf.put(n.getCommandClasses());
+    }
+
+    static private void writeReport(ByteBuffer buf, byte... report) {
+        buf.put((byte)report.length);
+        buf.put(report);
+    }
+
+    static private byte[] readBytes(ByteBuffer buf) {
+        byte[] b = new byte[buf.get() & 0xFF];
+        buf.get(b);
+        return b;
+    }
+
+    static private void applyReport(ZWaveEndpoint ep, byte[] report) {
+        CommandClass cc = ep.getCommandClass(report[0]);
+        if (cc != null) {
+            cc.onApplicationCommand(report, 0);
+        }
+    }
+
+    static private boolean contains(byte[] a, byte b) {
+        for (byte x : a) {
+            if (x == b) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
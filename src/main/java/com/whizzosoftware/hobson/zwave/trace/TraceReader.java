@@ -0,0 +1,125 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.trace;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the records in a trace file written by TraceWriter. The file is memory-mapped and records are read in
+ * order with next().
+ *
+ * @author Dan Noguerol
+ */
+public class TraceReader implements Closeable {
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long startTime;
+    private byte type;
+    private long timestamp;
+    private ByteBuffer data;
+
+    public TraceReader(File file) throws IOException {
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            long size = channel.size();
+            if (size < TraceFormat.HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid trace file size: " + size);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != TraceFormat.MAGIC) {
+                throw new IOException("Not a Z-Wave trace file: " + file);
+            }
+            byte version = buffer.get();
+            if (version != TraceFormat.VERSION) {
+                throw new IOException("Unsupported trace file version: " + version);
+            }
+            startTime = buffer.getLong();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the wall clock time the trace started.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Advances to the next record.
+     *
+     * @return false if there are no more records
+     */
+    public boolean next() {
+        if (buffer.remaining() < TraceFormat.RECORD_HEADER_SIZE) {
+            return false;
+        }
+        byte t = buffer.get();
+        if (t == TraceFormat.END) {
+            return false;
+        }
+        long ts = buffer.getLong();
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            // the trace was cut off mid-record
+            return false;
+        }
+        ByteBuffer d = buffer.slice();
+        d.limit(length);
+        buffer.position(buffer.position() + length);
+
+        type = t;
+        timestamp = ts;
+        data = d;
+        return true;
+    }
+
+    /**
+     * Returns the type of the current record.
+     *
+     * @return one of the TraceFormat record types
+     */
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * Returns the timestamp of the current record.
+     *
+     * @return the number of nanoseconds since the trace started
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the payload of the current record.
+     *
+     * @return a ByteBuffer positioned at the start of the payload
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.trace;
+
+import com.whizzosoftware.wzwave.controller.ZWaveControllerListener;
+import com.whizzosoftware.wzwave.frame.DataFrame;
+import com.whizzosoftware.wzwave.node.NodeInfo;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.ZWaveMultiChannelEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A ZWaveControllerListener that records every controller callback (and every frame sent to the controller) to a
+ * trace file before passing it on to another listener. The trace can later be fed back through the plugin with
+ * TraceReplayer.
+ *
+ * Recording errors are logged and stop the recording; they never affect the delegate listener.
+ *
+ * @author Dan Noguerol
+ */
+public class TraceRecorder implements ZWaveControllerListener, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TraceRecorder.class);
+
+    private final TraceWriter writer;
+    private final ZWaveControllerListener delegate;
+    private final ByteBuffer scratch = ByteBuffer.allocate(64 * 1024);
+    private boolean failed;
+
+    public TraceRecorder(TraceWriter writer, ZWaveControllerListener delegate) {
+        this.writer = writer;
+        this.delegate = delegate;
+    }
+
+    public TraceWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Records a frame sent to the controller.
+     *
+     * @param frame the frame
+     */
+    synchronized public void onFrameSent(DataFrame frame) {
+        if (!failed) {
+            scratch.clear();
+            try {
+                scratch.put(frame.getBytes());
+                write(TraceFormat.FRAME_SENT);
+            } catch (BufferOverflowException e) {
+                logger.warn("Frame too large to record: {}", frame);
+            }
+        }
+    }
+
+    @Override
+    public void onZWaveNodeAdded(ZWaveEndpoint node) {
+        record(TraceFormat.NODE_ADDED, node);
+        delegate.onZWaveNodeAdded(node);
+    }
+
+    @Override
+    public void onZWaveNodeUpdated(ZWaveEndpoint node) {
+        record(TraceFormat.NODE_UPDATED, node);
+        delegate.onZWaveNodeUpdated(node);
+    }
+
+    @Override
+    public void onZWaveConnectionFailure(Throwable t) {
+        synchronized (this) {
+            if (!failed) {
+                scratch.clear();
+                TraceFormat.writeString(scratch, String.valueOf(t != null ? t.getMessage() : null));
+                write(TraceFormat.CONNECTION_FAILURE);
+            }
+        }
+        delegate.onZWaveConnectionFailure(t);
+    }
+
+    @Override
+    public void onZWaveControllerInfo(String libraryVersion, Integer homeId, Byte nodeId) {
+        synchronized (this) {
+            if (!failed) {
+                scratch.clear();
+                TraceFormat.writeString(scratch, libraryVersion);
+                scratch.put((byte)(homeId != null ? 1 : 0)).putInt(homeId != null ? homeId : 0);
+                scratch.put((byte)(nodeId != null ? 1 : 0)).put(nodeId != null ? nodeId : (byte)0);
+                write(TraceFormat.CONTROLLER_INFO);
+            }
+        }
+        delegate.onZWaveControllerInfo(libraryVersion, homeId, nodeId);
+    }
+
+    @Override
+    public void onZWaveInclusionStarted() {
+        record(TraceFormat.INCLUSION_STARTED);
+        delegate.onZWaveInclusionStarted();
+    }
+
+    @Override
+    public void onZWaveInclusion(NodeInfo nodeInfo, boolean success) {
+        record(TraceFormat.INCLUSION, nodeInfo, success);
+        delegate.onZWaveInclusion(nodeInfo, success);
+    }
+
+    @Override
+    public void onZWaveInclusionStopped() {
+        record(TraceFormat.INCLUSION_STOPPED);
+        delegate.onZWaveInclusionStopped();
+    }
+
+    @Override
+    public void onZWaveExclusionStarted() {
+        record(TraceFormat.EXCLUSION_STARTED);
+        delegate.onZWaveExclusionStarted();
+    }
+
+    @Override
+    public void onZWaveExclusion(NodeInfo nodeInfo, boolean success) {
+        record(TraceFormat.EXCLUSION, nodeInfo, success);
+        delegate.onZWaveExclusion(nodeInfo, success);
+    }
+
+    @Override
+    public void onZWaveExclusionStopped() {
+        record(TraceFormat.EXCLUSION_STOPPED);
+        delegate.onZWaveExclusionStopped();
+    }
+
+    @Override
+    synchronized public void close() throws IOException {
+        failed = true;
+        writer.close();
+        logger.info("Recorded {} Z-Wave trace records ({} bytes) to {}", writer.getRecordCount(), writer.getSize(), writer.getFile());
+    }
+
+    synchronized private void record(byte type, ZWaveEndpoint node) {
+        if (!failed) {
+            scratch.clear();
+            try {
+                if (type == TraceFormat.NODE_ADDED) {
+                    TraceFormat.writeNode(node, scratch);
+                } else {
+                    scratch.put(node.getNodeId());
+                    scratch.put(node instanceof ZWaveMultiChannelEndpoint ? ((ZWaveMultiChannelEndpoint)node).getNumber() : (byte)0);
+                }
+                TraceFormat.writeState(node, scratch);
+                write(type);
+            } catch (BufferOverflowException e) {
+                logger.warn("Node too large to record: {}", node);
+            }
+        }
+    }
+
+    synchronized private void record(byte type, NodeInfo nodeInfo, boolean success) {
+        if (!failed) {
+            scratch.clear();
+            scratch.put(nodeInfo != null ? nodeInfo.getNodeId() : (byte)0).put((byte)(success ? 1 : 0));
+            write(type);
+        }
+    }
+
+    synchronized private void record(byte type) {
+        if (!failed) {
+            scratch.clear();
+            write(type);
+        }
+    }
+
+    private void write(byte type) {
+        try {
+            writer.write(type, scratch.array(), scratch.position());
+        } catch (IOException e) {
+            logger.error("Error writing Z-Wave trace; recording has been stopped", e);
+            failed = true;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.trace;
+
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.controller.ZWaveControllerListener;
+import com.whizzosoftware.wzwave.node.NodeInfo;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds a recorded trace back through a ZWaveControllerListener (normally a ZWaveNetwork), either at the speed it was
+ * recorded or as fast as possible. Node objects are recreated from the trace so the listener sees the same sequence
+ * of additions and state changes it saw when the trace was recorded.
+ *
+ * Frames the plugin sent during recording are counted but not replayed; the plugin sends its own frames in response
+ * to the replayed traffic.
+ *
+ * @author Dan Noguerol
+ */
+public class TraceReplayer {
+    private static final Logger logger = LoggerFactory.getLogger(TraceReplayer.class);
+
+    private final File file;
+    private final double speed;
+
+    /**
+     * Constructor.
+     *
+     * @param file the trace file
+     * @param speed the replay speed relative to the recording (e.g. 1.0 for recorded speed, 2.0 for twice as fast or
+     *              0 for as fast as possible)
+     */
+    public TraceReplayer(File file, double speed) {
+        this.file = file;
+        this.speed = speed;
+    }
+
+    /**
+     * Replays the trace. This blocks until the whole trace has been replayed.
+     *
+     * @param listener the listener to deliver the trace to
+     *
+     * @return the replay results
+     *
+     * @throws IOException on failure
+     */
+    public Result replay(ZWaveControllerListener listener) throws IOException {
+        ZWaveEndpoint[] nodes = new ZWaveEndpoint[256];
+        Result result = new Result();
+        long start = System.nanoTime();
+
+        try (TraceReader reader = new TraceReader(file)) {
+            while (reader.next()) {
+                if (speed > 0) {
+                    long due = start + (long)(reader.getTimestamp() / speed);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+
+                ByteBuffer data = reader.getData();
+                result.traceDuration = reader.getTimestamp();
+
+                switch (reader.getType()) {
+                    case TraceFormat.CONTROLLER_INFO: {
+                        String libraryVersion = TraceFormat.readString(data);
+                        boolean hasHomeId = (data.get() != 0);
+                        int homeId = data.getInt();
+                        boolean hasNodeId = (data.get() != 0);
+                        byte nodeId = data.get();
+                        listener.onZWaveControllerInfo(libraryVersion, hasHomeId ? (Integer)homeId : null, hasNodeId ? (Byte)nodeId : null);
+                        break;
+                    }
+                    case TraceFormat.NODE_ADDED: {
+                        ZWaveEndpoint node = TraceFormat.readNode(data);
+                        if (node != null) {
+                            TraceFormat.readState(node, data);
+                            nodes[node.getNodeId() & 0xFF] = node;
+                            listener.onZWaveNodeAdded(node);
+                            result.nodesAdded++;
+                        } else {
+                            result.skipped++;
+                        }
+                        break;
+                    }
+                    case TraceFormat.NODE_UPDATED: {
+                        ZWaveEndpoint ep = getEndpoint(nodes, data.get(), data.get());
+                        if (ep != null) {
+                            TraceFormat.readState(ep, data);
+                            listener.onZWaveNodeUpdated(ep);
+                            result.nodesUpdated++;
+                        } else {
+                            result.skipped++;
+                        }
+                        break;
+                    }
+                    case TraceFormat.FRAME_SENT:
+                        result.framesSent++;
+                        break;
+                    case TraceFormat.CONNECTION_FAILURE:
+                        listener.onZWaveConnectionFailure(new IOException(TraceFormat.readString(data)));
+                        break;
+                    case TraceFormat.INCLUSION_STARTED:
+                        listener.onZWaveInclusionStarted();
+                        break;
+                    case TraceFormat.INCLUSION:
+                        listener.onZWaveInclusion(createNodeInfo(data.get()), data.get() != 0);
+                        break;
+                    case TraceFormat.INCLUSION_STOPPED:
+                        listener.onZWaveInclusionStopped();
+                        break;
+                    case TraceFormat.EXCLUSION_STARTED:
+                        listener.onZWaveExclusionStarted();
+                        break;
+                    case TraceFormat.EXCLUSION:
+                        listener.onZWaveExclusion(createNodeInfo(data.get()), data.get() != 0);
+                        break;
+                    case TraceFormat.EXCLUSION_STOPPED:
+                        listener.onZWaveExclusionStopped();
+                        break;
+                    default:
+                        logger.debug("Ignoring unknown trace record type: {}", reader.getType());
+                        result.skipped++;
+                        break;
+                }
+                result.records++;
+            }
+        }
+
+        result.replayDuration = System.nanoTime() - start;
+        logger.info("Replayed {}", result);
+        return result;
+    }
+
+    private ZWaveEndpoint getEndpoint(ZWaveEndpoint[] nodes, byte nodeId, byte endpointNumber) {
+        ZWaveEndpoint node = nodes[nodeId & 0xFF];
+        if (node != null && endpointNumber != 0) {
+            MultiInstanceCommandClass micc = (MultiInstanceCommandClass)node.getCommandClass(MultiInstanceCommandClass.ID);
+            return micc != null ? micc.getEndpoint(endpointNumber) : null;
+        }
+        return node;
+    }
+
+    private NodeInfo createNodeInfo(byte nodeId) {
+        return new NodeInfo(nodeId, (byte)0, (byte)0, (byte)0, new byte[0]);
+    }
+
+    /**
+     * The results of a replay.
+     */
+    static public class Result {
+        private long records;
+        private long nodesAdded;
+        private long nodesUpdated;
+        private long framesSent;
+        private long skipped;
+        private long traceDuration;
+        private long replayDuration;
+
+        public long getRecordCount() {
+            return records;
+        }
+
+        public long getNodesAdded() {
+            return nodesAdded;
+        }
+
+        public long getNodesUpdated() {
+            return nodesUpdated;
+        }
+
+        /**
+         * Returns the number of frames the plugin sent while the trace was recorded.
+         *
+         * @return a long
+         */
+        public long getFramesSent() {
+            return framesSent;
+        }
+
+        /**
+         * Returns the number of records that couldn't be replayed (e.g. unsupported node types).
+         *
+         * @return a long
+         */
+        public long getSkippedCount() {
+            return skipped;
+        }
+
+        /**
+         * Returns the time span covered by the trace.
+         *
+         * @return the duration in nanoseconds
+         */
+        public long getTraceDuration() {
+            return traceDuration;
+        }
+
+        /**
+         * Returns how long the replay took.
+         *
+         * @return the duration in nanoseconds
+         */
+        public long getReplayDuration() {
+            return replayDuration;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d trace records (%d node additions, %d node updates, %d frames sent, %d skipped) covering %.1fs in %.1fs",
+                records, nodesAdded, nodesUpdated, framesSent, skipped, traceDuration / 1000000000.0, replayDuration / 1000000000.0);
+        }
+    }
+}
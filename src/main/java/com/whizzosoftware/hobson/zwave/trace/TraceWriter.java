@@ -0,0 +1,136 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.trace;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes records to an append-only trace file.
+ *
+ * The file is written through a memory-mapped region so that appending a record is just a copy into memory; the
+ * operating system writes the pages out in the background. When a region fills up the next one is mapped. If the
+ * process dies before the writer is closed, the unwritten remainder of the last region is zero-filled, which reads
+ * back as the end of the trace.
+ *
+ * @author Dan Noguerol
+ */
+public class TraceWriter implements Closeable {
+    static private final int DEFAULT_REGION_SIZE = 4 * 1024 * 1024;
+
+    private final File file;
+    private final FileChannel channel;
+    private final int regionSize;
+    private final long startNanos;
+    private MappedByteBuffer region;
+    private long position;
+    private long recordCount;
+
+    public TraceWriter(File file) throws IOException {
+        this(file, DEFAULT_REGION_SIZE);
+    }
+
+    public TraceWriter(File file, int regionSize) throws IOException {
+        this.file = file;
+        this.regionSize = regionSize;
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        this.startNanos = System.nanoTime();
+        channel.truncate(0);
+        map(0);
+        region.putInt(TraceFormat.MAGIC).put(TraceFormat.VERSION).putLong(System.currentTimeMillis());
+        position = TraceFormat.HEADER_SIZE;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Appends a record timestamped with the current time.
+     *
+     * @param type the record type
+     * @param data the record payload
+     * @param length the payload length
+     *
+     * @throws IOException on failure
+     */
+    synchronized public void write(byte type, byte[] data, int length) throws IOException {
+        write(type, System.nanoTime() - startNanos, data, 0, length);
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param type the record type
+     * @param timestamp the number of nanoseconds since the trace started
+     * @param data the record payload
+     * @param offset the payload offset
+     * @param length the payload length
+     *
+     * @throws IOException on failure
+     */
+    synchronized public void write(byte type, long timestamp, byte[] data, int offset, int length) throws IOException {
+        if (region == null) {
+            throw new IOException("Trace file has been closed");
+        }
+        int size = TraceFormat.RECORD_HEADER_SIZE + length;
+        if (size > regionSize) {
+            throw new IOException("Record of " + length + " bytes is too large for trace file");
+        }
+        if (region.remaining() < size) {
+            map(position);
+        }
+        region.put(type).putLong(timestamp).putInt(length).put(data, offset, length);
+        position += size;
+        recordCount++;
+    }
+
+    synchronized public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the number of bytes written to the trace.
+     *
+     * @return a long
+     */
+    synchronized public long getSize() {
+        return position;
+    }
+
+    /**
+     * Flushes the trace and trims the file to the data written.
+     *
+     * @throws IOException on failure
+     */
+    @Override
+    synchronized public void close() throws IOException {
+        if (region != null) {
+            region.force();
+            region = null;
+            try {
+                channel.truncate(position);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private void map(long start) throws IOException {
+        if (region != null) {
+            region.force();
+        }
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, regionSize);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.util;
+
+import com.whizzosoftware.hobson.api.property.PropertyContainer;
+
+public class ConfigUtil {
+    static public long getLong(PropertyContainer config, String name, long defaultValue) {
+        Object o = (config != null) ? config.getPropertyValue(name) : null;
+        if (o instanceof Number) {
+            return ((Number)o).longValue();
+        } else if (o != null && o.toString().trim().length() > 0) {
+            try {
+                return Long.parseLong(o.toString().trim());
+            } catch (NumberFormatException ignored) {}
+        }
+        return defaultValue;
+    }
+
+    static public double getDouble(PropertyContainer config, String name, double defaultValue) {
+        Object o = (config != null) ? config.getPropertyValue(name) : null;
+        if (o instanceof Number) {
+            return ((Number)o).doubleValue();
+        } else if (o != null && o.toString().trim().length() > 0) {
+            try {
+                return Double.parseDouble(o.toString().trim());
+            } catch (NumberFormatException ignored) {}
+        }
+        return defaultValue;
+    }
+
+    static public boolean getBoolean(PropertyContainer config, String name, boolean defaultValue) {
+        Object o = (config != null) ? config.getPropertyValue(name) : null;
+        if (o instanceof Boolean) {
+            return (Boolean)o;
+        } else if (o != null && o.toString().trim().length() > 0) {
+            return Boolean.parseBoolean(o.toString().trim());
+        }
+        return defaultValue;
+    }
+}
@@ -17,4 +17,40 @@ public class DeviceUtil {
     static public String getDeviceIdForNodeIdAndEndpoint(byte nodeId, byte endpoint) {
         return "zwave-" + nodeId + "-" + endpoint;
     }
+
+    /**
+     * Returns the device ID for a node on one of several Z-Wave networks.
+     *
+     * @param namespace the network's namespace (or null if there is only one network)
+     * @param nodeId the node ID
+     *
+     * @return a device ID
+     */
+    static public String getDeviceIdForNodeId(String namespace, byte nodeId) {
+        return namespace != null ? "zwave-" + namespace + "-" + nodeId : getDeviceIdForNodeId(nodeId);
+    }
+
+    /**
+     * Returns the device ID for a multi-channel endpoint on one of several Z-Wave networks.
+     *
+     * @param namespace the network's namespace (or null if there is only one network)
+     * @param nodeId the node ID
+     * @param endpoint the endpoint number
+     *
+     * @return a device ID
+     */
+    static public String getDeviceIdForNodeIdAndEndpoint(String namespace, byte nodeId, byte endpoint) {
+        return namespace != null ? "zwave-" + namespace + "-" + nodeId + "-" + endpoint : getDeviceIdForNodeIdAndEndpoint(nodeId, endpoint);
+    }
+
+    /**
+     * Returns the device ID namespace for a Z-Wave network.
+     *
+     * @param homeId the network's home ID
+     *
+     * @return a namespace
+     */
+    static public String getNamespaceForHomeId(int homeId) {
+        return String.format("%08x", homeId);
+    }
 }
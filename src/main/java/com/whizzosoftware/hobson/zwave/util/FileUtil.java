@@ -0,0 +1,53 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.util;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Convenience methods for working with files.
+ *
+ * @author Dan Noguerol
+ */
+public class FileUtil {
+    /**
+     * Writes a file so that a crash can never leave it partially written. The content is written to a temporary file
+     * and synced to disk before being renamed over the existing file.
+     *
+     * @param file the file to write
+     * @param writer the writer that produces the file content
+     *
+     * @throws IOException on failure
+     */
+    static public void writeAtomically(File file, StreamWriter writer) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory: " + dir);
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            writer.write(out);
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Interface for producing the content of a file.
+     */
+    public interface StreamWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.util;
+
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.frame.DataFrame;
+import com.whizzosoftware.wzwave.frame.SendData;
+
+/**
+ * The pre-built payload of a command sent to a node (or multi-channel endpoint). Frames are created from the
+ * template by copying the payload and patching in a value, so sending a command doesn't need any command class
+ * lookups or encapsulation while each frame sent is still a new instance.
+ *
+ * @author Dan Noguerol
+ */
+public class FrameTemplate {
+    private final String name;
+    private final byte nodeId;
+    private final byte[] data;
+    private final int valueIndex;
+
+    /**
+     * Constructor.
+     *
+     * @param name a description of the frames (used for logging)
+     * @param nodeId the destination node ID
+     * @param endpointNumber the destination multi-channel endpoint (or null to address the node itself)
+     * @param micc the multi-instance command class of the node (required if endpointNumber is not null)
+     * @param valueIndex the index of the value byte within the command (or -1 if the command has no value)
+     * @param command the command class ID, command ID and any parameters
+     */
+    public FrameTemplate(String name, byte nodeId, Byte endpointNumber, MultiInstanceCommandClass micc, int valueIndex, byte... command) {
+        if (valueIndex >= command.length) {
+            throw new IllegalArgumentException("Invalid value index: " + valueIndex);
+        }
+        this.name = name;
+        this.nodeId = nodeId;
+        if (endpointNumber != null) {
+            if (micc == null) {
+                throw new IllegalArgumentException("No multi-instance command class for endpoint " + endpointNumber);
+            }
+            // the command class does the encapsulation once so the header matches the version the node supports; the
+            // command always ends up at the end of the encapsulated payload
+            DataFrame frame = micc.createMultiChannelCommandEncapsulation((byte)0, endpointNumber, FrameUtil.createSendData(name, nodeId, command), false);
+            byte[] d = (frame instanceof SendData) ? ((SendData)frame).getSendData() : null;
+            int offset = (d != null) ? d.length - command.length : -1;
+            if (offset < 0 || !endsWith(d, command)) {
+                throw new IllegalStateException("Unexpected multi-channel encapsulation for " + name);
+            }
+            this.data = d;
+            this.valueIndex = valueIndex >= 0 ? valueIndex + offset : -1;
+        } else {
+            this.data = command.clone();
+            this.valueIndex = valueIndex;
+        }
+    }
+
+    /**
+     * Creates a frame for a command that has no value.
+     *
+     * @return a DataFrame instance
+     */
+    public DataFrame create() {
+        return FrameUtil.createSendData(name, nodeId, data.clone());
+    }
+
+    /**
+     * Creates a frame with a value patched into the command.
+     *
+     * @param value the value
+     *
+     * @return a DataFrame instance
+     */
+    public DataFrame create(byte value) {
+        if (valueIndex < 0) {
+            throw new IllegalStateException("Frame template has no value: " + name);
+        }
+        byte[] d = data.clone();
+        d[valueIndex] = value;
+        return FrameUtil.createSendData(name, nodeId, d);
+    }
+
+    static private boolean endsWith(byte[] data, byte[] suffix) {
+        int offset = data.length - suffix.length;
+        for (int i=0; i < suffix.length; i++) {
+            if (data[offset + i] != suffix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2014 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.zwave.util;
+
+import com.whizzosoftware.wzwave.frame.DataFrame;
+import com.whizzosoftware.wzwave.frame.SendData;
+
+/**
+ * Helper methods for building frames for commands that the wzwave command classes don't provide.
+ */
+public class FrameUtil {
+    /**
+     * Transmit with acknowledgement and automatic routing (the same options the wzwave command classes use).
+     */
+    static private final byte TX_OPTIONS = (byte)0x05;
+
+    /**
+     * Creates a frame that sends a command to a node.
+     *
+     * @param name a description of the frame (used for logging)
+     * @param nodeId the destination node ID
+     * @param data the command class ID, command ID and any parameters
+     *
+     * @return a DataFrame instance
+     */
+    static public DataFrame createSendData(String name, byte nodeId, byte... data) {
+        return new SendData(name, nodeId, data, TX_OPTIONS, true);
+    }
+
+    /**
+     * Returns the node a frame is addressed to.
+     *
+     * @param frame the frame
+     *
+     * @return the node ID (or null if the frame isn't addressed to a node)
+     */
+    static public Byte getNodeId(DataFrame frame) {
+        return (frame instanceof SendData) ? ((SendData)frame).getNodeId() : null;
+    }
+}
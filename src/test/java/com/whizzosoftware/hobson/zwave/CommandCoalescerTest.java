@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.zwave.device.HobsonZWaveDevice;
+import com.whizzosoftware.hobson.zwave.device.MockZWaveDevice;
+import com.whizzosoftware.hobson.zwave.util.FrameUtil;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class CommandCoalescerTest {
+    private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testNewestCommandWins() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 60000);
+        ctx.setConfirmationTracker(t);
+        CommandCoalescer c = new CommandCoalescer(ctx, t, executor, 100);
+        MockZWaveDevice d = new MockZWaveDevice(new ZWavePlugin("plugin1"), (byte)2);
+
+        // the first command is sent immediately and the rest collapse into the newest
+        ZWaveCommand last = null;
+        for (int i=1; i <= 4; i++) {
+            last = createLevelCommand(d, i);
+            c.submit(last);
+        }
+        assertEquals(1, ctx.getFrameCount());
+        assertEquals(1, c.getPendingCount());
+        assertEquals(2, c.getCollapsedCount());
+
+        waitForSent(c, 2);
+        assertEquals(2, ctx.getFrameCount());
+        assertSame(last.getSetFrame(), ctx.getFrame(1));
+
+        // only the newest command should be waiting for verification
+        assertEquals(1, t.getPendingCount());
+        t.onVariableUpdate(d, "level", (byte)3);
+        assertEquals(1, t.getPendingCount());
+        t.onVariableUpdate(d, "level", (byte)4);
+        assertEquals(0, t.getPendingCount());
+        assertEquals(1, t.getSavedCount());
+    }
+
+    @Test
+    public void testSingleTrailingVerificationForSilentNode() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 0);
+        CommandCoalescer c = new CommandCoalescer(ctx, t, executor, 50);
+        MockZWaveDevice d = new MockZWaveDevice(new ZWavePlugin("plugin1"), (byte)3);
+
+        for (int i=1; i <= 5; i++) {
+            c.submit(createLevelCommand(d, i));
+        }
+        assertEquals(0, ctx.getConfirmationCount());
+
+        waitForSent(c, 2);
+        long start = System.currentTimeMillis();
+        while (ctx.getConfirmationCount() == 0 && System.currentTimeMillis() - start < 5000) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(100);
+        assertEquals(1, ctx.getConfirmationCount());
+        assertEquals(3, c.getCollapsedCount());
+    }
+
+    @Test
+    public void testDirectCommandSupersedesPending() {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 60000);
+        CommandCoalescer c = new CommandCoalescer(ctx, t, executor, 60000);
+        MockZWaveDevice d = new MockZWaveDevice(new ZWavePlugin("plugin1"), (byte)4);
+
+        c.submit(createLevelCommand(d, 10));
+        c.submit(createLevelCommand(d, 20));
+        assertEquals(1, c.getPendingCount());
+
+        c.supersede(d);
+        assertEquals(0, c.getPendingCount());
+        assertEquals(1, c.getCollapsedCount());
+        assertEquals(1, c.getSentCount());
+    }
+
+    private ZWaveCommand createLevelCommand(HobsonZWaveDevice d, int level) {
+        return new ZWaveCommand(d, FrameUtil.createSendData("Level Set", d.getNodeId(), (byte)0x26, (byte)0x01, (byte)level), null, "level", (byte)level);
+    }
+
+    private void waitForSent(CommandCoalescer c, long count) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (c.getSentCount() < count && System.currentTimeMillis() - start < 5000) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, c.getSentCount());
+        assertEquals(0, c.getPendingCount());
+    }
+}
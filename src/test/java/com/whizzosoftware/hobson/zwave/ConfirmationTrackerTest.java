@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.zwave.device.MockZWaveDevice;
+import com.whizzosoftware.hobson.zwave.util.FrameUtil;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ConfirmationTrackerTest {
+    private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReportSavesConfirmation() {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 60000);
+        MockZWaveDevice d = new MockZWaveDevice(new ZWavePlugin("plugin1"), (byte)2);
+
+        t.expect(d, "on", true, null);
+        assertEquals(1, t.getPendingCount());
+
+        // a report for a different value or variable shouldn't satisfy the expectation
+        t.onVariableUpdate(d, "on", false);
+        t.onVariableUpdate(d, "level", true);
+        assertEquals(1, t.getPendingCount());
+
+        t.onVariableUpdate(d, "on", true);
+        assertEquals(0, t.getPendingCount());
+        assertEquals(1, t.getSavedCount());
+        assertEquals(0, ctx.getConfirmationCount());
+    }
+
+    @Test
+    public void testTimeoutAndSilentNodeLearning() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 10);
+        MockZWaveDevice d = new MockZWaveDevice(new ZWavePlugin("plugin1"), (byte)3);
+
+        for (int i=0; i < 2; i++) {
+            t.expect(d, "on", true, null);
+            waitForNoPending(t);
+        }
+        assertEquals(2, t.getTimeoutCount());
+        assertEquals(2, ctx.getConfirmationCount());
+
+        // the node has now been learned as silent so the GET should be sent immediately
+        t.expect(d, "on", true, null);
+        assertEquals(0, t.getPendingCount());
+        assertEquals(1, t.getImmediateCount());
+        assertEquals(3, ctx.getConfirmationCount());
+    }
+
+    @Test
+    public void testBatchVerification() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 50);
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+        MockZWaveDevice d1 = new MockZWaveDevice(plugin, (byte)4);
+        MockZWaveDevice d2 = new MockZWaveDevice(plugin, (byte)5);
+        MockZWaveDevice d3 = new MockZWaveDevice(plugin, (byte)6);
+
+        List<ZWaveCommand> commands = new ArrayList<>();
+        commands.add(new ZWaveCommand(d1, null, null, "on", false));
+        commands.add(new ZWaveCommand(d2, null, null, "on", false));
+        commands.add(new ZWaveCommand(d3, null, null, "on", false));
+        t.expectAll(commands);
+        assertEquals(3, t.getPendingCount());
+
+        // only the device that doesn't report should need a confirmation GET
+        t.onVariableUpdate(d1, "on", false);
+        t.onVariableUpdate(d3, "on", false);
+        waitForNoPending(t);
+        assertEquals(2, t.getSavedCount());
+        assertEquals(1, t.getTimeoutCount());
+        assertEquals(1, ctx.getConfirmationCount());
+    }
+
+    @Test
+    public void testBatchTimeoutStartsWhenReleased() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 20);
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+        List<ZWaveCommand> commands = new ArrayList<>();
+        commands.add(createCommand(new MockZWaveDevice(plugin, (byte)11), true));
+        commands.add(createCommand(new MockZWaveDevice(plugin, (byte)12), true));
+        t.expectAll(commands);
+
+        // the shared timeout doesn't start until every frame in the batch has been released
+        t.onFrameSent(commands.get(0).getSetFrame(), System.currentTimeMillis());
+        Thread.sleep(100);
+        assertEquals(2, t.getPendingCount());
+        assertEquals(0, t.getTimeoutCount());
+
+        t.onFrameSent(commands.get(1).getSetFrame(), System.currentTimeMillis());
+        waitForNoPending(t);
+        assertEquals(2, t.getTimeoutCount());
+        assertEquals(2, ctx.getConfirmationCount());
+    }
+
+    @Test
+    public void testBatchWithDuplicateDevice() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 20);
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+        MockZWaveDevice d1 = new MockZWaveDevice(plugin, (byte)13);
+        MockZWaveDevice d2 = new MockZWaveDevice(plugin, (byte)14);
+        List<ZWaveCommand> commands = new ArrayList<>();
+        commands.add(createCommand(d1, true));
+        commands.add(createCommand(d2, true));
+        commands.add(createCommand(d1, false));
+        t.expectAll(commands);
+        assertEquals(2, t.getPendingCount());
+
+        // the superseded member doesn't hold up the batch's timeout once the other frames are released
+        t.onFrameSent(commands.get(1).getSetFrame(), System.currentTimeMillis());
+        t.onFrameSent(commands.get(2).getSetFrame(), System.currentTimeMillis());
+        waitForNoPending(t);
+        assertEquals(2, t.getTimeoutCount());
+        assertEquals(2, ctx.getConfirmationCount());
+    }
+
+    @Test
+    public void testFutureCompletion() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 60000);
+        MockZWaveDevice d = new MockZWaveDevice(new ZWavePlugin("plugin1"), (byte)7);
+
+        // a newer command supersedes an older one
+        CommandFuture f1 = new CommandFuture();
+        CommandFuture f2 = new CommandFuture();
+        t.expect(d, "on", true, null, f1);
+        t.expect(d, "on", false, null, f2);
+        assertTrue(f1.isDone());
+        assertEquals(CommandFuture.Status.SUPERSEDED, f1.get().getStatus());
+        assertFalse(f2.isDone());
+
+        t.onVariableUpdate(d, "on", false);
+        CommandFuture.Result r = f2.get(5, TimeUnit.SECONDS);
+        assertEquals(CommandFuture.Status.REPORTED, r.getStatus());
+        assertTrue(r.isSuccess());
+        assertTrue(r.getRoundTripTime() >= 0);
+    }
+
+    @Test
+    public void testFutureVerificationAndTimeout() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 10);
+        MockZWaveDevice d = new MockZWaveDevice(new ZWavePlugin("plugin1"), (byte)8);
+
+        // the expectation should survive the timeout so the GET response can complete the future
+        CommandFuture f = new CommandFuture();
+        t.expect(d, "on", true, null, f);
+        long start = System.currentTimeMillis();
+        while (ctx.getConfirmationCount() == 0 && System.currentTimeMillis() - start < 5000) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, t.getPendingCount());
+        t.onVariableUpdate(d, "on", true);
+        assertEquals(CommandFuture.Status.VERIFIED, f.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(0, t.getSavedCount());
+
+        // with no response at all the future eventually times out
+        f = new CommandFuture();
+        t.expect(d, "on", false, null, f);
+        CommandFuture.Result r = f.get(5, TimeUnit.SECONDS);
+        assertEquals(CommandFuture.Status.TIMED_OUT, r.getStatus());
+        assertFalse(r.isSuccess());
+        assertEquals(0, t.getPendingCount());
+    }
+
+    @Test
+    public void testReportBeforeReleaseIgnored() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 60000);
+        MockZWaveDevice d = new MockZWaveDevice(new ZWavePlugin("plugin1"), (byte)9);
+        ZWaveCommand cmd = createCommand(d, true);
+
+        // a stale value reported while the SET is still queued says nothing about the command
+        t.expect(cmd, null);
+        t.onVariableUpdate(d, "on", true);
+        assertEquals(1, t.getPendingCount());
+        assertEquals(0, t.getSavedCount());
+
+        t.onFrameSent(cmd.getSetFrame(), System.currentTimeMillis());
+        t.onVariableUpdate(d, "on", true);
+        assertEquals(0, t.getPendingCount());
+        assertEquals(1, t.getSavedCount());
+    }
+
+    @Test
+    public void testSilentNodeRelearned() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 10);
+        MockZWaveDevice d = new MockZWaveDevice(new ZWavePlugin("plugin1"), (byte)10);
+
+        for (int i=0; i < 2; i++) {
+            t.expect(d, "on", true, null);
+            waitForNoPending(t);
+        }
+        assertTrue(t.isSilent(d.getNodeId()));
+
+        // commands to a silent node get an immediate GET until one of them is used as a probe
+        int immediate = 0;
+        while (t.getPendingCount() == 0 && immediate < 100) {
+            t.expect(d, "on", true, null);
+            immediate++;
+        }
+        assertEquals(1, t.getPendingCount());
+        assertTrue(immediate > 1);
+
+        // a report for the probe shows the node reports after all
+        t.onVariableUpdate(d, "on", true);
+        assertEquals(0, t.getPendingCount());
+        assertFalse(t.isSilent(d.getNodeId()));
+    }
+
+    @Test
+    public void testHeldCommandWaitsForRelease() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 10);
+        MockZWaveDevice d = new MockZWaveDevice(new ZWavePlugin("plugin1"), (byte)13);
+
+        // a SET held for a sleeping node neither times out nor counts against the node while it's held
+        ZWaveCommand cmd = createCommand(d, true);
+        CommandFuture f = new CommandFuture();
+        t.expect(cmd, f);
+        Thread.sleep(100);
+        assertFalse(f.isDone());
+        assertEquals(1, t.getPendingCount());
+        assertEquals(0, t.getTimeoutCount());
+        assertEquals(0, ctx.getConfirmationCount());
+
+        // a held SET that is discarded fails its command
+        t.onFrameDropped(cmd.getSetFrame());
+        assertEquals(CommandFuture.Status.FAILED, f.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(0, t.getPendingCount());
+    }
+
+    @Test
+    public void testFutureSentTimeIsReleaseTime() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 60000);
+        MockZWaveDevice d = new MockZWaveDevice(new ZWavePlugin("plugin1"), (byte)14);
+
+        ZWaveCommand cmd = createCommand(d, false);
+        CommandFuture f = new CommandFuture();
+        t.expect(cmd, f);
+        assertEquals(0, f.getSentTime());
+
+        // the round trip is measured from the release of the SET rather than from the submission of the command
+        long released = System.currentTimeMillis() + 10000;
+        t.onFrameSent(cmd.getSetFrame(), released);
+        assertEquals(released, f.getSentTime());
+        t.onVariableUpdate(d, "on", false);
+        assertEquals(0, f.get(5, TimeUnit.SECONDS).getRoundTripTime());
+    }
+
+    private ZWaveCommand createCommand(MockZWaveDevice d, boolean on) {
+        return new ZWaveCommand(d, FrameUtil.createSendData("Switch Set", d.getNodeId(), (byte)0x25, (byte)0x01, on ? (byte)0xFF : 0), null, "on", on);
+    }
+
+    private void waitForNoPending(ConfirmationTracker t) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (t.getPendingCount() > 0 && System.currentTimeMillis() - start < 5000) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, t.getPendingCount());
+    }
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testBucketBounds() {
+        for (long v=0; v < 100000; v++) {
+            int ix = LatencyHistogram.indexOf(v);
+            long upper = LatencyHistogram.upperBoundOf(ix);
+            assertTrue(upper >= v);
+            // relative error is bounded at 12.5%
+            assertTrue(upper - v <= Math.max(0, v / 8));
+        }
+        assertEquals(LatencyHistogram.indexOf(Long.MAX_VALUE), LatencyHistogram.indexOf(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getPercentile(50));
+
+        for (int i=1; i <= 100; i++) {
+            h.record(i);
+        }
+        assertEquals(100, h.getCount());
+        assertEquals(100, h.getMax());
+        assertEquals(50.5, h.getMean(), 0.001);
+
+        long p50 = h.getPercentile(50);
+        assertTrue(p50 >= 50 && p50 <= 56);
+        long p99 = h.getPercentile(99);
+        assertTrue(p99 >= 99 && p99 <= 100);
+        assertEquals(100, h.getPercentile(100));
+
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+    }
+}
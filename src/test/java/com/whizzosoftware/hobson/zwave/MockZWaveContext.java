@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.wzwave.frame.DataFrame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A ZWaveContext for use in tests that records the frames it's asked to send. Confirmation frames are counted
+ * separately from everything else. If a confirmation tracker is set, it's told that each frame has been released
+ * as soon as it's sent.
+ *
+ * @author Dan Noguerol
+ */
+public class MockZWaveContext implements ZWaveContext {
+    private final List<DataFrame> frames = new ArrayList<>();
+    private int confirmationCount;
+    private volatile ConfirmationTracker confirmationTracker;
+
+    public void setConfirmationTracker(ConfirmationTracker confirmationTracker) {
+        this.confirmationTracker = confirmationTracker;
+    }
+
+    @Override
+    public void sendDataFrame(DataFrame frame) {
+        sendDataFrame(frame, TransmitPriority.INTERACTIVE);
+    }
+
+    @Override
+    public void sendDataFrame(DataFrame frame, TransmitPriority priority) {
+        synchronized (this) {
+            if (priority == TransmitPriority.CONFIRMATION) {
+                confirmationCount++;
+            } else {
+                frames.add(frame);
+            }
+        }
+        ConfirmationTracker t = confirmationTracker;
+        if (t != null) {
+            t.onFrameSent(frame, System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public void sendCommand(ZWaveCommand command) {
+    }
+
+    @Override
+    public void sendCoalescedCommand(ZWaveCommand command) {
+    }
+
+    @Override
+    public CommandFuture sendCommandAsync(ZWaveCommand command) {
+        return null;
+    }
+
+    @Override
+    public void sendCommands(List<ZWaveCommand> commands) {
+    }
+
+    @Override
+    public boolean runOnNetwork(Runnable task) {
+        task.run();
+        return true;
+    }
+
+    synchronized public int getFrameCount() {
+        return frames.size();
+    }
+
+    synchronized public DataFrame getFrame(int ix) {
+        return frames.get(ix);
+    }
+
+    synchronized public int getConfirmationCount() {
+        return confirmationCount;
+    }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.zwave.device.MockZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class NodeUpdateCoalescerTest {
+    @Test
+    public void testLatestWins() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<ZWaveEndpoint> processed = new ArrayList<>();
+        NodeUpdateCoalescer c = new NodeUpdateCoalescer(
+            new Executor() {
+                @Override
+                public void execute(Runnable r) {
+                    tasks.add(r);
+                }
+            },
+            new NodeUpdateCoalescer.Listener() {
+                @Override
+                public void onNodesAdded(List<ZWaveEndpoint> nodes) {
+                }
+
+                @Override
+                public void onCoalescedNodeUpdate(ZWaveEndpoint endpoint) {
+                    processed.add(endpoint);
+                }
+            }
+        );
+
+        MockZWaveEndpoint n1a = new MockZWaveEndpoint((byte)1);
+        MockZWaveEndpoint n1b = new MockZWaveEndpoint((byte)1);
+        MockZWaveEndpoint n2 = new MockZWaveEndpoint((byte)2);
+
+        c.onNodeUpdated(n1a);
+        c.onNodeUpdated(n2);
+        c.onNodeUpdated(n1b);
+
+        // only a single drain task should be queued
+        assertEquals(1, tasks.size());
+        assertEquals(2, c.getPendingCount());
+        assertEquals(1, c.getCoalescedCount());
+
+        tasks.get(0).run();
+        assertEquals(2, processed.size());
+        assertSame(n1b, processed.get(0));
+        assertSame(n2, processed.get(1));
+        assertEquals(0, c.getPendingCount());
+
+        // a new update after the drain should schedule a new task
+        c.onNodeUpdated(n1a);
+        assertEquals(2, tasks.size());
+    }
+
+    @Test
+    public void testAddsBeforeUpdates() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<String> events = new ArrayList<>();
+        NodeUpdateCoalescer c = new NodeUpdateCoalescer(
+            new Executor() {
+                @Override
+                public void execute(Runnable r) {
+                    tasks.add(r);
+                }
+            },
+            new NodeUpdateCoalescer.Listener() {
+                @Override
+                public void onNodesAdded(List<ZWaveEndpoint> nodes) {
+                    events.add("batch:" + nodes.size());
+                    for (ZWaveEndpoint node : nodes) {
+                        events.add("added:" + node.getNodeId());
+                    }
+                }
+
+                @Override
+                public void onCoalescedNodeUpdate(ZWaveEndpoint endpoint) {
+                    events.add("updated:" + endpoint.getNodeId());
+                }
+            }
+        );
+
+        MockZWaveEndpoint n1 = new MockZWaveEndpoint((byte)1);
+        MockZWaveEndpoint n2 = new MockZWaveEndpoint((byte)2);
+
+        c.onNodeAdded(n1);
+        c.onNodeUpdated(n1);
+        c.onNodeAdded(n2);
+        c.onNodeAdded(n1);
+
+        // additions are never coalesced and share the single drain task (and a single batch)
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertEquals(5, events.size());
+        assertEquals("batch:3", events.get(0));
+        assertEquals("added:1", events.get(1));
+        assertEquals("added:2", events.get(2));
+        assertEquals("added:1", events.get(3));
+        assertEquals("updated:1", events.get(4));
+    }
+
+    @Test
+    public void testAddBatchSize() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Integer> batches = new ArrayList<>();
+        NodeUpdateCoalescer c = new NodeUpdateCoalescer(
+            new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    tasks.add(command);
+                }
+            },
+            new NodeUpdateCoalescer.Listener() {
+                @Override
+                public void onNodesAdded(List<ZWaveEndpoint> nodes) {
+                    batches.add(nodes.size());
+                }
+
+                @Override
+                public void onCoalescedNodeUpdate(ZWaveEndpoint endpoint) {
+                }
+            }
+        );
+
+        for (int i=1; i <= 100; i++) {
+            c.onNodeAdded(new MockZWaveEndpoint((byte)i));
+        }
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertEquals(2, batches.size());
+        assertEquals(64, (int)batches.get(0));
+        assertEquals(36, (int)batches.get(1));
+    }
+}
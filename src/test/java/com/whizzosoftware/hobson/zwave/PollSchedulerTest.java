@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.zwave.device.MockZWaveDevice;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PollSchedulerTest {
+    @Test
+    public void testStaggeredPolling() {
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+        PollScheduler s = new PollScheduler(10000, 100);
+
+        MockPolledDevice[] devices = new MockPolledDevice[10];
+        for (int i=0; i < devices.length; i++) {
+            devices[i] = new MockPolledDevice(plugin, "zwave-" + i, (byte)i, 10000);
+            assertTrue(s.add(devices[i], 0));
+        }
+
+        // polls should be spread across the interval rather than all at once
+        int maxPerSecond = 0;
+        for (long now = 500; now < 10000; now += 1000) {
+            maxPerSecond = Math.max(maxPerSecond, s.poll(null, now));
+        }
+        assertTrue(maxPerSecond <= 2);
+        for (MockPolledDevice d : devices) {
+            assertEquals(1, d.pollCount);
+        }
+
+        // and each device should be polled once per interval thereafter
+        for (long now = 10500; now < 20000; now += 1000) {
+            s.poll(null, now);
+        }
+        for (MockPolledDevice d : devices) {
+            assertEquals(2, d.pollCount);
+        }
+    }
+
+    @Test
+    public void testRateLimit() {
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+        PollScheduler s = new PollScheduler(60000, 2);
+
+        for (int i=0; i < 20; i++) {
+            s.add(new MockPolledDevice(plugin, "zwave-" + i, (byte)i, 1000), 0);
+        }
+
+        assertEquals(2, s.poll(null, 1000));
+        assertEquals(2, s.poll(null, 2000));
+        assertEquals(1, s.poll(null, 2500));
+    }
+
+    @Test
+    public void testNonPolledAndRemovedDevices() {
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+        PollScheduler s = new PollScheduler(1000, 10);
+
+        MockPolledDevice d1 = new MockPolledDevice(plugin, "zwave-1", (byte)1, 0);
+        MockPolledDevice d2 = new MockPolledDevice(plugin, "zwave-2", (byte)2, 1000);
+        assertFalse(s.add(d1, 0));
+        assertTrue(s.add(d2, 0));
+        assertEquals(1, s.size());
+
+        s.remove(d2);
+        assertEquals(0, s.poll(null, 5000));
+        assertEquals(0, d2.pollCount);
+    }
+
+    private static class MockPolledDevice extends MockZWaveDevice {
+        private long interval;
+        int pollCount;
+
+        public MockPolledDevice(ZWavePlugin driver, String id, byte nodeId, long interval) {
+            super(driver, id, nodeId);
+            this.interval = interval;
+        }
+
+        @Override
+        public long getPollInterval(long defaultInterval) {
+            return interval;
+        }
+
+        @Override
+        public void onRefresh(ZWaveContext ctx) {
+            pollCount++;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.zwave.device.MockZWaveDevice;
+import com.whizzosoftware.hobson.zwave.util.FrameUtil;
+import com.whizzosoftware.wzwave.frame.DataFrame;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TransmitSchedulerTest {
+    private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPriority() throws Exception {
+        RecordingSender sender = new RecordingSender();
+        TransmitScheduler s = new TransmitScheduler(sender, executor, 100);
+        DataFrame poll = createFrame(2);
+        DataFrame get = createFrame(3);
+        DataFrame set = createFrame(4);
+
+        // frames queued while paused are released highest priority first
+        s.setPaused(true);
+        s.send(poll, TransmitPriority.POLL);
+        s.send(get, TransmitPriority.CONFIRMATION);
+        s.send(set, TransmitPriority.INTERACTIVE);
+        assertEquals(3, s.getQueueDepth());
+        assertEquals(0, sender.getSentCount());
+
+        s.setPaused(false);
+        waitForSent(sender, 3);
+        assertSame(set, sender.getSent(0));
+        assertSame(get, sender.getSent(1));
+        assertSame(poll, sender.getSent(2));
+        assertEquals(0, s.getQueueDepth());
+    }
+
+    @Test
+    public void testQueueLimit() {
+        RecordingSender sender = new RecordingSender();
+        TransmitScheduler s = new TransmitScheduler(sender, executor, 100);
+        s.setMaxQueueDepth(3);
+        s.setPaused(true);
+
+        DataFrame p1 = createFrame(2);
+        DataFrame p2 = createFrame(3);
+        DataFrame p3 = createFrame(4);
+        s.send(p1, TransmitPriority.POLL);
+        s.send(p2, TransmitPriority.POLL);
+        s.send(createFrame(5), TransmitPriority.INTERACTIVE);
+        assertEquals(0, sender.getDroppedCount());
+
+        // a full queue discards its oldest lowest priority frame to make room
+        s.send(createFrame(6), TransmitPriority.INTERACTIVE);
+        assertEquals(1, sender.getDroppedCount());
+        assertSame(p1, sender.getDropped(0));
+        List<DataFrame> frames = new ArrayList<>();
+        frames.add(createFrame(7));
+        s.sendAll(frames, TransmitPriority.CONFIRMATION);
+        assertEquals(2, sender.getDroppedCount());
+        assertSame(p2, sender.getDropped(1));
+
+        // a new frame is discarded itself if only higher priority frames are waiting
+        s.send(p3, TransmitPriority.POLL);
+        assertEquals(3, sender.getDroppedCount());
+        assertSame(p3, sender.getDropped(2));
+        assertEquals(3, s.getDroppedCount(TransmitPriority.POLL));
+        assertEquals(0, s.getDroppedCount(TransmitPriority.INTERACTIVE));
+        assertEquals(3, s.getQueueDepth());
+        assertEquals(0, sender.getSentCount());
+    }
+
+    @Test
+    public void testStaleInteractiveFramesDropped() throws Exception {
+        RecordingSender sender = new RecordingSender();
+        TransmitScheduler s = new TransmitScheduler(sender, executor, 100);
+        s.setMaxInteractiveAge(10);
+        s.setPaused(true);
+
+        DataFrame stale = createFrame(2);
+        DataFrame poll = createFrame(3);
+        s.send(stale, TransmitPriority.INTERACTIVE);
+        s.send(poll, TransmitPriority.POLL);
+        Thread.sleep(50);
+
+        // an interactive frame that waited too long is discarded on resume; other priorities are still sent
+        s.setPaused(false);
+        waitForSent(sender, 1);
+        assertSame(poll, sender.getSent(0));
+        assertEquals(1, sender.getDroppedCount());
+        assertSame(stale, sender.getDropped(0));
+        assertEquals(1, s.getDroppedCount(TransmitPriority.INTERACTIVE));
+
+        DataFrame fresh = createFrame(4);
+        s.send(fresh, TransmitPriority.INTERACTIVE);
+        waitForSent(sender, 2);
+        assertSame(fresh, sender.getSent(1));
+    }
+
+    @Test
+    public void testDroppedCommandFails() throws Exception {
+        MockZWaveContext ctx = new MockZWaveContext();
+        final ConfirmationTracker t = new ConfirmationTracker(ctx, executor, 60000);
+        TransmitScheduler s = new TransmitScheduler(new RecordingSender() {
+            @Override
+            public void onDropped(DataFrame frame) {
+                super.onDropped(frame);
+                t.onFrameDropped(frame);
+            }
+        }, executor, 100);
+        s.setMaxQueueDepth(1);
+        s.setPaused(true);
+
+        // a SET that is discarded by the scheduler fails its command
+        MockZWaveDevice d = new MockZWaveDevice(new ZWavePlugin("plugin1"), (byte)2);
+        ZWaveCommand cmd = new ZWaveCommand(d, FrameUtil.createSendData("Switch Set", (byte)2, (byte)0x25, (byte)0x01, (byte)0xFF), null, "on", true);
+        CommandFuture f = new CommandFuture();
+        t.expect(cmd, f);
+        s.send(cmd.getSetFrame(), TransmitPriority.INTERACTIVE);
+        s.send(createFrame(3), TransmitPriority.INTERACTIVE);
+        assertEquals(CommandFuture.Status.FAILED, f.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(0, t.getPendingCount());
+    }
+
+    private DataFrame createFrame(int nodeId) {
+        return FrameUtil.createSendData("Switch Get", (byte)nodeId, (byte)0x25, (byte)0x02);
+    }
+
+    private void waitForSent(RecordingSender sender, int count) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (sender.getSentCount() < count && System.currentTimeMillis() - start < 5000) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, sender.getSentCount());
+    }
+
+    private static class RecordingSender implements TransmitScheduler.Sender {
+        private final List<DataFrame> sent = new ArrayList<>();
+        private final List<DataFrame> dropped = new ArrayList<>();
+
+        @Override
+        synchronized public void send(DataFrame frame) {
+            sent.add(frame);
+        }
+
+        @Override
+        synchronized public void onDropped(DataFrame frame) {
+            dropped.add(frame);
+        }
+
+        synchronized int getSentCount() {
+            return sent.size();
+        }
+
+        synchronized DataFrame getSent(int ix) {
+            return sent.get(ix);
+        }
+
+        synchronized int getDroppedCount() {
+            return dropped.size();
+        }
+
+        synchronized DataFrame getDropped(int ix) {
+            return dropped.get(ix);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave;
+
+import com.whizzosoftware.hobson.zwave.util.FrameUtil;
+import com.whizzosoftware.wzwave.frame.DataFrame;
+import com.whizzosoftware.wzwave.frame.SendData;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class WakeUpQueueTest {
+    @Test
+    public void testHoldAndFlush() {
+        WakeUpQueue q = new WakeUpQueue();
+        DataFrame f1 = FrameUtil.createSendData("Test", (byte)5, (byte)0x20, (byte)0x02);
+        DataFrame f2 = FrameUtil.createSendData("Test", (byte)6, (byte)0x20, (byte)0x02);
+
+        // frames for unregistered nodes are never held
+        assertFalse(q.hold(f1));
+        assertNull(q.onWakeUp((byte)5, 1000));
+
+        q.register((byte)5);
+        assertTrue(q.hold(f1));
+        assertFalse(q.hold(f2));
+        assertEquals(1, q.getQueueDepth((byte)5));
+
+        // the first wake-up flushes the held frame, reads the battery and sends the node back to sleep
+        List<DataFrame> frames = q.onWakeUp((byte)5, 1000);
+        assertEquals(3, frames.size());
+        assertSame(f1, frames.get(0));
+        assertCommand(frames.get(1), WakeUpQueue.BATTERY_COMMAND_CLASS, WakeUpQueue.BATTERY_GET);
+        assertCommand(frames.get(2), WakeUpQueue.WAKE_UP_COMMAND_CLASS, WakeUpQueue.WAKE_UP_NO_MORE_INFORMATION);
+        assertEquals(0, q.getQueueDepth((byte)5));
+
+        // nothing to do on the next wake-up
+        assertNull(q.onWakeUp((byte)5, 2000));
+
+        // the battery is read again once the interval has elapsed
+        frames = q.onWakeUp((byte)5, 1000 + WakeUpQueue.DEFAULT_BATTERY_READ_INTERVAL);
+        assertEquals(2, frames.size());
+    }
+
+    @Test
+    public void testQueueLimit() {
+        final List<DataFrame> dropped = new ArrayList<>();
+        WakeUpQueue q = new WakeUpQueue(new WakeUpQueue.Listener() {
+            @Override
+            public void onFrameDropped(DataFrame frame) {
+                dropped.add(frame);
+            }
+        });
+        q.register((byte)5);
+        List<DataFrame> held = new ArrayList<>();
+        for (int i=0; i < WakeUpQueue.MAX_QUEUED_FRAMES + 5; i++) {
+            DataFrame f = FrameUtil.createSendData("Test", (byte)5, (byte)0x20, (byte)i);
+            held.add(f);
+            assertTrue(q.hold(f));
+        }
+        assertEquals(WakeUpQueue.MAX_QUEUED_FRAMES, q.getQueueDepth((byte)5));
+
+        // the oldest frames are the ones dropped
+        assertEquals(5, dropped.size());
+        assertSame(held.get(0), dropped.get(0));
+        assertSame(held.get(4), dropped.get(4));
+
+        // unregistering discards the rest
+        q.unregister((byte)5);
+        assertEquals(0, q.getQueueDepth((byte)5));
+        assertEquals(WakeUpQueue.MAX_QUEUED_FRAMES + 5, dropped.size());
+    }
+
+    private void assertCommand(DataFrame frame, byte cc, byte cmd) {
+        byte[] data = ((SendData)frame).getSendData();
+        assertEquals(cc, data[0]);
+        assertEquals(cmd, data[1]);
+    }
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ZWaveMetricsTest {
+    @Test
+    public void testDisabled() {
+        ZWaveMetrics m = new ZWaveMetrics();
+        assertFalse(m.isEnabled());
+        m.onFrameSent();
+        m.onReportReceived((byte)2);
+        m.onVariableUpdatesFired(3);
+        m.onCommandLatency((byte)2, 100);
+        assertEquals(0, m.getFramesSent());
+        assertEquals(0, m.getReportsReceived());
+        assertEquals(0, m.getVariableUpdates());
+        assertEquals(0, m.getCommandLatency().getCount());
+    }
+
+    @Test
+    public void testSample() {
+        ZWaveMetrics m = new ZWaveMetrics();
+        m.setEnabled(true);
+        m.sample(1000);
+
+        for (int i=0; i < 20; i++) {
+            m.onFrameSent();
+        }
+        for (int i=0; i < 10; i++) {
+            m.onReportReceived((byte)5);
+        }
+        m.onReportReceived((byte)200);
+        m.onVariableUpdatesFired(4);
+        m.onCommandLatency((byte)5, 100);
+        m.onCommandLatency((byte)5, 200);
+
+        ZWaveMetrics.Sample s = m.sample(3000);
+        assertEquals(10.0, s.getFrameRate(), 0.001);
+        assertEquals(100, s.getCommandLatencyP50());
+        assertEquals(200, s.getCommandLatencyP99());
+        assertEquals(5.5, s.getReportRate(), 0.001);
+        assertEquals(2.0, s.getVariableUpdateRate(), 0.001);
+        assertEquals(5, s.getBusiestNode());
+        assertEquals(5.0, s.getBusiestNodeReportRate(), 0.001);
+        assertEquals(150.0, m.getAverageCommandLatency((byte)5), 0.001);
+        assertEquals(11, m.getReportsReceived());
+        assertEquals(1, m.getReportsReceived((byte)200));
+
+        // rates are relative to the previous sample
+        s = m.sample(4000);
+        assertEquals(0.0, s.getFrameRate(), 0.001);
+        assertEquals(-1, s.getBusiestNode());
+        assertEquals(0, s.getCommandLatencyP50());
+        assertEquals(0, s.getCommandLatencyP99());
+
+        // latencies only reflect the period they were recorded in
+        m.onCommandLatency((byte)5, 50);
+        s = m.sample(5000);
+        assertEquals(50, s.getCommandLatencyP99());
+    }
+}
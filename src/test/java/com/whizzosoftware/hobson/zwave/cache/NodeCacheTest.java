@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.cache;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class NodeCacheTest {
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = File.createTempFile("nodes", ".cache");
+        assertTrue(file.delete());
+
+        try {
+            List<CachedNode> endpoints = new ArrayList<>();
+            endpoints.add(new CachedNode((byte)3, (byte)1, (byte)0x10, null, new byte[] {0x25}, null, null));
+            endpoints.add(new CachedNode((byte)3, (byte)2, (byte)0x11, (byte)0x01, new byte[] {0x26, 0x20}, null, null));
+
+            NodeCache cache = new NodeCache(file);
+            cache.load();
+            assertEquals(0, cache.size());
+            assertTrue(cache.update(new CachedNode((byte)2, null, (byte)0x10, (byte)0x01, new byte[] {0x72, 0x25, 0x32}, "Aeon Labs Smart Switch", null)));
+            assertTrue(cache.update(new CachedNode((byte)3, null, (byte)0x10, null, new byte[] {0x60, 0x25}, null, endpoints)));
+            assertTrue(cache.save());
+            assertFalse(cache.save());
+
+            NodeCache cache2 = new NodeCache(file);
+            cache2.load();
+            assertEquals(2, cache2.size());
+
+            CachedNode n = cache2.getNode((byte)2);
+            assertEquals((byte)2, n.getNodeId());
+            assertNull(n.getEndpointNumber());
+            assertEquals((Byte)(byte)0x10, n.getGenericDeviceClass());
+            assertEquals((Byte)(byte)0x01, n.getSpecificDeviceClass());
+            assertTrue(n.hasCommandClass((byte)0x25));
+            assertTrue(n.hasCommandClass((byte)0x72));
+            assertFalse(n.hasCommandClass((byte)0x26));
+            assertEquals("Aeon Labs Smart Switch", n.getProductName());
+            assertEquals(0, n.getEndpoints().size());
+
+            n = cache2.getNode((byte)3);
+            assertNull(n.getSpecificDeviceClass());
+            assertNull(n.getProductName());
+            assertEquals(2, n.getEndpoints().size());
+            assertEquals((Byte)(byte)2, n.getEndpoints().get(1).getEndpointNumber());
+            assertEquals((Byte)(byte)0x11, n.getEndpoints().get(1).getGenericDeviceClass());
+            assertTrue(n.getEndpoints().get(1).hasCommandClass((byte)0x20));
+            assertEquals(cache.getNode((byte)3), n);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        NodeCache cache = new NodeCache(new File("unused"));
+        assertFalse(cache.isDirty());
+        assertTrue(cache.update(new CachedNode((byte)2, null, (byte)0x10, null, new byte[] {0x25}, null, null)));
+        assertTrue(cache.isDirty());
+
+        // an identical node doesn't change the cache
+        assertFalse(cache.update(new CachedNode((byte)2, null, (byte)0x10, null, new byte[] {0x25}, null, null)));
+        assertTrue(cache.update(new CachedNode((byte)2, null, (byte)0x10, null, new byte[] {0x25, 0x32}, null, null)));
+        assertEquals(1, cache.size());
+
+        assertTrue(cache.remove((byte)2));
+        assertFalse(cache.remove((byte)2));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testHomeId() throws Exception {
+        File file = File.createTempFile("nodes", ".cache");
+        assertTrue(file.delete());
+
+        try {
+            NodeCache cache = new NodeCache(file);
+            assertNull(cache.getHomeId());
+            assertTrue(cache.setHomeId(0xc0ffee01));
+            assertFalse(cache.setHomeId(0xc0ffee01));
+            assertTrue(cache.update(new CachedNode((byte)2, null, (byte)0x10, null, new byte[] {0x25}, null, null)));
+            assertTrue(cache.save());
+
+            NodeCache cache2 = new NodeCache(file);
+            cache2.load();
+            assertEquals((Integer)0xc0ffee01, cache2.getHomeId());
+            assertEquals(1, cache2.size());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.cache;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ValueSnapshotTest {
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = File.createTempFile("values", ".snapshot");
+        assertTrue(file.delete());
+
+        try {
+            ValueSnapshot snapshot = new ValueSnapshot(file);
+            snapshot.load();
+            assertEquals(0, snapshot.getValues("zwave-2").size());
+
+            Map<String,ValueSnapshot.Value> v1 = new HashMap<>();
+            v1.put("on", new ValueSnapshot.Value(true, 1000));
+            v1.put("energyConsumptionWatts", new ValueSnapshot.Value(12.5, 2000));
+            Map<String,ValueSnapshot.Value> v2 = new HashMap<>();
+            v2.put("level", new ValueSnapshot.Value((byte)50, 3000));
+            v2.put("batteryLevel", new ValueSnapshot.Value(null, 4000));
+            Map<String,Map<String,ValueSnapshot.Value>> devices = new HashMap<>();
+            devices.put("zwave-2", v1);
+            devices.put("zwave-3-1", v2);
+            snapshot.save(devices);
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+
+            ValueSnapshot snapshot2 = new ValueSnapshot(file);
+            snapshot2.load();
+            Map<String,ValueSnapshot.Value> r = snapshot2.getValues("zwave-2");
+            assertEquals(2, r.size());
+            assertEquals(true, r.get("on").getValue());
+            assertEquals(1000, r.get("on").getTime());
+            assertEquals(12.5, r.get("energyConsumptionWatts").getValue());
+            r = snapshot2.getValues("zwave-3-1");
+            assertEquals((byte)50, r.get("level").getValue());
+            assertEquals(3000, r.get("level").getTime());
+            assertTrue(r.containsKey("batteryLevel"));
+            assertNull(r.get("batteryLevel").getValue());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSupportedValues() {
+        assertTrue(ValueSnapshot.isSupportedValue(null));
+        assertTrue(ValueSnapshot.isSupportedValue(true));
+        assertTrue(ValueSnapshot.isSupportedValue(1.5));
+        assertTrue(ValueSnapshot.isSupportedValue("foo"));
+        assertFalse(ValueSnapshot.isSupportedValue(new Object()));
+    }
+}
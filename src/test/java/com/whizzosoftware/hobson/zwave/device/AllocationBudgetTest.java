@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.hobson.api.device.MockDeviceManager;
+import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AllocationBudgetTest {
+    /**
+     * The maximum average number of bytes that may be allocated to process a report whose values haven't changed.
+     */
+    private static final long BYTES_PER_REPORT_BUDGET = 8;
+
+    @Test
+    public void testUnchangedReportAllocation() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+        Assume.assumeTrue(sunBean.isThreadAllocatedMemorySupported());
+        sunBean.setThreadAllocatedMemoryEnabled(true);
+
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+        plugin.setDeviceManager(new MockDeviceManager());
+        MockLevelDevice d = new MockLevelDevice(plugin, "id", (byte)2);
+        d.onStartup(null);
+
+        List<VariableUpdate> updates = new ArrayList<>();
+
+        // the first report publishes the values; after warm-up nothing should change
+        for (int i=0; i < 20000; i++) {
+            updates.clear();
+            d.processUpdate(null, updates);
+        }
+        assertEquals(0, updates.size());
+
+        long threadId = Thread.currentThread().getId();
+        int count = 10000;
+        long start = sunBean.getThreadAllocatedBytes(threadId);
+        for (int i=0; i < count; i++) {
+            d.processUpdate(null, updates);
+        }
+        long allocated = sunBean.getThreadAllocatedBytes(threadId) - start;
+
+        assertEquals(0, updates.size());
+        assertTrue("Allocated " + allocated + " bytes for " + count + " reports", allocated / count <= BYTES_PER_REPORT_BUDGET);
+    }
+
+    @Test
+    public void testVariableContextReuse() {
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+        plugin.setDeviceManager(new MockDeviceManager());
+        MockLevelDevice d = new MockLevelDevice(plugin, "id", (byte)2);
+        d.onStartup(null);
+
+        List<VariableUpdate> updates1 = new ArrayList<>();
+        d.level = 10;
+        d.processUpdate(null, updates1);
+        assertEquals(2, updates1.size());
+
+        List<VariableUpdate> updates2 = new ArrayList<>();
+        d.level = 20;
+        d.processUpdate(null, updates2);
+        assertEquals(1, updates2.size());
+        assertSame(updates1.get(1).getContext(), updates2.get(0).getContext());
+    }
+
+    private static class MockLevelDevice extends MockZWaveDevice {
+        Integer level = 50;
+
+        public MockLevelDevice(ZWavePlugin driver, String id, byte nodeId) {
+            super(driver, id, nodeId);
+        }
+
+        @Override
+        public void onUpdate(ZWaveEndpoint endpoint, List<VariableUpdate> updates) {
+            addVariableUpdate(updates, "on", Boolean.TRUE);
+            addVariableUpdate(updates, "level", level);
+        }
+    }
+}
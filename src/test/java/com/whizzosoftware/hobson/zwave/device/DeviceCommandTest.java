@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.hobson.api.variable.VariableConstants;
+import com.whizzosoftware.hobson.zwave.ZWaveCommand;
+import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.hobson.zwave.util.FrameUtil;
+import com.whizzosoftware.wzwave.commandclass.BinarySwitchCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MultilevelSwitchCommandClass;
+import com.whizzosoftware.wzwave.frame.DataFrame;
+import com.whizzosoftware.wzwave.frame.SendData;
+import com.whizzosoftware.wzwave.node.NodeInfo;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.generic.BinarySwitch;
+import com.whizzosoftware.wzwave.node.generic.MultilevelSwitch;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DeviceCommandTest {
+    @Test
+    public void testSwitchCommands() {
+        ZWaveEndpoint node = new BinarySwitch(new NodeInfo((byte)2, (byte)0x04, BinarySwitch.ID, (byte)0x01, new byte[] {BinarySwitchCommandClass.ID}), true, null);
+        SwitchDevice d = new SwitchDevice(new ZWavePlugin("plugin1"), "id", node, null, null, null);
+
+        ZWaveCommand on = d.createCommand(VariableConstants.ON, true);
+        ZWaveCommand off = d.createCommand(VariableConstants.ON, "false");
+        assertEquals(true, on.getExpectedValue());
+        assertEquals(false, off.getExpectedValue());
+        assertFrame(on.getSetFrame(), (byte)2, BinarySwitchCommandClass.ID, (byte)0x01, (byte)0xFF);
+        assertFrame(off.getSetFrame(), (byte)2, BinarySwitchCommandClass.ID, (byte)0x01, (byte)0x00);
+        assertFrame(on.getGetFrame(), (byte)2, BinarySwitchCommandClass.ID, (byte)0x02);
+
+        // every command gets its own frames
+        ZWaveCommand on2 = d.createCommand(VariableConstants.ON, "true");
+        assertNotSame(on.getSetFrame(), on2.getSetFrame());
+        assertNotSame(on.getGetFrame(), on2.getGetFrame());
+        assertFrame(on2.getSetFrame(), (byte)2, BinarySwitchCommandClass.ID, (byte)0x01, (byte)0xFF);
+    }
+
+    @Test
+    public void testDimmerCommands() {
+        ZWaveEndpoint node = new MultilevelSwitch(new NodeInfo((byte)3, (byte)0x04, MultilevelSwitch.ID, (byte)0x01, new byte[] {MultilevelSwitchCommandClass.ID}), true, null);
+        DimmerDevice d = new DimmerDevice(new ZWavePlugin("plugin1"), "id", node, null, null, null);
+
+        ZWaveCommand level = d.createCommand(VariableConstants.LEVEL, "50");
+        assertEquals((byte)50, level.getExpectedValue());
+        assertFrame(level.getSetFrame(), (byte)3, MultilevelSwitchCommandClass.ID, (byte)0x01, (byte)50);
+        assertFrame(level.getGetFrame(), (byte)3, MultilevelSwitchCommandClass.ID, (byte)0x02);
+
+        // patching a new level doesn't change frames that were already created
+        ZWaveCommand level2 = d.createCommand(VariableConstants.LEVEL, 51);
+        assertFrame(level2.getSetFrame(), (byte)3, MultilevelSwitchCommandClass.ID, (byte)0x01, (byte)51);
+        assertFrame(level.getSetFrame(), (byte)3, MultilevelSwitchCommandClass.ID, (byte)0x01, (byte)50);
+
+        ZWaveCommand on = d.createCommand(VariableConstants.ON, true);
+        assertFrame(on.getSetFrame(), (byte)3, MultilevelSwitchCommandClass.ID, (byte)0x01, (byte)0xFF);
+        assertNotSame(level.getGetFrame(), on.getGetFrame());
+    }
+
+    @Test
+    public void testInvalidValues() {
+        ZWaveEndpoint node = new BinarySwitch(new NodeInfo((byte)2, (byte)0x04, BinarySwitch.ID, (byte)0x01, new byte[] {BinarySwitchCommandClass.ID}), true, null);
+        SwitchDevice sw = new SwitchDevice(new ZWavePlugin("plugin1"), "id", node, null, null, null);
+        assertNull(sw.createCommand(VariableConstants.ON, null));
+        assertNull(sw.createCommand(VariableConstants.ON, "maybe"));
+        assertNull(sw.createCommand(VariableConstants.ON, 1));
+        assertNull(sw.createCommand(VariableConstants.LEVEL, 50));
+
+        node = new MultilevelSwitch(new NodeInfo((byte)3, (byte)0x04, MultilevelSwitch.ID, (byte)0x01, new byte[] {MultilevelSwitchCommandClass.ID}), true, null);
+        DimmerDevice dim = new DimmerDevice(new ZWavePlugin("plugin1"), "id", node, null, null, null);
+        assertNull(dim.createCommand(VariableConstants.ON, null));
+        assertNull(dim.createCommand(VariableConstants.ON, "maybe"));
+        assertNull(dim.createCommand(VariableConstants.LEVEL, null));
+        assertNull(dim.createCommand(VariableConstants.LEVEL, "bright"));
+        assertNull(dim.createCommand("color", "red"));
+        assertEquals(false, dim.createCommand(VariableConstants.ON, Boolean.FALSE).getExpectedValue());
+    }
+
+    @Test
+    public void testEndpointCommands() {
+        ZWaveEndpoint node = new BinarySwitch(new NodeInfo((byte)4, (byte)0x04, BinarySwitch.ID, (byte)0x01, new byte[] {BinarySwitchCommandClass.ID, MultiInstanceCommandClass.ID}), true, null);
+        MultiInstanceCommandClass micc = (MultiInstanceCommandClass)node.getCommandClass(MultiInstanceCommandClass.ID);
+        SwitchDevice d = new SwitchDevice(new ZWavePlugin("plugin1"), "id", node, null, (byte)2, micc);
+
+        // commands for a multi-channel endpoint are encapsulated the same way the command class would do it
+        ZWaveCommand on = d.createCommand(VariableConstants.ON, true);
+        ZWaveCommand off = d.createCommand(VariableConstants.ON, false);
+        assertFrame(on.getSetFrame(), (byte)4, encapsulate(micc, (byte)4, (byte)2, BinarySwitchCommandClass.ID, (byte)0x01, (byte)0xFF));
+        assertFrame(off.getSetFrame(), (byte)4, encapsulate(micc, (byte)4, (byte)2, BinarySwitchCommandClass.ID, (byte)0x01, (byte)0x00));
+        assertFrame(on.getGetFrame(), (byte)4, encapsulate(micc, (byte)4, (byte)2, BinarySwitchCommandClass.ID, (byte)0x02));
+    }
+
+    @Test
+    public void testEndpointCommandsAfterRebind() {
+        // an endpoint published from the node cache has no multi-instance command class until it's bound to the live node
+        ZWaveEndpoint node = new BinarySwitch(new NodeInfo((byte)4, (byte)0x04, BinarySwitch.ID, (byte)0x01, new byte[] {BinarySwitchCommandClass.ID, MultiInstanceCommandClass.ID}), true, null);
+        MultiInstanceCommandClass micc = (MultiInstanceCommandClass)node.getCommandClass(MultiInstanceCommandClass.ID);
+        SwitchDevice d = new SwitchDevice(new ZWavePlugin("plugin1"), "id", node, null, (byte)2, null);
+        d.setEndpoint(node, micc);
+
+        ZWaveCommand on = d.createCommand(VariableConstants.ON, true);
+        assertFrame(on.getSetFrame(), (byte)4, encapsulate(micc, (byte)4, (byte)2, BinarySwitchCommandClass.ID, (byte)0x01, (byte)0xFF));
+    }
+
+    private byte[] encapsulate(MultiInstanceCommandClass micc, byte nodeId, byte endpointNumber, byte... command) {
+        DataFrame frame = micc.createMultiChannelCommandEncapsulation((byte)0, endpointNumber, FrameUtil.createSendData("test", nodeId, command), false);
+        return ((SendData)frame).getSendData();
+    }
+
+    private void assertFrame(DataFrame frame, byte nodeId, byte... data) {
+        assertEquals(nodeId, (byte)((SendData)frame).getNodeId());
+        assertArrayEquals(data, ((SendData)frame).getSendData());
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.wzwave.commandclass.BinarySwitchCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MeterCommandClass;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.ZWaveMultiChannelEndpoint;
+import com.whizzosoftware.wzwave.node.generic.BinarySensor;
+import com.whizzosoftware.wzwave.node.generic.BinarySwitch;
+import com.whizzosoftware.wzwave.node.generic.MultilevelSwitch;
+import com.whizzosoftware.wzwave.node.generic.StaticController;
+import com.whizzosoftware.wzwave.node.specific.PCController;
+import com.whizzosoftware.wzwave.node.specific.RoutingBinarySensor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DeviceFactoryRegistryTest {
+    @Test
+    public void testNodeRegistry() {
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+        DeviceFactoryRegistry r = DeviceFactoryRegistry.createNodeRegistry();
+
+        assertTrue(create(r, plugin, BinarySwitch.ID, (byte)0x01) instanceof SwitchDevice);
+        assertTrue(create(r, plugin, MultilevelSwitch.ID, (byte)0x01) instanceof DimmerDevice);
+        assertTrue(create(r, plugin, BinarySensor.ID, RoutingBinarySensor.ID) instanceof BatterySensorDevice);
+        assertFalse(create(r, plugin, BinarySensor.ID, (byte)0x7F) instanceof BatterySensorDevice);
+        assertTrue(create(r, plugin, BinarySensor.ID, (byte)0x7F) instanceof SensorDevice);
+        assertSame(ZWaveDeviceFactory.IGNORE, r.getFactory(StaticController.ID, PCController.ID));
+        assertNull(r.getFactory(StaticController.ID, (byte)0x7F));
+        assertNull(r.getFactory((byte)0x7E, null));
+        assertNull(r.getFactory(null, null));
+    }
+
+    @Test
+    public void testMeterProperties() {
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+
+        // a plain switch has no report filter
+        HobsonZWaveDevice d = create(DeviceFactoryRegistry.createNodeRegistry(), plugin, BinarySwitch.ID, (byte)0x01);
+        assertNull(d.createSupportedProperties());
+
+        // a metering switch (node or multi-channel endpoint) does
+        MockZWaveEndpoint ep = new MockZWaveEndpoint((byte)2, BinarySwitch.ID, (byte)0x01);
+        ep.setCommandClasses(BinarySwitchCommandClass.ID, MeterCommandClass.ID);
+        d = DeviceFactoryRegistry.createNodeRegistry().getFactory(ep).create(plugin, "zwave-2", ep, null, null);
+        assertTrue(d instanceof MeterSwitchDevice);
+        assertEquals(3, d.createSupportedProperties().length);
+
+        ep = new MockZWaveEndpoint((byte)2, ZWaveMultiChannelEndpoint.BINARY_SWITCH, (byte)0x01);
+        ep.setCommandClasses(BinarySwitchCommandClass.ID, MeterCommandClass.ID);
+        d = DeviceFactoryRegistry.createEndpointRegistry().getFactory(ep).create(plugin, "zwave-2-1", ep, (byte)1, null);
+        assertTrue(d instanceof MeterSwitchDevice);
+        assertEquals(3, d.createSupportedProperties().length);
+
+        // so does a meter sensor
+        d = new MeterDevice(plugin, "zwave-3", new MockZWaveEndpoint((byte)3), null, null, null);
+        assertEquals(3, d.createSupportedProperties().length);
+    }
+
+    @Test
+    public void testCustomFactory() {
+        DeviceFactoryRegistry r = new DeviceFactoryRegistry();
+        r.register((byte)0x7E, ZWaveDeviceFactory.IGNORE);
+        assertSame(ZWaveDeviceFactory.IGNORE, r.getFactory((byte)0x7E, (byte)0x01));
+    }
+
+    private HobsonZWaveDevice create(DeviceFactoryRegistry r, ZWavePlugin plugin, byte generic, byte specific) {
+        ZWaveEndpoint ep = new MockZWaveEndpoint((byte)2, generic, specific);
+        return r.getFactory(ep).create(plugin, "zwave-2", ep, null, null);
+    }
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DeviceTableTest {
+    @Test
+    public void testPutAndGet() {
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+        DeviceTable table = new DeviceTable();
+
+        MockZWaveDevice d1 = new MockZWaveDevice(plugin, "zwave-2", (byte)2, null);
+        MockZWaveDevice d2 = new MockZWaveDevice(plugin, "zwave-2-3", (byte)2, (byte)3);
+        MockZWaveDevice d3 = new MockZWaveDevice(plugin, "zwave-200", (byte)200, null);
+        table.put(d1);
+        table.put(d2);
+        table.put(d3);
+
+        assertEquals(3, table.size());
+        assertSame(d1, table.get((byte)2, DeviceTable.ROOT_ENDPOINT));
+        assertSame(d2, table.get((byte)2, (byte)3));
+        assertSame(d3, table.get((byte)200, DeviceTable.ROOT_ENDPOINT));
+        assertNull(table.get((byte)2, (byte)1));
+        assertNull(table.get((byte)2, (byte)4));
+        assertNull(table.get((byte)3, DeviceTable.ROOT_ENDPOINT));
+    }
+
+    @Test
+    public void testRemove() {
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+        DeviceTable table = new DeviceTable();
+
+        MockZWaveDevice d1 = new MockZWaveDevice(plugin, "zwave-2", (byte)2, null);
+        MockZWaveDevice d2 = new MockZWaveDevice(plugin, "zwave-2-1", (byte)2, (byte)1);
+        MockZWaveDevice d3 = new MockZWaveDevice(plugin, "zwave-3", (byte)3, null);
+        table.put(d1);
+        table.put(d2);
+        table.put(d3);
+
+        assertTrue(table.remove(d3));
+        assertFalse(table.remove(d3));
+        assertNull(table.get((byte)3, DeviceTable.ROOT_ENDPOINT));
+        assertEquals(2, table.size());
+
+        assertEquals(2, table.removeNode((byte)2).size());
+        assertNull(table.get((byte)2, DeviceTable.ROOT_ENDPOINT));
+        assertNull(table.get((byte)2, (byte)1));
+        assertEquals(0, table.size());
+    }
+}
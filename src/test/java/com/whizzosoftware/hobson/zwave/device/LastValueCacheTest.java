@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.device;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LastValueCacheTest {
+    @Test
+    public void testUpdate() {
+        LastValueCache c = new LastValueCache();
+        assertTrue(c.update("on", true, 1000, 0));
+        assertFalse(c.update("on", true, 2000, 0));
+        assertTrue(c.update("on", false, 3000, 0));
+        assertEquals(false, c.getValue("on"));
+        assertEquals(3000L, (long)c.getTime("on"));
+
+        assertTrue(c.update("watts", null, 1000, 0));
+        assertFalse(c.update("watts", null, 2000, 0));
+        assertTrue(c.update("watts", 12.5, 3000, 0));
+        assertFalse(c.update("watts", 12.5, 4000, 0));
+    }
+
+    @Test
+    public void testRepublishInterval() {
+        LastValueCache c = new LastValueCache();
+        assertTrue(c.update("watts", 10.0, 1000, 5000));
+        assertFalse(c.update("watts", 10.0, 5999, 5000));
+        assertTrue(c.update("watts", 10.0, 6000, 5000));
+        assertFalse(c.update("watts", 10.0, 7000, 5000));
+    }
+
+    @Test
+    public void testSeed() {
+        LastValueCache c = new LastValueCache();
+        c.seed("level", (byte)50, 1000);
+        assertFalse(c.update("level", (byte)50, 2000, 0));
+        assertTrue(c.update("level", (byte)60, 3000, 0));
+    }
+
+    @Test
+    public void testRestore() {
+        LastValueCache c = new LastValueCache();
+        long v = c.getVersion();
+        c.restore("on", true, 1000);
+        assertTrue(c.getVersion() != v);
+        assertTrue(c.hasValue("on"));
+        assertEquals(1000L, (long)c.getTime("on"));
+
+        // a restored value never suppresses the first report from the device
+        assertTrue(c.update("on", true, 2000, 0));
+        assertEquals(2000L, (long)c.getTime("on"));
+        assertFalse(c.update("on", true, 3000, 0));
+    }
+
+    @Test
+    public void testFilter() {
+        LastValueCache c = new LastValueCache();
+        ReportFilter f = new ReportFilter(0.5, 0, 0);
+        assertTrue(c.update("watts", 100.0, 1000, 0, f));
+        assertFalse(c.update("watts", 100.4, 2000, 0, f));
+        assertFalse(c.update("watts", 99.6, 3000, 0, f));
+
+        // drift is measured from the last published value
+        assertTrue(c.update("watts", 100.6, 4000, 0, f));
+        assertEquals(100.6, c.getValue("watts"));
+
+        // the republish interval still applies to suppressed values
+        assertTrue(c.update("watts", 100.7, 10000, 5000, f));
+
+        // non-numeric values are never filtered
+        assertTrue(c.update("on", true, 1000, 0, f));
+        assertTrue(c.update("on", false, 1001, 0, f));
+    }
+}
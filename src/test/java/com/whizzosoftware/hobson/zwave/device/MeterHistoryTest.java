@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.device;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MeterHistoryTest {
+    @Test
+    public void testIntegration() {
+        MeterHistory h = new MeterHistory();
+
+        // 1000W for a full hour at 15 second intervals is 1kWh
+        boolean completed = false;
+        for (long t=0; t <= MeterHistory.HOUR; t += 15000) {
+            completed |= h.add(t, 1000);
+        }
+        assertTrue(completed);
+        assertEquals(1.0, h.getKilowattHours(), 0.0001);
+        assertEquals(1000.0f, h.getAverageWatts(), 0.01);
+        assertEquals(2, h.getHours().size());
+        assertEquals(1.0, h.getHours().getKilowattHours(1), 0.0001);
+    }
+
+    @Test
+    public void testTimeWeightedAverage() {
+        MeterHistory h = new MeterHistory();
+
+        // 100W for 45 seconds then several quick readings of 500W in the last 15 seconds of the minute
+        h.add(0, 100);
+        h.add(45000, 500);
+        h.add(50000, 500);
+        h.add(55000, 500);
+        assertTrue(h.add(60000, 0));
+
+        MeterHistory.Buckets minutes = h.getMinutes();
+        assertEquals(2, minutes.size());
+        assertEquals(0, minutes.getStart(1));
+        assertEquals(200.0f, minutes.getAverage(1), 0.01);
+        assertEquals(100.0f, minutes.getMinimum(1), 0);
+        assertEquals(500.0f, minutes.getMaximum(1), 0);
+        assertEquals(0.0f, h.getMinimumWatts(), 0);
+        assertEquals(500.0f, h.getMaximumWatts(), 0);
+    }
+
+    @Test
+    public void testGapIntegrated() {
+        MeterHistory h = new MeterHistory();
+
+        // a meter that only reports on change held 1000W for the hour between its readings
+        h.add(0, 1000);
+        assertTrue(h.add(MeterHistory.HOUR, 0));
+        assertEquals(1.0, h.getKilowattHours(), 0.0001);
+        assertEquals(1.0, h.getHours().getKilowattHours(1), 0.0001);
+        assertEquals(60, h.getMinutes().size());
+        assertEquals(1000.0f, h.getMinutes().getAverage(1), 0.01);
+
+        // a gap longer than the minute ring only keeps the most recent minutes
+        h.add(3 * MeterHistory.HOUR, 0);
+        assertEquals(1.0, h.getKilowattHours(), 0.0001);
+        assertEquals(MeterHistory.HOUR * 3, h.getMinutes().getStart(0));
+        assertEquals(MeterHistory.HOUR * 3 - 59 * MeterHistory.MINUTE, h.getMinutes().getStart(59));
+    }
+
+    @Test
+    public void testSplitAcrossMinutes() {
+        MeterHistory h = new MeterHistory();
+        h.add(50000, 600);
+        assertTrue(h.add(70000, 600));
+        assertEquals(0.6 * 10000 / 3600000.0, h.getMinutes().getKilowattHours(1), 0.0000001);
+        assertEquals(0.6 * 10000 / 3600000.0, h.getMinutes().getKilowattHours(0), 0.0000001);
+    }
+}
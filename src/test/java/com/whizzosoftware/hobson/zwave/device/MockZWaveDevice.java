@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.hobson.api.device.DeviceType;
+import com.whizzosoftware.hobson.api.property.TypedProperty;
+import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+
+import java.util.List;
+
+/**
+ * A Hobson Z-Wave device backed by a MockZWaveEndpoint for use in tests. Tests that need specific behavior can
+ * subclass it and override the relevant callbacks.
+ *
+ * @author Dan Noguerol
+ */
+public class MockZWaveDevice extends HobsonZWaveDevice {
+    public MockZWaveDevice(ZWavePlugin driver, byte nodeId) {
+        this(driver, "zwave-" + nodeId, nodeId, null);
+    }
+
+    public MockZWaveDevice(ZWavePlugin driver, String id, byte nodeId) {
+        this(driver, id, nodeId, null);
+    }
+
+    public MockZWaveDevice(ZWavePlugin driver, String id, byte nodeId, Byte endpointNumber) {
+        super(driver, id, new MockZWaveEndpoint(nodeId), endpointNumber, null);
+    }
+
+    @Override
+    public void onUpdate(ZWaveEndpoint endpoint, List<VariableUpdate> updates) {
+    }
+
+    @Override
+    protected TypedProperty[] createSupportedProperties() {
+        return null;
+    }
+
+    @Override
+    public DeviceType getType() {
+        return null;
+    }
+
+    @Override
+    public void onShutdown() {
+    }
+
+    @Override
+    public void onSetVariable(String s, Object o) {
+    }
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+
+/**
+ * A bare Z-Wave endpoint for use in tests.
+ *
+ * @author Dan Noguerol
+ */
+public class MockZWaveEndpoint extends ZWaveEndpoint {
+    private byte[] commandClasses = new byte[0];
+
+    public MockZWaveEndpoint(byte nodeId) {
+        this(nodeId, null, null);
+    }
+
+    public MockZWaveEndpoint(byte nodeId, Byte genericDeviceClass, Byte specificDeviceClass) {
+        super(nodeId, genericDeviceClass, specificDeviceClass);
+    }
+
+    public void setCommandClasses(byte... commandClasses) {
+        this.commandClasses = commandClasses;
+    }
+
+    @Override
+    public boolean hasCommandClass(byte commandClassId) {
+        for (byte b : commandClasses) {
+            if (b == commandClassId) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.device;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ReportFilterTest {
+    @Test
+    public void testAbsoluteDeadband() {
+        ReportFilter f = new ReportFilter(1.0, 0, 0);
+        assertTrue(f.isSuppressed(100.0, 0, 101.0, 1000));
+        assertTrue(f.isSuppressed(100.0, 0, 99.0, 1000));
+        assertFalse(f.isSuppressed(100.0, 0, 101.5, 1000));
+        assertFalse(f.isSuppressed(null, 0, 100.0, 1000));
+    }
+
+    @Test
+    public void testPercentDeadband() {
+        ReportFilter f = new ReportFilter(0, 5, 0);
+        assertTrue(f.isSuppressed(200.0, 0, 210.0, 1000));
+        assertFalse(f.isSuppressed(200.0, 0, 211.0, 1000));
+        assertFalse(f.isSuppressed(0.0, 0, 0.1, 1000));
+    }
+
+    @Test
+    public void testMinInterval() {
+        ReportFilter f = new ReportFilter(0, 0, 5000);
+        assertTrue(f.isSuppressed(1, 1000, 50, 5999));
+        assertFalse(f.isSuppressed(1, 1000, 50, 6000));
+        assertFalse(f.isSuppressed(true, 1000, false, 1001));
+    }
+
+    @Test
+    public void testCreate() {
+        assertNull(ReportFilter.create(null));
+        assertFalse(new ReportFilter(-1, -1, -1).isEnabled());
+    }
+}
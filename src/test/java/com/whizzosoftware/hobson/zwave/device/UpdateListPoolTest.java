@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.device;
+
+import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+public class UpdateListPoolTest {
+    @Test
+    public void testReuse() {
+        UpdateListPool pool = new UpdateListPool(2);
+
+        // released lists are handed out again (empty) rather than new lists being created
+        List<VariableUpdate> l1 = pool.acquire();
+        l1.add(null);
+        pool.release(l1);
+        for (int i=0; i < 10; i++) {
+            List<VariableUpdate> l = pool.acquire();
+            assertSame(l1, l);
+            assertTrue(l.isEmpty());
+            pool.release(l);
+        }
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testNestedAcquireAndCapacity() {
+        UpdateListPool pool = new UpdateListPool(2);
+
+        // a list that hasn't been released is never handed out twice
+        List<VariableUpdate> l1 = pool.acquire();
+        List<VariableUpdate> l2 = pool.acquire();
+        List<VariableUpdate> l3 = pool.acquire();
+        assertNotSame(l1, l2);
+        assertNotSame(l2, l3);
+        assertEquals(3, pool.getCreatedCount());
+
+        // lists beyond the pool's capacity are discarded
+        pool.release(l1);
+        pool.release(l2);
+        pool.release(l3);
+        assertEquals(2, pool.getAvailableCount());
+    }
+}
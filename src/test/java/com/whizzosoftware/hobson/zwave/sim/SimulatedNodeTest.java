@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.sim;
+
+import com.whizzosoftware.wzwave.commandclass.BinarySwitchCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MultilevelSwitchCommandClass;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.ZWaveMultiChannelEndpoint;
+import com.whizzosoftware.wzwave.node.generic.BinarySwitch;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SimulatedNodeTest {
+    @Test
+    public void testSwitchSetAndGet() {
+        SimulatedNode n = new SimulatedNode((byte)2, SimulatedNode.SWITCH);
+        assertEquals(Boolean.FALSE, BinarySwitch.isOn(n.getNode()));
+
+        // a SET is applied and reported
+        assertSame(n.getNode(), n.onCommand(new byte[] {BinarySwitchCommandClass.ID, 0x01, (byte)0xFF}));
+        assertEquals(Boolean.TRUE, BinarySwitch.isOn(n.getNode()));
+
+        // a GET reports the current state
+        assertSame(n.getNode(), n.onCommand(new byte[] {BinarySwitchCommandClass.ID, 0x02}));
+        assertEquals(Boolean.TRUE, BinarySwitch.isOn(n.getNode()));
+
+        // unsupported commands and command classes produce no report
+        assertNull(n.onCommand(new byte[] {BinarySwitchCommandClass.ID, 0x05}));
+        assertNull(n.onCommand(new byte[] {MultilevelSwitchCommandClass.ID, 0x02}));
+        assertNull(n.onCommand(new byte[] {BinarySwitchCommandClass.ID}));
+    }
+
+    @Test
+    public void testDimmerSetAndGet() {
+        SimulatedNode n = new SimulatedNode((byte)2, SimulatedNode.DIMMER);
+        assertEquals(0, (byte)getLevel(n.getNode()));
+
+        assertSame(n.getNode(), n.onCommand(new byte[] {MultilevelSwitchCommandClass.ID, 0x01, 0x32}));
+        assertEquals(0x32, (byte)getLevel(n.getNode()));
+
+        // turning the dimmer back on (0xFF) restores the last non-zero level
+        n.onCommand(new byte[] {MultilevelSwitchCommandClass.ID, 0x01, 0x00});
+        assertEquals(0, (byte)getLevel(n.getNode()));
+        n.onCommand(new byte[] {MultilevelSwitchCommandClass.ID, 0x01, (byte)0xFF});
+        assertEquals(0x32, (byte)getLevel(n.getNode()));
+
+        assertSame(n.getNode(), n.onCommand(new byte[] {MultilevelSwitchCommandClass.ID, 0x02}));
+        assertEquals(0x32, (byte)getLevel(n.getNode()));
+    }
+
+    @Test
+    public void testMultiChannelEncapsulation() {
+        SimulatedNode n = new SimulatedNode((byte)2, SimulatedNode.MULTI_CHANNEL);
+        MultiInstanceCommandClass micc = (MultiInstanceCommandClass)n.getNode().getCommandClass(MultiInstanceCommandClass.ID);
+        assertEquals(2, micc.getEndpoints().size());
+
+        // an encapsulated SET only changes (and is reported by) the addressed endpoint
+        ZWaveEndpoint ep = n.onCommand(new byte[] {MultiInstanceCommandClass.ID, 0x0D, 0x00, 0x02, BinarySwitchCommandClass.ID, 0x01, (byte)0xFF});
+        assertTrue(ep instanceof ZWaveMultiChannelEndpoint);
+        assertEquals(2, ((ZWaveMultiChannelEndpoint)ep).getNumber());
+        assertEquals(Boolean.TRUE, BinarySwitch.isOn(ep));
+
+        ep = n.onCommand(new byte[] {MultiInstanceCommandClass.ID, 0x0D, 0x00, 0x01, BinarySwitchCommandClass.ID, 0x02});
+        assertEquals(1, ((ZWaveMultiChannelEndpoint)ep).getNumber());
+        assertEquals(Boolean.FALSE, BinarySwitch.isOn(ep));
+
+        // endpoints the node doesn't have are ignored
+        assertNull(n.onCommand(new byte[] {MultiInstanceCommandClass.ID, 0x0D, 0x00, 0x03, BinarySwitchCommandClass.ID, 0x02}));
+        assertNull(n.onCommand(new byte[] {MultiInstanceCommandClass.ID, 0x0D, 0x00, 0x00, BinarySwitchCommandClass.ID, 0x02}));
+    }
+
+    private Byte getLevel(ZWaveEndpoint node) {
+        return ((MultilevelSwitchCommandClass)node.getCommandClass(MultilevelSwitchCommandClass.ID)).getLevel();
+    }
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.sim;
+
+import com.whizzosoftware.hobson.zwave.util.FrameUtil;
+import com.whizzosoftware.wzwave.commandclass.BinarySwitchCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.controller.ZWaveControllerListener;
+import com.whizzosoftware.wzwave.node.NodeInfo;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.ZWaveMultiChannelEndpoint;
+import com.whizzosoftware.wzwave.node.generic.BinarySwitch;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SimulatedZWaveControllerTest {
+    private SimulatedZWaveController controller;
+
+    @After
+    public void tearDown() {
+        if (controller != null) {
+            controller.stop();
+        }
+    }
+
+    @Test
+    public void testStartup() throws Exception {
+        RecordingListener l = start("switches=2,dimmers=1,meters=0,multichannel=1,battery=0,reportRate=0,latency=0,jitter=0");
+        waitForAdded(l, 4);
+
+        assertEquals(controller.getHomeId(), l.homeId);
+        assertEquals(4, controller.getNodes().size());
+        assertEquals(2, (byte)l.getAdded(0).getNodeId());
+        assertEquals(5, (byte)l.getAdded(3).getNodeId());
+        assertSame(l.getAdded(0), controller.getNode((byte)2));
+        assertNull(controller.getNode((byte)6));
+    }
+
+    @Test
+    public void testSetAndGetReplies() throws Exception {
+        RecordingListener l = start("switches=1,dimmers=0,meters=0,multichannel=0,battery=0,reportRate=0,latency=0,jitter=0");
+        waitForAdded(l, 1);
+
+        // a SET is answered with a report of the new state
+        controller.sendDataFrame(FrameUtil.createSendData("Switch Set", (byte)2, BinarySwitchCommandClass.ID, (byte)0x01, (byte)0xFF));
+        ZWaveEndpoint ep = waitForUpdate(l, 1);
+        assertEquals(2, (byte)ep.getNodeId());
+        assertEquals(Boolean.TRUE, BinarySwitch.isOn(ep));
+
+        // as is a GET
+        controller.sendDataFrame(FrameUtil.createSendData("Switch Get", (byte)2, BinarySwitchCommandClass.ID, (byte)0x02));
+        ep = waitForUpdate(l, 2);
+        assertEquals(Boolean.TRUE, BinarySwitch.isOn(ep));
+        assertEquals(2, controller.getFramesReceived());
+        assertEquals(2, controller.getReportsSent());
+
+        // frames for unknown nodes are ignored
+        controller.sendDataFrame(FrameUtil.createSendData("Switch Get", (byte)9, BinarySwitchCommandClass.ID, (byte)0x02));
+        Thread.sleep(100);
+        assertEquals(2, l.getUpdateCount());
+    }
+
+    @Test
+    public void testMultiChannelEncapsulation() throws Exception {
+        RecordingListener l = start("switches=0,dimmers=0,meters=0,multichannel=1,battery=0,reportRate=0,latency=0,jitter=0");
+        waitForAdded(l, 1);
+
+        // the report for an encapsulated SET comes from the addressed endpoint
+        controller.sendDataFrame(FrameUtil.createSendData("Endpoint Switch Set", (byte)2, MultiInstanceCommandClass.ID, (byte)0x0D, (byte)0x00, (byte)0x01, BinarySwitchCommandClass.ID, (byte)0x01, (byte)0xFF));
+        ZWaveEndpoint ep = waitForUpdate(l, 1);
+        assertTrue(ep instanceof ZWaveMultiChannelEndpoint);
+        assertEquals(1, ((ZWaveMultiChannelEndpoint)ep).getNumber());
+        assertEquals(Boolean.TRUE, BinarySwitch.isOn(ep));
+    }
+
+    private RecordingListener start(String spec) {
+        RecordingListener l = new RecordingListener();
+        controller = new SimulatedZWaveController(SimulationConfig.parse(spec));
+        controller.setListener(l);
+        controller.start();
+        return l;
+    }
+
+    private void waitForAdded(RecordingListener l, int count) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (l.getAddedCount() < count && System.currentTimeMillis() - start < 5000) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, l.getAddedCount());
+    }
+
+    private ZWaveEndpoint waitForUpdate(RecordingListener l, int count) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (l.getUpdateCount() < count && System.currentTimeMillis() - start < 5000) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, l.getUpdateCount());
+        return l.getUpdate(count - 1);
+    }
+
+    private static class RecordingListener implements ZWaveControllerListener {
+        private final List<ZWaveEndpoint> added = new ArrayList<>();
+        private final List<ZWaveEndpoint> updates = new ArrayList<>();
+        private volatile Integer homeId;
+
+        synchronized int getAddedCount() {
+            return added.size();
+        }
+
+        synchronized ZWaveEndpoint getAdded(int ix) {
+            return added.get(ix);
+        }
+
+        synchronized int getUpdateCount() {
+            return updates.size();
+        }
+
+        synchronized ZWaveEndpoint getUpdate(int ix) {
+            return updates.get(ix);
+        }
+
+        @Override
+        synchronized public void onZWaveNodeAdded(ZWaveEndpoint node) {
+            added.add(node);
+        }
+
+        @Override
+        synchronized public void onZWaveNodeUpdated(ZWaveEndpoint node) {
+            updates.add(node);
+        }
+
+        @Override
+        public void onZWaveConnectionFailure(Throwable t) {
+        }
+
+        @Override
+        public void onZWaveControllerInfo(String libraryVersion, Integer homeId, Byte nodeId) {
+            this.homeId = homeId;
+        }
+
+        @Override
+        public void onZWaveInclusionStarted() {
+        }
+
+        @Override
+        public void onZWaveInclusion(NodeInfo nodeInfo, boolean success) {
+        }
+
+        @Override
+        public void onZWaveInclusionStopped() {
+        }
+
+        @Override
+        public void onZWaveExclusionStarted() {
+        }
+
+        @Override
+        public void onZWaveExclusion(NodeInfo nodeInfo, boolean success) {
+        }
+
+        @Override
+        public void onZWaveExclusionStopped() {
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.sim;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SimulationConfigTest {
+    @Test
+    public void testDefaults() {
+        SimulationConfig c = SimulationConfig.parse("");
+        assertEquals(10, c.getSwitches());
+        assertEquals(5, c.getDimmers());
+        assertEquals(2, c.getMeters());
+        assertEquals(1, c.getMultiChannel());
+        assertEquals(2, c.getBattery());
+        assertEquals(20, c.getNodeCount());
+        assertEquals(40, c.getLatency());
+    }
+
+    @Test
+    public void testParse() {
+        SimulationConfig c = SimulationConfig.parse("switches=100, dimmers=50,meters=20,multichannel=10,battery=40,reportRate=0.5,latency=5,jitter=0,seed=42");
+        assertEquals(100, c.getSwitches());
+        assertEquals(50, c.getDimmers());
+        assertEquals(20, c.getMeters());
+        assertEquals(10, c.getMultiChannel());
+        assertEquals(40, c.getBattery());
+        assertEquals(220, c.getNodeCount());
+        assertEquals(0.5, c.getReportRate(), 0.0001);
+        assertEquals(5, c.getLatency());
+        assertEquals(0, c.getJitter());
+        assertEquals(42, c.getSeed());
+    }
+
+    @Test
+    public void testInvalid() {
+        String[] specs = {"switches", "switches=abc", "foo=1", "switches=232", "latency=-1"};
+        for (String spec : specs) {
+            try {
+                SimulationConfig.parse(spec);
+                fail("Should have rejected " + spec);
+            } catch (IllegalArgumentException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.state;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BackoffTest {
+    @Test
+    public void testDelays() {
+        Backoff b = new Backoff(1000, 60000, new Random(1));
+        long window = 1000;
+        for (int i=0; i < 20; i++) {
+            long d = b.nextDelay();
+            assertTrue("Delay " + d + " below window " + window, d >= window / 2);
+            assertTrue("Delay " + d + " above window " + window, d <= window);
+            window = Math.min(window * 2, 60000);
+        }
+        assertEquals(20, b.getAttempts());
+
+        b.reset();
+        assertEquals(0, b.getAttempts());
+        assertTrue(b.nextDelay() <= 1000);
+    }
+
+    @Test
+    public void testJitter() {
+        Backoff b1 = new Backoff(1000, 60000, new Random(1));
+        Backoff b2 = new Backoff(1000, 60000, new Random(2));
+        boolean differ = false;
+        for (int i=0; i < 10; i++) {
+            differ |= (b1.nextDelay() != b2.nextDelay());
+        }
+        assertTrue(differ);
+    }
+}
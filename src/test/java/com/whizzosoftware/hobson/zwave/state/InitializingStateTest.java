@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.state;
+
+import com.whizzosoftware.hobson.zwave.ZWaveControllerFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class InitializingStateTest {
+    @Test
+    public void testInvalidSimulatorSpec() {
+        MockStateContext ctx = new MockStateContext("sim:switches=abc", ZWaveControllerFactory.DEFAULT);
+        ctx.setState(new InitializingState(ctx));
+        assertTrue(ctx.getState() instanceof FailedState);
+        assertNotNull(ctx.getPluginStatus());
+        assertNull(ctx.getZWaveController());
+    }
+
+    @Test
+    public void testSimulator() {
+        MockStateContext ctx = new MockStateContext("sim:switches=1,dimmers=0,meters=0,multichannel=0,battery=0,reportRate=0", ZWaveControllerFactory.DEFAULT);
+        ctx.setState(new InitializingState(ctx));
+        try {
+            assertTrue(ctx.getState() instanceof RunningState);
+            assertNotNull(ctx.getZWaveController());
+        } finally {
+            ctx.getState().stop(ctx);
+        }
+    }
+
+    @Test
+    public void testNoSerialPort() {
+        MockStateContext ctx = new MockStateContext(null, ZWaveControllerFactory.DEFAULT);
+        ctx.setState(new InitializingState(ctx));
+        assertTrue(ctx.getState() instanceof FailedState);
+    }
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.state;
+
+import com.whizzosoftware.hobson.api.plugin.PluginStatus;
+import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import com.whizzosoftware.hobson.zwave.ZWaveControllerFactory;
+import com.whizzosoftware.hobson.zwave.device.DeviceFactoryRegistry;
+import com.whizzosoftware.hobson.zwave.device.DeviceTable;
+import com.whizzosoftware.hobson.zwave.device.HobsonZWaveDevice;
+import com.whizzosoftware.hobson.zwave.device.UpdateListPool;
+import com.whizzosoftware.hobson.zwave.device.ZWaveDeviceFactory;
+import com.whizzosoftware.wzwave.commandclass.MultiInstanceCommandClass;
+import com.whizzosoftware.wzwave.controller.ZWaveController;
+import com.whizzosoftware.wzwave.node.NodeInfo;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A StateContext for use in tests. State changes run the new state immediately (as the network does) and scheduled
+ * tasks are held until the test runs them, so state transitions can be stepped through deterministically.
+ *
+ * @author Dan Noguerol
+ */
+public class MockStateContext implements StateContext {
+    private final ZWaveControllerFactory controllerFactory;
+    private final OutageStatistics outageStatistics = new OutageStatistics(System.currentTimeMillis());
+    private final UpdateListPool updateListPool = new UpdateListPool();
+    private final List<Runnable> scheduledTasks = new ArrayList<>();
+    private final List<Long> scheduledDelays = new ArrayList<>();
+    private final DeviceTable deviceTable = new DeviceTable();
+    private final List<List<VariableUpdate>> notifications = new ArrayList<>();
+    private String serialPort;
+    private ZWaveController controller;
+    private PluginStatus pluginStatus;
+    private State state;
+    private boolean transmitPaused;
+
+    public MockStateContext(String serialPort, ZWaveControllerFactory controllerFactory) {
+        this.serialPort = serialPort;
+        this.controllerFactory = controllerFactory;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public PluginStatus getPluginStatus() {
+        return pluginStatus;
+    }
+
+    public boolean isTransmitPaused() {
+        return transmitPaused;
+    }
+
+    public int getScheduledTaskCount() {
+        return scheduledTasks.size();
+    }
+
+    public long getScheduledDelay(int ix) {
+        return scheduledDelays.get(ix);
+    }
+
+    public void addZWaveDevice(HobsonZWaveDevice device) {
+        deviceTable.put(device);
+    }
+
+    public int getNotificationCount() {
+        return notifications.size();
+    }
+
+    public List<VariableUpdate> getNotification(int ix) {
+        return notifications.get(ix);
+    }
+
+    /**
+     * Runs (and removes) the task that was scheduled first.
+     */
+    public void runNextScheduledTask() {
+        scheduledDelays.remove(0);
+        scheduledTasks.remove(0).run();
+    }
+
+    @Override
+    public String getSerialPort() {
+        return serialPort;
+    }
+
+    @Override
+    public ZWaveControllerFactory getControllerFactory() {
+        return controllerFactory;
+    }
+
+    @Override
+    public ZWaveController getZWaveController() {
+        return controller;
+    }
+
+    @Override
+    public void setZWaveController(ZWaveController controller) {
+        this.controller = controller;
+    }
+
+    @Override
+    public void setPluginStatus(PluginStatus status) {
+        this.pluginStatus = status;
+    }
+
+    @Override
+    public void setTransmitPaused(boolean paused) {
+        this.transmitPaused = paused;
+    }
+
+    @Override
+    public OutageStatistics getOutageStatistics() {
+        return outageStatistics;
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleInEventLoop(Runnable task, long delay) {
+        scheduledTasks.add(task);
+        scheduledDelays.add(delay);
+        return null;
+    }
+
+    @Override
+    public void setState(State state) {
+        if (this.state != state) {
+            this.state = state;
+            state.onRun(this);
+        }
+    }
+
+    @Override
+    public HobsonZWaveDevice getZWaveDevice(byte nodeId, byte endpointNumber) {
+        return deviceTable.get(nodeId, endpointNumber);
+    }
+
+    @Override
+    public DeviceFactoryRegistry getDeviceFactoryRegistry() {
+        return new DeviceFactoryRegistry();
+    }
+
+    @Override
+    public void createZWaveDevice(ZWaveDeviceFactory factory, ZWaveEndpoint endpoint) {
+    }
+
+    @Override
+    public void createZWaveDevice(ZWaveDeviceFactory factory, ZWaveEndpoint endpoint, Byte endpointNumber, MultiInstanceCommandClass micc) {
+    }
+
+    @Override
+    public void fireVariableUpdateNotifications(List<VariableUpdate> updates) {
+        // the list is retained as a notification consumer might
+        notifications.add(updates);
+    }
+
+    @Override
+    public UpdateListPool getUpdateListPool() {
+        return updateListPool;
+    }
+
+    @Override
+    public void onZWaveNodeAdded(ZWaveEndpoint node) {
+    }
+
+    @Override
+    public void onZWaveNodeUpdated(ZWaveEndpoint node) {
+    }
+
+    @Override
+    public void onZWaveConnectionFailure(Throwable t) {
+    }
+
+    @Override
+    public void onZWaveControllerInfo(String libraryVersion, Integer homeId, Byte nodeId) {
+    }
+
+    @Override
+    public void onZWaveInclusionStarted() {
+    }
+
+    @Override
+    public void onZWaveInclusion(NodeInfo nodeInfo, boolean success) {
+    }
+
+    @Override
+    public void onZWaveInclusionStopped() {
+    }
+
+    @Override
+    public void onZWaveExclusionStarted() {
+    }
+
+    @Override
+    public void onZWaveExclusion(NodeInfo nodeInfo, boolean success) {
+    }
+
+    @Override
+    public void onZWaveExclusionStopped() {
+    }
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.state;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class OutageStatisticsTest {
+    @Test
+    public void testOutages() {
+        OutageStatistics s = new OutageStatistics(0);
+        assertFalse(s.isInOutage());
+        assertEquals(0, s.onOutageEnded(1000));
+
+        s.onOutageStarted(1000);
+        s.onOutageStarted(2000); // already in an outage
+        assertTrue(s.isInOutage());
+        assertEquals(1, s.getOutageCount());
+        assertEquals(4000, s.getTotalOutageTime(5000));
+        assertEquals(5000, s.onOutageEnded(6000));
+        assertFalse(s.isInOutage());
+
+        s.onOutageStarted(10000);
+        assertEquals(2000, s.onOutageEnded(12000));
+        assertEquals(2, s.getOutageCount());
+        assertEquals(7000, s.getTotalOutageTime(20000));
+        assertEquals(5000, s.getLongestOutage());
+        assertEquals(2000, s.getLastOutage());
+        assertEquals(2.0, s.getOutagesPerDay(86400000), 0.0001);
+    }
+}
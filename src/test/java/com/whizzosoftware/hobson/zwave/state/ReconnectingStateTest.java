@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.state;
+
+import com.whizzosoftware.hobson.zwave.ZWaveControllerFactory;
+import com.whizzosoftware.hobson.zwave.device.MockZWaveEndpoint;
+import com.whizzosoftware.hobson.zwave.sim.SimulatedZWaveController;
+import com.whizzosoftware.hobson.zwave.sim.SimulationConfig;
+import com.whizzosoftware.wzwave.controller.ZWaveController;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+public class ReconnectingStateTest {
+    private MockControllerFactory factory = new MockControllerFactory();
+    private MockStateContext ctx = new MockStateContext("sim:", factory);
+
+    @After
+    public void tearDown() {
+        if (ctx.getState() != null) {
+            ctx.getState().stop(ctx);
+        }
+    }
+
+    @Test
+    public void testBackoffUntilSettled() {
+        factory.failures = 2;
+        ctx.setState(new ReconnectingState(ctx, new Backoff(1000, 60000, new Random(1))));
+
+        // the outage starts, transmission is paused and the first attempt is scheduled
+        assertTrue(ctx.isTransmitPaused());
+        assertNotNull(ctx.getPluginStatus());
+        assertTrue(ctx.getOutageStatistics().isInOutage());
+        assertEquals(1, ctx.getScheduledTaskCount());
+
+        // failed attempts back off with increasing delays
+        long delay = ctx.getScheduledDelay(0);
+        ctx.runNextScheduledTask();
+        assertEquals(1, ctx.getScheduledTaskCount());
+        assertTrue(ctx.getScheduledDelay(0) > delay);
+        ctx.runNextScheduledTask();
+        assertEquals(1, ctx.getScheduledTaskCount());
+        assertEquals(0, factory.created);
+        assertFalse(((ReconnectingState)ctx.getState()).isConnecting());
+
+        // a successful attempt waits for the controller to settle
+        ctx.runNextScheduledTask();
+        assertEquals(1, factory.created);
+        assertNotNull(ctx.getZWaveController());
+        assertTrue(((ReconnectingState)ctx.getState()).isConnecting());
+        assertTrue(ctx.isTransmitPaused());
+        assertEquals(1, ctx.getScheduledTaskCount());
+
+        // once settled the network is running again with transmission resumed
+        ctx.runNextScheduledTask();
+        assertTrue(ctx.getState() instanceof RunningState);
+        assertFalse(ctx.isTransmitPaused());
+        assertFalse(ctx.getOutageStatistics().isInOutage());
+        assertEquals(1, ctx.getOutageStatistics().getOutageCount());
+    }
+
+    @Test
+    public void testNodeAddedWhileConnecting() {
+        ctx.setState(new ReconnectingState(ctx, new Backoff(1000, 60000, new Random(1))));
+        ctx.runNextScheduledTask();
+        assertTrue(((ReconnectingState)ctx.getState()).isConnecting());
+
+        // a node report confirms the connection without waiting for the settling period
+        ctx.getState().onZWaveNodeAdded(ctx, new MockZWaveEndpoint((byte)2));
+        State running = ctx.getState();
+        assertTrue(running instanceof RunningState);
+        assertFalse(ctx.isTransmitPaused());
+
+        // the settling task that's still scheduled has no effect
+        ctx.runNextScheduledTask();
+        assertSame(running, ctx.getState());
+    }
+
+    @Test
+    public void testFailureWhileConnecting() {
+        ctx.setState(new ReconnectingState(ctx, new Backoff(1000, 60000, new Random(1))));
+        ctx.runNextScheduledTask();
+        ZWaveController first = ctx.getZWaveController();
+        assertNotNull(first);
+
+        // the new controller fails before settling so it's closed and another attempt is scheduled
+        ctx.getState().onConnectionFailure(ctx, new IOException("Port closed"));
+        assertNull(ctx.getZWaveController());
+        assertFalse(((ReconnectingState)ctx.getState()).isConnecting());
+        assertEquals(2, ctx.getScheduledTaskCount());
+
+        // the stale settling task is ignored and the next attempt opens a new controller
+        ctx.runNextScheduledTask();
+        assertTrue(ctx.getState() instanceof ReconnectingState);
+        assertTrue(ctx.isTransmitPaused());
+        ctx.runNextScheduledTask();
+        assertEquals(2, factory.created);
+        assertNotSame(first, ctx.getZWaveController());
+        ctx.runNextScheduledTask();
+        assertTrue(ctx.getState() instanceof RunningState);
+        assertFalse(ctx.isTransmitPaused());
+    }
+
+    @Test
+    public void testConnectionFailureWhileRunning() {
+        ctx.setState(new RunningState(ctx));
+        assertFalse(ctx.isTransmitPaused());
+        ctx.getState().onConnectionFailure(ctx, new IOException("Port closed"));
+        assertTrue(ctx.getState() instanceof ReconnectingState);
+        assertTrue(ctx.isTransmitPaused());
+    }
+
+    private static class MockControllerFactory implements ZWaveControllerFactory {
+        int failures;
+        int created;
+
+        @Override
+        public ZWaveController create(String serialPort) {
+            if (failures > 0) {
+                failures--;
+                throw new RuntimeException("Unable to open " + serialPort);
+            }
+            created++;
+            return new SimulatedZWaveController(SimulationConfig.parse("switches=0,dimmers=0,meters=0,multichannel=0,battery=0,reportRate=0"));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.state;
+
+import com.whizzosoftware.hobson.api.device.MockDeviceManager;
+import com.whizzosoftware.hobson.api.variable.VariableUpdate;
+import com.whizzosoftware.hobson.zwave.ZWaveControllerFactory;
+import com.whizzosoftware.hobson.zwave.ZWavePlugin;
+import com.whizzosoftware.hobson.zwave.device.MockZWaveDevice;
+import com.whizzosoftware.hobson.zwave.device.MockZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+public class RunningStateTest {
+    @Test
+    public void testPublishedUpdatesRetained() {
+        ZWavePlugin plugin = new ZWavePlugin("plugin1");
+        plugin.setDeviceManager(new MockDeviceManager());
+        MockLevelDevice d2 = new MockLevelDevice(plugin, (byte)2);
+        MockLevelDevice d3 = new MockLevelDevice(plugin, (byte)3);
+        d2.onStartup(null);
+        d3.onStartup(null);
+
+        MockStateContext ctx = new MockStateContext("sim:", ZWaveControllerFactory.DEFAULT);
+        ctx.addZWaveDevice(d2);
+        ctx.addZWaveDevice(d3);
+        RunningState state = new RunningState(ctx);
+        ctx.setState(state);
+
+        // a published list keeps its contents after the next node's report is processed
+        d2.level = 10;
+        state.onZWaveNodeUpdated(ctx, new MockZWaveEndpoint((byte)2));
+        assertEquals(1, ctx.getNotificationCount());
+        List<VariableUpdate> first = ctx.getNotification(0);
+        assertEquals(1, first.size());
+        assertEquals(10, first.get(0).getValue());
+
+        d3.level = 20;
+        state.onZWaveNodeUpdated(ctx, new MockZWaveEndpoint((byte)3));
+        assertEquals(2, ctx.getNotificationCount());
+        assertNotSame(first, ctx.getNotification(1));
+        assertEquals(1, first.size());
+        assertEquals(10, first.get(0).getValue());
+        assertEquals(20, ctx.getNotification(1).get(0).getValue());
+
+        // an unchanged report doesn't publish anything
+        state.onZWaveNodeUpdated(ctx, new MockZWaveEndpoint((byte)3));
+        assertEquals(2, ctx.getNotificationCount());
+        assertEquals(1, first.size());
+    }
+
+    private static class MockLevelDevice extends MockZWaveDevice {
+        Integer level;
+
+        public MockLevelDevice(ZWavePlugin driver, byte nodeId) {
+            super(driver, nodeId);
+        }
+
+        @Override
+        public void onUpdate(ZWaveEndpoint endpoint, List<VariableUpdate> updates) {
+            addVariableUpdate(updates, "level", level);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.trace;
+
+import com.whizzosoftware.hobson.zwave.util.FrameUtil;
+import com.whizzosoftware.wzwave.commandclass.BinarySwitchCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MeterCommandClass;
+import com.whizzosoftware.wzwave.commandclass.MultilevelSwitchCommandClass;
+import com.whizzosoftware.wzwave.controller.ZWaveControllerListener;
+import com.whizzosoftware.wzwave.node.NodeInfo;
+import com.whizzosoftware.wzwave.node.ZWaveEndpoint;
+import com.whizzosoftware.wzwave.node.generic.BinarySwitch;
+import com.whizzosoftware.wzwave.node.generic.Meter;
+import com.whizzosoftware.wzwave.node.generic.MultilevelSwitch;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TraceReplayerTest {
+    private static final byte BASIC_ROUTING_SLAVE = 0x04;
+    private static final byte REPORT = 0x03;
+
+    @Test
+    public void testRecordAndReplay() throws Exception {
+        File file = File.createTempFile("zwave", ".trace");
+        file.deleteOnExit();
+
+        ZWaveEndpoint sw = new BinarySwitch(new NodeInfo((byte)2, BASIC_ROUTING_SLAVE, BinarySwitch.ID, (byte)0x01, new byte[] {BinarySwitchCommandClass.ID}), true, null);
+        ZWaveEndpoint dimmer = new MultilevelSwitch(new NodeInfo((byte)3, BASIC_ROUTING_SLAVE, MultilevelSwitch.ID, (byte)0x01, new byte[] {MultilevelSwitchCommandClass.ID}), true, null);
+        ZWaveEndpoint meter = new Meter(new NodeInfo((byte)4, BASIC_ROUTING_SLAVE, Meter.ID, (byte)0x01, new byte[] {MeterCommandClass.ID}), true, null);
+
+        // record a controller session through the recorder
+        RecordingListener recorded = new RecordingListener();
+        TraceRecorder recorder = new TraceRecorder(new TraceWriter(file), recorded);
+        recorder.onZWaveControllerInfo("Z-Wave 3.99", 0x5A570001, (byte)1);
+        report(sw, BinarySwitchCommandClass.ID, REPORT, (byte)0x00);
+        recorder.onZWaveNodeAdded(sw);
+        report(dimmer, MultilevelSwitchCommandClass.ID, REPORT, (byte)0x32);
+        recorder.onZWaveNodeAdded(dimmer);
+        // electric meter, precision 1, scale W, 2 byte value (10.0W)
+        report(meter, MeterCommandClass.ID, (byte)0x02, (byte)0x01, (byte)0x32, (byte)0x00, (byte)0x64);
+        recorder.onZWaveNodeAdded(meter);
+        recorder.onFrameSent(FrameUtil.createSendData("Switch Set", (byte)2, BinarySwitchCommandClass.ID, (byte)0x01, (byte)0xFF));
+        report(sw, BinarySwitchCommandClass.ID, REPORT, (byte)0xFF);
+        recorder.onZWaveNodeUpdated(sw);
+        report(dimmer, MultilevelSwitchCommandClass.ID, REPORT, (byte)0x10);
+        recorder.onZWaveNodeUpdated(dimmer);
+        report(meter, MeterCommandClass.ID, (byte)0x02, (byte)0x01, (byte)0x32, (byte)0x00, (byte)0x0F);
+        recorder.onZWaveNodeUpdated(meter);
+        report(sw, BinarySwitchCommandClass.ID, REPORT, (byte)0x00);
+        recorder.onZWaveNodeUpdated(sw);
+        recorder.close();
+
+        // replaying the trace should produce the same callbacks with the same node state
+        RecordingListener replayed = new RecordingListener();
+        TraceReplayer.Result result = new TraceReplayer(file, 0).replay(replayed);
+        assertEquals(3, result.getNodesAdded());
+        assertEquals(4, result.getNodesUpdated());
+        assertEquals(1, result.getFramesSent());
+        assertEquals(0, result.getSkippedCount());
+
+        assertEquals(Integer.valueOf(0x5A570001), replayed.homeId);
+        assertEquals(recorded.events, replayed.events);
+        assertEquals("added 2 on=false", replayed.events.get(0));
+        assertEquals("added 3 level=50", replayed.events.get(1));
+        assertEquals("added 4 watts=10.0", replayed.events.get(2));
+        assertEquals("updated 2 on=true", replayed.events.get(3));
+        assertEquals("updated 3 level=16", replayed.events.get(4));
+        assertEquals("updated 4 watts=1.5", replayed.events.get(5));
+        assertEquals("updated 2 on=false", replayed.events.get(6));
+    }
+
+    private void report(ZWaveEndpoint node, byte... ccb) {
+        node.getCommandClass(ccb[0]).onApplicationCommand(ccb, 0);
+    }
+
+    /**
+     * A listener that records a description of the state of each node at the time of the callback (the replayer
+     * reuses node objects so their state can't be inspected afterwards).
+     */
+    private static class RecordingListener implements ZWaveControllerListener {
+        private final List<String> events = new ArrayList<>();
+        private Integer homeId;
+
+        @Override
+        public void onZWaveNodeAdded(ZWaveEndpoint node) {
+            events.add("added " + describe(node));
+        }
+
+        @Override
+        public void onZWaveNodeUpdated(ZWaveEndpoint node) {
+            events.add("updated " + describe(node));
+        }
+
+        @Override
+        public void onZWaveConnectionFailure(Throwable t) {
+            events.add("failure");
+        }
+
+        @Override
+        public void onZWaveControllerInfo(String libraryVersion, Integer homeId, Byte nodeId) {
+            this.homeId = homeId;
+        }
+
+        @Override
+        public void onZWaveInclusionStarted() {
+        }
+
+        @Override
+        public void onZWaveInclusion(NodeInfo nodeInfo, boolean success) {
+        }
+
+        @Override
+        public void onZWaveInclusionStopped() {
+        }
+
+        @Override
+        public void onZWaveExclusionStarted() {
+        }
+
+        @Override
+        public void onZWaveExclusion(NodeInfo nodeInfo, boolean success) {
+        }
+
+        @Override
+        public void onZWaveExclusionStopped() {
+        }
+
+        private String describe(ZWaveEndpoint node) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(node.getNodeId());
+            if (node.hasCommandClass(BinarySwitchCommandClass.ID)) {
+                sb.append(" on=").append(BinarySwitch.isOn(node));
+            }
+            if (node.hasCommandClass(MultilevelSwitchCommandClass.ID)) {
+                sb.append(" level=").append(((MultilevelSwitchCommandClass)node.getCommandClass(MultilevelSwitchCommandClass.ID)).getLevel());
+            }
+            if (node.hasCommandClass(MeterCommandClass.ID)) {
+                Object value = ((MeterCommandClass)node.getCommandClass(MeterCommandClass.ID)).getCurrentValue();
+                sb.append(" watts=").append(value instanceof Number ? ((Number)value).doubleValue() : null);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.zwave.trace;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TraceWriterTest {
+    @Test
+    public void testWriteAndRead() throws Exception {
+        File file = File.createTempFile("zwave", ".trace");
+        file.deleteOnExit();
+
+        // use a small region so the writer has to map several of them
+        TraceWriter w = new TraceWriter(file, 64);
+        for (int i=0; i < 100; i++) {
+            byte[] data = new byte[i % 20];
+            for (int j=0; j < data.length; j++) {
+                data[j] = (byte)(i + j);
+            }
+            w.write(TraceFormat.NODE_UPDATED, i * 1000L, data, 0, data.length);
+        }
+        long size = w.getSize();
+        w.close();
+        assertEquals(100, w.getRecordCount());
+        assertEquals(size, file.length());
+
+        TraceReader r = new TraceReader(file);
+        assertTrue(r.getStartTime() > 0);
+        for (int i=0; i < 100; i++) {
+            assertTrue(r.next());
+            assertEquals(TraceFormat.NODE_UPDATED, r.getType());
+            assertEquals(i * 1000L, r.getTimestamp());
+            ByteBuffer data = r.getData();
+            assertEquals(i % 20, data.remaining());
+            for (int j=0; j < i % 20; j++) {
+                assertEquals((byte)(i + j), data.get());
+            }
+        }
+        assertFalse(r.next());
+        r.close();
+    }
+
+    @Test
+    public void testReadUnclosedTrace() throws Exception {
+        File file = File.createTempFile("zwave", ".trace");
+        file.deleteOnExit();
+
+        // simulate a crash by reading the trace before the writer is closed
+        TraceWriter w = new TraceWriter(file, 1024);
+        w.write(TraceFormat.FRAME_SENT, new byte[] {0x01, 0x02}, 2);
+        w.write(TraceFormat.INCLUSION_STARTED, new byte[0], 0);
+
+        TraceReader r = new TraceReader(file);
+        assertTrue(r.next());
+        assertEquals(TraceFormat.FRAME_SENT, r.getType());
+        assertEquals(2, r.getData().remaining());
+        assertTrue(r.next());
+        assertEquals(TraceFormat.INCLUSION_STARTED, r.getType());
+        assertFalse(r.next());
+        r.close();
+        w.close();
+    }
+
+    @Test
+    public void testStrings() {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        TraceFormat.writeString(buf, "Z-Wave 3.99");
+        TraceFormat.writeString(buf, null);
+        buf.flip();
+        assertEquals("Z-Wave 3.99", TraceFormat.readString(buf));
+        assertEquals("", TraceFormat.readString(buf));
+        assertFalse(buf.hasRemaining());
+    }
+}